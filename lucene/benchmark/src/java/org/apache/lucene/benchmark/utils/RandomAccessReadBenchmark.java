@@ -0,0 +1,182 @@
+package org.apache.lucene.benchmark.utils;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.RandomAccessInput;
+
+/**
+ * Compares the cost of reading longs at random positions of a file by
+ * cloning the {@link IndexInput} for every lookup (what term vectors and
+ * stored fields readers used to do once per thread and enum) against a single
+ * {@link RandomAccessInput} shared by all threads. Reports throughput and, when
+ * the JVM supports it, the number of bytes allocated per lookup.
+ * <p>
+ * Usage: <code>java RandomAccessReadBenchmark &lt;indexDir&gt; [numThreads] [numLookups] [numLongs]</code>
+ */
+public class RandomAccessReadBenchmark {
+
+  private static final String FILE_NAME = "random_access.bin";
+
+  private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+  private static final Method ALLOCATED_BYTES;
+  static {
+    Method m = null;
+    try {
+      final Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+      if (clazz.isInstance(THREAD_BEAN)) {
+        m = clazz.getMethod("getThreadAllocatedBytes", long.class);
+        m.invoke(THREAD_BEAN, Thread.currentThread().getId());
+      }
+    } catch (Exception e) {
+      m = null;
+    }
+    ALLOCATED_BYTES = m;
+  }
+
+  /** Returns the bytes allocated so far by the current thread, or -1 if unsupported. */
+  static long allocatedBytes() {
+    if (ALLOCATED_BYTES == null) {
+      return -1L;
+    }
+    try {
+      return ((Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId())).longValue();
+    } catch (Exception e) {
+      return -1L;
+    }
+  }
+
+  private static abstract class Reader extends Thread {
+    final int numLookups;
+    final int numLongs;
+    final Random random;
+    long sum, nanos, allocated;
+    Throwable failure;
+
+    Reader(int numLookups, int numLongs, long seed) {
+      this.numLookups = numLookups;
+      this.numLongs = numLongs;
+      this.random = new Random(seed);
+    }
+
+    abstract long read(long pos) throws Exception;
+
+    @Override
+    public void run() {
+      try {
+        final long allocStart = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < numLookups; i++) {
+          sum += read(random.nextInt(numLongs) * 8L);
+        }
+        nanos = System.nanoTime() - start;
+        final long allocEnd = allocatedBytes();
+        allocated = allocStart < 0 || allocEnd < 0 ? -1L : allocEnd - allocStart;
+      } catch (Throwable t) {
+        failure = t;
+      }
+    }
+  }
+
+  private static void run(String name, Reader[] readers) throws Exception {
+    for (Reader reader : readers) {
+      reader.start();
+    }
+    long nanos = 0, allocated = 0, lookups = 0, sum = 0;
+    for (Reader reader : readers) {
+      reader.join();
+      if (reader.failure != null) {
+        throw new RuntimeException(reader.failure);
+      }
+      nanos = Math.max(nanos, reader.nanos);
+      allocated = allocated < 0 || reader.allocated < 0 ? -1L : allocated + reader.allocated;
+      lookups += reader.numLookups;
+      sum += reader.sum;
+    }
+    System.out.println(name + ": " + (lookups * 1000L / Math.max(1L, nanos / 1000L)) + " lookups/ms, "
+        + (allocated < 0 ? "n/a" : String.valueOf((allocated * 100L / lookups) / 100.0)) + " bytes allocated/lookup"
+        + " (checksum=" + sum + ")");
+  }
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 1) {
+      System.err.println("Usage: java RandomAccessReadBenchmark <indexDir> [numThreads] [numLookups] [numLongs]");
+      System.exit(1);
+    }
+    final File path = new File(args[0]);
+    final int numThreads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+    final int numLookups = args.length > 2 ? Integer.parseInt(args[2]) : 10000000;
+    final int numLongs = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 20;
+
+    final Directory dir = FSDirectory.open(path);
+    try {
+      final IndexOutput out = dir.createOutput(FILE_NAME, IOContext.DEFAULT);
+      try {
+        for (int i = 0; i < numLongs; i++) {
+          out.writeLong(i);
+        }
+      } finally {
+        out.close();
+      }
+
+      final IndexInput in = dir.openInput(FILE_NAME, IOContext.DEFAULT);
+      try {
+        System.out.println("Directory: " + dir + ", input: " + in);
+        final RandomAccessInput shared = in.randomAccessSlice(0, in.length());
+        for (int iter = 0; iter < 3; iter++) {
+          System.out.println("Iteration " + iter + ":");
+          final Reader[] cloning = new Reader[numThreads];
+          final Reader[] sharing = new Reader[numThreads];
+          for (int t = 0; t < numThreads; t++) {
+            cloning[t] = new Reader(numLookups, numLongs, t) {
+              @Override
+              long read(long pos) throws Exception {
+                final IndexInput clone = in.clone();
+                clone.seek(pos);
+                return clone.readLong();
+              }
+            };
+            sharing[t] = new Reader(numLookups, numLongs, t) {
+              @Override
+              long read(long pos) throws Exception {
+                return shared.readLong(pos);
+              }
+            };
+          }
+          run("  clone+seek+readLong  ", cloning);
+          run("  randomAccessSlice    ", sharing);
+        }
+      } finally {
+        in.close();
+      }
+      dir.deleteFile(FILE_NAME);
+    } finally {
+      dir.close();
+    }
+  }
+}
@@ -59,6 +59,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
   private final IndexInput payIn;
 
   private final ForUtil forUtil;
+  private int termsVersion;
 
   // public static boolean DEBUG = false;
 
@@ -73,7 +74,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
       CodecUtil.checkHeader(docIn,
                             BlockPostingsWriter.DOC_CODEC,
                             BlockPostingsWriter.VERSION_START,
-                            BlockPostingsWriter.VERSION_START);
+                            BlockPostingsWriter.VERSION_CURRENT);
       forUtil = new ForUtil(docIn);
 
       if (fieldInfos.hasProx()) {
@@ -82,7 +83,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
         CodecUtil.checkHeader(posIn,
                               BlockPostingsWriter.POS_CODEC,
                               BlockPostingsWriter.VERSION_START,
-                              BlockPostingsWriter.VERSION_START);
+                              BlockPostingsWriter.VERSION_CURRENT);
 
         if (fieldInfos.hasPayloads() || fieldInfos.hasOffsets()) {
           payIn = dir.openInput(IndexFileNames.segmentFileName(segmentInfo.name, segmentSuffix, BlockPostingsFormat.PAY_EXTENSION),
@@ -90,7 +91,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
           CodecUtil.checkHeader(payIn,
                                 BlockPostingsWriter.PAY_CODEC,
                                 BlockPostingsWriter.VERSION_START,
-                                BlockPostingsWriter.VERSION_START);
+                                BlockPostingsWriter.VERSION_CURRENT);
         }
       }
 
@@ -108,10 +109,10 @@ final class BlockPostingsReader extends PostingsReaderBase {
   @Override
   public void init(IndexInput termsIn) throws IOException {
     // Make sure we are talking to the matching postings writer
-    CodecUtil.checkHeader(termsIn,
-                          BlockPostingsWriter.TERMS_CODEC,
-                          BlockPostingsWriter.VERSION_START,
-                          BlockPostingsWriter.VERSION_START);
+    termsVersion = CodecUtil.checkHeader(termsIn,
+                                         BlockPostingsWriter.TERMS_CODEC,
+                                         BlockPostingsWriter.VERSION_START,
+                                         BlockPostingsWriter.VERSION_CURRENT);
     final int indexBlockSize = termsIn.readVInt();
     if (indexBlockSize != BLOCK_SIZE) {
       throw new IllegalStateException("index-time BLOCK_SIZE (" + indexBlockSize + ") != read-time BLOCK_SIZE (" + BLOCK_SIZE + ")");
@@ -147,6 +148,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
     long payStartFP;
     int skipOffset;
     int lastPosBlockOffset;
+    int maxFreq;
 
     // Only used by the "primary" TermState -- clones don't
     // copy this (basically they are "transient"):
@@ -169,6 +171,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
       payStartFP = other.payStartFP;
       lastPosBlockOffset = other.lastPosBlockOffset;
       skipOffset = other.skipOffset;
+      maxFreq = other.maxFreq;
 
       // Do not copy bytes, bytesReader (else TermState is
       // very heavy, ie drags around the entire block's
@@ -256,11 +259,24 @@ final class BlockPostingsReader extends PostingsReaderBase {
       }
     }
 
+    final boolean fieldHasFreqs = fieldInfo.getIndexOptions().compareTo(IndexOptions.DOCS_AND_FREQS) >= 0;
+    termState.maxFreq = -1;
     if (termState.docFreq > BLOCK_SIZE) {
       termState.skipOffset = in.readVInt();
+      if (fieldHasFreqs && termsVersion >= BlockPostingsWriter.VERSION_MAX_FREQ) {
+        termState.maxFreq = in.readVInt();
+      }
     } else {
       termState.skipOffset = -1;
     }
+    if (termState.maxFreq == -1) {
+      if (fieldHasFreqs) {
+        // every doc has a freq of at least 1
+        termState.maxFreq = (int) Math.min(Integer.MAX_VALUE, termState.totalTermFreq - termState.docFreq + 1);
+      } else {
+        termState.maxFreq = 1;
+      }
+    }
   }
     
   @Override
@@ -337,6 +353,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
     private int doc;                                  // doc we last read
     private int accum;                                // accumulator for doc deltas
     private int freq;                                 // freq we last read
+    private int maxFreq;                              // max freq of this term
 
     // Where this term's postings start in the .doc file:
     private long docTermStartFP;
@@ -378,6 +395,7 @@ final class BlockPostingsReader extends PostingsReaderBase {
       docTermStartFP = termState.docStartFP;
       docIn.seek(docTermStartFP);
       skipOffset = termState.skipOffset;
+      maxFreq = termState.maxFreq;
 
       doc = -1;
       if (!indexHasFreq) {
@@ -396,6 +414,11 @@ final class BlockPostingsReader extends PostingsReaderBase {
       return freq;
     }
 
+    @Override
+    public int maxFreq() {
+      return maxFreq;
+    }
+
     @Override
     public int docID() {
       return doc;
@@ -469,6 +492,51 @@ final class BlockPostingsReader extends PostingsReaderBase {
       }
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      int count = 0;
+      int lastFreq = freq;
+      while (count < docs.length && docUpto < docFreq) {
+        if (docBufferUpto == BLOCK_SIZE) {
+          refillDocs();
+        }
+        // consume as much as possible of the decoded buffer at once
+        final int n = Math.min(Math.min(BLOCK_SIZE - docBufferUpto, docFreq - docUpto), docs.length - count);
+        if (liveDocs == null) {
+          for (int i = 0; i < n; ++i) {
+            accum += docDeltaBuffer[docBufferUpto + i];
+            docs[count + i] = accum;
+          }
+          if (freqs != null) {
+            System.arraycopy(freqBuffer, docBufferUpto, freqs, count, n);
+          }
+          lastFreq = freqBuffer[docBufferUpto + n - 1];
+          count += n;
+        } else {
+          for (int i = 0; i < n; ++i) {
+            accum += docDeltaBuffer[docBufferUpto + i];
+            if (liveDocs.get(accum)) {
+              docs[count] = accum;
+              lastFreq = freqBuffer[docBufferUpto + i];
+              if (freqs != null) {
+                freqs[count] = lastFreq;
+              }
+              ++count;
+            }
+          }
+        }
+        docBufferUpto += n;
+        docUpto += n;
+      }
+      if (count == 0) {
+        doc = NO_MORE_DOCS;
+      } else {
+        doc = docs[count - 1];
+        freq = lastFreq;
+      }
+      return count;
+    }
+
     @Override
     public int advance(int target) throws IOException {
       // TODO: make frq block load lazy/skippable
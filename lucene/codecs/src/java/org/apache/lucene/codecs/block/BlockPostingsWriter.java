@@ -65,7 +65,8 @@ final class BlockPostingsWriter extends PostingsWriterBase {
 
   // Increment version to change it:
   final static int VERSION_START = 0;
-  final static int VERSION_CURRENT = VERSION_START;
+  final static int VERSION_MAX_FREQ = 1;
+  final static int VERSION_CURRENT = VERSION_MAX_FREQ;
 
   final IndexOutput docOut;
   final IndexOutput posOut;
@@ -108,6 +109,7 @@ final class BlockPostingsWriter extends PostingsWriterBase {
   private int lastPosition;
   private int lastStartOffset;
   private int docCount;
+  private int maxFreq;
 
   final byte[] encoded;
 
@@ -247,6 +249,7 @@ final class BlockPostingsWriter extends PostingsWriterBase {
     // }
     if (fieldHasFreqs) {
       freqBuffer[docBufferUpto] = termDocFreq;
+      maxFreq = Math.max(maxFreq, termDocFreq);
     }
     docBufferUpto++;
     docCount++;
@@ -353,13 +356,15 @@ final class BlockPostingsWriter extends PostingsWriterBase {
     public final long payStartFP;
     public final int skipOffset;
     public final int lastPosBlockOffset;
+    public final int maxFreq;
 
-    public PendingTerm(long docStartFP, long posStartFP, long payStartFP, int skipOffset, int lastPosBlockOffset) {
+    public PendingTerm(long docStartFP, long posStartFP, long payStartFP, int skipOffset, int lastPosBlockOffset, int maxFreq) {
       this.docStartFP = docStartFP;
       this.posStartFP = posStartFP;
       this.payStartFP = payStartFP;
       this.skipOffset = skipOffset;
       this.lastPosBlockOffset = lastPosBlockOffset;
+      this.maxFreq = maxFreq;
     }
   }
 
@@ -500,11 +505,12 @@ final class BlockPostingsWriter extends PostingsWriterBase {
     //   System.out.println("  payStartFP=" + payStartFP);
     // }
 
-    pendingTerms.add(new PendingTerm(docTermStartFP, posTermStartFP, payStartFP, skipOffset, lastPosBlockOffset));
+    pendingTerms.add(new PendingTerm(docTermStartFP, posTermStartFP, payStartFP, skipOffset, lastPosBlockOffset, maxFreq));
     docBufferUpto = 0;
     posBufferUpto = 0;
     lastDocID = 0;
     docCount = 0;
+    maxFreq = 0;
   }
 
   private final RAMOutputStream bytesWriter = new RAMOutputStream();
@@ -545,6 +551,9 @@ final class BlockPostingsWriter extends PostingsWriterBase {
 
       if (term.skipOffset != -1) {
         bytesWriter.writeVInt(term.skipOffset);
+        if (fieldHasFreqs) {
+          bytesWriter.writeVInt(term.maxFreq);
+        }
       }
     }
 
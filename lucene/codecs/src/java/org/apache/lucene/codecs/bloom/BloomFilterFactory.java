@@ -34,6 +34,23 @@ public abstract class BloomFilterFactory {
    * @return An appropriately sized set or null if no BloomFiltering required
    */
   public abstract FuzzySet getSetForField(SegmentWriteState state, FieldInfo info);
+
+  /**
+   * Called instead of {@link #getSetForField(SegmentWriteState, FieldInfo)}
+   * when merging, once the number of terms of the field in the merged
+   * segments is known. The default implementation ignores it.
+   * 
+   * @param state  The content to be indexed
+   * @param info
+   *          the field requiring a BloomFilter
+   * @param maxNumUniqueTerms
+   *          an upper bound of the number of unique terms the field will have
+   *          in the new segment, or -1 if unknown
+   * @return An appropriately sized set or null if no BloomFiltering required
+   */
+  public FuzzySet getSetForField(SegmentWriteState state, FieldInfo info, long maxNumUniqueTerms) {
+    return getSetForField(state, info);
+  }
   
   /**
    * Called when downsizing bitsets for serialization
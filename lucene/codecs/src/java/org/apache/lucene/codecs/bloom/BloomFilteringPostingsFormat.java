@@ -36,8 +36,10 @@ import org.apache.lucene.codecs.TermsConsumer;
 import org.apache.lucene.codecs.bloom.FuzzySet.ContainsResult;
 import org.apache.lucene.index.DocsAndPositionsEnum;
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.MergeState;
 import org.apache.lucene.index.SegmentReadState;
 import org.apache.lucene.index.SegmentWriteState;
 import org.apache.lucene.index.Terms;
@@ -60,8 +62,16 @@ import org.apache.lucene.util.automaton.CompiledAutomaton;
  * <p>
  * A choice of {@link BloomFilterFactory} can be passed to tailor Bloom Filter
  * settings on a per-field basis. The default configuration is
- * {@link DefaultBloomFilterFactory} which allocates a ~8mb bitset and hashes
- * values using {@link MurmurHash2}. This should be suitable for most purposes.
+ * {@link DefaultBloomFilterFactory} which sizes the bitset from the number of
+ * documents of a flushed segment, or from the number of terms of the merged
+ * segments, and hashes values using {@link MurmurHash2}. Sets are downsized
+ * to their saturation before they are saved. This should be suitable for most
+ * purposes.
+ * </p>
+ * <p>
+ * Besides lookups, the filters also speed up applying deletes by term, since
+ * {@link TermsEnum#seekExact(BytesRef, boolean)} returns early for the
+ * segments that cannot contain the term.
  * </p>
  * <p>
  * The format of the blm file is as follows:
@@ -392,16 +402,20 @@ public final class BloomFilteringPostingsFormat extends PostingsFormat {
     
     @Override
     public TermsConsumer addField(FieldInfo field) throws IOException {
-      FuzzySet bloomFilter = bloomFilterFactory.getSetForField(state,field);
+      // The set is only created once we know whether we flush or merge, so
+      // that a merge can size it from the term counts of the merged segments
+      return new WrappedTermsConsumer(delegateFieldsConsumer.addField(field), this, field);
+    }
+    
+    /** Returns the set to record the terms of <code>field</code> into, or null
+     *  if the field is not filtered. */
+    FuzzySet newBloomFilter(FieldInfo field, long maxNumUniqueTerms) {
+      FuzzySet bloomFilter = bloomFilterFactory.getSetForField(state, field, maxNumUniqueTerms);
       if (bloomFilter != null) {
         assert bloomFilters.containsKey(field) == false;
         bloomFilters.put(field, bloomFilter);
-        return new WrappedTermsConsumer(delegateFieldsConsumer.addField(field),bloomFilter);
-      } else {
-        // No, use the unfiltered fieldsConsumer - we are not interested in
-        // recording any term Bitsets.
-        return delegateFieldsConsumer.addField(field);
       }
+      return bloomFilter;
     }
     
     @Override
@@ -457,21 +471,57 @@ public final class BloomFilteringPostingsFormat extends PostingsFormat {
   
   class WrappedTermsConsumer extends TermsConsumer {
     private TermsConsumer delegateTermsConsumer;
+    private BloomFilteredFieldsConsumer fieldsConsumer;
+    private FieldInfo fieldInfo;
+    private boolean initialized;
     private FuzzySet bloomFilter;
     
-    public WrappedTermsConsumer(TermsConsumer termsConsumer,FuzzySet bloomFilter) {
+    public WrappedTermsConsumer(TermsConsumer termsConsumer,
+        BloomFilteredFieldsConsumer fieldsConsumer, FieldInfo fieldInfo) {
       this.delegateTermsConsumer = termsConsumer;
-      this.bloomFilter = bloomFilter;
+      this.fieldsConsumer = fieldsConsumer;
+      this.fieldInfo = fieldInfo;
+    }
+    
+    private void initBloomFilter(long maxNumUniqueTerms) {
+      bloomFilter = fieldsConsumer.newBloomFilter(fieldInfo, maxNumUniqueTerms);
+      initialized = true;
+    }
+    
+    @Override
+    public void merge(MergeState mergeState, TermsEnum termsEnum)
+        throws IOException {
+      if (!initialized) {
+        // The merged segment has at most as many unique terms as all the
+        // segments being merged together
+        long maxNumUniqueTerms = 0;
+        for (AtomicReader reader : mergeState.readers) {
+          Terms terms = reader.terms(fieldInfo.name);
+          if (terms != null) {
+            long size = terms.size();
+            if (size == -1) {
+              maxNumUniqueTerms = -1;
+              break;
+            }
+            maxNumUniqueTerms += size;
+          }
+        }
+        initBloomFilter(maxNumUniqueTerms);
+      }
+      super.merge(mergeState, termsEnum);
     }
     
     public PostingsConsumer startTerm(BytesRef text) throws IOException {
+      if (!initialized) {
+        initBloomFilter(-1);
+      }
       return delegateTermsConsumer.startTerm(text);
     }
     
     public void finishTerm(BytesRef text, TermStats stats) throws IOException {
       
       // Record this term in our BloomFilter
-      if (stats.docFreq > 0) {
+      if (bloomFilter != null && stats.docFreq > 0) {
         bloomFilter.addValue(text);
       }
       delegateTermsConsumer.finishTerm(text, stats);
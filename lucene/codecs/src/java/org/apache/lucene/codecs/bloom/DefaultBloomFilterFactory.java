@@ -19,7 +19,8 @@ import org.apache.lucene.index.FieldInfo;
 import org.apache.lucene.index.SegmentWriteState;
 
 /**
- * Default policy is to allocate a bitset with 10% saturation given a unique term per document.
+ * Default policy is to allocate a bitset with 10% saturation given a unique term per document,
+ * or, when merging, given the sum of the term counts of the merged segments.
  * Bits are set via MurmurHash2 hashing function.
  *  @lucene.experimental
  */
@@ -30,6 +31,16 @@ public class DefaultBloomFilterFactory extends BloomFilterFactory {
     //Assume all of the docs have a unique term (e.g. a primary key) and we hope to maintain a set with 10% of bits set
     return FuzzySet.createSetBasedOnQuality(state.segmentInfo.getDocCount(), 0.10f);
   }
+
+  @Override
+  public FuzzySet getSetForField(SegmentWriteState state, FieldInfo info, long maxNumUniqueTerms) {
+    if (maxNumUniqueTerms == -1) {
+      return getSetForField(state, info);
+    }
+    // Also covers fields that have more terms than docs; the set is downsized
+    // before it is saved if deletes or duplicate terms made it too large
+    return FuzzySet.createSetBasedOnQuality((int) Math.min(maxNumUniqueTerms, Integer.MAX_VALUE), 0.10f);
+  }
   
   @Override
   public boolean isSaturated(FuzzySet bloomFilter, FieldInfo fieldInfo) {
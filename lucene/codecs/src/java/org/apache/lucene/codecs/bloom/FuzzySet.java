@@ -138,6 +138,11 @@ public class FuzzySet {
   public static FuzzySet createSetBasedOnQuality(int maxNumUniqueValues, float desiredMaxSaturation)
   {
       int setSize=getNearestSetSize(maxNumUniqueValues,desiredMaxSaturation);
+      if (setSize == -1) {
+        // Too many values for the desired saturation: use the largest set we
+        // can allocate, the saturation check decides whether it is worth saving
+        setSize = usableBitSetSizes[usableBitSetSizes.length - 2];
+      }
       return new FuzzySet(new FixedBitSet(setSize+1),setSize, hashFunctionForVersion(VERSION_CURRENT));
   }
   
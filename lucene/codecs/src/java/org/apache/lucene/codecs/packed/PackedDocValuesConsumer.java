@@ -0,0 +1,61 @@
+package org.apache.lucene.codecs.packed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.codecs.PerDocProducerBase;
+import org.apache.lucene.codecs.lucene40.Lucene40DocValuesConsumer;
+import org.apache.lucene.index.DocValues.Type;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.PerDocWriteState;
+import org.apache.lucene.util.Counter;
+
+/**
+ * Default PerDocConsumer implementation for {@link PackedDocValuesFormat}:
+ * integer fields are written with {@link PackedNumericValues}, other fields
+ * are delegated to {@link Lucene40DocValuesConsumer}.
+ * @lucene.experimental
+ */
+public class PackedDocValuesConsumer extends Lucene40DocValuesConsumer {
+
+  private final Counter bytesUsed;
+
+  /** Sole constructor. */
+  public PackedDocValuesConsumer(PerDocWriteState state) {
+    super(state, DOC_VALUES_SEGMENT_SUFFIX);
+    this.bytesUsed = state.bytesUsed;
+  }
+
+  @Override
+  public DocValuesConsumer addValuesField(Type valueType, FieldInfo field) throws IOException {
+    switch (valueType) {
+      case FIXED_INTS_8:
+      case FIXED_INTS_16:
+      case FIXED_INTS_32:
+      case FIXED_INTS_64:
+      case VAR_INTS:
+        return new PackedNumericValues.Writer(getDirectory(),
+            PerDocProducerBase.docValuesId(segmentName, field.number),
+            valueType, bytesUsed, context);
+      default:
+        return super.addValuesField(valueType, field);
+    }
+  }
+}
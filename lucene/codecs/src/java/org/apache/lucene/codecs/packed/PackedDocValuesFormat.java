@@ -0,0 +1,106 @@
+package org.apache.lucene.codecs.packed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.PerDocConsumer;
+import org.apache.lucene.codecs.PerDocProducer;
+import org.apache.lucene.codecs.lucene40.Lucene40DocValuesFormat;
+import org.apache.lucene.index.DocValues; // javadocs
+import org.apache.lucene.index.DocValues.Type; // javadocs
+import org.apache.lucene.index.PerDocWriteState;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.util.packed.PackedInts; // javadocs
+
+/**
+ * A {@link DocValuesFormat} that stores integer values with the minimum
+ * number of bits per document.
+ * <p>
+ * Integer values ({@link Type#VAR_INTS} and the <tt>FIXED_INTS_*</tt> types)
+ * are buffered in memory until the segment is flushed. Values are then
+ * analyzed in order to pick the most compact of the following encodings, each
+ * of them writing a {@link PackedInts packed} array with one entry per
+ * document:
+ * <ul>
+ *   <li><b>Delta</b>: the difference between the value and the minimum value
+ *       of the segment;</li>
+ *   <li><b>GCD</b>: like <b>Delta</b>, but divided by the greatest common
+ *       divisor of all differences, useful for instance for dates that are
+ *       rounded to the second or the day;</li>
+ *   <li><b>Table</b>: an ordinal in a sorted table of the distinct values,
+ *       used when there are at most 256 of them;</li>
+ * </ul>
+ * The type of the field is preserved, so that a <tt>FIXED_INTS_32</tt> field
+ * whose values are in the range <tt>[0-1000]</tt> only requires 10 bits per
+ * document instead of 32.
+ * <p>
+ * Other types are stored exactly as {@link Lucene40DocValuesFormat} stores
+ * them.
+ * <p>
+ * {@link DocValues#load()} always loads integer values onto the heap.
+ * {@link DocValues#getDirectSource()} instead reads them from the index files
+ * on every access (efficient with {@link org.apache.lucene.store.MMapDirectory})
+ * and loads nothing onto the heap; such sources must not be shared across
+ * threads, see for instance
+ * {@link org.apache.lucene.search.SortField#setIndexValuesDiskResident(boolean)}.
+ * <p>
+ * Files:
+ * <ul>
+ *   <li><tt>.dv.cfs</tt>: {@link org.apache.lucene.store.CompoundFileDirectory compound container}</li>
+ *   <li><tt>.dv.cfe</tt>: {@link org.apache.lucene.store.CompoundFileDirectory compound entries}</li>
+ * </ul>
+ * Entries within the compound file for integer fields:
+ * <ul>
+ *   <li><tt>&lt;segment&gt;_&lt;fieldNumber&gt;.dat</tt>: data values</li>
+ * </ul>
+ * <p>
+ * Data files for integer fields are structured as follows:
+ * <ul>
+ *   <li>Data --&gt; Header, Mode, ModeData, Values</li>
+ *   <li>Header --&gt; {@link org.apache.lucene.codecs.CodecUtil#writeHeader CodecHeader}</li>
+ *   <li>Mode --&gt; {@link org.apache.lucene.store.DataOutput#writeByte Byte}:
+ *       0 for Delta, 1 for GCD, 2 for Table, 3 for Raw</li>
+ *   <li>ModeData --&gt; MinValue for Delta, MinValue, GCD for GCD,
+ *       TableSize, &lt;TableValue&gt;<sup>TableSize</sup> for Table,
+ *       nothing for Raw</li>
+ *   <li>MinValue, GCD, TableValue --&gt; {@link org.apache.lucene.store.DataOutput#writeLong Int64}</li>
+ *   <li>TableSize --&gt; {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ *   <li>Values --&gt; a {@link PackedInts} array with a header for Delta, GCD
+ *       and Table, or <tt>maxDoc</tt> {@link org.apache.lucene.store.DataOutput#writeLong Int64}s
+ *       for Raw (only used if the range of values exceeds 2<sup>63</sup>-1)</li>
+ * </ul>
+ * @lucene.experimental
+ */
+public class PackedDocValuesFormat extends DocValuesFormat {
+
+  /** Sole constructor. */
+  public PackedDocValuesFormat() {
+  }
+
+  @Override
+  public PerDocConsumer docsConsumer(PerDocWriteState state) throws IOException {
+    return new PackedDocValuesConsumer(state);
+  }
+
+  @Override
+  public PerDocProducer docsProducer(SegmentReadState state) throws IOException {
+    return new PackedDocValuesProducer(state);
+  }
+}
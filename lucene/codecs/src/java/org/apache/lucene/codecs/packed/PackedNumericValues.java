@@ -0,0 +1,489 @@
+package org.apache.lucene.codecs.packed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.DocValuesArraySource;
+import org.apache.lucene.codecs.DocValuesConsumer;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValues.Source;
+import org.apache.lucene.index.DocValues.Type;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.Counter;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * Stores integer doc values using {@link PackedInts}, after having picked the
+ * most compact encoding for the values of the segment.
+ *
+ * @see PackedDocValuesFormat
+ * @lucene.experimental
+ */
+final class PackedNumericValues {
+
+  static final String CODEC_NAME = "PackedNumericValues";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  static final String DV_SEGMENT_SUFFIX = "dv";
+  static final String DATA_EXTENSION = "dat";
+
+  static final byte DELTA = 0x00;
+  static final byte GCD = 0x01;
+  static final byte TABLE = 0x02;
+  static final byte RAW = 0x03;
+
+  /** Maximum number of distinct values for the table encoding. */
+  static final int MAX_TABLE_SIZE = 256;
+
+  private PackedNumericValues() {}
+
+  static String dataFileName(String id) {
+    return IndexFileNames.segmentFileName(id, DV_SEGMENT_SUFFIX, DATA_EXTENSION);
+  }
+
+  static int valueSize(Type type) {
+    switch (type) {
+      case FIXED_INTS_8:
+        return 1;
+      case FIXED_INTS_16:
+        return 2;
+      case FIXED_INTS_32:
+        return 4;
+      case FIXED_INTS_64:
+        return 8;
+      case VAR_INTS:
+        return -1;
+      default:
+        throw new IllegalArgumentException("not an integer type: " + type);
+    }
+  }
+
+  static long gcd(long a, long b) {
+    a = Math.abs(a);
+    b = Math.abs(b);
+    while (b != 0) {
+      final long tmp = a % b;
+      a = b;
+      b = tmp;
+    }
+    return a;
+  }
+
+  /**
+   * Buffers values in memory and writes them on {@link #finish(int)}.
+   */
+  static final class Writer extends DocValuesConsumer {
+
+    private final Directory dir;
+    private final String id;
+    private final Type type;
+    private final Counter bytesUsed;
+    private final IOContext context;
+    private long[] values;
+    private int lastDocID = -1;
+
+    Writer(Directory dir, String id, Type type, Counter bytesUsed, IOContext context) {
+      valueSize(type); // validates the type
+      this.dir = dir;
+      this.id = id;
+      this.type = type;
+      this.bytesUsed = bytesUsed;
+      this.context = context;
+      this.values = new long[0];
+    }
+
+    @Override
+    protected Type getType() {
+      return type;
+    }
+
+    @Override
+    public int getValueSize() {
+      return valueSize(type);
+    }
+
+    @Override
+    public void add(int docID, IndexableField value) throws IOException {
+      assert docID > lastDocID : "docID=" + docID + " lastDocID=" + lastDocID;
+      if (docID >= values.length) {
+        final int oldLength = values.length;
+        values = ArrayUtil.grow(values, docID + 1);
+        bytesUsed.addAndGet((values.length - oldLength) * RamUsageEstimator.NUM_BYTES_LONG);
+      }
+      values[docID] = value.numericValue().longValue();
+      lastDocID = docID;
+    }
+
+    private long value(int docID) {
+      // documents without a value get 0, like in all other DocValues impls
+      return docID < values.length ? values[docID] : 0L;
+    }
+
+    @Override
+    public void finish(int docCount) throws IOException {
+      final IndexOutput out = dir.createOutput(dataFileName(id), context);
+      boolean success = false;
+      try {
+        CodecUtil.writeHeader(out, CODEC_NAME, VERSION_CURRENT);
+        writeValues(out, docCount);
+        success = true;
+      } finally {
+        bytesUsed.addAndGet(-values.length * RamUsageEstimator.NUM_BYTES_LONG);
+        values = null;
+        if (success) {
+          IOUtils.close(out);
+        } else {
+          IOUtils.closeWhileHandlingException(out);
+        }
+      }
+    }
+
+    private void writeValues(IndexOutput out, int docCount) throws IOException {
+      long minValue = docCount == 0 ? 0L : Long.MAX_VALUE;
+      long maxValue = docCount == 0 ? 0L : Long.MIN_VALUE;
+      Set<Long> uniqueValues = new HashSet<Long>();
+      for (int i = 0; i < docCount; ++i) {
+        final long v = value(i);
+        minValue = Math.min(minValue, v);
+        maxValue = Math.max(maxValue, v);
+        if (uniqueValues != null && uniqueValues.add(v) && uniqueValues.size() > MAX_TABLE_SIZE) {
+          uniqueValues = null;
+        }
+      }
+
+      // costs are expressed in bits
+      long bestCost = Long.MAX_VALUE;
+      byte mode = RAW;
+
+      final long delta = maxValue - minValue;
+      final boolean deltaFits = delta >= 0; // false on overflow
+      long gcd = 0;
+      if (deltaFits) {
+        final long deltaCost = 64L + (long) PackedInts.bitsRequired(delta) * docCount;
+        if (deltaCost < bestCost) {
+          bestCost = deltaCost;
+          mode = DELTA;
+        }
+        for (int i = 0; i < docCount && gcd != 1; ++i) {
+          gcd = gcd(gcd, value(i) - minValue);
+        }
+        if (gcd > 1) {
+          final long gcdCost = 128L + (long) PackedInts.bitsRequired(delta / gcd) * docCount;
+          if (gcdCost < bestCost) {
+            bestCost = gcdCost;
+            mode = GCD;
+          }
+        }
+      }
+      if (uniqueValues != null && !uniqueValues.isEmpty()) {
+        final long tableCost = 64L * uniqueValues.size()
+            + (long) PackedInts.bitsRequired(uniqueValues.size() - 1) * docCount;
+        if (tableCost < bestCost) {
+          bestCost = tableCost;
+          mode = TABLE;
+        }
+      }
+
+      out.writeByte(mode);
+      switch (mode) {
+        case DELTA: {
+          out.writeLong(minValue);
+          final PackedInts.Writer w = PackedInts.getWriter(out, docCount,
+              PackedInts.bitsRequired(delta), PackedInts.DEFAULT);
+          for (int i = 0; i < docCount; ++i) {
+            w.add(value(i) - minValue);
+          }
+          w.finish();
+          break;
+        }
+        case GCD: {
+          out.writeLong(minValue);
+          out.writeLong(gcd);
+          final PackedInts.Writer w = PackedInts.getWriter(out, docCount,
+              PackedInts.bitsRequired(delta / gcd), PackedInts.DEFAULT);
+          for (int i = 0; i < docCount; ++i) {
+            w.add((value(i) - minValue) / gcd);
+          }
+          w.finish();
+          break;
+        }
+        case TABLE: {
+          final long[] table = new long[uniqueValues.size()];
+          int upto = 0;
+          for (Long v : uniqueValues) {
+            table[upto++] = v;
+          }
+          Arrays.sort(table);
+          out.writeVInt(table.length);
+          for (long v : table) {
+            out.writeLong(v);
+          }
+          final PackedInts.Writer w = PackedInts.getWriter(out, docCount,
+              PackedInts.bitsRequired(table.length - 1), PackedInts.DEFAULT);
+          for (int i = 0; i < docCount; ++i) {
+            w.add(Arrays.binarySearch(table, value(i)));
+          }
+          w.finish();
+          break;
+        }
+        case RAW:
+          for (int i = 0; i < docCount; ++i) {
+            out.writeLong(value(i));
+          }
+          break;
+        default:
+          throw new AssertionError();
+      }
+    }
+  }
+
+  /**
+   * Opens the data file, but does not read any data in until you call
+   * {@link #load} or {@link #getDirectSource}.
+   */
+  static final class Reader extends DocValues {
+
+    private final IndexInput datIn;
+    private final int numDocs;
+    private final Type type;
+    private final byte mode;
+    private final long minValue, gcd;
+    private final long[] table;
+    private final long valuesPointer;
+
+    Reader(Directory dir, String id, int numDocs, Type type, IOContext context) throws IOException {
+      valueSize(type); // validates the type
+      this.numDocs = numDocs;
+      this.type = type;
+      datIn = dir.openInput(dataFileName(id), context);
+      boolean success = false;
+      try {
+        CodecUtil.checkHeader(datIn, CODEC_NAME, VERSION_START, VERSION_CURRENT);
+        mode = datIn.readByte();
+        switch (mode) {
+          case DELTA:
+            minValue = datIn.readLong();
+            gcd = 1;
+            table = null;
+            break;
+          case GCD:
+            minValue = datIn.readLong();
+            gcd = datIn.readLong();
+            table = null;
+            break;
+          case TABLE:
+            minValue = 0;
+            gcd = 1;
+            table = new long[datIn.readVInt()];
+            for (int i = 0; i < table.length; ++i) {
+              table[i] = datIn.readLong();
+            }
+            break;
+          case RAW:
+            minValue = 0;
+            gcd = 1;
+            table = null;
+            break;
+          default:
+            throw new CorruptIndexException("unknown mode: " + mode + " (resource: " + datIn + ")");
+        }
+        valuesPointer = datIn.getFilePointer();
+        success = true;
+      } finally {
+        if (!success) {
+          IOUtils.closeWhileHandlingException(datIn);
+        }
+      }
+    }
+
+    private IndexInput valuesInput() throws IOException {
+      final IndexInput in = datIn.clone();
+      in.seek(valuesPointer);
+      return in;
+    }
+
+    @Override
+    public Source load() throws IOException {
+      final IndexInput in = valuesInput();
+      if (mode == RAW) {
+        final long[] values = new long[numDocs];
+        for (int i = 0; i < numDocs; ++i) {
+          values[i] = in.readLong();
+        }
+        return new RawSource(type, values);
+      }
+      return new PackedSource(type, mode, minValue, gcd, table, PackedInts.getReader(in));
+    }
+
+    @Override
+    public Source getDirectSource() throws IOException {
+      final IndexInput in = valuesInput();
+      if (mode == RAW) {
+        return new DirectRawSource(type, in, valuesPointer);
+      }
+      return new PackedSource(type, mode, minValue, gcd, table, PackedInts.getDirectReader(in));
+    }
+
+    @Override
+    public Type getType() {
+      return type;
+    }
+
+    @Override
+    public int getValueSize() {
+      return valueSize(type);
+    }
+
+    @Override
+    public void close() throws IOException {
+      super.close();
+      datIn.close();
+    }
+  }
+
+  static void toBytes(Type type, long value, BytesRef ref) {
+    switch (type) {
+      case FIXED_INTS_8:
+        ref.grow(1);
+        ref.bytes[0] = (byte) value;
+        ref.offset = 0;
+        ref.length = 1;
+        break;
+      case FIXED_INTS_16:
+        DocValuesArraySource.copyShort(ref, (short) value);
+        break;
+      case FIXED_INTS_32:
+        DocValuesArraySource.copyInt(ref, (int) value);
+        break;
+      default:
+        DocValuesArraySource.copyLong(ref, value);
+        break;
+    }
+  }
+
+  static final class PackedSource extends Source {
+    private final byte mode;
+    private final long minValue, gcd;
+    private final long[] table;
+    private final PackedInts.Reader values;
+
+    PackedSource(Type type, byte mode, long minValue, long gcd, long[] table, PackedInts.Reader values) {
+      super(type);
+      this.mode = mode;
+      this.minValue = minValue;
+      this.gcd = gcd;
+      this.table = table;
+      this.values = values;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      assert docID >= 0;
+      final long v = values.get(docID);
+      switch (mode) {
+        case DELTA:
+          return minValue + v;
+        case GCD:
+          return minValue + v * gcd;
+        case TABLE:
+          return table[(int) v];
+        default:
+          throw new AssertionError();
+      }
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      toBytes(getType(), getInt(docID), ref);
+      return ref;
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return values.ramBytesUsed() + (table == null ? 0 : RamUsageEstimator.sizeOf(table));
+    }
+  }
+
+  static final class RawSource extends Source {
+    private final long[] values;
+
+    RawSource(Type type, long[] values) {
+      super(type);
+      this.values = values;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      return values[docID];
+    }
+
+    @Override
+    public long ramBytesUsed() {
+      return RamUsageEstimator.sizeOf(values);
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      toBytes(getType(), getInt(docID), ref);
+      return ref;
+    }
+  }
+
+  static final class DirectRawSource extends Source {
+    private final IndexInput in;
+    private final long startPointer;
+
+    DirectRawSource(Type type, IndexInput in, long startPointer) {
+      super(type);
+      this.in = in;
+      this.startPointer = startPointer;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      try {
+        in.seek(startPointer + ((long) docID << 3));
+        return in.readLong();
+      } catch (IOException e) {
+        throw new IllegalStateException("failed to get value for docID: " + docID, e);
+      }
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      toBytes(getType(), getInt(docID), ref);
+      return ref;
+    }
+  }
+}
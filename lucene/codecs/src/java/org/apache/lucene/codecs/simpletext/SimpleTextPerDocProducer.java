@@ -43,6 +43,7 @@ import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.BytesRefHash;
 import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.StringHelper;
 import org.apache.lucene.util.packed.PackedInts.Reader;
 
@@ -430,6 +431,11 @@ public class SimpleTextPerDocProducer extends PerDocProducerBase {
       return array[docID];
     }
 
+    @Override
+    public long ramBytesUsed() {
+      return RamUsageEstimator.sizeOf(array);
+    }
+
     @Override
     public BytesRef getBytes(int docID, BytesRef ref) {
       DocValuesArraySource.copyLong(ref, getInt(docID));
@@ -0,0 +1,109 @@
+package org.apache.lucene.codecs.bloom;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene40.Lucene40Codec;
+import org.apache.lucene.codecs.lucene40.Lucene40PostingsFormat;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestBloomFilteringPostingsFormat extends LuceneTestCase {
+
+  /** Records the term counts the sets are sized from. */
+  static class RecordingBloomFilterFactory extends DefaultBloomFilterFactory {
+    final List<Long> maxNumUniqueTerms = Collections.synchronizedList(new ArrayList<Long>());
+
+    @Override
+    public FuzzySet getSetForField(SegmentWriteState state, FieldInfo info, long maxNumUniqueTerms) {
+      this.maxNumUniqueTerms.add(maxNumUniqueTerms);
+      return super.getSetForField(state, info, maxNumUniqueTerms);
+    }
+  }
+
+  public void testUpdatesAndMerges() throws Exception {
+    final RecordingBloomFilterFactory factory = new RecordingBloomFilterFactory();
+    final PostingsFormat bloom = new BloomFilteringPostingsFormat(new Lucene40PostingsFormat(), factory);
+    final Codec codec = new Lucene40Codec() {
+      @Override
+      public PostingsFormat getPostingsFormatForField(String field) {
+        return "id".equals(field) ? bloom : super.getPostingsFormatForField(field);
+      }
+    };
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(codec);
+    iwc.setMaxBufferedDocs(10 + random().nextInt(20));
+    iwc.setMergePolicy(newLogMergePolicy(2));
+    final IndexWriter w = new IndexWriter(dir, iwc);
+
+    final int numIDs = atLeast(100);
+    final int[] versions = new int[numIDs];
+    final int numUpdates = atLeast(500);
+    for (int i = 0; i < numUpdates; i++) {
+      final int id = random().nextInt(numIDs);
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(id), Field.Store.NO));
+      doc.add(new StringField("version", Integer.toString(++versions[id]), Field.Store.YES));
+      w.updateDocument(new Term("id", Integer.toString(id)), doc);
+    }
+    w.forceMerge(1);
+    assertTrue(factory.maxNumUniqueTerms.contains(-1L));
+
+    boolean merged = false;
+    for (long maxNumUniqueTerms : factory.maxNumUniqueTerms) {
+      if (maxNumUniqueTerms != -1) {
+        merged = true;
+        assertTrue(maxNumUniqueTerms > 0);
+      }
+    }
+    assertTrue(merged);
+
+    final DirectoryReader r = DirectoryReader.open(w, true);
+    int numLive = 0;
+    for (int id = 0; id < numIDs; id++) {
+      final int docFreq = r.docFreq(new Term("id", Integer.toString(id)));
+      if (versions[id] == 0) {
+        assertEquals(0, docFreq);
+      } else {
+        assertEquals(1, docFreq);
+        numLive++;
+      }
+    }
+    assertEquals(numLive, r.numDocs());
+    assertEquals(0, r.docFreq(new Term("id", "missing")));
+    r.close();
+    w.close();
+    dir.close();
+  }
+}
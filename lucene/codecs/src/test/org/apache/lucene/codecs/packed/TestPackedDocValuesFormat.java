@@ -0,0 +1,196 @@
+package org.apache.lucene.codecs.packed;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.DocValuesFormat;
+import org.apache.lucene.codecs.FilterCodec;
+import org.apache.lucene.codecs.lucene40.Lucene40Codec;
+import org.apache.lucene.document.ByteDocValuesField;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntDocValuesField;
+import org.apache.lucene.document.LongDocValuesField;
+import org.apache.lucene.document.PackedLongDocValuesField;
+import org.apache.lucene.document.ShortDocValuesField;
+import org.apache.lucene.document.StraightBytesDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValues.Type;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.BaseDirectoryWrapper;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestPackedDocValuesFormat extends LuceneTestCase {
+
+  private static final String[] FIELDS = new String[] {
+    "delta", "gcd", "table", "full", "sparse", "byte", "short", "int", "long"
+  };
+
+  private static class PackedCodec extends FilterCodec {
+    private final DocValuesFormat dvFormat;
+
+    PackedCodec() {
+      super("PackedDocValuesTest", new Lucene40Codec());
+      dvFormat = new PackedDocValuesFormat();
+    }
+
+    @Override
+    public DocValuesFormat docValuesFormat() {
+      return dvFormat;
+    }
+  }
+
+  private BaseDirectoryWrapper dir;
+  private IndexWriter writer;
+  // expected values, indexed by id
+  private long[][] expected;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    // the test codec is not registered, so segments can only be read from
+    // near-real-time readers
+    dir.setCheckIndexOnClose(false);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(new PackedCodec());
+    iwc.setMaxBufferedDocs(10 + random().nextInt(100));
+    iwc.setMergePolicy(newLogMergePolicy());
+    writer = new IndexWriter(dir, iwc);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    writer.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private void addDocuments(int numDocs) throws IOException {
+    expected = new long[numDocs][];
+    final long gcd = 1 + random().nextInt(1000);
+    final long base = random().nextLong() >> 1;
+    final long[] table = new long[1 + random().nextInt(20)];
+    for (int i = 0; i < table.length; ++i) {
+      table[i] = random().nextLong();
+    }
+    for (int i = 0; i < numDocs; ++i) {
+      final long[] values = new long[FIELDS.length];
+      values[0] = base + random().nextInt(1 << 10);
+      values[1] = base + gcd * random().nextInt(1 << 10);
+      values[2] = table[random().nextInt(table.length)];
+      values[3] = random().nextLong();
+      values[4] = random().nextInt(10) == 0 ? random().nextInt() : 0;
+      values[5] = (byte) random().nextInt();
+      values[6] = (short) random().nextInt();
+      values[7] = random().nextInt();
+      values[8] = random().nextInt(3) - 1;
+      expected[i] = values;
+
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new IntDocValuesField("id_dv", i));
+      doc.add(new PackedLongDocValuesField(FIELDS[0], values[0]));
+      doc.add(new LongDocValuesField(FIELDS[1], values[1]));
+      doc.add(new PackedLongDocValuesField(FIELDS[2], values[2]));
+      doc.add(new LongDocValuesField(FIELDS[3], values[3]));
+      if (values[4] != 0) {
+        doc.add(new IntDocValuesField(FIELDS[4], (int) values[4]));
+      }
+      doc.add(new ByteDocValuesField(FIELDS[5], (byte) values[5]));
+      doc.add(new ShortDocValuesField(FIELDS[6], (short) values[6]));
+      doc.add(new IntDocValuesField(FIELDS[7], (int) values[7]));
+      doc.add(new LongDocValuesField(FIELDS[8], values[8]));
+      // non-integer types are delegated to Lucene40
+      doc.add(new StraightBytesDocValuesField("bytes", new BytesRef(Integer.toString(i))));
+      writer.addDocument(doc);
+    }
+  }
+
+  private void assertValues() throws IOException {
+    final DirectoryReader reader = DirectoryReader.open(writer, true);
+    try {
+      for (AtomicReaderContext context : reader.leaves()) {
+        final AtomicReader r = context.reader();
+        final DocValues.Source ids = r.docValues("id_dv").getSource();
+        final DocValues.Source bytes = r.docValues("bytes").getSource();
+        final BytesRef idScratch = new BytesRef();
+        final BytesRef scratch = new BytesRef();
+        for (int j = 0; j < FIELDS.length; ++j) {
+          final DocValues dv = r.docValues(FIELDS[j]);
+          if (dv == null) {
+            continue;
+          }
+          assertEquals(dv.getValueSize(), PackedNumericValues.valueSize(dv.getType()));
+          final DocValues.Source[] sources = new DocValues.Source[] {
+            dv.getSource(), dv.getDirectSource()
+          };
+          for (DocValues.Source source : sources) {
+            for (int doc = 0; doc < r.maxDoc(); ++doc) {
+              final int id = (int) ids.getInt(doc);
+              assertEquals(Integer.toString(id), bytes.getBytes(doc, idScratch).utf8ToString());
+              final long expectedValue = expected[id][j];
+              assertEquals(FIELDS[j], expectedValue, source.getInt(doc));
+              source.getBytes(doc, scratch);
+              if (dv.getType() != Type.VAR_INTS) {
+                assertEquals(dv.getValueSize(), scratch.length);
+              }
+            }
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  public void testRandom() throws IOException {
+    addDocuments(atLeast(200));
+    assertValues();
+  }
+
+  public void testMergeWithDeletes() throws IOException {
+    final int numDocs = atLeast(500);
+    addDocuments(numDocs);
+    for (int i = 0; i < numDocs; ++i) {
+      if (random().nextInt(5) == 0) {
+        writer.deleteDocuments(new Term("id", Integer.toString(i)));
+      }
+    }
+    assertValues();
+    writer.forceMerge(1);
+    assertValues();
+  }
+
+  public void testGcd() {
+    assertEquals(0, PackedNumericValues.gcd(0, 0));
+    assertEquals(6, PackedNumericValues.gcd(0, 6));
+    assertEquals(6, PackedNumericValues.gcd(12, 18));
+    assertEquals(1, PackedNumericValues.gcd(7, 9));
+  }
+
+}
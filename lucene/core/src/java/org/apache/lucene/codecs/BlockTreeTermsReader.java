@@ -107,11 +107,44 @@ public class BlockTreeTermsReader extends FieldsProducer {
 
   private String segment;
 
-  /** Sole constructor. */
+  // Open input to the terms index file (_X.tip), only
+  // non-null if some fields read their index off-heap
+  private IndexInput indexIn;
+
+  /** How the terms index FST of each field is loaded.
+   *  @lucene.experimental */
+  public static enum FSTLoadMode {
+    /** Always copy the terms index to the heap. */
+    ON_HEAP,
+    /** Always read the terms index from the (ideally
+     *  memory-mapped) index file. */
+    OFF_HEAP,
+    /** Read the terms index off-heap for unique-key fields
+     *  (every document has exactly one term and every term
+     *  exactly one document) when the index file has {@link
+     *  IndexInput#hasFastRandomAccessSlice fast random
+     *  access} (eg it is memory-mapped), and load it on the
+     *  heap otherwise.
+     *  Such fields usually have the largest terms indexes
+     *  while lookups only visit a few arcs. */
+    AUTO
+  }
+
+  /** Creates a reader that loads terms indexes with
+   *  {@link FSTLoadMode#AUTO}. */
   public BlockTreeTermsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo info,
                               PostingsReaderBase postingsReader, IOContext ioContext,
                               String segmentSuffix, int indexDivisor)
     throws IOException {
+    this(dir, fieldInfos, info, postingsReader, ioContext, segmentSuffix, indexDivisor, FSTLoadMode.AUTO);
+  }
+
+  /** Creates a reader that loads terms indexes according
+   *  to the given {@link FSTLoadMode}. */
+  public BlockTreeTermsReader(Directory dir, FieldInfos fieldInfos, SegmentInfo info,
+                              PostingsReaderBase postingsReader, IOContext ioContext,
+                              String segmentSuffix, int indexDivisor, FSTLoadMode fstLoadMode)
+    throws IOException {
     
     this.postingsReader = postingsReader;
 
@@ -121,6 +154,8 @@ public class BlockTreeTermsReader extends FieldsProducer {
 
     boolean success = false;
     IndexInput indexIn = null;
+    boolean indexOffHeap = false;
+    boolean fastIndexIn = false;
 
     try {
       readHeader(in);
@@ -128,6 +163,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
         indexIn = dir.openInput(IndexFileNames.segmentFileName(segment, segmentSuffix, BlockTreeTermsWriter.TERMS_INDEX_EXTENSION),
                                 ioContext);
         readIndexHeader(indexIn);
+        fastIndexIn = indexIn.hasFastRandomAccessSlice();
       }
 
       // Have PostingsReader init itself
@@ -167,13 +203,30 @@ public class BlockTreeTermsReader extends FieldsProducer {
           throw new CorruptIndexException("invalid sumTotalTermFreq: " + sumTotalTermFreq + " sumDocFreq: " + sumDocFreq + " (resource=" + in + ")");
         }
         final long indexStartFP = indexDivisor != -1 ? indexIn.readVLong() : 0;
-        FieldReader previous = fields.put(fieldInfo.name, new FieldReader(fieldInfo, numTerms, rootCode, sumTotalTermFreq, sumDocFreq, docCount, indexStartFP, indexIn));
+        final boolean offHeap;
+        switch (fstLoadMode) {
+          case OFF_HEAP:
+            offHeap = true;
+            break;
+          case AUTO:
+            offHeap = fastIndexIn && numTerms == docCount && sumDocFreq == docCount;
+            break;
+          default:
+            offHeap = false;
+        }
+        indexOffHeap |= offHeap;
+        FieldReader previous = fields.put(fieldInfo.name, new FieldReader(fieldInfo, numTerms, rootCode, sumTotalTermFreq, sumDocFreq, docCount, indexStartFP, indexIn, offHeap));
         if (previous != null) {
           throw new CorruptIndexException("duplicate field: " + fieldInfo.name + " (resource=" + in + ")");
         }
       }
       if (indexDivisor != -1) {
-        indexIn.close();
+        if (indexOffHeap) {
+          // off-heap FSTs keep reading from it, closed in close()
+          this.indexIn = indexIn;
+        } else {
+          indexIn.close();
+        }
       }
 
       success = true;
@@ -201,6 +254,17 @@ public class BlockTreeTermsReader extends FieldsProducer {
     indexDirOffset = input.readLong();    
   }
 
+  /** Returns the approximate heap usage of the terms
+   *  indexes of all fields, see {@link
+   *  FieldReader#ramBytesUsed()}. */
+  public long ramBytesUsed() {
+    long sizeInBytes = 0;
+    for (FieldReader reader : fields.values()) {
+      sizeInBytes += reader.ramBytesUsed();
+    }
+    return sizeInBytes;
+  }
+
   /** Seek {@code input} to the directory offset. */
   protected void seekDir(IndexInput input, long dirOffset)
       throws IOException {
@@ -215,7 +279,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
   @Override
   public void close() throws IOException {
     try {
-      IOUtils.close(in, postingsReader);
+      IOUtils.close(in, indexIn, postingsReader);
     } finally { 
       // Clear so refs to terms index is GCable even if
       // app hangs onto us:
@@ -443,7 +507,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
 
     //private boolean DEBUG;
 
-    FieldReader(FieldInfo fieldInfo, long numTerms, BytesRef rootCode, long sumTotalTermFreq, long sumDocFreq, int docCount, long indexStartFP, IndexInput indexIn) throws IOException {
+    FieldReader(FieldInfo fieldInfo, long numTerms, BytesRef rootCode, long sumTotalTermFreq, long sumDocFreq, int docCount, long indexStartFP, IndexInput indexIn, boolean indexOffHeap) throws IOException {
       assert numTerms > 0;
       this.fieldInfo = fieldInfo;
       //DEBUG = BlockTreeTermsReader.DEBUG && fieldInfo.name.equals("id");
@@ -463,7 +527,7 @@ public class BlockTreeTermsReader extends FieldsProducer {
         final IndexInput clone = indexIn.clone();
         //System.out.println("start=" + indexStartFP + " field=" + fieldInfo.name);
         clone.seek(indexStartFP);
-        index = new FST<BytesRef>(clone, ByteSequenceOutputs.getSingleton());
+        index = new FST<BytesRef>(clone, ByteSequenceOutputs.getSingleton(), indexOffHeap);
         
         /*
         if (false) {
@@ -485,6 +549,21 @@ public class BlockTreeTermsReader extends FieldsProducer {
       return new SegmentTermsEnum().computeBlockStats();
     }
 
+    /** Returns true if the terms index of this field is
+     *  read from disk rather than held on the heap. */
+    public boolean isIndexOffHeap() {
+      return index != null && index.isOffHeap();
+    }
+
+    /** Returns the approximate number of bytes of heap
+     *  memory used by this field, mostly its terms index.
+     *  @see FST#ramBytesUsed() */
+    public long ramBytesUsed() {
+      return RamUsageEstimator.shallowSizeOf(this)
+          + RamUsageEstimator.sizeOf(rootCode.bytes)
+          + (index == null ? 0 : index.ramBytesUsed());
+    }
+
     @Override
     public Comparator<BytesRef> getComparator() {
       return BytesRef.getUTF8SortedAsUnicodeComparator();
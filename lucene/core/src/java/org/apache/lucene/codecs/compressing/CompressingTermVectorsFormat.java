@@ -0,0 +1,162 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.TermVectorsFormat;
+import org.apache.lucene.codecs.TermVectorsReader;
+import org.apache.lucene.codecs.TermVectorsWriter;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+
+/**
+ * A {@link TermVectorsFormat} that compresses chunks of documents together in
+ * order to improve the compression ratio.
+ * <p>
+ * <b>File formats</b>
+ * <p>
+ * Term vectors are represented by two files:
+ * <ol>
+ * <li><a name="vector_data" id="vector_data"></a>
+ * <p>A vectors data file (extension <tt>.tvd</tt>). This file stores the term
+ * vectors of documents in compressed chunks of <tt>chunkSize</tt> bytes or
+ * more. Documents are serialized into an in-memory <tt>byte[]</tt> buffer,
+ * and when its size reaches <tt>chunkSize</tt>, some metadata about the
+ * documents is flushed to disk, immediately followed by a compressed
+ * representation of the buffer using the configured {@link CompressionMode}.
+ * Since a chunk holds many documents, terms that repeat across documents of
+ * the same chunk are only paid for once after compression.</p>
+ * <ul>
+ * <li>VectorData (.tvd) --&gt; &lt;Header&gt;, PackedIntsVersion, &lt;Chunk&gt;<sup>ChunkCount</sup></li>
+ * <li>Header --&gt; {@link CodecUtil#writeHeader CodecHeader}</li>
+ * <li>PackedIntsVersion --&gt; {@link org.apache.lucene.util.packed.PackedInts#VERSION_CURRENT} as a {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ * <li>Chunk --&gt; DocBase, ChunkDocs, DocFieldCounts, DocLengths, &lt;CompressedDocs&gt;</li>
+ * <li>DocBase --&gt; the ID of the first document of the chunk as a {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ * <li>ChunkDocs --&gt; the number of documents in the chunk as a {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ * <li>DocFieldCounts, DocLengths --&gt; the number of fields with term vectors
+ * and the uncompressed byte length of every document of the chunk, encoded
+ * the same way as DocFieldCounts in the
+ * {@link CompressingStoredFieldsFormat stored fields format}</li>
+ * <li>CompressedDocs --&gt; a compressed representation of &lt;Doc&gt;<sup>ChunkDocs</sup></li>
+ * <li>Doc --&gt; &lt;FieldNum, Flags, NumTerms&gt;<sup>DocFieldCount</sup>,
+ * PrefixLengths, SuffixLengths, TermFreqs, SuffixBytes, Positions,
+ * StartOffsets, Lengths, PayloadLengths, PayloadBytes</li>
+ * <li>FieldNum, NumTerms --&gt; {@link org.apache.lucene.store.DataOutput#writeVInt VInt}</li>
+ * <li>Flags --&gt; a {@link org.apache.lucene.store.DataOutput#writeByte byte}:
+ * 0x01 if positions are stored, 0x02 for offsets, 0x04 for payloads</li>
+ * <li>PrefixLengths, SuffixLengths, TermFreqs --&gt; one value per term of
+ * the document, in field order. Terms are prefix-compressed against the
+ * previous term of the same field and frequencies are stored minus one.</li>
+ * <li>Positions --&gt; one value per position of fields that store positions,
+ * as deltas from the previous position of the same term</li>
+ * <li>StartOffsets, Lengths --&gt; one value per position of fields that store
+ * offsets: start offsets as zig-zag encoded deltas from the previous start
+ * offset of the same term, and zig-zag encoded lengths (end offset minus start
+ * offset)</li>
+ * <li>PayloadLengths --&gt; one value per position of fields that store
+ * payloads</li>
+ * <li>Every sequence of integers above is encoded as a
+ * {@link org.apache.lucene.store.DataOutput#writeVInt VInt} <tt>bitsRequired</tt>
+ * (<tt>0</tt> meaning that all values are equal to the following
+ * {@link org.apache.lucene.store.DataOutput#writeVInt VInt}) followed by a
+ * {@link org.apache.lucene.util.packed.PackedInts packed} array, or as a
+ * single {@link org.apache.lucene.store.DataOutput#writeVInt VInt} if the
+ * sequence has exactly one value. Empty sequences are not written.</li>
+ * </ul>
+ * </li>
+ * <li><a name="vector_index" id="vector_index"></a>
+ * <p>A vectors index file (extension <tt>.tvx</tt>), in the same format as the
+ * fields index of the {@link CompressingStoredFieldsFormat stored fields format},
+ * see {@link CompressingStoredFieldsIndexWriter}.</p>
+ * </li>
+ * </ol>
+ * <p>
+ * <b>Merging</b>
+ * <p>
+ * When merging segments that have been written with the same
+ * {@link CompressionMode} and whose field numbers are congruent, chunks that
+ * are large enough and do not contain deleted documents are copied verbatim
+ * without being decompressed. Other chunks are decompressed, but documents
+ * are still copied as raw bytes.
+ * @lucene.experimental
+ */
+public class CompressingTermVectorsFormat extends TermVectorsFormat {
+
+  private final String formatName;
+  private final String segmentSuffix;
+  private final CompressionMode compressionMode;
+  private final int chunkSize;
+
+  /**
+   * Create a new {@link CompressingTermVectorsFormat} with an empty segment
+   * suffix.
+   *
+   * @see CompressingTermVectorsFormat#CompressingTermVectorsFormat(String, String, CompressionMode, int)
+   */
+  public CompressingTermVectorsFormat(String formatName, CompressionMode compressionMode, int chunkSize) {
+    this(formatName, "", compressionMode, chunkSize);
+  }
+
+  /**
+   * Create a new {@link CompressingTermVectorsFormat}.
+   * <p>
+   * The parameters have the same meaning as in
+   * {@link CompressingStoredFieldsFormat#CompressingStoredFieldsFormat(String, String, CompressionMode, int)}.
+   *
+   * @param formatName the name of the {@link TermVectorsFormat}
+   * @param segmentSuffix the segment suffix to use for file names
+   * @param compressionMode the {@link CompressionMode} to use
+   * @param chunkSize the minimum number of bytes of a single chunk of documents
+   * @see CompressionMode
+   */
+  public CompressingTermVectorsFormat(String formatName, String segmentSuffix,
+                                      CompressionMode compressionMode, int chunkSize) {
+    this.formatName = formatName;
+    this.segmentSuffix = segmentSuffix;
+    this.compressionMode = compressionMode;
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException("chunkSize must be >= 1");
+    }
+    this.chunkSize = chunkSize;
+  }
+
+  @Override
+  public TermVectorsReader vectorsReader(Directory directory, SegmentInfo segmentInfo,
+      FieldInfos fieldInfos, IOContext context) throws IOException {
+    return new CompressingTermVectorsReader(directory, segmentInfo, segmentSuffix,
+        fieldInfos, context, formatName, compressionMode);
+  }
+
+  @Override
+  public TermVectorsWriter vectorsWriter(Directory directory, SegmentInfo segmentInfo,
+      IOContext context) throws IOException {
+    return new CompressingTermVectorsWriter(directory, segmentInfo, segmentSuffix,
+        context, formatName, compressionMode, chunkSize);
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(compressionMode=" + compressionMode
+        + ", chunkSize=" + chunkSize + ")";
+  }
+
+}
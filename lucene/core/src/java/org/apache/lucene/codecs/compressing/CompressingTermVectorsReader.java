@@ -0,0 +1,795 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.CODEC_SFX_DAT;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.CODEC_SFX_IDX;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.OFFSETS;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.PAYLOADS;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.POSITIONS;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.VECTORS_EXTENSION;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.VECTORS_INDEX_EXTENSION;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.VERSION_CURRENT;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.VERSION_START;
+import static org.apache.lucene.codecs.compressing.CompressingTermVectorsWriter.zigZagDecode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.TermVectorsReader;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * {@link TermVectorsReader} impl for {@link CompressingTermVectorsFormat}.
+ * @lucene.experimental
+ */
+public final class CompressingTermVectorsReader extends TermVectorsReader {
+
+  private final FieldInfos fieldInfos;
+  private final CompressingStoredFieldsIndexReader indexReader;
+  private final IndexInput vectorsStream;
+  private final int packedIntsVersion;
+  private final CompressionMode compressionMode;
+  private final Decompressor decompressor;
+  private final BytesRef bytes;
+  private final int numDocs;
+  private int[] numFields, lengths;
+  private boolean closed;
+
+  // used by clone
+  private CompressingTermVectorsReader(CompressingTermVectorsReader reader) {
+    this.fieldInfos = reader.fieldInfos;
+    this.vectorsStream = reader.vectorsStream.clone();
+    this.indexReader = reader.indexReader.clone();
+    this.packedIntsVersion = reader.packedIntsVersion;
+    this.compressionMode = reader.compressionMode;
+    this.decompressor = reader.decompressor.clone();
+    this.numDocs = reader.numDocs;
+    this.bytes = new BytesRef(reader.bytes.bytes.length);
+    this.numFields = new int[1];
+    this.lengths = new int[1];
+    this.closed = false;
+  }
+
+  /** Sole constructor. */
+  public CompressingTermVectorsReader(Directory d, SegmentInfo si, String segmentSuffix, FieldInfos fn,
+      IOContext context, String formatName, CompressionMode compressionMode) throws IOException {
+    this.compressionMode = compressionMode;
+    final String segment = si.name;
+    boolean success = false;
+    fieldInfos = fn;
+    numDocs = si.getDocCount();
+    IndexInput indexStream = null;
+    IndexInput vectorsStream = null;
+    try {
+      vectorsStream = d.openInput(IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_EXTENSION), context);
+      final String indexStreamFN = IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_INDEX_EXTENSION);
+      indexStream = d.openInput(indexStreamFN, context);
+
+      final String codecNameIdx = formatName + CODEC_SFX_IDX;
+      final String codecNameDat = formatName + CODEC_SFX_DAT;
+      CodecUtil.checkHeader(indexStream, codecNameIdx, VERSION_START, VERSION_CURRENT);
+      CodecUtil.checkHeader(vectorsStream, codecNameDat, VERSION_START, VERSION_CURRENT);
+      assert CodecUtil.headerLength(codecNameDat) == vectorsStream.getFilePointer();
+      assert CodecUtil.headerLength(codecNameIdx) == indexStream.getFilePointer();
+
+      indexReader = new CompressingStoredFieldsIndexReader(indexStream, si);
+      indexStream.close();
+      indexStream = null;
+
+      packedIntsVersion = vectorsStream.readVInt();
+      decompressor = compressionMode.newDecompressor();
+      this.bytes = new BytesRef();
+      this.numFields = new int[1];
+      this.lengths = new int[1];
+      this.vectorsStream = vectorsStream;
+
+      success = true;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(vectorsStream, indexStream);
+      }
+    }
+  }
+
+  /**
+   * @throws AlreadyClosedException if this TermVectorsReader is closed
+   */
+  private void ensureOpen() throws AlreadyClosedException {
+    if (closed) {
+      throw new AlreadyClosedException("this TermVectorsReader is closed");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      IOUtils.close(vectorsStream);
+      closed = true;
+    }
+  }
+
+  @Override
+  public TermVectorsReader clone() {
+    ensureOpen();
+    return new CompressingTermVectorsReader(this);
+  }
+
+  CompressionMode getCompressionMode() {
+    return compressionMode;
+  }
+
+  /** Read <code>count</code> values which have been written with
+   *  {@link CompressingStoredFieldsWriter#saveInts}. */
+  static void readInts(DataInput in, int packedIntsVersion, int[] values, int count) throws IOException {
+    if (count == 0) {
+      return;
+    } else if (count == 1) {
+      values[0] = in.readVInt();
+      return;
+    }
+    final int bitsPerValue = in.readVInt();
+    if (bitsPerValue == 0) {
+      Arrays.fill(values, 0, count, in.readVInt());
+    } else if (bitsPerValue > 32) {
+      throw new CorruptIndexException("bitsPerValue=" + bitsPerValue + " (resource=" + in + ")");
+    } else {
+      final PackedInts.ReaderIterator it = PackedInts.getReaderIteratorNoHeader(in, PackedInts.Format.PACKED, packedIntsVersion, count, bitsPerValue, 1);
+      for (int i = 0; i < count; ++i) {
+        values[i] = (int) it.next();
+      }
+    }
+  }
+
+  @Override
+  public Fields get(int doc) throws IOException {
+    ensureOpen();
+    if (doc < 0 || doc >= numDocs) {
+      throw new IllegalArgumentException("docID=" + doc + " is out of bounds [0.." + (numDocs - 1) + "]");
+    }
+    vectorsStream.seek(indexReader.getStartPointer(doc));
+
+    final int docBase = vectorsStream.readVInt();
+    final int chunkDocs = vectorsStream.readVInt();
+    if (doc < docBase
+        || doc >= docBase + chunkDocs
+        || docBase + chunkDocs > numDocs) {
+      throw new CorruptIndexException("Corrupted: docID=" + doc
+          + ", docBase=" + docBase + ", chunkDocs=" + chunkDocs
+          + ", numDocs=" + numDocs + " (resource=" + vectorsStream + ")");
+    }
+
+    if (chunkDocs > numFields.length) {
+      final int newLength = ArrayUtil.oversize(chunkDocs, 4);
+      numFields = new int[newLength];
+      lengths = new int[newLength];
+    }
+    readInts(vectorsStream, packedIntsVersion, numFields, chunkDocs);
+    readInts(vectorsStream, packedIntsVersion, lengths, chunkDocs);
+
+    final int index = doc - docBase;
+    final int docFields = numFields[index];
+    if (docFields == 0) {
+      // no term vectors for this document
+      return null;
+    }
+    int offset = 0;
+    for (int i = 0; i < index; ++i) {
+      offset += lengths[i];
+    }
+    final int length = lengths[index];
+    int totalLength = offset + length;
+    for (int i = index + 1; i < chunkDocs; ++i) {
+      totalLength += lengths[i];
+    }
+
+    decompressor.decompress(vectorsStream, totalLength, offset, length, bytes);
+    if (bytes.length != length) {
+      throw new CorruptIndexException("Corrupted: expected length=" + length + ", got " + bytes.length + " (resource=" + vectorsStream + ")");
+    }
+
+    return new TVFields(new ByteArrayDataInput(bytes.bytes, bytes.offset, bytes.length), docFields);
+  }
+
+  private class TVFields extends Fields {
+
+    private final int[] fieldNums, fieldFlags, fieldTermStart;
+    // per term
+    private final int[] prefixLengths, suffixLengths, freqs, posStart, offStart, payStart;
+    private final byte[] suffixBytes;
+    // per position
+    private final int[] positions, startOffsets, endOffsets, payloadOffsets;
+    private final byte[] payloadBytes;
+
+    TVFields(ByteArrayDataInput in, int numFields) throws IOException {
+      fieldNums = new int[numFields];
+      fieldFlags = new int[numFields];
+      fieldTermStart = new int[numFields + 1];
+      for (int i = 0; i < numFields; ++i) {
+        fieldNums[i] = in.readVInt();
+        fieldFlags[i] = in.readByte();
+        fieldTermStart[i + 1] = fieldTermStart[i] + in.readVInt();
+      }
+
+      final int numTerms = fieldTermStart[numFields];
+      prefixLengths = new int[numTerms];
+      suffixLengths = new int[numTerms];
+      freqs = new int[numTerms];
+      readInts(in, packedIntsVersion, prefixLengths, numTerms);
+      readInts(in, packedIntsVersion, suffixLengths, numTerms);
+      readInts(in, packedIntsVersion, freqs, numTerms);
+
+      int totalSuffixLength = 0;
+      for (int i = 0; i < numTerms; ++i) {
+        ++freqs[i];
+        totalSuffixLength += suffixLengths[i];
+      }
+      suffixBytes = new byte[totalSuffixLength];
+      in.readBytes(suffixBytes, 0, totalSuffixLength);
+
+      // compute where positions, offsets and payloads of every term start
+      posStart = new int[numTerms];
+      offStart = new int[numTerms];
+      payStart = new int[numTerms];
+      int numPositions = 0, numOffsets = 0, numPayloads = 0;
+      for (int i = 0; i < numFields; ++i) {
+        final int flags = fieldFlags[i];
+        for (int j = fieldTermStart[i]; j < fieldTermStart[i + 1]; ++j) {
+          posStart[j] = numPositions;
+          offStart[j] = numOffsets;
+          payStart[j] = numPayloads;
+          if ((flags & POSITIONS) != 0) {
+            numPositions += freqs[j];
+          }
+          if ((flags & OFFSETS) != 0) {
+            numOffsets += freqs[j];
+          }
+          if ((flags & PAYLOADS) != 0) {
+            numPayloads += freqs[j];
+          }
+        }
+      }
+
+      positions = new int[numPositions];
+      readInts(in, packedIntsVersion, positions, numPositions);
+      startOffsets = new int[numOffsets];
+      endOffsets = new int[numOffsets];
+      readInts(in, packedIntsVersion, startOffsets, numOffsets);
+      readInts(in, packedIntsVersion, endOffsets, numOffsets);
+      payloadOffsets = new int[numPayloads + 1];
+      readInts(in, packedIntsVersion, payloadOffsets, numPayloads);
+
+      // positions and offsets are delta-encoded per term, and payload lengths
+      // are turned into offsets in payloadBytes
+      for (int i = 0; i < numFields; ++i) {
+        final int flags = fieldFlags[i];
+        for (int j = fieldTermStart[i]; j < fieldTermStart[i + 1]; ++j) {
+          if ((flags & POSITIONS) != 0) {
+            for (int k = posStart[j] + 1, end = posStart[j] + freqs[j]; k < end; ++k) {
+              positions[k] += positions[k - 1];
+            }
+          }
+          if ((flags & OFFSETS) != 0) {
+            int startOffset = 0;
+            for (int k = offStart[j], end = offStart[j] + freqs[j]; k < end; ++k) {
+              startOffset += zigZagDecode(startOffsets[k]);
+              startOffsets[k] = startOffset;
+              endOffsets[k] = startOffset + zigZagDecode(endOffsets[k]);
+            }
+          }
+        }
+      }
+      int payloadOffset = 0;
+      for (int i = 0; i <= numPayloads; ++i) {
+        final int payloadLength = payloadOffsets[i];
+        payloadOffsets[i] = payloadOffset;
+        payloadOffset += payloadLength;
+      }
+      payloadBytes = new byte[payloadOffset];
+      in.readBytes(payloadBytes, 0, payloadOffset);
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private int fieldUpto;
+
+        @Override
+        public String next() {
+          if (fieldUpto < fieldNums.length) {
+            return fieldInfos.fieldInfo(fieldNums[fieldUpto++]).name;
+          } else {
+            throw new NoSuchElementException();
+          }
+        }
+
+        @Override
+        public boolean hasNext() {
+          return fieldUpto < fieldNums.length;
+        }
+
+        @Override
+        public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override
+    public Terms terms(String field) throws IOException {
+      final FieldInfo fieldInfo = fieldInfos.fieldInfo(field);
+      if (fieldInfo == null) {
+        return null;
+      }
+      for (int i = 0; i < fieldNums.length; ++i) {
+        if (fieldNums[i] == fieldInfo.number) {
+          return new TVTerms(this, i);
+        }
+      }
+      // term vectors were not indexed for this field
+      return null;
+    }
+
+    @Override
+    public int size() {
+      return fieldNums.length;
+    }
+  }
+
+  private static class TVTerms extends Terms {
+
+    private final TVFields fields;
+    private final int flags, termStart, termEnd;
+
+    TVTerms(TVFields fields, int fieldIndex) {
+      this.fields = fields;
+      this.flags = fields.fieldFlags[fieldIndex];
+      this.termStart = fields.fieldTermStart[fieldIndex];
+      this.termEnd = fields.fieldTermStart[fieldIndex + 1];
+    }
+
+    @Override
+    public TermsEnum iterator(TermsEnum reuse) throws IOException {
+      final TVTermsEnum termsEnum;
+      if (reuse != null && reuse instanceof TVTermsEnum) {
+        termsEnum = (TVTermsEnum) reuse;
+      } else {
+        termsEnum = new TVTermsEnum();
+      }
+      termsEnum.reset(fields, flags, termStart, termEnd);
+      return termsEnum;
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() {
+      return BytesRef.getUTF8SortedAsUnicodeComparator();
+    }
+
+    @Override
+    public long size() throws IOException {
+      return termEnd - termStart;
+    }
+
+    @Override
+    public long getSumTotalTermFreq() throws IOException {
+      return -1L;
+    }
+
+    @Override
+    public long getSumDocFreq() throws IOException {
+      // every term occurs in just one doc
+      return termEnd - termStart;
+    }
+
+    @Override
+    public int getDocCount() throws IOException {
+      return 1;
+    }
+
+    @Override
+    public boolean hasOffsets() {
+      return (flags & OFFSETS) != 0;
+    }
+
+    @Override
+    public boolean hasPositions() {
+      return (flags & POSITIONS) != 0;
+    }
+
+    @Override
+    public boolean hasPayloads() {
+      return (flags & PAYLOADS) != 0;
+    }
+  }
+
+  private static class TVTermsEnum extends TermsEnum {
+
+    private TVFields fields;
+    private int flags, termStart, termEnd;
+    private int ord, suffixOffset, firstSuffixOffset;
+    private final BytesRef term = new BytesRef(16);
+
+    void reset(TVFields fields, int flags, int termStart, int termEnd) {
+      this.fields = fields;
+      this.flags = flags;
+      this.termStart = termStart;
+      this.termEnd = termEnd;
+      int firstSuffixOffset = 0;
+      for (int i = 0; i < termStart; ++i) {
+        firstSuffixOffset += fields.suffixLengths[i];
+      }
+      this.firstSuffixOffset = firstSuffixOffset;
+      reset();
+    }
+
+    private void reset() {
+      ord = termStart - 1;
+      suffixOffset = firstSuffixOffset;
+      term.length = 0;
+    }
+
+    @Override
+    public BytesRef next() throws IOException {
+      if (ord + 1 >= termEnd) {
+        return null;
+      }
+      ++ord;
+      final int prefixLength = fields.prefixLengths[ord];
+      final int suffixLength = fields.suffixLengths[ord];
+      term.length = prefixLength + suffixLength;
+      term.grow(term.length);
+      System.arraycopy(fields.suffixBytes, suffixOffset, term.bytes, prefixLength, suffixLength);
+      suffixOffset += suffixLength;
+      return term;
+    }
+
+    // NOTE: slow!  (linear scan)
+    @Override
+    public SeekStatus seekCeil(BytesRef text, boolean useCache) throws IOException {
+      if (ord >= termStart) {
+        final int cmp = text.compareTo(term);
+        if (cmp < 0) {
+          reset();
+        } else if (cmp == 0) {
+          return SeekStatus.FOUND;
+        }
+      }
+
+      while (next() != null) {
+        final int cmp = text.compareTo(term);
+        if (cmp < 0) {
+          return SeekStatus.NOT_FOUND;
+        } else if (cmp == 0) {
+          return SeekStatus.FOUND;
+        }
+      }
+
+      return SeekStatus.END;
+    }
+
+    @Override
+    public void seekExact(long ord) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public BytesRef term() throws IOException {
+      return term;
+    }
+
+    @Override
+    public long ord() throws IOException {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int docFreq() throws IOException {
+      return 1;
+    }
+
+    @Override
+    public long totalTermFreq() throws IOException {
+      return fields.freqs[ord];
+    }
+
+    @Override
+    public Comparator<BytesRef> getComparator() {
+      return BytesRef.getUTF8SortedAsUnicodeComparator();
+    }
+
+    @Override
+    public DocsEnum docs(Bits liveDocs, DocsEnum reuse, int flags) throws IOException {
+      final TVDocsEnum docsEnum;
+      if (reuse != null && reuse instanceof TVDocsEnum) {
+        docsEnum = (TVDocsEnum) reuse;
+      } else {
+        docsEnum = new TVDocsEnum();
+      }
+      docsEnum.reset(liveDocs, fields.freqs[ord]);
+      return docsEnum;
+    }
+
+    @Override
+    public DocsAndPositionsEnum docsAndPositions(Bits liveDocs, DocsAndPositionsEnum reuse, int flags) throws IOException {
+      if ((this.flags & (POSITIONS | OFFSETS)) == 0) {
+        return null;
+      }
+      final TVDocsAndPositionsEnum docsAndPositionsEnum;
+      if (reuse != null && reuse instanceof TVDocsAndPositionsEnum) {
+        docsAndPositionsEnum = (TVDocsAndPositionsEnum) reuse;
+      } else {
+        docsAndPositionsEnum = new TVDocsAndPositionsEnum();
+      }
+      docsAndPositionsEnum.reset(liveDocs, fields, this.flags, ord);
+      return docsAndPositionsEnum;
+    }
+  }
+
+  // NOTE: sort of a silly class, since you can get the
+  // freq() already by TermsEnum.totalTermFreq
+  private static class TVDocsEnum extends DocsEnum {
+    private boolean didNext;
+    private int doc = -1;
+    private int freq;
+    private Bits liveDocs;
+
+    @Override
+    public int freq() throws IOException {
+      return freq;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      if (!didNext && (liveDocs == null || liveDocs.get(0))) {
+        didNext = true;
+        return (doc = 0);
+      } else {
+        return (doc = NO_MORE_DOCS);
+      }
+    }
+
+    @Override
+    public int advance(int target) {
+      if (!didNext && target == 0) {
+        return nextDoc();
+      } else {
+        return (doc = NO_MORE_DOCS);
+      }
+    }
+
+    void reset(Bits liveDocs, int freq) {
+      this.liveDocs = liveDocs;
+      this.freq = freq;
+      this.doc = -1;
+      didNext = false;
+    }
+  }
+
+  private static class TVDocsAndPositionsEnum extends DocsAndPositionsEnum {
+    private boolean didNext;
+    private int doc = -1;
+    private Bits liveDocs;
+    private TVFields fields;
+    private int flags, freq, nextPos;
+    private int posStart, offStart, payStart;
+    private final BytesRef payload = new BytesRef();
+
+    void reset(Bits liveDocs, TVFields fields, int flags, int ord) {
+      this.liveDocs = liveDocs;
+      this.fields = fields;
+      this.flags = flags;
+      this.freq = fields.freqs[ord];
+      this.posStart = fields.posStart[ord];
+      this.offStart = fields.offStart[ord];
+      this.payStart = fields.payStart[ord];
+      this.doc = -1;
+      didNext = false;
+      nextPos = 0;
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return freq;
+    }
+
+    @Override
+    public int docID() {
+      return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+      if (!didNext && (liveDocs == null || liveDocs.get(0))) {
+        didNext = true;
+        return (doc = 0);
+      } else {
+        return (doc = NO_MORE_DOCS);
+      }
+    }
+
+    @Override
+    public int advance(int target) {
+      if (!didNext && target == 0) {
+        return nextDoc();
+      } else {
+        return (doc = NO_MORE_DOCS);
+      }
+    }
+
+    @Override
+    public int nextPosition() throws IOException {
+      assert nextPos < freq;
+      ++nextPos;
+      if ((flags & POSITIONS) != 0) {
+        return fields.positions[posStart + nextPos - 1];
+      } else {
+        return -1;
+      }
+    }
+
+    @Override
+    public int startOffset() throws IOException {
+      if ((flags & OFFSETS) == 0) {
+        return -1;
+      } else {
+        return fields.startOffsets[offStart + nextPos - 1];
+      }
+    }
+
+    @Override
+    public int endOffset() throws IOException {
+      if ((flags & OFFSETS) == 0) {
+        return -1;
+      } else {
+        return fields.endOffsets[offStart + nextPos - 1];
+      }
+    }
+
+    @Override
+    public BytesRef getPayload() throws IOException {
+      if ((flags & PAYLOADS) == 0) {
+        return null;
+      }
+      final int index = payStart + nextPos - 1;
+      final int off = fields.payloadOffsets[index];
+      final int end = fields.payloadOffsets[index + 1];
+      if (end == off) {
+        return null;
+      }
+      payload.bytes = fields.payloadBytes;
+      payload.offset = off;
+      payload.length = end - off;
+      return payload;
+    }
+  }
+
+  ChunkIterator chunkIterator() throws IOException {
+    ensureOpen();
+    return new ChunkIterator();
+  }
+
+  final class ChunkIterator {
+
+    final IndexInput vectorsStream;
+    final BytesRef bytes;
+    int docBase;
+    int chunkDocs;
+    int[] numFields;
+    int[] lengths;
+
+    private ChunkIterator() {
+      this.docBase = -1;
+      bytes = new BytesRef();
+      vectorsStream = CompressingTermVectorsReader.this.vectorsStream.clone();
+      numFields = new int[1];
+      lengths = new int[1];
+    }
+
+    /**
+     * Return the decompressed size of the chunk
+     */
+    int chunkSize() {
+      int sum = 0;
+      for (int i = 0; i < chunkDocs; ++i) {
+        sum += lengths[i];
+      }
+      return sum;
+    }
+
+    /**
+     * Go to the chunk containing the provided doc ID.
+     */
+    void next(int doc) throws IOException {
+      assert doc >= docBase + chunkDocs : doc + " " + docBase + " " + chunkDocs;
+      vectorsStream.seek(indexReader.getStartPointer(doc));
+
+      final int docBase = vectorsStream.readVInt();
+      final int chunkDocs = vectorsStream.readVInt();
+      if (docBase < this.docBase + this.chunkDocs
+          || docBase + chunkDocs > numDocs) {
+        throw new CorruptIndexException("Corrupted: current docBase=" + this.docBase
+            + ", current numDocs=" + this.chunkDocs + ", new docBase=" + docBase
+            + ", new numDocs=" + chunkDocs + " (resource=" + vectorsStream + ")");
+      }
+      this.docBase = docBase;
+      this.chunkDocs = chunkDocs;
+
+      if (chunkDocs > numFields.length) {
+        final int newLength = ArrayUtil.oversize(chunkDocs, 4);
+        numFields = new int[newLength];
+        lengths = new int[newLength];
+      }
+
+      readInts(vectorsStream, packedIntsVersion, numFields, chunkDocs);
+      readInts(vectorsStream, packedIntsVersion, lengths, chunkDocs);
+    }
+
+    /**
+     * Decompress the chunk.
+     */
+    void decompress() throws IOException {
+      final int chunkSize = chunkSize();
+      decompressor.decompress(vectorsStream, chunkSize, 0, chunkSize, bytes);
+      if (bytes.length != chunkSize) {
+        throw new CorruptIndexException("Corrupted: expected chunk size = " + chunkSize + ", got " + bytes.length + " (resource=" + vectorsStream + ")");
+      }
+    }
+
+    /**
+     * Copy compressed data.
+     */
+    void copyCompressedData(DataOutput out) throws IOException {
+      final long chunkEnd = docBase + chunkDocs == numDocs
+          ? vectorsStream.length()
+          : indexReader.getStartPointer(docBase + chunkDocs);
+      out.copyBytes(vectorsStream, chunkEnd - vectorsStream.getFilePointer());
+    }
+
+  }
+
+}
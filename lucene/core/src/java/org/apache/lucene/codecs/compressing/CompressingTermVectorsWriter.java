@@ -0,0 +1,469 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static org.apache.lucene.codecs.compressing.CompressingStoredFieldsWriter.saveInts;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.TermVectorsReader;
+import org.apache.lucene.codecs.TermVectorsWriter;
+import org.apache.lucene.codecs.compressing.CompressingTermVectorsReader.ChunkIterator;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.MergeState;
+import org.apache.lucene.index.SegmentInfo;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * {@link TermVectorsWriter} impl for {@link CompressingTermVectorsFormat}.
+ * @lucene.experimental
+ */
+public final class CompressingTermVectorsWriter extends TermVectorsWriter {
+
+  static final String VECTORS_EXTENSION = "tvd";
+  static final String VECTORS_INDEX_EXTENSION = "tvx";
+
+  static final int POSITIONS = 0x01;
+  static final int OFFSETS = 0x02;
+  static final int PAYLOADS = 0x04;
+
+  static final String CODEC_SFX_IDX = "Index";
+  static final String CODEC_SFX_DAT = "Data";
+  static final int VERSION_START = 0;
+  static final int VERSION_CURRENT = VERSION_START;
+
+  private final Directory directory;
+  private final String segment;
+  private final String segmentSuffix;
+  private CompressingStoredFieldsIndexWriter indexWriter;
+  private IndexOutput vectorsStream;
+
+  private final CompressionMode compressionMode;
+  private final Compressor compressor;
+  private final int chunkSize;
+
+  // serialized documents of the current chunk
+  private final GrowableByteArrayDataOutput bufferedDocs;
+  private int[] numFields; // number of fields per document
+  private int[] endOffsets; // end offsets in bufferedDocs
+  private int docBase; // doc ID at the beginning of the chunk
+  private int numBufferedDocs; // docBase + numBufferedDocs == current doc ID
+
+  // the document which is currently being written
+  private boolean docPending;
+  private int numDocFields;
+  private int[] fieldNums, fieldFlags, fieldNumTerms;
+  private int numDocTerms;
+  private int[] prefixLengths, suffixLengths, freqs;
+  private final GrowableByteArrayDataOutput suffixBytes;
+  private int numDocPositions;
+  private int[] positions;
+  private int numDocOffsets;
+  private int[] startOffsets, lengths;
+  private int numDocPayloads;
+  private int[] payloadLengths;
+  private final GrowableByteArrayDataOutput payloadBytes;
+
+  // the field and term which are currently being written
+  private int flags;
+  private final BytesRef lastTerm;
+  private int lastPosition, lastStartOffset;
+
+  /** Sole constructor. */
+  public CompressingTermVectorsWriter(Directory directory, SegmentInfo si, String segmentSuffix, IOContext context,
+      String formatName, CompressionMode compressionMode, int chunkSize) throws IOException {
+    assert directory != null;
+    this.directory = directory;
+    this.segment = si.name;
+    this.segmentSuffix = segmentSuffix;
+    this.compressionMode = compressionMode;
+    this.compressor = compressionMode.newCompressor();
+    this.chunkSize = chunkSize;
+    this.docBase = 0;
+    this.bufferedDocs = new GrowableByteArrayDataOutput(chunkSize);
+    this.numFields = new int[16];
+    this.endOffsets = new int[16];
+    this.numBufferedDocs = 0;
+
+    this.fieldNums = new int[4];
+    this.fieldFlags = new int[4];
+    this.fieldNumTerms = new int[4];
+    this.prefixLengths = new int[16];
+    this.suffixLengths = new int[16];
+    this.freqs = new int[16];
+    this.suffixBytes = new GrowableByteArrayDataOutput(64);
+    this.positions = new int[16];
+    this.startOffsets = new int[16];
+    this.lengths = new int[16];
+    this.payloadLengths = new int[16];
+    this.payloadBytes = new GrowableByteArrayDataOutput(16);
+    this.lastTerm = new BytesRef(16);
+
+    boolean success = false;
+    IndexOutput indexStream = directory.createOutput(IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_INDEX_EXTENSION), context);
+    try {
+      vectorsStream = directory.createOutput(IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_EXTENSION), context);
+
+      final String codecNameIdx = formatName + CODEC_SFX_IDX;
+      final String codecNameDat = formatName + CODEC_SFX_DAT;
+      CodecUtil.writeHeader(indexStream, codecNameIdx, VERSION_CURRENT);
+      CodecUtil.writeHeader(vectorsStream, codecNameDat, VERSION_CURRENT);
+      assert CodecUtil.headerLength(codecNameDat) == vectorsStream.getFilePointer();
+      assert CodecUtil.headerLength(codecNameIdx) == indexStream.getFilePointer();
+
+      indexWriter = new CompressingStoredFieldsIndexWriter(indexStream);
+      indexStream = null;
+
+      vectorsStream.writeVInt(PackedInts.VERSION_CURRENT);
+
+      success = true;
+    } finally {
+      if (!success) {
+        IOUtils.closeWhileHandlingException(indexStream);
+        abort();
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      IOUtils.close(vectorsStream, indexWriter);
+    } finally {
+      vectorsStream = null;
+      indexWriter = null;
+    }
+  }
+
+  @Override
+  public void abort() {
+    IOUtils.closeWhileHandlingException(this);
+    IOUtils.deleteFilesIgnoringExceptions(directory,
+        IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_EXTENSION),
+        IndexFileNames.segmentFileName(segment, segmentSuffix, VECTORS_INDEX_EXTENSION));
+  }
+
+  @Override
+  public void startDocument(int numVectorFields) throws IOException {
+    endWithPreviousDocument();
+    if (triggerFlush()) {
+      flush();
+    }
+
+    if (numBufferedDocs == numFields.length) {
+      final int newLength = ArrayUtil.oversize(numBufferedDocs + 1, 4);
+      numFields = Arrays.copyOf(numFields, newLength);
+      endOffsets = Arrays.copyOf(endOffsets, newLength);
+    }
+    numFields[numBufferedDocs] = numVectorFields;
+    ++numBufferedDocs;
+
+    if (numVectorFields > fieldNums.length) {
+      final int newLength = ArrayUtil.oversize(numVectorFields, 4);
+      fieldNums = new int[newLength];
+      fieldFlags = new int[newLength];
+      fieldNumTerms = new int[newLength];
+    }
+    docPending = true;
+    numDocFields = 0;
+    numDocTerms = numDocPositions = numDocOffsets = numDocPayloads = 0;
+    suffixBytes.length = payloadBytes.length = 0;
+  }
+
+  @Override
+  public void startField(FieldInfo info, int numTerms, boolean positions,
+      boolean offsets, boolean payloads) throws IOException {
+    assert numDocFields < numFields[numBufferedDocs - 1];
+    flags = (positions ? POSITIONS : 0) | (offsets ? OFFSETS : 0) | (payloads ? PAYLOADS : 0);
+    fieldNums[numDocFields] = info.number;
+    fieldFlags[numDocFields] = flags;
+    fieldNumTerms[numDocFields] = numTerms;
+    ++numDocFields;
+
+    final int minLength = numDocTerms + numTerms;
+    if (minLength > freqs.length) {
+      prefixLengths = ArrayUtil.grow(prefixLengths, minLength);
+      suffixLengths = ArrayUtil.grow(suffixLengths, minLength);
+      freqs = ArrayUtil.grow(freqs, minLength);
+    }
+    lastTerm.length = 0;
+  }
+
+  @Override
+  public void startTerm(BytesRef term, int freq) throws IOException {
+    assert freq >= 1;
+    final int prefix = StringHelper.bytesDifference(lastTerm, term);
+    prefixLengths[numDocTerms] = prefix;
+    suffixLengths[numDocTerms] = term.length - prefix;
+    freqs[numDocTerms] = freq - 1;
+    ++numDocTerms;
+    suffixBytes.writeBytes(term.bytes, term.offset + prefix, term.length - prefix);
+    lastTerm.copyBytes(term);
+
+    if ((flags & POSITIONS) != 0 && numDocPositions + freq > positions.length) {
+      positions = ArrayUtil.grow(positions, numDocPositions + freq);
+    }
+    if ((flags & OFFSETS) != 0 && numDocOffsets + freq > startOffsets.length) {
+      final int newLength = ArrayUtil.oversize(numDocOffsets + freq, 4);
+      startOffsets = Arrays.copyOf(startOffsets, newLength);
+      lengths = Arrays.copyOf(lengths, newLength);
+    }
+    if ((flags & PAYLOADS) != 0 && numDocPayloads + freq > payloadLengths.length) {
+      payloadLengths = ArrayUtil.grow(payloadLengths, numDocPayloads + freq);
+    }
+    lastPosition = lastStartOffset = 0;
+  }
+
+  @Override
+  public void addPosition(int position, int startOffset, int endOffset,
+      BytesRef payload) throws IOException {
+    if ((flags & POSITIONS) != 0) {
+      positions[numDocPositions++] = position - lastPosition;
+      lastPosition = position;
+    }
+    if ((flags & OFFSETS) != 0) {
+      startOffsets[numDocOffsets] = zigZagEncode(startOffset - lastStartOffset);
+      lengths[numDocOffsets] = zigZagEncode(endOffset - startOffset);
+      ++numDocOffsets;
+      lastStartOffset = startOffset;
+    }
+    if ((flags & PAYLOADS) != 0) {
+      if (payload == null) {
+        payloadLengths[numDocPayloads++] = 0;
+      } else {
+        payloadLengths[numDocPayloads++] = payload.length;
+        payloadBytes.writeBytes(payload.bytes, payload.offset, payload.length);
+      }
+    }
+  }
+
+  static int zigZagEncode(int i) {
+    return (i >> 31) ^ (i << 1);
+  }
+
+  static int zigZagDecode(int i) {
+    return ((i >>> 1) ^ -(i & 1));
+  }
+
+  private static void writeInts(int[] values, int length, GrowableByteArrayDataOutput out) throws IOException {
+    if (length > 0) {
+      saveInts(values, length, out);
+    }
+  }
+
+  /** Serialize the pending document into {@link #bufferedDocs}. */
+  private void endWithPreviousDocument() throws IOException {
+    if (!docPending) {
+      return;
+    }
+    if (numDocFields != numFields[numBufferedDocs - 1]) {
+      throw new IllegalStateException("startDocument was called with numVectorFields="
+          + numFields[numBufferedDocs - 1] + " but " + numDocFields + " fields were written");
+    }
+    for (int i = 0; i < numDocFields; ++i) {
+      bufferedDocs.writeVInt(fieldNums[i]);
+      bufferedDocs.writeByte((byte) fieldFlags[i]);
+      bufferedDocs.writeVInt(fieldNumTerms[i]);
+    }
+    writeInts(prefixLengths, numDocTerms, bufferedDocs);
+    writeInts(suffixLengths, numDocTerms, bufferedDocs);
+    writeInts(freqs, numDocTerms, bufferedDocs);
+    bufferedDocs.writeBytes(suffixBytes.bytes, 0, suffixBytes.length);
+    writeInts(positions, numDocPositions, bufferedDocs);
+    writeInts(startOffsets, numDocOffsets, bufferedDocs);
+    writeInts(lengths, numDocOffsets, bufferedDocs);
+    writeInts(payloadLengths, numDocPayloads, bufferedDocs);
+    bufferedDocs.writeBytes(payloadBytes.bytes, 0, payloadBytes.length);
+
+    endOffsets[numBufferedDocs - 1] = bufferedDocs.length;
+    docPending = false;
+  }
+
+  private void writeHeader(int docBase, int numBufferedDocs, int[] numFields, int[] lengths) throws IOException {
+    vectorsStream.writeVInt(docBase);
+    vectorsStream.writeVInt(numBufferedDocs);
+    saveInts(numFields, numBufferedDocs, vectorsStream);
+    saveInts(lengths, numBufferedDocs, vectorsStream);
+  }
+
+  private boolean triggerFlush() {
+    return bufferedDocs.length >= chunkSize || // chunks of at least chunkSize bytes
+        numBufferedDocs >= chunkSize; // can be necessary if most docs are empty
+  }
+
+  private void flush() throws IOException {
+    indexWriter.writeIndex(numBufferedDocs, vectorsStream.getFilePointer());
+
+    // transform end offsets into lengths
+    final int[] lengths = endOffsets;
+    for (int i = numBufferedDocs - 1; i > 0; --i) {
+      lengths[i] = endOffsets[i] - endOffsets[i - 1];
+      assert lengths[i] >= 0;
+    }
+    writeHeader(docBase, numBufferedDocs, numFields, lengths);
+
+    compressor.compress(bufferedDocs.bytes, 0, bufferedDocs.length, vectorsStream);
+
+    // reset
+    docBase += numBufferedDocs;
+    numBufferedDocs = 0;
+    bufferedDocs.length = 0;
+  }
+
+  @Override
+  public void finish(FieldInfos fis, int numDocs) throws IOException {
+    endWithPreviousDocument();
+    if (numBufferedDocs > 0) {
+      flush();
+    }
+    if (docBase != numDocs) {
+      throw new RuntimeException("Wrote " + docBase + " docs, finish called with numDocs=" + numDocs);
+    }
+    indexWriter.finish(numDocs);
+    assert bufferedDocs.length == 0;
+  }
+
+  @Override
+  public Comparator<BytesRef> getComparator() {
+    return BytesRef.getUTF8SortedAsUnicodeComparator();
+  }
+
+  @Override
+  public int merge(MergeState mergeState) throws IOException {
+    int docCount = 0;
+    int idx = 0;
+
+    for (AtomicReader reader : mergeState.readers) {
+      final SegmentReader matchingSegmentReader = mergeState.matchingSegmentReaders[idx++];
+      CompressingTermVectorsReader matchingVectorsReader = null;
+      if (matchingSegmentReader != null) {
+        final TermVectorsReader vectorsReader = matchingSegmentReader.getTermVectorsReader();
+        // we can only bulk-copy if the matching reader is also a CompressingTermVectorsReader
+        if (vectorsReader != null && vectorsReader instanceof CompressingTermVectorsReader) {
+          matchingVectorsReader = (CompressingTermVectorsReader) vectorsReader;
+        }
+      }
+
+      final int maxDoc = reader.maxDoc();
+      final Bits liveDocs = reader.getLiveDocs();
+
+      if (matchingVectorsReader == null) {
+        // naive merge...
+        for (int i = nextLiveDoc(0, liveDocs, maxDoc); i < maxDoc; i = nextLiveDoc(i + 1, liveDocs, maxDoc)) {
+          // NOTE: it's very important to first assign to vectors then pass it to
+          // addAllDocVectors; see LUCENE-1282
+          final Fields vectors = reader.getTermVectors(i);
+          addAllDocVectors(vectors, mergeState);
+          ++docCount;
+          mergeState.checkAbort.work(300);
+        }
+      } else {
+        int docID = nextLiveDoc(0, liveDocs, maxDoc);
+        if (docID < maxDoc) {
+          // not all docs were deleted
+          final ChunkIterator it = matchingVectorsReader.chunkIterator();
+          int[] startOffsets = new int[0];
+          do {
+            // go to the next chunk that contains docID
+            it.next(docID);
+            // transform lengths into offsets
+            if (startOffsets.length < it.chunkDocs) {
+              startOffsets = new int[ArrayUtil.oversize(it.chunkDocs, 4)];
+            }
+            for (int i = 1; i < it.chunkDocs; ++i) {
+              startOffsets[i] = startOffsets[i - 1] + it.lengths[i - 1];
+            }
+
+            if (compressionMode == matchingVectorsReader.getCompressionMode() // same compression mode
+                && numBufferedDocs == 0 // starting a new chunk
+                && startOffsets[it.chunkDocs - 1] < chunkSize // chunk is small enough
+                && startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] >= chunkSize // chunk is large enough
+                && nextDeletedDoc(it.docBase, liveDocs, it.docBase + it.chunkDocs) == it.docBase + it.chunkDocs) { // no deletion in the chunk
+              assert docID == it.docBase;
+
+              // no need to decompress, just copy data
+              indexWriter.writeIndex(it.chunkDocs, vectorsStream.getFilePointer());
+              writeHeader(this.docBase, it.chunkDocs, it.numFields, it.lengths);
+              it.copyCompressedData(vectorsStream);
+              this.docBase += it.chunkDocs;
+              docID = nextLiveDoc(it.docBase + it.chunkDocs, liveDocs, maxDoc);
+              docCount += it.chunkDocs;
+              mergeState.checkAbort.work(300 * it.chunkDocs);
+            } else {
+              // decompress
+              it.decompress();
+              if (startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1] != it.bytes.length) {
+                throw new CorruptIndexException("Corrupted: expected chunk size=" + (startOffsets[it.chunkDocs - 1] + it.lengths[it.chunkDocs - 1]) + ", got " + it.bytes.length);
+              }
+              // copy non-deleted docs
+              for (; docID < it.docBase + it.chunkDocs; docID = nextLiveDoc(docID + 1, liveDocs, maxDoc)) {
+                final int diff = docID - it.docBase;
+                startDocument(it.numFields[diff]);
+                bufferedDocs.writeBytes(it.bytes.bytes, it.bytes.offset + startOffsets[diff], it.lengths[diff]);
+                endOffsets[numBufferedDocs - 1] = bufferedDocs.length;
+                docPending = false;
+                ++docCount;
+                mergeState.checkAbort.work(300);
+              }
+            }
+          } while (docID < maxDoc);
+        }
+      }
+    }
+    finish(mergeState.fieldInfos, docCount);
+    return docCount;
+  }
+
+  private static int nextLiveDoc(int doc, Bits liveDocs, int maxDoc) {
+    if (liveDocs == null) {
+      return doc;
+    }
+    while (doc < maxDoc && !liveDocs.get(doc)) {
+      ++doc;
+    }
+    return doc;
+  }
+
+  private static int nextDeletedDoc(int doc, Bits liveDocs, int maxDoc) {
+    if (liveDocs == null) {
+      return maxDoc;
+    }
+    while (doc < maxDoc && liveDocs.get(doc)) {
+      ++doc;
+    }
+    return doc;
+  }
+
+}
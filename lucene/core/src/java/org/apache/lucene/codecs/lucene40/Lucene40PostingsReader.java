@@ -521,6 +521,37 @@ public class Lucene40PostingsReader extends PostingsReaderBase {
       return doc = refill();
     }
     
+    @Override
+    public final int read(int[] docs, int[] freqs) throws IOException {
+      int upto = 0;
+      while (upto < docs.length) {
+        final int pending = count - (start + 1);
+        if (pending > 0) {
+          // copy what is already buffered
+          final int n = Math.min(pending, docs.length - upto);
+          System.arraycopy(this.docs, start + 1, docs, upto, n);
+          if (freqs != null) {
+            System.arraycopy(this.freqs, start + 1, freqs, upto, n);
+          }
+          start += n;
+          upto += n;
+          freq = this.freqs[start];
+          doc = this.docs[start];
+        } else {
+          // refill
+          if (nextDoc() == NO_MORE_DOCS) {
+            break;
+          }
+          docs[upto] = doc;
+          if (freqs != null) {
+            freqs[upto] = freq;
+          }
+          ++upto;
+        }
+      }
+      return upto;
+    }
+
 
     @Override
     protected final int linearScan(int scanTo) throws IOException {
@@ -31,6 +31,7 @@ import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.IOUtils;
 
 import java.io.Closeable;
@@ -49,6 +50,9 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
   private final FieldInfos fieldInfos;
   private final IndexInput fieldsStream;
   private final IndexInput indexStream;
+  // shared by all clones when the .fdx file can be read at absolute
+  // positions without locking, null otherwise:
+  private final RandomAccessInput index;
   private int numTotalDocs;
   private int size;
   private boolean closed;
@@ -57,20 +61,23 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
    *  IndexInputs with the original one.  It is the caller's
    *  job not to close the original FieldsReader until all
    *  clones are called (eg, currently SegmentReader manages
-   *  this logic). */
+   *  this logic). The .fdx stream is not cloned if it is
+   *  read through a {@link RandomAccessInput} that is shared
+   *  with the original. */
   @Override
   public Lucene40StoredFieldsReader clone() {
     ensureOpen();
-    return new Lucene40StoredFieldsReader(fieldInfos, numTotalDocs, size, fieldsStream.clone(), indexStream.clone());
+    return new Lucene40StoredFieldsReader(fieldInfos, numTotalDocs, size, fieldsStream.clone(), index == null ? indexStream.clone() : null, index);
   }
   
   /** Used only by clone. */
-  private Lucene40StoredFieldsReader(FieldInfos fieldInfos, int numTotalDocs, int size, IndexInput fieldsStream, IndexInput indexStream) {
+  private Lucene40StoredFieldsReader(FieldInfos fieldInfos, int numTotalDocs, int size, IndexInput fieldsStream, IndexInput indexStream, RandomAccessInput index) {
     this.fieldInfos = fieldInfos;
     this.numTotalDocs = numTotalDocs;
     this.size = size;
     this.fieldsStream = fieldsStream;
     this.indexStream = indexStream;
+    this.index = index;
   }
 
   /** Sole constructor. */
@@ -94,6 +101,11 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
         throw new CorruptIndexException("doc counts differ for segment " + segment + ": fieldsReader shows " + this.size + " but segmentInfo shows " + si.getDocCount());
       }
       numTotalDocs = (int) (indexSize >> 3);
+      if (indexStream.hasFastRandomAccessSlice()) {
+        index = indexStream.randomAccessSlice(0, indexStream.length());
+      } else {
+        index = null;
+      }
       success = true;
     } finally {
       // With lock-less commits, it's entirely possible (and
@@ -136,14 +148,18 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
     return size;
   }
 
-  private void seekIndex(int docID) throws IOException {
-    indexStream.seek(HEADER_LENGTH_IDX + docID * 8L);
+  private long docPointer(int docID) throws IOException {
+    final long pos = HEADER_LENGTH_IDX + docID * 8L;
+    if (index != null) {
+      return index.readLong(pos);
+    }
+    indexStream.seek(pos);
+    return indexStream.readLong();
   }
 
   @Override
   public final void visitDocument(int n, StoredFieldVisitor visitor) throws IOException {
-    seekIndex(n);
-    fieldsStream.seek(indexStream.readLong());
+    fieldsStream.seek(docPointer(n));
 
     final int numFields = fieldsStream.readVInt();
     for (int fieldIDX = 0; fieldIDX < numFields; fieldIDX++) {
@@ -223,8 +239,7 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
    *  startDocID.  Returns the IndexInput (the fieldStream),
    *  already seeked to the starting point for startDocID.*/
   public final IndexInput rawDocs(int[] lengths, int startDocID, int numDocs) throws IOException {
-    seekIndex(startDocID);
-    long startOffset = indexStream.readLong();
+    long startOffset = docPointer(startDocID);
     long lastOffset = startOffset;
     int count = 0;
     while (count < numDocs) {
@@ -232,7 +247,7 @@ public final class Lucene40StoredFieldsReader extends StoredFieldsReader impleme
       final int docID = startDocID + count + 1;
       assert docID <= numTotalDocs;
       if (docID < numTotalDocs) 
-        offset = indexStream.readLong();
+        offset = docPointer(docID);
       else
         offset = fieldsStream.length();
       lengths[count++] = (int) (offset-lastOffset);
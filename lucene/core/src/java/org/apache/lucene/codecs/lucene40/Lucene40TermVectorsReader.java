@@ -40,6 +40,7 @@ import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
@@ -84,6 +85,9 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
   private FieldInfos fieldInfos;
 
   private IndexInput tvx;
+  // shared by all clones when the .tvx file can be read at absolute
+  // positions without locking, null otherwise:
+  private RandomAccessInput tvxIndex;
   private IndexInput tvd;
   private IndexInput tvf;
   private int size;
@@ -91,9 +95,10 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
   
 
   /** Used by clone. */
-  Lucene40TermVectorsReader(FieldInfos fieldInfos, IndexInput tvx, IndexInput tvd, IndexInput tvf, int size, int numTotalDocs) {
+  Lucene40TermVectorsReader(FieldInfos fieldInfos, IndexInput tvx, RandomAccessInput tvxIndex, IndexInput tvd, IndexInput tvf, int size, int numTotalDocs) {
     this.fieldInfos = fieldInfos;
     this.tvx = tvx;
+    this.tvxIndex = tvxIndex;
     this.tvd = tvd;
     this.tvf = tvf;
     this.size = size;
@@ -126,6 +131,9 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
       assert tvxVersion == tvfVersion;
 
       numTotalDocs = (int) (tvx.length()-HEADER_LENGTH_INDEX >> 4);
+      if (tvx.hasFastRandomAccessSlice()) {
+        tvxIndex = tvx.randomAccessSlice(0, tvx.length());
+      }
 
       this.size = numTotalDocs;
       assert size == 0 || numTotalDocs == size;
@@ -157,8 +165,21 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
   }
 
   // Not private to avoid synthetic access$NNN methods
-  void seekTvx(final int docNum) throws IOException {
-    tvx.seek(docNum * 16L + HEADER_LENGTH_INDEX);
+  long tvdPointer(final int docNum) throws IOException {
+    return readTvx(docNum * 16L + HEADER_LENGTH_INDEX);
+  }
+
+  // Not private to avoid synthetic access$NNN methods
+  long tvfPointer(final int docNum) throws IOException {
+    return readTvx(docNum * 16L + HEADER_LENGTH_INDEX + 8);
+  }
+
+  private long readTvx(long pos) throws IOException {
+    if (tvxIndex != null) {
+      return tvxIndex.readLong(pos);
+    }
+    tvx.seek(pos);
+    return tvx.readLong();
   }
 
   /** Retrieve the length (in bytes) of the tvd and tvf
@@ -169,18 +190,16 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
    *  are seeked to the startDocID. */
   final void rawDocs(int[] tvdLengths, int[] tvfLengths, int startDocID, int numDocs) throws IOException {
 
-    if (tvx == null) {
+    if (tvd == null) {
       Arrays.fill(tvdLengths, 0);
       Arrays.fill(tvfLengths, 0);
       return;
     }
 
-    seekTvx(startDocID);
-
-    long tvdPosition = tvx.readLong();
+    long tvdPosition = tvdPointer(startDocID);
     tvd.seek(tvdPosition);
 
-    long tvfPosition = tvx.readLong();
+    long tvfPosition = tvfPointer(startDocID);
     tvf.seek(tvfPosition);
 
     long lastTvdPosition = tvdPosition;
@@ -191,8 +210,8 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
       final int docID = startDocID + count + 1;
       assert docID <= numTotalDocs;
       if (docID < numTotalDocs)  {
-        tvdPosition = tvx.readLong();
-        tvfPosition = tvx.readLong();
+        tvdPosition = tvdPointer(docID);
+        tvfPosition = tvfPointer(docID);
       } else {
         tvdPosition = tvd.length();
         tvfPosition = tvf.length();
@@ -225,8 +244,7 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
     private final Map<Integer,Integer> fieldNumberToIndex = new HashMap<Integer,Integer>();
 
     public TVFields(int docID) throws IOException {
-      seekTvx(docID);
-      tvd.seek(tvx.readLong());
+      tvd.seek(tvdPointer(docID));
       
       final int fieldCount = tvd.readVInt();
       assert fieldCount >= 0;
@@ -239,7 +257,7 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
           fieldNumberToIndex.put(fieldNumber, fieldUpto);
         }
 
-        long position = tvx.readLong();
+        long position = tvfPointer(docID);
         fieldFPs[0] = position;
         for(int fieldUpto=1;fieldUpto<fieldCount;fieldUpto++) {
           position += tvd.readVLong();
@@ -733,7 +751,7 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
     if (docID < 0 || docID >= numTotalDocs) {
       throw new IllegalArgumentException("doID=" + docID + " is out of bounds [0.." + (numTotalDocs-1) + "]");
     }
-    if (tvx != null) {
+    if (tvd != null) {
       Fields fields = new TVFields(docID);
       if (fields.size() == 0) {
         // TODO: we can improve writer here, eg write 0 into
@@ -756,13 +774,15 @@ public class Lucene40TermVectorsReader extends TermVectorsReader implements Clos
 
     // These are null when a TermVectorsReader was created
     // on a segment that did not have term vectors saved
-    if (tvx != null && tvd != null && tvf != null) {
-      cloneTvx = tvx.clone();
+    if (tvd != null && tvf != null) {
+      if (tvxIndex == null) {
+        cloneTvx = tvx.clone();
+      }
       cloneTvd = tvd.clone();
       cloneTvf = tvf.clone();
     }
     
-    return new Lucene40TermVectorsReader(fieldInfos, cloneTvx, cloneTvd, cloneTvf, size, numTotalDocs);
+    return new Lucene40TermVectorsReader(fieldInfos, cloneTvx, tvxIndex, cloneTvd, cloneTvf, size, numTotalDocs);
   }
 }
 
@@ -226,6 +226,11 @@ public final class Bytes {
       data = pagedBytes.freeze(true);
       this.idxIn = idxIn;
     }
+
+    @Override
+    public long ramBytesUsed() {
+      return totalLengthInBytes;
+    }
   }
   
   // TODO: open up this API?!
@@ -565,6 +570,7 @@ public final class Bytes {
     protected final BytesRef defaultValue = new BytesRef();
     protected final static int PAGED_BYTES_BITS = 15;
     protected final PagedBytes.Reader data;
+    private final long totalLengthInBytes;
 
     protected BytesSortedSourceBase(IndexInput datIn, IndexInput idxIn,
         Comparator<BytesRef> comp, long bytesToRead, Type type, boolean hasOffsets) throws IOException {
@@ -578,6 +584,7 @@ public final class Bytes {
       assert bytesToRead <= datIn.length() : " file size is less than the expected size diff: "
           + (bytesToRead - datIn.length()) + " pos: " + datIn.getFilePointer();
       this.datIn = datIn;
+      this.totalLengthInBytes = bytesToRead;
       this.pagedBytes = pagedBytes;
       this.pagedBytes.copy(datIn, bytesToRead);
       data = pagedBytes.freeze(true);
@@ -596,6 +603,12 @@ public final class Bytes {
       return docToOrdIndex;
     }
     
+    @Override
+    public long ramBytesUsed() {
+      return super.ramBytesUsed() + totalLengthInBytes
+          + (ordToOffsetIndex == null ? 0 : ordToOffsetIndex.ramBytesUsed());
+    }
+
     @Override
     public int ord(int docID) {
       assert docToOrdIndex.get(docID) < getValueCount();
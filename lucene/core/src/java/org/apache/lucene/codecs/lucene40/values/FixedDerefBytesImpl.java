@@ -107,6 +107,11 @@ class FixedDerefBytesImpl {
       addresses = PackedInts.getReader(idxIn);
     }
 
+    @Override
+    public long ramBytesUsed() {
+      return super.ramBytesUsed() + addresses.ramBytesUsed();
+    }
+
     @Override
     public BytesRef getBytes(int docID, BytesRef bytesRef) {
       return data.fillSlice(bytesRef, addresses.get(docID) * size, size);
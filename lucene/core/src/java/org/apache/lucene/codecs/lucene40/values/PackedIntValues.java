@@ -250,6 +250,11 @@ class PackedIntValues {
       final long value = values.get(docID);
       return value == defaultValue ? 0 : minValue + value;
     }
+
+    @Override
+    public long ramBytesUsed() {
+      return values.ramBytesUsed();
+    }
   }
 
 }
\ No newline at end of file
@@ -120,6 +120,11 @@ class VarDerefBytesImpl {
       addresses = PackedInts.getReader(idxIn);
     }
 
+    @Override
+    public long ramBytesUsed() {
+      return super.ramBytesUsed() + addresses.ramBytesUsed();
+    }
+
     @Override
     public BytesRef getBytes(int docID, BytesRef bytesRef) {
       return data.fillSliceWithPrefix(bytesRef,
@@ -267,6 +267,11 @@ class VarStraightBytesImpl {
       addresses = PackedInts.getReader(idxIn);
     }
 
+    @Override
+    public long ramBytesUsed() {
+      return super.ramBytesUsed() + addresses.ramBytesUsed();
+    }
+
     @Override
     public BytesRef getBytes(int docID, BytesRef bytesRef) {
       final long address = addresses.get(docID);
@@ -17,16 +17,25 @@ package org.apache.lucene.index;
  * limitations under the License.
  */
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.codecs.BlockTreeTermsReader;
 import org.apache.lucene.codecs.Codec;
@@ -46,7 +55,9 @@ import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CommandLineUtil;
 import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.NamedThreadFactory;
 import org.apache.lucene.util.StringHelper;
+import org.apache.lucene.util.ThreadInterruptedException;
 
 /**
  * Basic tool and API to check the health of an index and
@@ -54,7 +65,10 @@ import org.apache.lucene.util.StringHelper;
  * problematic segments.
  * 
  * <p>As this tool checks every byte in the index, on a large
- * index it can take quite a long time to run.
+ * index it can take quite a long time to run. It can be made
+ * faster by {@link #setThreadCount checking segments concurrently},
+ * by {@link #setChecksumsOnly only verifying checksums} and by
+ * {@link #setSinceCommit only checking new segments}.
  *
  * @lucene.experimental Please make a complete backup of your
  * index before using this to fix your index!
@@ -127,6 +141,11 @@ public class CheckIndex {
     /** The greatest segment name. */
     public int maxSegmentName;
 
+    /** Number of segments which were not checked because all
+     *  their files are part of the commit passed to {@link
+     *  CheckIndex#setSinceCommit}. */
+    public int numSkippedSegments;
+
     /** Whether the SegmentInfos.counter is greater than any of the segments' names. */
     public boolean validCounter; 
 
@@ -210,6 +229,27 @@ public class CheckIndex {
       
       /** Status for testing of DocValues (null if DocValues could not be tested). */
       public DocValuesStatus docValuesStatus;
+
+      /** Status for testing of file checksums (null if checksums could not be tested). */
+      public ChecksumStatus checksumStatus;
+    }
+
+    /**
+     * Status from testing the checksums of the segment files.
+     */
+    public static final class ChecksumStatus {
+      private ChecksumStatus() {
+      }
+
+      /** Number of files whose checksum was verified */
+      public int numFiles = 0;
+
+      /** True if no checksums were recorded for this segment,
+       *  see {@link IndexWriterConfig#setChecksumSegmentFiles}. */
+      public boolean missing;
+
+      /** Exception thrown during checksum test (null on success) */
+      public Throwable error = null;
     }
 
     /**
@@ -326,6 +366,58 @@ public class CheckIndex {
     return crossCheckTermVectors;
   }
 
+  private boolean checksumsOnly;
+
+  /** If true, segments whose file checksums were recorded
+   *  (see {@link IndexWriterConfig#setChecksumSegmentFiles})
+   *  are only verified against these checksums, which reads
+   *  their files sequentially instead of decoding them.
+   *  Deletions of these segments are not verified. Other
+   *  segments are fully checked. */
+  public void setChecksumsOnly(boolean v) {
+    checksumsOnly = v;
+  }
+
+  /** See {@link #setChecksumsOnly}. */
+  public boolean getChecksumsOnly() {
+    return checksumsOnly;
+  }
+
+  private int threadCount = 1;
+
+  /** Number of threads that check segments concurrently.
+   *  Messages are still printed in segment order, once a
+   *  segment has been fully checked. Default is 1. */
+  public void setThreadCount(int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount must be >= 1 (got " + threadCount + ")");
+    }
+    this.threadCount = threadCount;
+  }
+
+  /** See {@link #setThreadCount}. */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  private IndexCommit sinceCommit;
+  private Collection<String> sinceCommitFiles;
+
+  /** If non-null, segments whose files are all part of
+   *  <code>commit</code> are skipped, so that only the
+   *  segments which were written or got new deletions since
+   *  that commit are checked. The returned {@link Status}
+   *  is then partial. */
+  public void setSinceCommit(IndexCommit commit) throws IOException {
+    sinceCommit = commit;
+    sinceCommitFiles = commit == null ? null : new HashSet<String>(commit.getFileNames());
+  }
+
+  /** See {@link #setSinceCommit}. */
+  public IndexCommit getSinceCommit() {
+    return sinceCommit;
+  }
+
   private boolean verbose;
 
   /** Set infoStream where messages should go.  If null, no
@@ -461,6 +553,11 @@ public class CheckIndex {
     msg("Segments file=" + segmentsFileName + " numSegments=" + numSegments
         + " " + versionString + " format=" + sFormat + userDataString);
 
+    if (sinceCommit != null) {
+      result.partial = true;
+      msg("\nChecking only segments changed since " + sinceCommit.getSegmentsFileName());
+    }
+
     if (onlySegments != null) {
       result.partial = true;
       if (infoStream != null)
@@ -484,6 +581,7 @@ public class CheckIndex {
     result.newSegments.clear();
     result.maxSegmentName = -1;
 
+    final List<Integer> toCheck = new ArrayList<Integer>();
     for(int i=0;i<numSegments;i++) {
       final SegmentInfoPerCommit info = sis.info(i);
       int segmentName = Integer.parseInt(info.info.name.substring(1), Character.MAX_RADIX);
@@ -493,174 +591,309 @@ public class CheckIndex {
       if (onlySegments != null && !onlySegments.contains(info.info.name)) {
         continue;
       }
-      Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
-      result.segmentInfos.add(segInfoStat);
-      msg("  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " docCount=" + info.info.getDocCount());
-      segInfoStat.name = info.info.name;
-      segInfoStat.docCount = info.info.getDocCount();
-
-      int toLoseDocCount = info.info.getDocCount();
-
-      SegmentReader reader = null;
-
-      try {
-        final Codec codec = info.info.getCodec();
-        msg("    codec=" + codec);
-        segInfoStat.codec = codec;
-        msg("    compound=" + info.info.getUseCompoundFile());
-        segInfoStat.compound = info.info.getUseCompoundFile();
-        msg("    numFiles=" + info.files().size());
-        segInfoStat.numFiles = info.files().size();
-        segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
-        if (info.info.getAttribute(Lucene3xSegmentInfoFormat.DS_OFFSET_KEY) == null) {
-          // don't print size in bytes if its a 3.0 segment with shared docstores
-          msg("    size (MB)=" + nf.format(segInfoStat.sizeMB));
-        }
-        Map<String,String> diagnostics = info.info.getDiagnostics();
-        segInfoStat.diagnostics = diagnostics;
-        if (diagnostics.size() > 0) {
-          msg("    diagnostics = " + diagnostics);
-        }
+      if (sinceCommit != null && sinceCommitFiles.containsAll(info.files())) {
+        result.numSkippedSegments++;
+        continue;
+      }
+      toCheck.add(i);
+    }
 
-        // TODO: we could append the info attributes() to the msg?
+    if (threadCount == 1 || toCheck.size() <= 1) {
+      for (int i : toCheck) {
+        final SegmentInfoPerCommit info = sis.info(i);
+        final Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+        result.segmentInfos.add(segInfoStat);
+        addSegmentResult(result, info, checkSegment(info, i, numSegments, segInfoStat, nf));
+      }
+    } else {
+      checkSegmentsConcurrently(sis, toCheck, result);
+    }
 
-        if (!info.hasDeletions()) {
-          msg("    no deletions");
-          segInfoStat.hasDeletions = false;
-        }
-        else{
-          msg("    has deletions [delGen=" + info.getDelGen() + "]");
-          segInfoStat.hasDeletions = true;
-          segInfoStat.deletionsGen = info.getDelGen();
-        }
-        if (infoStream != null)
-          infoStream.print("    test: open reader.........");
-        reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.DEFAULT);
+    if (0 == result.numBadSegments) {
+      result.clean = true;
+    } else
+      msg("WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
 
-        segInfoStat.openReaderPassed = true;
+    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
+      result.clean = false;
+      result.newSegments.counter = result.maxSegmentName + 1; 
+      msg("ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+    }
+    
+    if (result.clean) {
+      msg("No problems were detected with this index.\n");
+    }
 
-        final int numDocs = reader.numDocs();
-        toLoseDocCount = numDocs;
-        if (reader.hasDeletions()) {
-          if (reader.numDocs() != info.info.getDocCount() - info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + (info.info.getDocCount() - info.getDelCount()) + " vs reader=" + reader.numDocs());
-          }
-          if ((info.info.getDocCount()-reader.numDocs()) > reader.maxDoc()) {
-            throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.getDocCount()-reader.numDocs()));
-          }
-          if (info.info.getDocCount() - numDocs != info.getDelCount()) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
-          }
-          Bits liveDocs = reader.getLiveDocs();
-          if (liveDocs == null) {
-            throw new RuntimeException("segment should have deletions, but liveDocs is null");
-          } else {
-            int numLive = 0;
-            for (int j = 0; j < liveDocs.length(); j++) {
-              if (liveDocs.get(j)) {
-                numLive++;
-              }
-            }
-            if (numLive != numDocs) {
-              throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
+    return result;
+  }
+
+  /** Checks the <code>i</code>-th segment, which is described by
+   *  <code>info</code>, and fills <code>segInfoStat</code>. Returns the
+   *  number of documents that would be lost if the segment is broken, or
+   *  <code>-1</code> if the segment is fine. */
+  private int checkSegment(SegmentInfoPerCommit info, int i, int numSegments, Status.SegmentInfoStatus segInfoStat, NumberFormat nf) throws IOException {
+    msg("  " + (1+i) + " of " + numSegments + ": name=" + info.info.name + " docCount=" + info.info.getDocCount());
+    segInfoStat.name = info.info.name;
+    segInfoStat.docCount = info.info.getDocCount();
+
+    int toLoseDocCount = info.info.getDocCount();
+
+    SegmentReader reader = null;
+
+    try {
+      final Codec codec = info.info.getCodec();
+      msg("    codec=" + codec);
+      segInfoStat.codec = codec;
+      msg("    compound=" + info.info.getUseCompoundFile());
+      segInfoStat.compound = info.info.getUseCompoundFile();
+      msg("    numFiles=" + info.files().size());
+      segInfoStat.numFiles = info.files().size();
+      segInfoStat.sizeMB = info.sizeInBytes()/(1024.*1024.);
+      if (info.info.getAttribute(Lucene3xSegmentInfoFormat.DS_OFFSET_KEY) == null) {
+        // don't print size in bytes if its a 3.0 segment with shared docstores
+        msg("    size (MB)=" + nf.format(segInfoStat.sizeMB));
+      }
+      Map<String,String> diagnostics = info.info.getDiagnostics();
+      segInfoStat.diagnostics = diagnostics;
+      if (diagnostics.size() > 0) {
+        msg("    diagnostics = " + diagnostics);
+      }
+
+      // TODO: we could append the info attributes() to the msg?
+
+      if (!info.hasDeletions()) {
+        msg("    no deletions");
+        segInfoStat.hasDeletions = false;
+      }
+      else{
+        msg("    has deletions [delGen=" + info.getDelGen() + "]");
+        segInfoStat.hasDeletions = true;
+        segInfoStat.deletionsGen = info.getDelGen();
+      }
+
+      // Test checksums first: they are cheap compared to decoding the segment
+      segInfoStat.checksumStatus = testChecksums(info);
+      if (segInfoStat.checksumStatus.error != null) {
+        throw new RuntimeException("Checksum test failed");
+      }
+      if (checksumsOnly && !segInfoStat.checksumStatus.missing) {
+        msg("");
+        return -1;
+      }
+
+      if (infoStream != null)
+        infoStream.print("    test: open reader.........");
+      reader = new SegmentReader(info, DirectoryReader.DEFAULT_TERMS_INDEX_DIVISOR, IOContext.DEFAULT);
+
+      segInfoStat.openReaderPassed = true;
+
+      final int numDocs = reader.numDocs();
+      toLoseDocCount = numDocs;
+      if (reader.hasDeletions()) {
+        if (reader.numDocs() != info.info.getDocCount() - info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + (info.info.getDocCount() - info.getDelCount()) + " vs reader=" + reader.numDocs());
+        }
+        if ((info.info.getDocCount()-reader.numDocs()) > reader.maxDoc()) {
+          throw new RuntimeException("too many deleted docs: maxDoc()=" + reader.maxDoc() + " vs del count=" + (info.info.getDocCount()-reader.numDocs()));
+        }
+        if (info.info.getDocCount() - numDocs != info.getDelCount()) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+        }
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs == null) {
+          throw new RuntimeException("segment should have deletions, but liveDocs is null");
+        } else {
+          int numLive = 0;
+          for (int j = 0; j < liveDocs.length(); j++) {
+            if (liveDocs.get(j)) {
+              numLive++;
             }
           }
-          
-          segInfoStat.numDeleted = info.info.getDocCount() - numDocs;
-          msg("OK [" + (segInfoStat.numDeleted) + " deleted docs]");
-        } else {
-          if (info.getDelCount() != 0) {
-            throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+          if (numLive != numDocs) {
+            throw new RuntimeException("liveDocs count mismatch: info=" + numDocs + ", vs bits=" + numLive);
           }
-          Bits liveDocs = reader.getLiveDocs();
-          if (liveDocs != null) {
-            // its ok for it to be non-null here, as long as none are set right?
-            for (int j = 0; j < liveDocs.length(); j++) {
-              if (!liveDocs.get(j)) {
-                throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
-              }
+        }
+        
+        segInfoStat.numDeleted = info.info.getDocCount() - numDocs;
+        msg("OK [" + (segInfoStat.numDeleted) + " deleted docs]");
+      } else {
+        if (info.getDelCount() != 0) {
+          throw new RuntimeException("delete count mismatch: info=" + info.getDelCount() + " vs reader=" + (info.info.getDocCount() - numDocs));
+        }
+        Bits liveDocs = reader.getLiveDocs();
+        if (liveDocs != null) {
+          // its ok for it to be non-null here, as long as none are set right?
+          for (int j = 0; j < liveDocs.length(); j++) {
+            if (!liveDocs.get(j)) {
+              throw new RuntimeException("liveDocs mismatch: info says no deletions but doc " + j + " is deleted.");
             }
           }
-          msg("OK");
-        }
-        if (reader.maxDoc() != info.info.getDocCount()) {
-          throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.info.getDocCount());
         }
+        msg("OK");
+      }
+      if (reader.maxDoc() != info.info.getDocCount()) {
+        throw new RuntimeException("SegmentReader.maxDoc() " + reader.maxDoc() + " != SegmentInfos.docCount " + info.info.getDocCount());
+      }
 
-        // Test getFieldInfos()
-        if (infoStream != null) {
-          infoStream.print("    test: fields..............");
-        }         
-        FieldInfos fieldInfos = reader.getFieldInfos();
-        msg("OK [" + fieldInfos.size() + " fields]");
-        segInfoStat.numFields = fieldInfos.size();
-        
-        // Test Field Norms
-        segInfoStat.fieldNormStatus = testFieldNorms(fieldInfos, reader);
-
-        // Test the Term Index
-        segInfoStat.termIndexStatus = testPostings(fieldInfos, reader);
+      // Test getFieldInfos()
+      if (infoStream != null) {
+        infoStream.print("    test: fields..............");
+      }         
+      FieldInfos fieldInfos = reader.getFieldInfos();
+      msg("OK [" + fieldInfos.size() + " fields]");
+      segInfoStat.numFields = fieldInfos.size();
+      
+      // Test Field Norms
+      segInfoStat.fieldNormStatus = testFieldNorms(fieldInfos, reader);
 
-        // Test Stored Fields
-        segInfoStat.storedFieldStatus = testStoredFields(info, reader, nf);
+      // Test the Term Index
+      segInfoStat.termIndexStatus = testPostings(fieldInfos, reader);
 
-        // Test Term Vectors
-        segInfoStat.termVectorStatus = testTermVectors(fieldInfos, info, reader, nf);
-        
-        segInfoStat.docValuesStatus = testDocValues(info, fieldInfos, reader);
-
-        // Rethrow the first exception we encountered
-        //  This will cause stats for failed segments to be incremented properly
-        if (segInfoStat.fieldNormStatus.error != null) {
-          throw new RuntimeException("Field Norm test failed");
-        } else if (segInfoStat.termIndexStatus.error != null) {
-          throw new RuntimeException("Term Index test failed");
-        } else if (segInfoStat.storedFieldStatus.error != null) {
-          throw new RuntimeException("Stored Field test failed");
-        } else if (segInfoStat.termVectorStatus.error != null) {
-          throw new RuntimeException("Term Vector test failed");
-        }  else if (segInfoStat.docValuesStatus.error != null) {
-          throw new RuntimeException("DocValues test failed");
-        }
+      // Test Stored Fields
+      segInfoStat.storedFieldStatus = testStoredFields(info, reader, nf);
 
-        msg("");
-
-      } catch (Throwable t) {
-        msg("FAILED");
-        String comment;
-        comment = "fixIndex() would remove reference to this segment";
-        msg("    WARNING: " + comment + "; full exception:");
-        if (infoStream != null)
-          t.printStackTrace(infoStream);
-        msg("");
-        result.totLoseDocCount += toLoseDocCount;
-        result.numBadSegments++;
-        continue;
-      } finally {
-        if (reader != null)
-          reader.close();
+      // Test Term Vectors
+      segInfoStat.termVectorStatus = testTermVectors(fieldInfos, info, reader, nf);
+      
+      segInfoStat.docValuesStatus = testDocValues(info, fieldInfos, reader);
+
+      // Rethrow the first exception we encountered
+      //  This will cause stats for failed segments to be incremented properly
+      if (segInfoStat.fieldNormStatus.error != null) {
+        throw new RuntimeException("Field Norm test failed");
+      } else if (segInfoStat.termIndexStatus.error != null) {
+        throw new RuntimeException("Term Index test failed");
+      } else if (segInfoStat.storedFieldStatus.error != null) {
+        throw new RuntimeException("Stored Field test failed");
+      } else if (segInfoStat.termVectorStatus.error != null) {
+        throw new RuntimeException("Term Vector test failed");
+      }  else if (segInfoStat.docValuesStatus.error != null) {
+        throw new RuntimeException("DocValues test failed");
       }
 
+      msg("");
+      return -1;
+    } catch (Throwable t) {
+      msg("FAILED");
+      String comment;
+      comment = "fixIndex() would remove reference to this segment";
+      msg("    WARNING: " + comment + "; full exception:");
+      if (infoStream != null)
+        t.printStackTrace(infoStream);
+      msg("");
+      return toLoseDocCount;
+    } finally {
+      if (reader != null)
+        reader.close();
+    }
+  }
+
+  private void addSegmentResult(Status result, SegmentInfoPerCommit info, int toLoseDocCount) {
+    if (toLoseDocCount == -1) {
       // Keeper
       result.newSegments.add(info.clone());
+    } else {
+      result.totLoseDocCount += toLoseDocCount;
+      result.numBadSegments++;
     }
+  }
 
-    if (0 == result.numBadSegments) {
-      result.clean = true;
-    } else
-      msg("WARNING: " + result.numBadSegments + " broken segments (containing " + result.totLoseDocCount + " documents) detected");
-
-    if ( ! (result.validCounter = (result.maxSegmentName < sis.counter))) {
-      result.clean = false;
-      result.newSegments.counter = result.maxSegmentName + 1; 
-      msg("ERROR: Next segment name counter " + sis.counter + " is not greater than max segment name " + result.maxSegmentName);
+  /** Checks the given segments with {@link #setThreadCount threadCount}
+   *  threads. Every segment is checked by its own {@link CheckIndex}, which
+   *  prints to a buffer so that messages are printed in segment order. */
+  private void checkSegmentsConcurrently(final SegmentInfos sis, List<Integer> toCheck, Status result) throws IOException {
+    final int numSegments = sis.size();
+    final ExecutorService executor = Executors.newFixedThreadPool(threadCount, new NamedThreadFactory("CheckIndex"));
+    try {
+      final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      final List<ByteArrayOutputStream> outputs = new ArrayList<ByteArrayOutputStream>();
+      for (final int i : toCheck) {
+        final Status.SegmentInfoStatus segInfoStat = new Status.SegmentInfoStatus();
+        result.segmentInfos.add(segInfoStat);
+        final CheckIndex checker = new CheckIndex(dir);
+        checker.setCrossCheckTermVectors(crossCheckTermVectors);
+        checker.setChecksumsOnly(checksumsOnly);
+        if (infoStream != null) {
+          final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+          checker.setInfoStream(new PrintStream(bytes, true, "UTF-8"), verbose);
+          outputs.add(bytes);
+        } else {
+          outputs.add(null);
+        }
+        futures.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() throws IOException {
+            return checker.checkSegment(sis.info(i), i, numSegments, segInfoStat, NumberFormat.getInstance(Locale.ROOT));
+          }
+        }));
+      }
+      for (int j = 0; j < futures.size(); j++) {
+        final int toLoseDocCount;
+        try {
+          toLoseDocCount = futures.get(j).get();
+        } catch (InterruptedException ie) {
+          throw new ThreadInterruptedException(ie);
+        } catch (ExecutionException ee) {
+          // checkSegment catches Throwable, only closing the reader may fail
+          final Throwable cause = ee.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+        if (outputs.get(j) != null) {
+          infoStream.print(outputs.get(j).toString("UTF-8"));
+        }
+        addSegmentResult(result, sis.info(toCheck.get(j)), toLoseDocCount);
+      }
+    } finally {
+      executor.shutdownNow();
     }
-    
-    if (result.clean) {
-      msg("No problems were detected with this index.\n");
+  }
+
+  /**
+   * Test checksums of the segment files.
+   */
+  private Status.ChecksumStatus testChecksums(SegmentInfoPerCommit info) {
+    final Status.ChecksumStatus status = new Status.ChecksumStatus();
+
+    try {
+      if (infoStream != null) {
+        infoStream.print("    test: checksums...........");
+      }
+      final Map<String,Long> checksums = SegmentChecksums.recorded(info.info);
+      if (checksums.isEmpty()) {
+        status.missing = true;
+        msg("OK [no checksums recorded]");
+        return status;
+      }
+      final Set<String> files = info.info.files();
+      final byte[] buffer = new byte[16384];
+      for (Map.Entry<String,Long> entry : checksums.entrySet()) {
+        final String file = entry.getKey();
+        if (!files.contains(file)) {
+          throw new RuntimeException("checksum recorded for file " + file + " which is not a file of the segment");
+        }
+        final long checksum = SegmentChecksums.checksum(info.info.dir, file, buffer);
+        if (checksum != entry.getValue().longValue()) {
+          throw new RuntimeException("checksum mismatch for file " + file + ": expected=" + entry.getValue() + " actual=" + checksum);
+        }
+        status.numFiles++;
+      }
+      msg("OK [" + status.numFiles + " files]");
+    } catch (Throwable e) {
+      msg("ERROR [" + String.valueOf(e.getMessage()) + "]");
+      status.error = e;
+      if (infoStream != null) {
+        e.printStackTrace(infoStream);
+      }
     }
 
-    return result;
+    return status;
   }
 
   /**
@@ -1639,6 +1872,15 @@ public class CheckIndex {
     <ul>
     <li><code>-fix</code>: actually write a new segments_N file, removing any problematic segments
 
+    <li><code>-checksumsOnly</code>: only verify the checksums of the
+    segments that have them, see {@link #setChecksumsOnly}.
+
+    <li><code>-threads N</code>: check N segments concurrently.
+
+    <li><code>-since segments_N</code>: only check the segments that
+    changed since the given commit, see {@link #setSinceCommit}.  You
+    can't use this with the -fix option.
+
     <li><code>-segment X</code>: only check the specified
     segment(s).  This can be specified multiple times,
     to check more than one segment, eg <code>-segment _2
@@ -1667,6 +1909,9 @@ public class CheckIndex {
     boolean doCrossCheckTermVectors = false;
     Codec codec = Codec.getDefault(); // only used when fixing
     boolean verbose = false;
+    boolean checksumsOnly = false;
+    int threadCount = 1;
+    String sinceSegmentsFile = null;
     List<String> onlySegments = new ArrayList<String>();
     String indexPath = null;
     String dirImpl = null;
@@ -1686,6 +1931,22 @@ public class CheckIndex {
         codec = Codec.forName(args[i]);
       } else if (arg.equals("-verbose")) {
         verbose = true;
+      } else if ("-checksumsOnly".equals(arg)) {
+        checksumsOnly = true;
+      } else if ("-threads".equals(arg)) {
+        if (i == args.length-1) {
+          System.out.println("ERROR: missing value for -threads option");
+          System.exit(1);
+        }
+        i++;
+        threadCount = Integer.parseInt(args[i]);
+      } else if ("-since".equals(arg)) {
+        if (i == args.length-1) {
+          System.out.println("ERROR: missing segments file for -since option");
+          System.exit(1);
+        }
+        i++;
+        sinceSegmentsFile = args[i];
       } else if (arg.equals("-segment")) {
         if (i == args.length-1) {
           System.out.println("ERROR: missing name for -segment option");
@@ -1712,12 +1973,16 @@ public class CheckIndex {
 
     if (indexPath == null) {
       System.out.println("\nERROR: index path not specified");
-      System.out.println("\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-segment X] [-segment Y] [-dir-impl X]\n" +
+      System.out.println("\nUsage: java org.apache.lucene.index.CheckIndex pathToIndex [-fix] [-crossCheckTermVectors] [-checksumsOnly] [-threads N] [-since segments_N] [-segment X] [-segment Y] [-dir-impl X]\n" +
                          "\n" +
                          "  -fix: actually write a new segments_N file, removing any problematic segments\n" +
                          "  -crossCheckTermVectors: verifies that term vectors match postings; THIS IS VERY SLOW!\n" +
                          "  -codec X: when fixing, codec to write the new segments_N file with\n" +
                          "  -verbose: print additional details\n" +
+                         "  -checksumsOnly: only verify the checksums of segments that have them\n" +
+                         "  -threads N: check N segments concurrently\n" +
+                         "  -since segments_N: only check segments changed since this commit.\n" +
+                         "              You can't use this with the -fix option\n" +
                          "  -segment X: only check the specified segments.  This can be specified multiple\n" + 
                          "              times, to check more than one segment, eg '-segment _2 -segment _a'.\n" +
                          "              You can't use this with the -fix option\n" +
@@ -1750,6 +2015,11 @@ public class CheckIndex {
       System.exit(1);
     }
 
+    if (sinceSegmentsFile != null && doFix) {
+      System.out.println("ERROR: cannot specify both -fix and -since");
+      System.exit(1);
+    }
+
     System.out.println("\nOpening index @ " + indexPath + "\n");
     Directory dir = null;
     try {
@@ -1766,8 +2036,24 @@ public class CheckIndex {
 
     CheckIndex checker = new CheckIndex(dir);
     checker.setCrossCheckTermVectors(doCrossCheckTermVectors);
+    checker.setChecksumsOnly(checksumsOnly);
+    checker.setThreadCount(threadCount);
     checker.setInfoStream(System.out, verbose);
 
+    if (sinceSegmentsFile != null) {
+      IndexCommit sinceCommit = null;
+      for (IndexCommit commit : DirectoryReader.listCommits(dir)) {
+        if (commit.getSegmentsFileName().equals(sinceSegmentsFile)) {
+          sinceCommit = commit;
+        }
+      }
+      if (sinceCommit == null) {
+        System.out.println("ERROR: commit \"" + sinceSegmentsFile + "\" does not exist");
+        System.exit(1);
+      }
+      checker.setSinceCommit(sinceCommit);
+    }
+
     Status result = checker.checkIndex(onlySegments);
     if (result.missingSegments) {
       System.exit(1);
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.concurrent.Executor;
 
 /** A {@link MergeScheduler} that runs each merge using a
  *  separate thread.
@@ -42,6 +43,13 @@ import java.util.Comparator;
  *  requested then this class will forcefully throttle the
  *  incoming threads by pausing until one more more merges
  *  complete.</p>
+ *
+ *  <p>Optionally, with {@link #enableAutoIOThrottle}, the
+ *  reads and writes of large merges are throttled through
+ *  their {@link MergePolicy.OneMerge#rateLimiter}, at a rate
+ *  that adapts to the merge backlog and to an application
+ *  provided {@link IOThrottleFeedback}, such as {@link
+ *  SearchLatencyFeedback}.</p>
  */ 
 public class ConcurrentMergeScheduler extends MergeScheduler {
 
@@ -74,6 +82,29 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
    *  to name them). */
   protected int mergeThreadCount;
 
+  /** Floor for the auto-throttled IO rate. */
+  private static final double MIN_MERGE_MB_PER_SEC = 5.0;
+
+  /** Ceiling for the auto-throttled IO rate. */
+  private static final double MAX_MERGE_MB_PER_SEC = 10240.0;
+
+  /** Initial auto-throttled IO rate. */
+  private static final double START_MB_PER_SEC = 20.0;
+
+  /** Merges smaller than this are never throttled and do
+   *  not count towards the backlog. */
+  private static final double MIN_BIG_MERGE_MB = 50.0;
+
+  private boolean doAutoIOThrottle;
+
+  // Rate derived from the merge backlog, before the
+  // feedback is applied:
+  private double targetMBPerSec = START_MB_PER_SEC;
+
+  private IOThrottleFeedback ioThrottleFeedback;
+
+  private volatile Executor intraMergeExecutor;
+
   /** Sole constructor, with all settings set to default
    *  values. */
   public ConcurrentMergeScheduler() {
@@ -120,6 +151,133 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     return maxMergeCount;
   }
 
+  /** Sets the {@link Executor} that each merge uses to
+   *  write the independent parts of the merged segment
+   *  concurrently, or null (the default) to write them in
+   *  the merge thread only.  A merge uses at most 4 threads
+   *  of the executor besides its own, and waits for them
+   *  before it completes.  This scheduler never shuts the
+   *  executor down. */
+  public void setIntraMergeExecutor(Executor executor) {
+    intraMergeExecutor = executor;
+  }
+
+  @Override
+  public Executor getIntraMergeExecutor() {
+    return intraMergeExecutor;
+  }
+
+  /** Turns on auto IO throttling: the reads and writes of
+   *  merges bigger than 50 MB are paused so that their rate
+   *  stays under a target that goes up when merges are
+   *  backlogged (more big merges than {@link
+   *  #getMaxThreadCount} threads) and down otherwise, and
+   *  that is further divided by the {@link
+   *  IOThrottleFeedback#getPressure pressure} of the {@link
+   *  #setIOThrottleFeedback feedback}, if any.  Forced merges
+   *  are never throttled, and neither are merges that were
+   *  already running when this method is called. */
+  public synchronized void enableAutoIOThrottle() {
+    doAutoIOThrottle = true;
+    targetMBPerSec = START_MB_PER_SEC;
+    updateMergeThreads();
+  }
+
+  /** Turns off auto IO throttling; running merges are no
+   *  longer throttled. */
+  public synchronized void disableAutoIOThrottle() {
+    doAutoIOThrottle = false;
+    for (MergeThread mergeThread : mergeThreads) {
+      final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+      if (merge != null) {
+        merge.rateLimiter.setMbPerSec(Double.POSITIVE_INFINITY);
+      }
+    }
+  }
+
+  /** Returns true if auto IO throttling is enabled.
+   *
+   * @see #enableAutoIOThrottle() */
+  public synchronized boolean getAutoIOThrottle() {
+    return doAutoIOThrottle;
+  }
+
+  /** Returns the rate, in MB/sec, that big merges are
+   *  currently throttled to, or {@link
+   *  Double#POSITIVE_INFINITY} if auto IO throttling is
+   *  disabled. */
+  public synchronized double getIORateLimitMBPerSec() {
+    if (doAutoIOThrottle) {
+      return computeIORateLimitMBPerSec();
+    } else {
+      return Double.POSITIVE_INFINITY;
+    }
+  }
+
+  /** Sets the feedback that auto IO throttling takes into
+   *  account on top of the merge backlog, or null to only
+   *  consider the backlog.
+   *
+   * @see #enableAutoIOThrottle() */
+  public synchronized void setIOThrottleFeedback(IOThrottleFeedback feedback) {
+    ioThrottleFeedback = feedback;
+    updateMergeThreads();
+  }
+
+  /** Returns the feedback set by {@link
+   *  #setIOThrottleFeedback}, or null. */
+  public synchronized IOThrottleFeedback getIOThrottleFeedback() {
+    return ioThrottleFeedback;
+  }
+
+  /** Re-applies the IO throttle to running merges.  The
+   *  throttle is updated whenever merges start or finish and
+   *  whenever {@link IndexWriter} asks for merges; call this
+   *  to apply a change of the feedback right away. */
+  public synchronized void updateIOThrottle() {
+    updateMergeThreads();
+  }
+
+  private double computeIORateLimitMBPerSec() {
+    double mbPerSec = targetMBPerSec;
+    if (ioThrottleFeedback != null) {
+      final double pressure = ioThrottleFeedback.getPressure();
+      if (pressure > 0 && !Double.isInfinite(pressure)) {
+        mbPerSec /= pressure;
+      }
+    }
+    return Math.max(MIN_MERGE_MB_PER_SEC, Math.min(MAX_MERGE_MB_PER_SEC, mbPerSec));
+  }
+
+  private static boolean isBigMerge(MergePolicy.OneMerge merge) {
+    return merge.estimatedMergeBytes/1024./1024. >= MIN_BIG_MERGE_MB;
+  }
+
+  /** Adjusts the backlog-derived target rate when a new
+   *  merge starts. */
+  private synchronized void updateTargetMBPerSec(MergePolicy.OneMerge newMerge) {
+    if (!doAutoIOThrottle || newMerge.maxNumSegments != -1 || !isBigMerge(newMerge)) {
+      return;
+    }
+    int bigMergeCount = 0;
+    for (MergeThread mergeThread : mergeThreads) {
+      final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+      if (mergeThread.isAlive() && merge != null && merge.maxNumSegments == -1 && isBigMerge(merge)) {
+        bigMergeCount++;
+      }
+    }
+    if (bigMergeCount > maxThreadCount) {
+      // big merges are queuing up: go faster
+      targetMBPerSec = Math.min(MAX_MERGE_MB_PER_SEC, targetMBPerSec*1.20);
+    } else {
+      // we are keeping up: go slower
+      targetMBPerSec = Math.max(MIN_MERGE_MB_PER_SEC, targetMBPerSec/1.10);
+    }
+    if (verbose()) {
+      message("io throttle: " + bigMergeCount + " big merges running; target rate is now " + targetMBPerSec + " MB/sec");
+    }
+  }
+
   /** Return the priority that merge threads run at.  By
    *  default the priority is 1 plus the priority of (ie,
    *  slightly higher priority than) the first thread that
@@ -183,6 +341,28 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
 
     // Sort the merge threads in descending order.
     CollectionUtil.mergeSort(activeMerges, compareByMergeDocCount);
+
+    if (doAutoIOThrottle) {
+      final double mbPerSec = computeIORateLimitMBPerSec();
+      for (MergeThread mergeThread : activeMerges) {
+        final MergePolicy.OneMerge merge = mergeThread.getCurrentMerge();
+        if (merge == null) {
+          continue;
+        }
+        final double mergeMBPerSec;
+        if (merge.maxNumSegments != -1 || !isBigMerge(merge)) {
+          mergeMBPerSec = Double.POSITIVE_INFINITY;
+        } else {
+          mergeMBPerSec = mbPerSec;
+        }
+        if (merge.rateLimiter.getMbPerSec() != mergeMBPerSec) {
+          if (verbose()) {
+            message("set io rate of merge thread " + mergeThread.getName() + " to " + mergeMBPerSec + " MB/sec");
+          }
+          merge.rateLimiter.setMbPerSec(mergeMBPerSec);
+        }
+      }
+    }
     
     int pri = mergeThreadPriority;
     final int activeMergeCount = activeMerges.size();
@@ -323,6 +503,13 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
       message("now merge");
       message("  index: " + writer.segString());
     }
+
+    synchronized(this) {
+      if (doAutoIOThrottle) {
+        // pick up any change of the feedback
+        updateMergeThreads();
+      }
+    }
     
     // Iterate, pulling from the IndexWriter's queue of
     // pending merges, until it's empty:
@@ -376,6 +563,11 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           // merge:
           final MergeThread merger = getMergeThread(writer, merge);
           mergeThreads.add(merger);
+          if (doAutoIOThrottle && merge.maxNumSegments == -1 && isBigMerge(merge)) {
+            // IndexWriter only throttles merges whose rate
+            // is limited by the time they start:
+            merge.rateLimiter.setMbPerSec(computeIORateLimitMBPerSec());
+          }
           if (verbose()) {
             message("    launch new thread [" + merger.getName() + "]");
           }
@@ -385,6 +577,7 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           // Must call this after starting the thread else
           // the new thread is removed from mergeThreads
           // (since it's not alive yet):
+          updateTargetMBPerSec(merge);
           updateMergeThreads();
 
           success = true;
@@ -483,7 +676,10 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
           merge = tWriter.getNextMerge();
           if (merge != null) {
             tWriter.mergeInit(merge);
-            updateMergeThreads();
+            synchronized(ConcurrentMergeScheduler.this) {
+              updateTargetMBPerSec(merge);
+              updateMergeThreads();
+            }
             if (verbose()) {
               message("  merge thread: do another merge " + tWriter.segString(merge.segments));
             }
@@ -518,6 +714,83 @@ public class ConcurrentMergeScheduler extends MergeScheduler {
     }
   }
 
+  /** A signal that {@link ConcurrentMergeScheduler} uses,
+   *  in auto IO throttle mode, to slow down or speed up
+   *  merges.
+   *
+   * @see ConcurrentMergeScheduler#setIOThrottleFeedback
+   * @lucene.experimental */
+  public static abstract class IOThrottleFeedback {
+
+    /** Sole constructor. (For invocation by subclass
+     *  constructors, typically implicit.) */
+    protected IOThrottleFeedback() {
+    }
+
+    /** Returns the current pressure: the backlog-derived
+     *  merge rate is divided by this value, so values
+     *  greater than 1 slow merges down and values less than
+     *  1 let them go faster.  Return 1 to leave the rate
+     *  unchanged.  This is called often, from the threads
+     *  that index and merge, so it should be cheap. */
+    public abstract double getPressure();
+  }
+
+  /** An {@link IOThrottleFeedback} that slows merges down
+   *  when the searches of the application are slower than a
+   *  target latency.  The application reports the latency
+   *  of its searches with {@link #recordLatency}; the
+   *  pressure is the ratio of the exponentially decayed
+   *  average latency to the target.
+   *
+   * @lucene.experimental */
+  public static class SearchLatencyFeedback extends IOThrottleFeedback {
+
+    // weight of a new sample in the decayed average
+    private static final double ALPHA = 0.05;
+
+    private final double targetLatencyMS;
+    private double averageLatencyMS = -1;
+
+    /** Creates a feedback that aims for searches taking
+     *  {@code targetLatencyMS} milliseconds on average. */
+    public SearchLatencyFeedback(double targetLatencyMS) {
+      if (!(targetLatencyMS > 0)) {
+        throw new IllegalArgumentException("targetLatencyMS must be > 0 (got " + targetLatencyMS + ")");
+      }
+      this.targetLatencyMS = targetLatencyMS;
+    }
+
+    /** Records the latency, in nanoseconds, of a search. */
+    public synchronized void recordLatency(long latencyNS) {
+      final double latencyMS = latencyNS / 1000000.0;
+      if (averageLatencyMS < 0) {
+        averageLatencyMS = latencyMS;
+      } else {
+        averageLatencyMS += ALPHA * (latencyMS - averageLatencyMS);
+      }
+    }
+
+    /** Returns the decayed average search latency in
+     *  milliseconds, or -1 if no search was recorded yet. */
+    public synchronized double getAverageLatencyMS() {
+      return averageLatencyMS;
+    }
+
+    /** Returns the target search latency in milliseconds. */
+    public double getTargetLatencyMS() {
+      return targetLatencyMS;
+    }
+
+    @Override
+    public synchronized double getPressure() {
+      if (averageLatencyMS < 0) {
+        return 1.0;
+      }
+      return averageLatencyMS / targetLatencyMS;
+    }
+  }
+
   /** Called when an exception is hit in a background merge
    *  thread */
   protected void handleMergeException(Throwable exc) {
@@ -35,6 +35,7 @@ import org.apache.lucene.document.SortedBytesDocValuesField; // javadocs
 import org.apache.lucene.document.StraightBytesDocValuesField; // javadocs
 import org.apache.lucene.store.DataOutput;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts;
 
 /**
@@ -136,6 +137,17 @@ public abstract class DocValues implements Closeable {
    */
   public abstract Source getDirectSource() throws IOException;
 
+  /**
+   * Returns an estimate of the heap used by the {@link Source} cached through
+   * {@link #getSource()}, or <code>0</code> if none has been loaded. Sources
+   * obtained from {@link #getDirectSource()} are not accounted for.
+   * 
+   * @see Source#ramBytesUsed()
+   */
+  public long ramBytesUsed() {
+    return cache.ramBytesUsed(this);
+  }
+
   /**
    * Returns the {@link Type} of this {@link DocValues} instance
    */
@@ -272,6 +284,16 @@ public abstract class DocValues implements Closeable {
     public SortedSource asSortedSource() {
       throw new UnsupportedOperationException("asSortedSource is not supported");
     }
+
+    /**
+     * Returns an estimate of the heap used by this {@link Source}. Sources that
+     * read their values from disk return <code>0</code>. The default
+     * implementation measures the array returned by {@link #getArray()}, if
+     * any.
+     */
+    public long ramBytesUsed() {
+      return hasArray() ? RamUsageEstimator.sizeOf(getArray()) : 0;
+    }
   }
 
   /**
@@ -320,6 +342,11 @@ public abstract class DocValues implements Closeable {
      * Returns the PackedInts.Reader impl that maps document to ord.
      */
     public abstract PackedInts.Reader getDocToOrd();
+
+    @Override
+    public long ramBytesUsed() {
+      return super.ramBytesUsed() + (hasPackedDocToOrd() ? getDocToOrd().ramBytesUsed() : 0);
+    }
     
     /**
      * Returns the comparator used to order the BytesRefs.
@@ -728,6 +755,15 @@ public abstract class DocValues implements Closeable {
      */
     public abstract void invalidate(DocValues values);
 
+    /**
+     * Returns an estimate of the heap used by the {@link Source} instances
+     * cached for the given {@link DocValues}. This implementation returns
+     * <code>0</code>.
+     */
+    public long ramBytesUsed(DocValues values) {
+      return 0;
+    }
+
     /**
      * Atomically closes the cache and frees all resources.
      */
@@ -759,6 +795,11 @@ public abstract class DocValues implements Closeable {
       public synchronized void invalidate(DocValues values) {
         ref = null;
       }
+
+      @Override
+      public synchronized long ramBytesUsed(DocValues values) {
+        return ref == null ? 0 : ref.ramBytesUsed();
+      }
     }
   }
 }
@@ -44,6 +44,46 @@ public abstract class DocsEnum extends DocIdSetIterator {
    *  nor after {@link #nextDoc} returns NO_MORE_DOCS. 
    **/
   public abstract int freq() throws IOException;
+
+  /** Returns an upper bound of {@link #freq} over all documents of this
+   *  enum, or <code>-1</code> if unknown (the default). Scorers use it to
+   *  bound the score of a term without iterating its postings.
+   *
+   * @lucene.experimental */
+  public int maxFreq() {
+    return -1;
+  }
+
+  /** Bulk read: fills <code>docs</code> with the next document IDs and, if
+   *  <code>freqs</code> is not null, <code>freqs</code> with their term
+   *  frequencies. Returns the number of documents read, which is
+   *  <code>0</code> only once the enum is exhausted. After this method
+   *  returns, {@link #docID} is either the last document that has been read
+   *  or {@link #NO_MORE_DOCS}. <code>docs</code> must not be empty and
+   *  <code>freqs</code>, if not null, must be at least as large as
+   *  <code>docs</code>.
+   *  <p>
+   *  The default implementation calls {@link #nextDoc} and {@link #freq}
+   *  for every document, implementations that decode postings in blocks
+   *  should override it.
+   *
+   * @lucene.experimental */
+  public int read(int[] docs, int[] freqs) throws IOException {
+    assert freqs == null || freqs.length >= docs.length;
+    int count = 0;
+    while (count < docs.length) {
+      final int doc = nextDoc();
+      if (doc == NO_MORE_DOCS) {
+        break;
+      }
+      docs[count] = doc;
+      if (freqs != null) {
+        freqs[count] = freq();
+      }
+      ++count;
+    }
+    return count;
+  }
   
   /** Returns the related attributes. */
   public AttributeSource attributes() {
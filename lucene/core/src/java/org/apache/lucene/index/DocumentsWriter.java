@@ -20,7 +20,13 @@ package org.apache.lucene.index;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.codecs.Codec;
@@ -33,7 +39,13 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.similarities.Similarity;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.ByteBlockPool;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.IntBlockPool;
+import org.apache.lucene.util.NamedThreadFactory;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.RecyclingByteBlockAllocator;
+import org.apache.lucene.util.RecyclingIntBlockAllocator;
 
 /**
  * This class accepts multiple added documents and directly
@@ -76,6 +88,13 @@ import org.apache.lucene.util.InfoStream;
  * means you can call flush with a given thread even while
  * other threads are actively adding/deleting documents.
  *
+ * Segments which are pending for flush are flushed by the
+ * indexing thread that picked them up, unless {@link
+ * IndexWriterConfig#setMaxFlushThreads(int)} is set, in
+ * which case they are handed over to a pool of flush
+ * threads and indexing threads only help flushing while
+ * indexing is stalled.
+ *
  *
  * Exceptions:
  *
@@ -131,6 +150,16 @@ final class DocumentsWriter {
   final DocumentsWriterPerThreadPool perThreadPool;
   final FlushPolicy flushPolicy;
   final DocumentsWriterFlushControl flushControl;
+
+  // postings blocks shared by all DWPTs, or null if each DWPT allocates its own
+  final RecyclingByteBlockAllocator byteBlockRecycler;
+  final RecyclingIntBlockAllocator intBlockRecycler;
+
+  // flushes segments in the background, or null if indexing threads flush
+  private final ThreadPoolExecutor flushExecutor;
+  // set by background flushes, reported by the next full flush
+  private final AtomicBoolean backgroundFlushed = new AtomicBoolean(false);
+  private final AtomicReference<Throwable> flushException = new AtomicReference<Throwable>();
   
   final Codec codec;
   DocumentsWriter(Codec codec, LiveIndexWriterConfig config, Directory directory, IndexWriter writer, FieldNumbers globalFieldNumbers,
@@ -142,11 +171,33 @@ final class DocumentsWriter {
     this.similarity = config.getSimilarity();
     this.perThreadPool = config.getIndexerThreadPool();
     this.chain = config.getIndexingChain();
+    final long poolBytes = config.getIndexingBufferPoolMB() * 1024L * 1024L;
+    if (poolBytes > 0) {
+      // postings consume far more byte blocks than int blocks
+      final long intPoolBytes = poolBytes / 4;
+      final int intBlockBytes = IntBlockPool.INT_BLOCK_SIZE * RamUsageEstimator.NUM_BYTES_INT;
+      byteBlockRecycler = new RecyclingByteBlockAllocator(ByteBlockPool.BYTE_BLOCK_SIZE,
+          (int) Math.min(Integer.MAX_VALUE, (poolBytes - intPoolBytes) / ByteBlockPool.BYTE_BLOCK_SIZE));
+      intBlockRecycler = new RecyclingIntBlockAllocator(IntBlockPool.INT_BLOCK_SIZE,
+          (int) Math.min(Integer.MAX_VALUE, intPoolBytes / intBlockBytes));
+    } else {
+      byteBlockRecycler = null;
+      intBlockRecycler = null;
+    }
     this.perThreadPool.initialize(this, globalFieldNumbers, config);
     flushPolicy = config.getFlushPolicy();
     assert flushPolicy != null;
     flushPolicy.init(this);
     flushControl = new DocumentsWriterFlushControl(this, config);
+    final int maxFlushThreads = config.getMaxFlushThreads();
+    if (maxFlushThreads > 0) {
+      flushExecutor = new ThreadPoolExecutor(maxFlushThreads, maxFlushThreads,
+          1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new NamedThreadFactory("IndexWriter-flush"));
+      flushExecutor.allowCoreThreadTimeOut(true);
+    } else {
+      flushExecutor = null;
+    }
   }
 
   synchronized void deleteQueries(final Query... queries) throws IOException {
@@ -271,12 +322,29 @@ final class DocumentsWriter {
   void close() {
     closed = true;
     flushControl.setClosed();
+    if (flushExecutor != null) {
+      // pending background flushes still run; flushes started from now on
+      // are done by the calling thread
+      flushExecutor.shutdown();
+    }
+  }
+
+  /** Returns <code>true</code> if an indexing thread must keep helping out
+   *  flushing before it may index: as long as DWPTs are queued if indexing
+   *  threads flush themselves, otherwise as long as indexing is stalled
+   *  since flush threads would not free memory any faster. */
+  private boolean mustHelpFlushing() {
+    if (flushExecutor == null) {
+      return flushControl.numQueuedFlushes() != 0;
+    }
+    return flushControl.anyStalledThreads();
   }
 
   private boolean preUpdate() throws IOException {
     ensureOpen();
+    rethrowFlushException();
     boolean maybeMerge = false;
-    if (flushControl.anyStalledThreads() || flushControl.numQueuedFlushes() > 0) {
+    if (flushControl.anyStalledThreads() || mustHelpFlushing()) {
       // Help out flushing any queued DWPTs so we can un-stall:
       if (infoStream.isEnabled("DW")) {
         infoStream.message("DW", "DocumentsWriter has queued dwpt; will hijack this thread to flush pending segment(s)");
@@ -296,12 +364,18 @@ final class DocumentsWriter {
         }
         
         flushControl.waitIfStalled(); // block if stalled
-      } while (flushControl.numQueuedFlushes() != 0); // still queued DWPTs try help flushing
+      } while (mustHelpFlushing()); // still queued DWPTs try help flushing
 
       if (infoStream.isEnabled("DW")) {
         infoStream.message("DW", "continue indexing after helping out flushing DocumentsWriter is healthy");
       }
     }
+    if (flushControl.isThrottled()) {
+      if (infoStream.isEnabled("DW")) {
+        infoStream.message("DW", "DocumentsWriter is throttled; pausing");
+      }
+      flushControl.waitIfThrottled(); // slow down if flushing falls behind
+    }
     return maybeMerge;
   }
 
@@ -310,17 +384,77 @@ final class DocumentsWriter {
       applyAllDeletes(deleteQueue);
     }
     if (flushingDWPT != null) {
-      maybeMerge |= doFlush(flushingDWPT);
+      maybeMerge |= flushOrSubmit(flushingDWPT);
     } else {
       final DocumentsWriterPerThread nextPendingFlush = flushControl.nextPendingFlush();
       if (nextPendingFlush != null) {
-        maybeMerge |= doFlush(nextPendingFlush);
+        maybeMerge |= flushOrSubmit(nextPendingFlush);
       }
     }
 
     return maybeMerge;
   }
 
+  /**
+   * Flushes the given DWPT on the current thread, or hands it over to the
+   * flush threads if background flushing is enabled. In the latter case the
+   * DWPT is put into the flush queue, so that the flush threads as well as
+   * stalled indexing threads and full flushes can pick it up.
+   */
+  private boolean flushOrSubmit(DocumentsWriterPerThread flushingDWPT) throws IOException {
+    if (flushExecutor != null) {
+      flushControl.queueFlush(flushingDWPT);
+      try {
+        flushExecutor.execute(backgroundFlush);
+        return false;
+      } catch (RejectedExecutionException ree) {
+        // we are closed: flush on this thread
+        flushingDWPT = flushControl.nextPendingFlush();
+        if (flushingDWPT == null) {
+          return false;
+        }
+      }
+    }
+    return doFlush(flushingDWPT);
+  }
+
+  private final Runnable backgroundFlush = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        final DocumentsWriterPerThread flushingDWPT = flushControl.nextPendingFlush();
+        if (flushingDWPT != null) {
+          // set before flushing so that a full flush waiting for this one reports it
+          backgroundFlushed.set(true);
+          if (doFlush(flushingDWPT)) {
+            indexWriter.maybeMerge();
+          }
+        }
+      } catch (Throwable t) {
+        if (infoStream.isEnabled("DW")) {
+          infoStream.message("DW", "hit exception during background flush: " + t);
+        }
+        flushException.compareAndSet(null, t);
+      }
+    }
+  };
+
+  /** Rethrows the first exception hit by a background flush, if any. */
+  private void rethrowFlushException() throws IOException {
+    if (flushException.get() != null) {
+      final Throwable t = flushException.getAndSet(null);
+      if (t instanceof IOException) {
+        throw (IOException) t;
+      } else if (t instanceof RuntimeException) {
+        throw (RuntimeException) t;
+      } else if (t instanceof Error) {
+        throw (Error) t;
+      } else if (t != null) {
+        throw new RuntimeException(t);
+      }
+    }
+  }
+
   boolean updateDocuments(final Iterable<? extends Iterable<? extends IndexableField>> docs, final Analyzer analyzer,
                           final Term delTerm) throws IOException {
     boolean maybeMerge = preUpdate();
@@ -566,6 +700,7 @@ final class DocumentsWriter {
       }
       // If a concurrent flush is still in flight wait for it
       flushControl.waitForFlush();  
+      rethrowFlushException();
       if (!anythingFlushed && flushingDeleteQueue.anyChanges()) { // apply deletes if we did not flush any document
         if (infoStream.isEnabled("DW")) {
           infoStream.message("DW", Thread.currentThread().getName() + ": flush naked frozen global deletes");
@@ -578,7 +713,8 @@ final class DocumentsWriter {
     } finally {
       assert flushingDeleteQueue == currentFullFlushDelQueue;
     }
-    return anythingFlushed;
+    // also report segments flushed by flush threads since the last full flush
+    return backgroundFlushed.getAndSet(false) | anythingFlushed;
   }
   
   final void finishFullFlush(boolean success) {
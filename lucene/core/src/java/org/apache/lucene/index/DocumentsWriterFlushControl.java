@@ -42,6 +42,9 @@ import org.apache.lucene.util.ThreadInterruptedException;
  */
 final class DocumentsWriterFlushControl  {
 
+  /** Longest pause of a throttled indexing thread, right before stalling. */
+  static final long MAX_THROTTLE_NANOS = 1000000L; // 1 msec
+
   private final long hardMaxBytesPerDWPT;
   private long activeBytes = 0;
   private long flushBytes = 0;
@@ -212,7 +215,21 @@ final class DocumentsWriterFlushControl  {
     final boolean stall = ((activeBytes + flushBytes) > limit)  &&
                           (activeBytes < limit) &&
                           !closed;
-    stallControl.updateStalled(stall);
+    /*
+     * before blocking all threads we throttle them once flushes in flight
+     * push the net bytes above 3/4 of the limit: the closer we get to the
+     * limit the longer each indexing thread pauses.
+     */
+    long throttleNanos = 0;
+    if (!stall && !closed && flushBytes > 0 && activeBytes < limit) {
+      final long softLimit = limit - (limit >>> 2);
+      final long netBytes = activeBytes + flushBytes;
+      if (netBytes > softLimit) {
+        final double overload = (double) (netBytes - softLimit) / (limit - softLimit);
+        throttleNanos = (long) (Math.min(1d, overload) * MAX_THROTTLE_NANOS);
+      }
+    }
+    stallControl.updateStalled(stall, throttleNanos);
   }
   
   public synchronized void waitForFlush() {
@@ -314,6 +331,16 @@ final class DocumentsWriterFlushControl  {
         + ", flushBytes=" + flushBytes + "]";
   }
 
+  /**
+   * Puts a DWPT which is already checked out for flushing into the flush
+   * queue, so that it is flushed by the next thread that calls
+   * {@link #nextPendingFlush()}.
+   */
+  synchronized void queueFlush(DocumentsWriterPerThread dwpt) {
+    assert flushingWriters.containsKey(dwpt) : "DWPT is not checked out for flushing";
+    flushQueue.add(dwpt);
+  }
+
   DocumentsWriterPerThread nextPendingFlush() {
     int numPending;
     boolean fullFlush;
@@ -649,12 +676,45 @@ final class DocumentsWriterFlushControl  {
     stallControl.waitIfStalled();
   }
 
+  /**
+   * This method pauses the calling thread if flushing lags behind indexing
+   * but indexing is not stalled yet.
+   */
+  void waitIfThrottled() {
+    stallControl.waitIfThrottled();
+  }
+
   /**
    * Returns <code>true</code> iff stalled
    */
   boolean anyStalledThreads() {
     return stallControl.anyStalledThreads();
   }
+
+  /**
+   * Returns <code>true</code> iff indexing threads are throttled
+   */
+  boolean isThrottled() {
+    return stallControl.isThrottled();
+  }
+
+  /**
+   * Returns the number of bytes used by the {@link DocumentsWriterPerThread}
+   * of each active {@link ThreadState}, in the order of the thread states.
+   * DWPTs which are pending or flushing are not included since they are
+   * accounted in {@link #flushBytes()}.
+   */
+  synchronized long[] perThreadBytesUsed() {
+    final int limit = perThreadPool.getActiveThreadState();
+    final long[] bytesUsed = new long[limit];
+    for (int i = 0; i < limit; i++) {
+      final ThreadState next = perThreadPool.getThreadState(i);
+      if (!next.flushPending) {
+        bytesUsed[i] = next.bytesUsed;
+      }
+    }
+    return bytesUsed;
+  }
   
   
 }
@@ -35,6 +35,7 @@ import org.apache.lucene.util.ByteBlockPool.DirectTrackingAllocator;
 import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.Counter;
 import org.apache.lucene.util.InfoStream;
+import org.apache.lucene.util.IntBlockPool;
 import org.apache.lucene.util.MutableBits;
 import org.apache.lucene.util.RamUsageEstimator;
 
@@ -185,6 +186,10 @@ class DocumentsWriterPerThread {
   DeleteSlice deleteSlice;
   private final NumberFormat nf = NumberFormat.getInstance(Locale.ROOT);
   final Allocator byteBlockAllocator;
+  final IntBlockPool.Allocator intBlockAllocator;
+  // true if the postings blocks are returned to pools shared across DWPTs
+  // once this DWPT is flushed
+  final boolean recycleBlocks;
 
   
   public DocumentsWriterPerThread(Directory directory, DocumentsWriter parent,
@@ -199,7 +204,15 @@ class DocumentsWriterPerThread {
     this.docState = new DocState(this, infoStream);
     this.docState.similarity = parent.indexWriter.getConfig().getSimilarity();
     bytesUsed = Counter.newCounter();
-    byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+    if (parent.byteBlockRecycler != null) {
+      byteBlockAllocator = new SharedByteBlockAllocator(parent.byteBlockRecycler, bytesUsed);
+      intBlockAllocator = new SharedIntBlockAllocator(parent.intBlockRecycler, bytesUsed);
+      recycleBlocks = true;
+    } else {
+      byteBlockAllocator = new DirectTrackingAllocator(bytesUsed);
+      intBlockAllocator = new IntBlockPool.DirectTrackingAllocator(bytesUsed);
+      recycleBlocks = false;
+    }
     consumer = indexingChain.getChain(this);
     pendingDeletes = new BufferedDeletes();
     initialize();
@@ -552,21 +565,53 @@ class DocumentsWriterPerThread {
    * getTerms/getTermsIndex requires <= 32768 */
   final static int MAX_TERM_LENGTH_UTF8 = BYTE_BLOCK_SIZE-2;
 
-  /* Initial chunks size of the shared int[] blocks used to
-     store postings data */
-  final static int INT_BLOCK_SHIFT = 13;
-  final static int INT_BLOCK_SIZE = 1 << INT_BLOCK_SHIFT;
-  final static int INT_BLOCK_MASK = INT_BLOCK_SIZE - 1;
-
-  /* Allocate another int[] from the shared pool */
-  int[] getIntBlock() {
-    int[] b = new int[INT_BLOCK_SIZE];
-    bytesUsed.addAndGet(INT_BLOCK_SIZE*RamUsageEstimator.NUM_BYTES_INT);
-    return b;
+  /** Byte block allocator that takes blocks from, and recycles them into, an
+   *  allocator shared by all DWPTs, while tracking the RAM used by this DWPT */
+  private static final class SharedByteBlockAllocator extends Allocator {
+    private final Allocator shared;
+    private final Counter bytesUsed;
+
+    SharedByteBlockAllocator(Allocator shared, Counter bytesUsed) {
+      super(BYTE_BLOCK_SIZE);
+      this.shared = shared;
+      this.bytesUsed = bytesUsed;
+    }
+
+    @Override
+    public byte[] getByteBlock() {
+      bytesUsed.addAndGet(blockSize);
+      return shared.getByteBlock();
+    }
+
+    @Override
+    public void recycleByteBlocks(byte[][] blocks, int start, int end) {
+      bytesUsed.addAndGet(-((end-start) * blockSize));
+      shared.recycleByteBlocks(blocks, start, end);
+    }
   }
-  
-  void recycleIntBlocks(int[][] blocks, int offset, int length) {
-    bytesUsed.addAndGet(-(length *(INT_BLOCK_SIZE*RamUsageEstimator.NUM_BYTES_INT)));
+
+  /** Int block counterpart of {@link SharedByteBlockAllocator} */
+  private static final class SharedIntBlockAllocator extends IntBlockPool.Allocator {
+    private final IntBlockPool.Allocator shared;
+    private final Counter bytesUsed;
+
+    SharedIntBlockAllocator(IntBlockPool.Allocator shared, Counter bytesUsed) {
+      super(IntBlockPool.INT_BLOCK_SIZE);
+      this.shared = shared;
+      this.bytesUsed = bytesUsed;
+    }
+
+    @Override
+    public int[] getIntBlock() {
+      bytesUsed.addAndGet(blockSize * RamUsageEstimator.NUM_BYTES_INT);
+      return shared.getIntBlock();
+    }
+
+    @Override
+    public void recycleIntBlocks(int[][] blocks, int start, int end) {
+      bytesUsed.addAndGet(-((end-start) * blockSize * RamUsageEstimator.NUM_BYTES_INT));
+      shared.recycleIntBlocks(blocks, start, end);
+    }
   }
 
   PerDocWriteState newPerDocWriteState(String segmentSuffix) {
@@ -36,10 +36,17 @@ import org.apache.lucene.util.ThreadInterruptedException;
  * Once flushing catches up and the number of flushing DWPT is equal or lower
  * than the number of active {@link ThreadState}s threads are released and can
  * continue indexing.
+ * <p>
+ * Before indexing threads are blocked, they are throttled: while flushing
+ * lags behind but the stall limit is not reached yet, each indexing thread
+ * pauses for a time which grows with the memory used, so that indexing slows
+ * down gradually instead of coming to a halt at once. A throttled thread
+ * resumes as soon as the pause is over or a flush frees up enough memory.
  */
 final class DocumentsWriterStallControl {
   
   private volatile boolean stalled;
+  private volatile long throttleNanos;
   private int numWaiting; // only with assert
   private boolean wasStalled; // only with assert
   private final Map<Thread, Boolean> waiting = new IdentityHashMap<Thread, Boolean>(); // only with assert
@@ -53,7 +60,18 @@ final class DocumentsWriterStallControl {
    * waiting on {@link #waitIfStalled()}
    */
   synchronized void updateStalled(boolean stalled) {
+    updateStalled(stalled, 0L);
+  }
+
+  /**
+   * Same as {@link #updateStalled(boolean)}, but also sets the time indexing
+   * threads pause in {@link #waitIfThrottled()} while not stalled. Throttled
+   * threads are released early if the pause gets shorter.
+   */
+  synchronized void updateStalled(boolean stalled, long throttleNanos) {
+    assert throttleNanos >= 0;
     this.stalled = stalled;
+    this.throttleNanos = stalled ? 0L : throttleNanos;
     if (stalled) {
       wasStalled = true;
     }
@@ -81,9 +99,37 @@ final class DocumentsWriterStallControl {
     }
   }
   
+  /**
+   * Pauses the calling thread if indexing is currently throttled. Returns
+   * once the pause is over, or earlier if the throttling is relaxed or
+   * indexing gets stalled, in which case the caller should call
+   * {@link #waitIfStalled()}.
+   */
+  void waitIfThrottled() {
+    if (throttleNanos > 0) {
+      synchronized (this) {
+        final long start = System.nanoTime();
+        long remaining;
+        // the pause is recomputed on every wakeup so that finished flushes
+        // release throttled threads early
+        while (!stalled && (remaining = start + throttleNanos - System.nanoTime()) > 0) {
+          try {
+            wait(remaining / 1000000L, (int) (remaining % 1000000L));
+          } catch (InterruptedException e) {
+            throw new ThreadInterruptedException(e);
+          }
+        }
+      }
+    }
+  }
+  
   boolean anyStalledThreads() {
     return stalled;
   }
+
+  boolean isThrottled() {
+    return throttleNanos > 0; // volatile read!
+  }
   
   
   private boolean incWaiters() {
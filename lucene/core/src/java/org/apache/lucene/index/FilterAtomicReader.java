@@ -251,6 +251,16 @@ public class FilterAtomicReader extends AtomicReader {
     public int advance(int target) throws IOException {
       return in.advance(target);
     }
+
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      return in.read(docs, freqs);
+    }
+
+    @Override
+    public int maxFreq() {
+      return in.maxFreq();
+    }
     
     @Override
     public AttributeSource attributes() {
@@ -49,6 +49,7 @@ import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.Lock;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.store.MergeInfo;
+import org.apache.lucene.store.RateLimitedDirectoryWrapper;
 import org.apache.lucene.store.TrackingDirectoryWrapper;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.Constants;
@@ -2153,6 +2154,10 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         }
       }
 
+      if (config.getChecksumSegmentFiles()) {
+        SegmentChecksums.record(directory, newSegment.info);
+      }
+
       // Have codec write SegmentInfo.  Must do this after
       // creating CFS so that 1) .si isn't slurped into CFS,
       // and 2) .si reflects useCompoundFile=true change
@@ -2448,7 +2453,8 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
                                          false, codec, null, null);
 
       SegmentMerger merger = new SegmentMerger(info, infoStream, trackingDir, config.getTermIndexInterval(),
-                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context);
+                                               MergeState.CheckAbort.NONE, globalFieldNumberMap, context,
+                                               mergeScheduler.getIntraMergeExecutor());
 
       for (IndexReader reader : readers) {    // add new indexes
         merger.add(reader);
@@ -2505,6 +2511,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       // above:
       success = false;
       try {
+        if (config.getChecksumSegmentFiles()) {
+          SegmentChecksums.record(directory, info);
+        }
         codec.segmentInfoFormat().getSegmentInfoWriter().write(trackingDir, info, mergeState.fieldInfos, context);
         success = true;
       } finally {
@@ -3037,6 +3046,26 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     ensureOpen();
     return docWriter.flushControl.netBytes() + bufferedDeletesStream.bytesUsed();
   }
+
+  /** Expert: Return the number of bytes buffered by each indexing thread
+   *  state, ie. by the in-memory segment that each thread state is
+   *  currently indexing into. Segments which are pending or being flushed
+   *  are reported by {@link #flushingRamSizeInBytes()} instead.
+   *  @lucene.experimental
+   */
+  public final long[] ramSizeInBytesPerThread() {
+    ensureOpen();
+    return docWriter.flushControl.perThreadBytesUsed();
+  }
+
+  /** Expert: Return the number of bytes used by in-memory segments which
+   *  are pending or being flushed.
+   *  @lucene.experimental
+   */
+  public final long flushingRamSizeInBytes() {
+    ensureOpen();
+    return docWriter.flushControl.flushBytes();
+  }
   
   // for testing only
   DocumentsWriter getDocsWriter() {
@@ -3069,7 +3098,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
    *  saves the resulting deletes file (incrementing the
    *  delete generation for merge.info).  If no deletes were
    *  flushed, no new deletes file is saved. */
-  synchronized private ReadersAndLiveDocs commitMergedDeletes(MergePolicy.OneMerge merge) throws IOException {
+  synchronized private ReadersAndLiveDocs commitMergedDeletes(MergePolicy.OneMerge merge, MergeState mergeState) throws IOException {
 
     assert testPoint("startCommitMergeDeletes");
 
@@ -3086,6 +3115,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
     // Lazy init (only when we find a delete to carry over):
     ReadersAndLiveDocs mergedDeletes = null;
+    MergePolicy.DocMap docMap = null;
 
     for(int i=0; i < sourceSegments.size(); i++) {
       SegmentInfoPerCommit info = sourceSegments.get(i);
@@ -3131,8 +3161,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
                 if (mergedDeletes == null) {
                   mergedDeletes = readerPool.get(merge.info, true);
                   mergedDeletes.initWritableLiveDocs();
+                  docMap = merge.getDocMap(mergeState);
                 }
-                mergedDeletes.delete(docUpto);
+                mergedDeletes.delete(docMap.map(docUpto));
               }
               docUpto++;
             }
@@ -3149,8 +3180,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
             if (mergedDeletes == null) {
               mergedDeletes = readerPool.get(merge.info, true);
               mergedDeletes.initWritableLiveDocs();
+              docMap = merge.getDocMap(mergeState);
             }
-            mergedDeletes.delete(docUpto);
+            mergedDeletes.delete(docMap.map(docUpto));
           }
           docUpto++;
         }
@@ -3182,7 +3214,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     return mergedDeletes;
   }
 
-  synchronized private boolean commitMerge(MergePolicy.OneMerge merge) throws IOException {
+  synchronized private boolean commitMerge(MergePolicy.OneMerge merge, MergeState mergeState) throws IOException {
 
     assert testPoint("startCommitMerge");
 
@@ -3210,7 +3242,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       return false;
     }
 
-    final ReadersAndLiveDocs mergedDeletes =  merge.info.info.getDocCount() == 0 ? null : commitMergedDeletes(merge);
+    final ReadersAndLiveDocs mergedDeletes =  merge.info.info.getDocCount() == 0 ? null : commitMergedDeletes(merge, mergeState);
 
     assert mergedDeletes == null || mergedDeletes.getPendingDeleteCount() != 0;
 
@@ -3535,15 +3567,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     // names.
     final String mergeSegmentName = newSegmentName();
     SegmentInfo si = new SegmentInfo(directory, Constants.LUCENE_MAIN_VERSION, mergeSegmentName, -1, false, codec, null, null);
-    merge.info = new SegmentInfoPerCommit(si, 0, -1L);
-
-    // Lock order: IW -> BD
-    bufferedDeletesStream.prune(segmentInfos);
-
     Map<String,String> details = new HashMap<String,String>();
     details.put("mergeMaxNumSegments", ""+merge.maxNumSegments);
     details.put("mergeFactor", Integer.toString(merge.segments.size()));
     setDiagnostics(si, "merge", details);
+    merge.setInfo(new SegmentInfoPerCommit(si, 0, -1L));
+
+    // Lock order: IW -> BD
+    bufferedDeletesStream.prune(segmentInfos);
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "merge seg=" + merge.info.info.name + " " + segString(merge.segments));
@@ -3653,10 +3684,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
     IOContext context = new IOContext(merge.getMergeInfo());
 
     final MergeState.CheckAbort checkAbort = new MergeState.CheckAbort(merge, directory);
-    final TrackingDirectoryWrapper dirWrapper = new TrackingDirectoryWrapper(directory);
+    // If the merge scheduler throttles this merge, all its
+    // reads and writes go through the merge's rate limiter:
+    final boolean throttled = merge.rateLimiter.getMbPerSec() != Double.POSITIVE_INFINITY;
+    final Directory mergeDirectory = throttled ? new RateLimitedDirectoryWrapper(directory, merge.rateLimiter) : directory;
+    final TrackingDirectoryWrapper dirWrapper = new TrackingDirectoryWrapper(mergeDirectory);
 
     SegmentMerger merger = new SegmentMerger(merge.info.info, infoStream, dirWrapper, config.getTermIndexInterval(), checkAbort,
-                                             globalFieldNumberMap, context);
+                                             globalFieldNumberMap, context, mergeScheduler.getIntraMergeExecutor());
 
     if (infoStream.isEnabled("IW")) {
       infoStream.message("IW", "merging " + segString(merge.segments));
@@ -3676,7 +3711,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         // Hold onto the "live" reader; we will use this to
         // commit merged deletes
         final ReadersAndLiveDocs rld = readerPool.get(info, true);
-        SegmentReader reader = rld.getMergeReader(context);
+        SegmentReader reader = rld.getMergeReader(context, throttled ? mergeDirectory : null);
         assert reader != null;
 
         // Carefully pull the most recent live docs:
@@ -3727,12 +3762,14 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
         merge.readers.add(reader);
         assert delCount <= info.info.getDocCount(): "delCount=" + delCount + " info.docCount=" + info.info.getDocCount() + " rld.pendingDeleteCount=" + rld.getPendingDeleteCount() + " info.getDelCount()=" + info.getDelCount();
-        if (delCount < info.info.getDocCount()) {
-          merger.add(reader);
-        }
         segUpto++;
       }
 
+      // the merge may reorder or wrap the readers
+      for (AtomicReader reader : merge.getMergeReaders()) {
+        merger.add(reader);
+      }
+
       merge.checkAborted(directory);
 
       // This is where all the work happens:
@@ -3777,7 +3814,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
         Collection<String> filesToRemove = merge.info.files();
 
         try {
-          filesToRemove = createCompoundFile(infoStream, directory, checkAbort, merge.info.info, context);
+          filesToRemove = createCompoundFile(infoStream, mergeDirectory, checkAbort, merge.info.info, context);
           success = true;
         } catch (IOException ioe) {
           synchronized(this) {
@@ -3840,6 +3877,9 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
       // above:
       boolean success2 = false;
       try {
+        if (config.getChecksumSegmentFiles()) {
+          SegmentChecksums.record(mergeDirectory, merge.info.info);
+        }
         codec.segmentInfoFormat().getSegmentInfoWriter().write(directory, merge.info.info, mergeState.fieldInfos, context);
         success2 = true;
       } finally {
@@ -3875,7 +3915,7 @@ public class IndexWriter implements Closeable, TwoPhaseCommit {
 
       // Force READ context because we merge deletes onto
       // this reader:
-      if (!commitMerge(merge)) {
+      if (!commitMerge(merge, mergeState)) {
         // commitMerge will return false if this merge was aborted
         return 0;
       }
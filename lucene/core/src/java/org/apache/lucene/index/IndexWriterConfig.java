@@ -104,6 +104,17 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
 
   /** Default value is 1945. Change using {@link #setRAMPerThreadHardLimitMB(int)} */
   public static final int DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB = 1945;
+
+  /** Default value is 0, ie. segments are flushed by the indexing threads.
+   *  Change using {@link #setMaxFlushThreads(int)} */
+  public static final int DEFAULT_MAX_FLUSH_THREADS = 0;
+
+  /** Default value is 0, ie. postings blocks are not reused across flushes.
+   *  Change using {@link #setIndexingBufferPoolMB(int)} */
+  public static final int DEFAULT_INDEXING_BUFFER_POOL_MB = 0;
+
+  /** Default setting for {@link #setChecksumSegmentFiles}. */
+  public final static boolean DEFAULT_CHECKSUM_SEGMENT_FILES = false;
   
   /** The maximum number of simultaneous threads that may be
    *  indexing documents at once in IndexWriter; if more
@@ -421,6 +432,92 @@ public final class IndexWriterConfig extends LiveIndexWriterConfig implements Cl
   public int getRAMPerThreadHardLimitMB() {
     return perThreadHardLimitMB;
   }
+
+  /**
+   * Expert: Sets the number of threads that flush segments in the background.
+   * By default (<code>0</code>), a segment is flushed by the indexing thread
+   * which triggered the flush, so that indexing threads spend time writing
+   * segments instead of indexing documents. With a value greater than
+   * <code>0</code>, segments that are pending for flush are handed over to a
+   * dedicated pool of flush threads and indexing threads only help flushing if
+   * flushing falls so far behind that indexing is stalled.
+   * <p>
+   * An exception hit while flushing in the background is rethrown by the next
+   * indexing operation.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   * 
+   * @see #DEFAULT_MAX_FLUSH_THREADS
+   */
+  public IndexWriterConfig setMaxFlushThreads(int maxFlushThreads) {
+    if (maxFlushThreads < 0) {
+      throw new IllegalArgumentException("maxFlushThreads must be >= 0 (got " + maxFlushThreads + ")");
+    }
+    this.maxFlushThreads = maxFlushThreads;
+    return this;
+  }
+
+  @Override
+  public int getMaxFlushThreads() {
+    return maxFlushThreads;
+  }
+
+  /**
+   * Expert: Sets the maximum size of a pool of postings blocks that are
+   * reused across flushes. By default (<code>0</code>), every in-memory
+   * segment allocates its own byte and int blocks to buffer postings, and
+   * these blocks become garbage once the segment is flushed. With large RAM
+   * buffers these blocks live long enough to be promoted to the old
+   * generation, which makes collecting them expensive. With a pool, blocks
+   * are zeroed and returned to the pool once their segment is flushed and
+   * handed out again to the next segments, so that the JVM does not need to
+   * collect them at all. A pool about as large as
+   * {@link #setRAMBufferSizeMB(double) the RAM buffer} recycles most blocks.
+   * <p>
+   * The pool is shared by all indexing threads. Blocks sitting in the pool
+   * are not accounted in the RAM buffer, so an {@link IndexWriter} may use
+   * up to this many MB on top of its RAM buffer.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   *
+   * @see #DEFAULT_INDEXING_BUFFER_POOL_MB
+   */
+  public IndexWriterConfig setIndexingBufferPoolMB(int indexingBufferPoolMB) {
+    if (indexingBufferPoolMB < 0) {
+      throw new IllegalArgumentException("indexingBufferPoolMB must be >= 0 (got " + indexingBufferPoolMB + ")");
+    }
+    this.indexingBufferPoolMB = indexingBufferPoolMB;
+    return this;
+  }
+
+  @Override
+  public int getIndexingBufferPoolMB() {
+    return indexingBufferPoolMB;
+  }
+
+  /**
+   * If true, {@link IndexWriter} computes a CRC32 checksum of every file of
+   * each flushed or merged segment and records it in the segment info, so
+   * that {@link CheckIndex#setChecksumsOnly(boolean) CheckIndex} can verify
+   * the segment by reading its files sequentially instead of decoding it.
+   * <p>
+   * The checksums are computed by reading the files back once they are
+   * complete, which usually hits the OS cache but still costs CPU time
+   * proportional to the size of the written segments.
+   *
+   * <p>Only takes effect when IndexWriter is first created.
+   *
+   * @see #DEFAULT_CHECKSUM_SEGMENT_FILES
+   */
+  public IndexWriterConfig setChecksumSegmentFiles(boolean checksumSegmentFiles) {
+    this.checksumSegmentFiles = checksumSegmentFiles;
+    return this;
+  }
+
+  @Override
+  public boolean getChecksumSegmentFiles() {
+    return checksumSegmentFiles;
+  }
   
   @Override
   FlushPolicy getFlushPolicy() {
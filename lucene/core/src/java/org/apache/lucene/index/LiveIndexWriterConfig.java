@@ -95,6 +95,17 @@ public class LiveIndexWriterConfig {
    *  segment, after which the segment is forced to flush. */
   protected volatile int perThreadHardLimitMB;
 
+  /** Number of threads flushing segments in the background,
+   *  or 0 if indexing threads flush themselves. */
+  protected volatile int maxFlushThreads;
+
+  /** Size of the pool of postings blocks that are reused across
+   *  flushes, or 0 to not reuse blocks. */
+  protected volatile int indexingBufferPoolMB;
+
+  /** True if checksums of the files of new segments should be recorded. */
+  protected volatile boolean checksumSegmentFiles;
+
   /** {@link Version} that {@link IndexWriter} should emulate. */
   protected final Version matchVersion;
 
@@ -122,6 +133,9 @@ public class LiveIndexWriterConfig {
     readerPooling = IndexWriterConfig.DEFAULT_READER_POOLING;
     indexerThreadPool = new ThreadAffinityDocumentsWriterThreadPool(IndexWriterConfig.DEFAULT_MAX_THREAD_STATES);
     perThreadHardLimitMB = IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB;
+    maxFlushThreads = IndexWriterConfig.DEFAULT_MAX_FLUSH_THREADS;
+    indexingBufferPoolMB = IndexWriterConfig.DEFAULT_INDEXING_BUFFER_POOL_MB;
+    checksumSegmentFiles = IndexWriterConfig.DEFAULT_CHECKSUM_SEGMENT_FILES;
   }
   
   /**
@@ -151,6 +165,9 @@ public class LiveIndexWriterConfig {
     readerPooling = config.getReaderPooling();
     flushPolicy = config.getFlushPolicy();
     perThreadHardLimitMB = config.getRAMPerThreadHardLimitMB();
+    maxFlushThreads = config.getMaxFlushThreads();
+    indexingBufferPoolMB = config.getIndexingBufferPoolMB();
+    checksumSegmentFiles = config.getChecksumSegmentFiles();
   }
 
   /** Returns the default analyzer to use for indexing documents. */
@@ -524,6 +541,36 @@ public class LiveIndexWriterConfig {
     return perThreadHardLimitMB;
   }
   
+  /**
+   * Returns the number of threads that flush segments in the background, or
+   * <code>0</code> if segments are flushed by the indexing threads.
+   * 
+   * @see IndexWriterConfig#setMaxFlushThreads(int)
+   */
+  public int getMaxFlushThreads() {
+    return maxFlushThreads;
+  }
+  
+  /**
+   * Returns the maximum size of the pool of postings blocks that are reused
+   * across flushes, or <code>0</code> if blocks are not reused.
+   * 
+   * @see IndexWriterConfig#setIndexingBufferPoolMB(int)
+   */
+  public int getIndexingBufferPoolMB() {
+    return indexingBufferPoolMB;
+  }
+
+  /**
+   * Returns <code>true</code> if the checksums of the files of new segments
+   * are recorded in the segment info.
+   * 
+   * @see IndexWriterConfig#setChecksumSegmentFiles(boolean)
+   */
+  public boolean getChecksumSegmentFiles() {
+    return checksumSegmentFiles;
+  }
+  
   /**
    * @see IndexWriterConfig#setFlushPolicy(FlushPolicy)
    */
@@ -564,6 +611,9 @@ public class LiveIndexWriterConfig {
     sb.append("indexerThreadPool=").append(getIndexerThreadPool()).append("\n");
     sb.append("readerPooling=").append(getReaderPooling()).append("\n");
     sb.append("perThreadHardLimitMB=").append(getRAMPerThreadHardLimitMB()).append("\n");
+    sb.append("maxFlushThreads=").append(getMaxFlushThreads()).append("\n");
+    sb.append("indexingBufferPoolMB=").append(getIndexingBufferPoolMB()).append("\n");
+    sb.append("checksumSegmentFiles=").append(getChecksumSegmentFiles()).append("\n");
     return sb.toString();
   }
 
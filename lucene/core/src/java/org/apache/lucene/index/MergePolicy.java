@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -58,6 +59,15 @@ import org.apache.lucene.util.SetOnce;
 
 public abstract class MergePolicy implements java.io.Closeable, Cloneable {
 
+  /** A map of doc IDs. */
+  public static abstract class DocMap {
+    /** Sole constructor, typically invoked from sub-classes constructors. */
+    protected DocMap() {}
+
+    /** Return the new doc ID according to its old value. */
+    public abstract int map(int old);
+  }
+
   /** OneMerge provides the information necessary to perform
    *  an individual primitive merge operation, resulting in
    *  a single new segment.  The merge spec includes the
@@ -81,6 +91,14 @@ public abstract class MergePolicy implements java.io.Closeable, Cloneable {
 
     /** Number of documents in the merged segment. */
     public final int totalDocCount;
+
+    /** Throttles the reads and writes of this merge and
+     *  records how many bytes it moved and how long it was
+     *  paused.  Unlimited unless a {@link MergeScheduler}
+     *  such as {@link ConcurrentMergeScheduler} sets a
+     *  rate before the merge starts; merges that start out
+     *  unlimited are neither throttled nor recorded. */
+    public final MergeRateLimiter rateLimiter = new MergeRateLimiter();
     boolean aborted;
     Throwable error;
     boolean paused;
@@ -211,7 +229,44 @@ public abstract class MergePolicy implements java.io.Closeable, Cloneable {
     /** Return {@link MergeInfo} describing this merge. */
     public MergeInfo getMergeInfo() {
       return new MergeInfo(totalDocCount, estimatedMergeBytes, isExternal, maxNumSegments);
-    }    
+    }
+
+    /** Expert: Get the list of readers to merge. Note that this list does not
+     *  necessarily match the list of segments to merge and should only be used
+     *  to feed SegmentMerger to initialize a merge. Sub-classes that reorder
+     *  documents must also override {@link #getDocMap(MergeState)}. */
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      if (readers == null) {
+        throw new IllegalStateException("IndexWriter has not initialized readers from the segment infos yet");
+      }
+      final List<AtomicReader> readers = new ArrayList<AtomicReader>(this.readers.size());
+      for (AtomicReader reader : this.readers) {
+        if (reader.numDocs() > 0) {
+          readers.add(reader);
+        }
+      }
+      return Collections.unmodifiableList(readers);
+    }
+
+    /** Expert: Sets the {@link SegmentInfoPerCommit} of this {@link OneMerge}.
+     *  Allows sub-classes to e.g. set diagnostics properties. */
+    public void setInfo(SegmentInfoPerCommit info) {
+      this.info = info;
+    }
+
+    /** Expert: If {@link #getMergeReaders()} reorders document IDs, this method
+     *  must be overridden to return a mapping from the <i>natural</i> doc ID
+     *  (the doc ID that would result from a merge without reordering) to the
+     *  actual doc ID. This mapping is used to apply deletions that happened
+     *  during the merge to the new segment. */
+    public DocMap getDocMap(MergeState mergeState) {
+      return new DocMap() {
+        @Override
+        public int map(int docID) {
+          return docID;
+        }
+      };
+    }
   }
 
   /**
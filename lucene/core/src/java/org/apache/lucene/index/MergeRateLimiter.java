@@ -0,0 +1,73 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.store.RateLimiter;
+
+/** The {@link RateLimiter} of a single merge: it throttles
+ *  both the reads and the writes that {@link IndexWriter}
+ *  does on behalf of a {@link MergePolicy.OneMerge}, and
+ *  records statistics about them.  The rate starts out
+ *  unlimited.  {@link IndexWriter} only sends the IO of a
+ *  merge through its limiter if the rate is limited when
+ *  the merge starts; the rate of such a merge may then be
+ *  changed at any time (for example by {@link
+ *  ConcurrentMergeScheduler} in auto-throttle mode) while
+ *  it is running.
+ *
+ * @lucene.experimental */
+public class MergeRateLimiter extends RateLimiter {
+
+  private final AtomicLong totalBytes = new AtomicLong();
+  private final AtomicLong totalPausedNS = new AtomicLong();
+
+  /** Creates an unlimited rate limiter. */
+  public MergeRateLimiter() {
+    super(Double.POSITIVE_INFINITY);
+  }
+
+  @Override
+  public void pause(long bytes) {
+    totalBytes.addAndGet(bytes);
+    if (getMbPerSec() == Double.POSITIVE_INFINITY) {
+      return;
+    }
+    final long startNS = System.nanoTime();
+    super.pause(bytes);
+    totalPausedNS.addAndGet(System.nanoTime() - startNS);
+  }
+
+  /** Returns the total number of bytes that were read or
+   *  written through this limiter. */
+  public long getTotalBytes() {
+    return totalBytes.get();
+  }
+
+  /** Returns the total time, in nanoseconds, that the merge
+   *  was paused to honor the rate. */
+  public long getTotalPausedNS() {
+    return totalPausedNS.get();
+  }
+
+  @Override
+  public String toString() {
+    return "MergeRateLimiter(mbPerSec=" + getMbPerSec() + " totalBytes=" + getTotalBytes() + " totalPausedNS=" + getTotalPausedNS() + ")";
+  }
+}
@@ -19,6 +19,7 @@ package org.apache.lucene.index;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 /** <p>Expert: {@link IndexWriter} uses an instance
  *  implementing this interface to execute the merges
@@ -37,6 +38,16 @@ public abstract class MergeScheduler implements Closeable {
   /** Run the merges provided by {@link IndexWriter#getNextMerge()}. */
   public abstract void merge(IndexWriter writer) throws IOException;
 
+  /** Returns the {@link Executor} that each merge uses to
+   *  write the independent parts of the merged segment
+   *  (stored fields, term vectors, postings, doc values and
+   *  norms) concurrently, or null to write them one after
+   *  the other in the merging thread.  The default
+   *  implementation returns null. */
+  public Executor getIntraMergeExecutor() {
+    return null;
+  }
+
   /** Close this MergeScheduler. */
   public abstract void close() throws IOException;
 }
@@ -234,6 +234,22 @@ public class MergeState {
   /** Sole constructor. */
   MergeState() {
   }
+
+  /** Creates a copy of <code>other</code> sharing all its
+   *  fields, so that parts of a merge that run concurrently
+   *  each track their own {@link #fieldInfo}. */
+  MergeState(MergeState other) {
+    segmentInfo = other.segmentInfo;
+    fieldInfos = other.fieldInfos;
+    readers = other.readers;
+    docMaps = other.docMaps;
+    docBase = other.docBase;
+    checkAbort = other.checkAbort;
+    infoStream = other.infoStream;
+    fieldInfo = other.fieldInfo;
+    matchingSegmentReaders = other.matchingSegmentReaders;
+    matchedCount = other.matchedCount;
+  }
   
   /**
    * Class for recording units of work when merging segments.
@@ -257,7 +273,7 @@ public class MergeState {
      * that the time in between calls to merge.checkAborted
      * is up to ~ 1 second.
      */
-    public void work(double units) throws MergePolicy.MergeAbortedException {
+    public synchronized void work(double units) throws MergePolicy.MergeAbortedException {
       workCount += units;
       if (workCount >= 10000.0) {
         merge.checkAborted(dir);
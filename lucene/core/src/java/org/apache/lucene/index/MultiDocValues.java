@@ -28,6 +28,7 @@ import org.apache.lucene.index.SortedBytesMergeUtils.SortedSourceSlice;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.PagedBytes;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.packed.PackedInts.Reader;
 
 /**
@@ -426,6 +427,23 @@ class MultiDocValues extends DocValues {
         throw new RuntimeException("load failed", e);
       }
     }
+
+    @Override
+    public long ramBytesUsed() {
+      if (direct) {
+        return 0;
+      }
+      long size = 0;
+      for (DocValuesSlice slice : slices) {
+        size += slice.docValues.ramBytesUsed();
+      }
+      synchronized (this) {
+        if (cachedArray != null) {
+          size += RamUsageEstimator.sizeOf(cachedArray);
+        }
+      }
+      return size;
+    }
   }
   
   private static final class RecordingBytesRefConsumer implements SortedBytesMergeUtils.BytesRefConsumer {
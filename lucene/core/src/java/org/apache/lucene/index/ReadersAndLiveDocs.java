@@ -131,8 +131,13 @@ class ReadersAndLiveDocs {
   }
 
   // Get reader for merging (does not load the terms
-  // index):
-  public synchronized SegmentReader getMergeReader(IOContext context) throws IOException {
+  // index).  If mergeDir is not null and a new reader must
+  // be opened, its files are opened through mergeDir, which
+  // wraps the segment's directory (eg to throttle the
+  // merge's reads); such a reader is private to the caller
+  // and not kept around after the merge.  An already opened
+  // NRT reader is shared as-is:
+  public synchronized SegmentReader getMergeReader(IOContext context, Directory mergeDir) throws IOException {
     //System.out.println("  livedocs=" + rld.liveDocs);
 
     if (mergeReader == null) {
@@ -146,6 +151,14 @@ class ReadersAndLiveDocs {
         reader.incRef();
         mergeReader = reader;
         //System.out.println(Thread.currentThread().getName() + ": getMergeReader share seg=" + info.name);
+      } else if (mergeDir != null) {
+        // Caller steals the returned ref, so the reader is
+        // closed once the merge releases it:
+        final SegmentReader sr = new SegmentReader(info, mergeDir, -1, context);
+        if (liveDocs == null) {
+          liveDocs = sr.getLiveDocs();
+        }
+        return sr;
       } else {
         //System.out.println(Thread.currentThread().getName() + ": getMergeReader seg=" + info.name);
         // We steal returned ref:
@@ -0,0 +1,91 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+
+/**
+ * Records the CRC32 checksums of the files of a newly written segment in
+ * its {@link SegmentInfo#getAttribute attributes}, so that {@link CheckIndex}
+ * can later verify them without decoding the segment.
+ * <p>
+ * Checksums are keyed by file name without the segment name, so that they
+ * remain valid when {@link IndexWriter#addIndexes(org.apache.lucene.store.Directory...)}
+ * copies a segment under a new name. The segment info file itself and
+ * per-commit files such as deletions are not covered.
+ *
+ * @see IndexWriterConfig#setChecksumSegmentFiles
+ */
+final class SegmentChecksums {
+
+  /** Prefix of the attribute keys that hold file checksums. */
+  static final String KEY_PREFIX = "checksum.";
+
+  private static final int BUFFER_SIZE = 16384;
+
+  private SegmentChecksums() {} // no instance
+
+  /** Computes the checksum of all current files of the segment and stores
+   *  them as attributes: must be called before the segment info is written. */
+  static void record(Directory dir, SegmentInfo info) throws IOException {
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    for (String file : info.files()) {
+      // fixed width, so that the size of the segment info does not depend on the checksums
+      info.putAttribute(KEY_PREFIX + IndexFileNames.stripSegmentName(file), String.format(Locale.ROOT, "%08x", checksum(dir, file, buffer)));
+    }
+  }
+
+  /** Returns the recorded checksums of the segment, by file name, or an
+   *  empty map if none were recorded. */
+  static Map<String,Long> recorded(SegmentInfo info) {
+    final Map<String,Long> checksums = new HashMap<String,Long>();
+    final Map<String,String> attributes = info.attributes();
+    if (attributes != null) {
+      for (Map.Entry<String,String> attribute : attributes.entrySet()) {
+        if (attribute.getKey().startsWith(KEY_PREFIX)) {
+          final String file = info.name + attribute.getKey().substring(KEY_PREFIX.length());
+          checksums.put(file, Long.valueOf(attribute.getValue(), 16));
+        }
+      }
+    }
+    return checksums;
+  }
+
+  /** Reads the whole file and returns its CRC32 checksum. */
+  static long checksum(Directory dir, String file, byte[] buffer) throws IOException {
+    final ChecksumIndexInput in = new ChecksumIndexInput(dir.openInput(file, IOContext.READONCE));
+    try {
+      long remaining = in.length();
+      while (remaining > 0) {
+        final int chunk = (int) Math.min(buffer.length, remaining);
+        in.readBytes(buffer, 0, chunk);
+        remaining -= chunk;
+      }
+      return in.getChecksum();
+    } finally {
+      in.close();
+    }
+  }
+}
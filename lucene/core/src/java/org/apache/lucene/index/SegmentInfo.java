@@ -73,7 +73,10 @@ public final class SegmentInfo {
   // see Constants.LUCENE_MAIN_VERSION.
   private String version;
 
-  void setDiagnostics(Map<String, String> diagnostics) {
+  /** Expert: sets the diagnostics which are saved into the segment,
+   *  this is used by {@link MergePolicy.OneMerge#setInfo} to record how
+   *  a merged segment was written. */
+  public void setDiagnostics(Map<String, String> diagnostics) {
     this.diagnostics = diagnostics;
   }
 
@@ -22,6 +22,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.FieldInfosWriter;
@@ -50,13 +55,17 @@ final class SegmentMerger {
   private final Codec codec;
   
   private final IOContext context;
+
+  private final Executor executor;
   
   private final MergeState mergeState = new MergeState();
   private final FieldInfos.Builder fieldInfosBuilder;
 
   // note, just like in codec apis Directory 'dir' is NOT the same as segmentInfo.dir!!
+  // executor may be null, to merge the parts of the segment sequentially
   SegmentMerger(SegmentInfo segmentInfo, InfoStream infoStream, Directory dir, int termIndexInterval,
-                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context) {
+                MergeState.CheckAbort checkAbort, FieldInfos.FieldNumbers fieldNumbers, IOContext context,
+                Executor executor) {
     mergeState.segmentInfo = segmentInfo;
     mergeState.infoStream = infoStream;
     mergeState.readers = new ArrayList<AtomicReader>();
@@ -65,6 +74,7 @@ final class SegmentMerger {
     this.termIndexInterval = termIndexInterval;
     this.codec = segmentInfo.getCodec();
     this.context = context;
+    this.executor = executor;
     this.fieldInfosBuilder = new FieldInfos.Builder(fieldNumbers);
   }
 
@@ -99,21 +109,58 @@ final class SegmentMerger {
     mergeState.segmentInfo.setDocCount(setDocMaps());
     mergeDocValuesAndNormsFieldInfos();
     setMatchingSegmentReaders();
-    int numMerged = mergeFields();
-    assert numMerged == mergeState.segmentInfo.getDocCount();
 
     final SegmentWriteState segmentWriteState = new SegmentWriteState(mergeState.infoStream, directory, mergeState.segmentInfo,
                                                                       mergeState.fieldInfos, termIndexInterval, null, context);
-    mergeTerms(segmentWriteState);
-    mergePerDoc(segmentWriteState);
+
+    // Each part writes its own files, so they can be merged
+    // concurrently:
+    final List<MergeTask> tasks = new ArrayList<MergeTask>();
+    tasks.add(new MergeTask() {
+      @Override
+      void merge(MergeState mergeState) throws IOException {
+        int numMerged = mergeFields(mergeState);
+        assert numMerged == mergeState.segmentInfo.getDocCount();
+      }
+    });
+    tasks.add(new MergeTask() {
+      @Override
+      void merge(MergeState mergeState) throws IOException {
+        mergeTerms(mergeState, segmentWriteState);
+      }
+    });
+    tasks.add(new MergeTask() {
+      @Override
+      void merge(MergeState mergeState) throws IOException {
+        mergePerDoc(mergeState, segmentWriteState);
+      }
+    });
     
     if (mergeState.fieldInfos.hasNorms()) {
-      mergeNorms(segmentWriteState);
+      tasks.add(new MergeTask() {
+        @Override
+        void merge(MergeState mergeState) throws IOException {
+          mergeNorms(mergeState, segmentWriteState);
+        }
+      });
     }
 
     if (mergeState.fieldInfos.hasVectors()) {
-      numMerged = mergeVectors();
-      assert numMerged == mergeState.segmentInfo.getDocCount();
+      tasks.add(new MergeTask() {
+        @Override
+        void merge(MergeState mergeState) throws IOException {
+          int numMerged = mergeVectors(mergeState);
+          assert numMerged == mergeState.segmentInfo.getDocCount();
+        }
+      });
+    }
+
+    if (executor == null) {
+      for (MergeTask task : tasks) {
+        task.merge(mergeState);
+      }
+    } else {
+      mergeConcurrently(tasks);
     }
     
     // write the merged infos
@@ -123,6 +170,77 @@ final class SegmentMerger {
     return mergeState;
   }
 
+  /** One part of the merged segment. */
+  private static abstract class MergeTask {
+    abstract void merge(MergeState mergeState) throws IOException;
+  }
+
+  /** Runs the first task in the current thread and all others
+   *  on the executor, and waits for all of them to finish
+   *  before rethrowing the first exception, if any. */
+  private void mergeConcurrently(List<MergeTask> tasks) throws IOException {
+    final List<FutureTask<Void>> futures = new ArrayList<FutureTask<Void>>();
+    for (final MergeTask task : tasks) {
+      // codecs set mergeState.fieldInfo while they merge, so
+      // each task needs its own MergeState:
+      final MergeState taskMergeState = new MergeState(mergeState);
+      futures.add(new FutureTask<Void>(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          task.merge(taskMergeState);
+          return null;
+        }
+      }));
+    }
+
+    if (mergeState.infoStream.isEnabled("SM")) {
+      mergeState.infoStream.message("SM", "merge " + futures.size() + " parts concurrently");
+    }
+
+    for (int i = 1; i < futures.size(); i++) {
+      try {
+        executor.execute(futures.get(i));
+      } catch (RejectedExecutionException ree) {
+        futures.get(i).run();
+      }
+    }
+    futures.get(0).run();
+
+    Throwable th = null;
+    boolean interrupted = false;
+    for (FutureTask<Void> future : futures) {
+      while (true) {
+        try {
+          future.get();
+        } catch (InterruptedException ie) {
+          // we must not return before all parts are done
+          // writing their files
+          interrupted = true;
+          continue;
+        } catch (ExecutionException ee) {
+          if (th == null) {
+            th = ee.getCause();
+          }
+        }
+        break;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (th != null) {
+      if (th instanceof IOException) {
+        throw (IOException) th;
+      } else if (th instanceof RuntimeException) {
+        throw (RuntimeException) th;
+      } else if (th instanceof Error) {
+        throw (Error) th;
+      }
+      throw new RuntimeException(th);
+    }
+  }
+
   private void setMatchingSegmentReaders() {
     // If the i'th reader is a SegmentReader and has
     // identical fieldName -> number mapping, then this
@@ -240,7 +358,7 @@ final class SegmentMerger {
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private int mergeFields() throws IOException {
+  private int mergeFields(MergeState mergeState) throws IOException {
     final StoredFieldsWriter fieldsWriter = codec.storedFieldsFormat().fieldsWriter(directory, mergeState.segmentInfo, context);
     
     try {
@@ -254,7 +372,7 @@ final class SegmentMerger {
    * Merge the TermVectors from each of the segments into the new one.
    * @throws IOException if there is a low-level IO error
    */
-  private final int mergeVectors() throws IOException {
+  private final int mergeVectors(MergeState mergeState) throws IOException {
     final TermVectorsWriter termVectorsWriter = codec.termVectorsFormat().vectorsWriter(directory, mergeState.segmentInfo, context);
     
     try {
@@ -290,7 +408,7 @@ final class SegmentMerger {
     return docBase;
   }
 
-  private final void mergeTerms(SegmentWriteState segmentWriteState) throws IOException {
+  private final void mergeTerms(MergeState mergeState, SegmentWriteState segmentWriteState) throws IOException {
     
     final List<Fields> fields = new ArrayList<Fields>();
     final List<ReaderSlice> slices = new ArrayList<ReaderSlice>();
@@ -324,7 +442,7 @@ final class SegmentMerger {
     }
   }
 
-  private void mergePerDoc(SegmentWriteState segmentWriteState) throws IOException {
+  private void mergePerDoc(MergeState mergeState, SegmentWriteState segmentWriteState) throws IOException {
       final PerDocConsumer docsConsumer = codec.docValuesFormat()
           .docsConsumer(new PerDocWriteState(segmentWriteState));
       // TODO: remove this check when 3.x indexes are no longer supported
@@ -345,7 +463,7 @@ final class SegmentMerger {
       }
   }
   
-  private void mergeNorms(SegmentWriteState segmentWriteState) throws IOException {
+  private void mergeNorms(MergeState mergeState, SegmentWriteState segmentWriteState) throws IOException {
     final PerDocConsumer docsConsumer = codec.normsFormat()
         .docsConsumer(new PerDocWriteState(segmentWriteState));
     // TODO: remove this check when 3.x indexes are no longer supported
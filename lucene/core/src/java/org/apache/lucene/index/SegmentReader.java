@@ -53,8 +53,16 @@ public final class SegmentReader extends AtomicReader {
    */
   // TODO: why is this public?
   public SegmentReader(SegmentInfoPerCommit si, int termInfosIndexDivisor, IOContext context) throws IOException {
+    this(si, si.info.dir, termInfosIndexDivisor, context);
+  }
+
+  /** Constructs a new SegmentReader with a new core whose
+   *  files are opened through the provided directory,
+   *  which must wrap the segment's directory.  Used by
+   *  IndexWriter to throttle the reads of merges. */
+  SegmentReader(SegmentInfoPerCommit si, Directory dir, int termInfosIndexDivisor, IOContext context) throws IOException {
     this.si = si;
-    core = new SegmentCoreReaders(this, si.info.dir, si, context, termInfosIndexDivisor);
+    core = new SegmentCoreReaders(this, dir, si, context, termInfosIndexDivisor);
     boolean success = false;
     try {
       if (si.hasDeletions()) {
@@ -194,7 +202,7 @@ public final class SegmentReader extends AtomicReader {
   /**
    * Return the SegmentInfoPerCommit of the segment this reader is reading.
    */
-  SegmentInfoPerCommit getSegmentInfo() {
+  public SegmentInfoPerCommit getSegmentInfo() {
     return si;
   }
 
@@ -23,6 +23,7 @@ import java.util.Map;
 
 import org.apache.lucene.util.ByteBlockPool;
 import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IntBlockPool;
 
 /** This class implements {@link InvertedDocConsumer}, which
  *  is passed each token produced by the analyzer on each
@@ -60,7 +61,7 @@ final class TermsHash extends InvertedDocConsumer {
     this.consumer = consumer;
     this.trackAllocations = trackAllocations; 
     this.nextTermsHash = nextTermsHash;
-    intPool = new IntBlockPool(docWriter);
+    intPool = new IntBlockPool(docWriter.intBlockAllocator);
     bytePool = new ByteBlockPool(docWriter.byteBlockAllocator);
 
     if (nextTermsHash != null) {
@@ -119,6 +120,12 @@ final class TermsHash extends InvertedDocConsumer {
     if (nextTermsHash != null) {
       nextTermsHash.flush(nextChildFields, state);
     }
+
+    if (docWriter.recycleBlocks) {
+      // the postings are written: hand the blocks back to the shared
+      // allocators so that the next DWPTs can reuse them
+      reset();
+    }
   }
 
   @Override
@@ -340,6 +340,13 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       // detect and we never do so today... (ie, we only
       // return BooleanScorer for topScorer):
 
+      // Check if we can return a MaxScoreScorer, which can skip
+      // non-competitive documents of pure term disjunctions
+      if (topScorer && required.size() == 0 && prohibited.size() == 0
+          && optional.size() > 1 && minNrShouldMatch <= 1 && allTermScorers(optional)) {
+        return new MaxScoreScorer(this, disableCoord, minNrShouldMatch, optional, maxCoord, scoreDocsInOrder);
+      }
+
       // Check if we can return a BooleanScorer
       if (!scoreDocsInOrder && topScorer && required.size() == 0) {
         return new BooleanScorer(this, disableCoord, minNrShouldMatch, optional, prohibited, maxCoord);
@@ -359,6 +366,15 @@ public class BooleanQuery extends Query implements Iterable<BooleanClause> {
       return new BooleanScorer2(this, disableCoord, minNrShouldMatch, required, prohibited, optional, maxCoord);
     }
 
+    private boolean allTermScorers(List<Scorer> scorers) {
+      for (Scorer scorer : scorers) {
+        if (!(scorer instanceof TermScorer)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     private Scorer createConjunctionTermScorer(AtomicReaderContext context, Bits acceptDocs)
         throws IOException {
 
@@ -22,7 +22,6 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
-import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.search.BooleanQuery.BooleanWeight;
 
 /* Description from Doug Cutting (excerpted from
@@ -60,54 +59,6 @@ import org.apache.lucene.search.BooleanQuery.BooleanWeight;
 
 final class BooleanScorer extends Scorer {
   
-  private static final class BooleanScorerCollector extends Collector {
-    private BucketTable bucketTable;
-    private int mask;
-    private Scorer scorer;
-    
-    public BooleanScorerCollector(int mask, BucketTable bucketTable) {
-      this.mask = mask;
-      this.bucketTable = bucketTable;
-    }
-    
-    @Override
-    public void collect(final int doc) throws IOException {
-      final BucketTable table = bucketTable;
-      final int i = doc & BucketTable.MASK;
-      final Bucket bucket = table.buckets[i];
-      
-      if (bucket.doc != doc) {                    // invalid bucket
-        bucket.doc = doc;                         // set doc
-        bucket.score = scorer.score();            // initialize score
-        bucket.bits = mask;                       // initialize mask
-        bucket.coord = 1;                         // initialize coord
-
-        bucket.next = table.first;                // push onto valid list
-        table.first = bucket;
-      } else {                                    // valid bucket
-        bucket.score += scorer.score();           // increment score
-        bucket.bits |= mask;                      // add bits in mask
-        bucket.coord++;                           // increment coord
-      }
-    }
-    
-    @Override
-    public void setNextReader(AtomicReaderContext context) {
-      // not needed by this implementation
-    }
-    
-    @Override
-    public void setScorer(Scorer scorer) {
-      this.scorer = scorer;
-    }
-    
-    @Override
-    public boolean acceptsDocsOutOfOrder() {
-      return true;
-    }
-
-  }
-  
   // An internal class which is used in score(Collector, int) for setting the
   // current score. This is required since Collector exposes a setScorer method
   // and implementations that need the score will call scorer.score().
@@ -164,23 +115,47 @@ final class BooleanScorer extends Scorer {
       }
     }
 
-    public Collector newCollector(int mask) {
-      return new BooleanScorerCollector(mask, this);
+    /** Adds the score of a matching document to its bucket. */
+    void add(int doc, float score, int mask) {
+      final Bucket bucket = buckets[doc & MASK];
+      
+      if (bucket.doc != doc) {                    // invalid bucket
+        bucket.doc = doc;                         // set doc
+        bucket.score = score;                     // initialize score
+        bucket.bits = mask;                       // initialize mask
+        bucket.coord = 1;                         // initialize coord
+
+        bucket.next = first;                      // push onto valid list
+        first = bucket;
+      } else {                                    // valid bucket
+        bucket.score += score;                    // increment score
+        bucket.bits |= mask;                      // add bits in mask
+        bucket.coord++;                           // increment coord
+      }
     }
 
     public int size() { return SIZE; }
   }
 
   static final class SubScorer {
+    /** Number of documents that are read from a sub scorer at once. */
+    static final int BUFFER_SIZE = 128;
+
     public Scorer scorer;
     // TODO: re-enable this if BQ ever sends us required clauses
     //public boolean required = false;
     public boolean prohibited;
-    public Collector collector;
     public SubScorer next;
+    // documents and scores that have been read from the scorer in bulk but
+    // not added to the bucket table yet
+    private final int[] docs = new int[BUFFER_SIZE];
+    private final float[] scores = new float[BUFFER_SIZE];
+    private int upto, count;
+    private boolean exhausted;
 
+    /** <code>scorer</code> must be positioned on its first document. */
     public SubScorer(Scorer scorer, boolean required, boolean prohibited,
-        Collector collector, SubScorer next) {
+        SubScorer next) throws IOException {
       if (required) {
         throw new IllegalArgumentException("this scorer cannot handle required=true");
       }
@@ -188,8 +163,38 @@ final class BooleanScorer extends Scorer {
       // TODO: re-enable this if BQ ever sends us required clauses
       //this.required = required;
       this.prohibited = prohibited;
-      this.collector = collector;
       this.next = next;
+      docs[0] = scorer.docID();
+      scores[0] = scorer.score();
+      count = 1;
+    }
+
+    /**
+     * Adds all documents of this sub scorer that are less than
+     * <code>end</code> to the bucket table, consuming the scorer in
+     * batches. Returns true if more matching documents may remain.
+     */
+    boolean collect(BucketTable table, int end) throws IOException {
+      final int mask = prohibited ? PROHIBITED_MASK : 0;
+      while (true) {
+        while (upto < count) {
+          final int doc = docs[upto];
+          if (doc >= end) {
+            return true;
+          }
+          table.add(doc, scores[upto], mask);
+          ++upto;
+        }
+        if (exhausted) {
+          return false;
+        }
+        count = scorer.nextDocs(docs, scores);
+        upto = 0;
+        if (count == 0) {
+          exhausted = true;
+          return false;
+        }
+      }
     }
   }
   
@@ -212,7 +217,7 @@ final class BooleanScorer extends Scorer {
     if (optionalScorers != null && optionalScorers.size() > 0) {
       for (Scorer scorer : optionalScorers) {
         if (scorer.nextDoc() != NO_MORE_DOCS) {
-          scorers = new SubScorer(scorer, false, false, bucketTable.newCollector(0), scorers);
+          scorers = new SubScorer(scorer, false, false, scorers);
         }
       }
     }
@@ -220,7 +225,7 @@ final class BooleanScorer extends Scorer {
     if (prohibitedScorers != null && prohibitedScorers.size() > 0) {
       for (Scorer scorer : prohibitedScorers) {
         if (scorer.nextDoc() != NO_MORE_DOCS) {
-          scorers = new SubScorer(scorer, false, true, bucketTable.newCollector(PROHIBITED_MASK), scorers);
+          scorers = new SubScorer(scorer, false, true, scorers);
         }
       }
     }
@@ -289,10 +294,7 @@ final class BooleanScorer extends Scorer {
       more = false;
       end += BucketTable.SIZE;
       for (SubScorer sub = scorers; sub != null; sub = sub.next) {
-        int subScorerDocID = sub.scorer.docID();
-        if (subScorerDocID != NO_MORE_DOCS) {
-          more |= sub.scorer.score(sub.collector, end, subScorerDocID);
-        }
+        more |= sub.collect(bucketTable, end);
       }
       current = bucketTable.first;
       
@@ -20,6 +20,8 @@ import java.io.IOException;
 
 import org.apache.lucene.index.AtomicReader; // for javadocs
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocValues.Source;
 import org.apache.lucene.document.IntField; // for javadocs
 import org.apache.lucene.document.FloatField; // for javadocs
 import org.apache.lucene.document.LongField; // for javadocs
@@ -66,14 +68,20 @@ public abstract class FieldCacheRangeFilter<T> extends Filter {
   final T upperVal;
   final boolean includeLower;
   final boolean includeUpper;
+  final boolean diskResident;
   
   private FieldCacheRangeFilter(String field, FieldCache.Parser parser, T lowerVal, T upperVal, boolean includeLower, boolean includeUpper) {
+    this(field, parser, lowerVal, upperVal, includeLower, includeUpper, false);
+  }
+
+  private FieldCacheRangeFilter(String field, FieldCache.Parser parser, T lowerVal, T upperVal, boolean includeLower, boolean includeUpper, boolean diskResident) {
     this.field = field;
     this.parser = parser;
     this.lowerVal = lowerVal;
     this.upperVal = upperVal;
     this.includeLower = includeLower;
     this.includeUpper = includeUpper;
+    this.diskResident = diskResident;
   }
   
   /** This method is implemented for each data type */
@@ -446,6 +454,145 @@ public abstract class FieldCacheRangeFilter<T> extends Filter {
       }
     };
   }
+
+  /**
+   * Creates a numeric range filter on the integer {@link DocValues} of the
+   * given field. Documents without a value are assumed to have <code>0</code>.
+   * If <code>diskResident</code> is true, values are read through
+   * {@link DocValues#getDirectSource()} so that nothing is loaded onto the
+   * heap. The range can be half-open by setting one of the values to
+   * <code>null</code>.
+   * @lucene.experimental
+   */
+  public static FieldCacheRangeFilter<Long> newIndexValuesLongRange(String field, Long lowerVal, Long upperVal, boolean includeLower, boolean includeUpper, final boolean diskResident) {
+    return new FieldCacheRangeFilter<Long>(field, null, lowerVal, upperVal, includeLower, includeUpper, diskResident) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final long inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          long i = lowerVal.longValue();
+          if (!includeLower && i == Long.MAX_VALUE)
+            return DocIdSet.EMPTY_DOCIDSET;
+          inclusiveLowerPoint = includeLower ? i : (i + 1L);
+        } else {
+          inclusiveLowerPoint = Long.MIN_VALUE;
+        }
+        if (upperVal != null) {
+          long i = upperVal.longValue();
+          if (!includeUpper && i == Long.MIN_VALUE)
+            return DocIdSet.EMPTY_DOCIDSET;
+          inclusiveUpperPoint = includeUpper ? i : (i - 1L);
+        } else {
+          inclusiveUpperPoint = Long.MAX_VALUE;
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return DocIdSet.EMPTY_DOCIDSET;
+        
+        final IndexValuesDocIdSet docIdSet = new IndexValuesDocIdSet(context, field, DocValues.Type.FIXED_INTS_64, acceptDocs) {
+          @Override
+          protected boolean matchDoc(Source values, int doc) {
+            final long value = values.getInt(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
+          }
+        };
+        return diskResident ? docIdSet : docIdSet.load(false);
+      }
+    };
+  }
+
+  /**
+   * Creates a numeric range filter on the floating-point {@link DocValues} of
+   * the given field. Documents without a value are assumed to have
+   * <code>0</code>. If <code>diskResident</code> is true, values are read
+   * through {@link DocValues#getDirectSource()} so that nothing is loaded onto
+   * the heap. The range can be half-open by setting one of the values to
+   * <code>null</code>.
+   * @lucene.experimental
+   */
+  public static FieldCacheRangeFilter<Double> newIndexValuesDoubleRange(String field, Double lowerVal, Double upperVal, boolean includeLower, boolean includeUpper, final boolean diskResident) {
+    return new FieldCacheRangeFilter<Double>(field, null, lowerVal, upperVal, includeLower, includeUpper, diskResident) {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+        final double inclusiveLowerPoint, inclusiveUpperPoint;
+        if (lowerVal != null) {
+          double f = lowerVal.doubleValue();
+          if (!includeUpper && f > 0.0 && Double.isInfinite(f))
+            return DocIdSet.EMPTY_DOCIDSET;
+          long i = NumericUtils.doubleToSortableLong(f);
+          inclusiveLowerPoint = NumericUtils.sortableLongToDouble( includeLower ?  i : (i + 1L) );
+        } else {
+          inclusiveLowerPoint = Double.NEGATIVE_INFINITY;
+        }
+        if (upperVal != null) {
+          double f = upperVal.doubleValue();
+          if (!includeUpper && f < 0.0 && Double.isInfinite(f))
+            return DocIdSet.EMPTY_DOCIDSET;
+          long i = NumericUtils.doubleToSortableLong(f);
+          inclusiveUpperPoint = NumericUtils.sortableLongToDouble( includeUpper ? i : (i - 1L) );
+        } else {
+          inclusiveUpperPoint = Double.POSITIVE_INFINITY;
+        }
+        
+        if (inclusiveLowerPoint > inclusiveUpperPoint)
+          return DocIdSet.EMPTY_DOCIDSET;
+        
+        final IndexValuesDocIdSet docIdSet = new IndexValuesDocIdSet(context, field, DocValues.Type.FLOAT_64, acceptDocs) {
+          @Override
+          protected boolean matchDoc(Source values, int doc) {
+            final double value = values.getFloat(doc);
+            return value >= inclusiveLowerPoint && value <= inclusiveUpperPoint;
+          }
+        };
+        return diskResident ? docIdSet : docIdSet.load(false);
+      }
+    };
+  }
+
+  /**
+   * Matches documents on the {@link Source} of a {@link DocValues} field. Used
+   * as is, every {@link #iterator()} reads through its own direct source, since
+   * these must not be shared between threads, and the set is not cacheable.
+   * {@link #load(boolean)} returns a cacheable set on a single source instead.
+   */
+  private static abstract class IndexValuesDocIdSet extends DocIdSet {
+    private final AtomicReaderContext context;
+    private final String field;
+    private final DocValues.Type defaultType;
+    private final Bits acceptDocs;
+
+    IndexValuesDocIdSet(AtomicReaderContext context, String field, DocValues.Type defaultType, Bits acceptDocs) {
+      this.context = context;
+      this.field = field;
+      this.defaultType = defaultType;
+      this.acceptDocs = acceptDocs;
+    }
+
+    protected abstract boolean matchDoc(Source values, int doc);
+
+    FieldCacheDocIdSet load(boolean diskResident) throws IOException {
+      final Source values = getIndexValues(context, field, defaultType, diskResident);
+      return new FieldCacheDocIdSet(context.reader().maxDoc(), acceptDocs) {
+        @Override
+        protected boolean matchDoc(int doc) {
+          return IndexValuesDocIdSet.this.matchDoc(values, doc);
+        }
+      };
+    }
+
+    @Override
+    public DocIdSetIterator iterator() throws IOException {
+      return load(true).iterator();
+    }
+  }
+
+  private static Source getIndexValues(AtomicReaderContext context, String field, DocValues.Type defaultType, boolean diskResident) throws IOException {
+    final DocValues docValues = context.reader().docValues(field);
+    if (docValues == null) {
+      return DocValues.getDefaultSource(defaultType);
+    }
+    return diskResident ? docValues.getDirectSource() : docValues.getSource();
+  }
   
   @Override
   public final String toString() {
@@ -462,12 +609,14 @@ public abstract class FieldCacheRangeFilter<T> extends Filter {
   @SuppressWarnings({"unchecked","rawtypes"})
   public final boolean equals(Object o) {
     if (this == o) return true;
-    if (!(o instanceof FieldCacheRangeFilter)) return false;
+    // filters created by different factory methods read different values
+    if (o == null || getClass() != o.getClass()) return false;
     FieldCacheRangeFilter other = (FieldCacheRangeFilter) o;
 
     if (!this.field.equals(other.field)
         || this.includeLower != other.includeLower
         || this.includeUpper != other.includeUpper
+        || this.diskResident != other.diskResident
     ) { return false; }
     if (this.lowerVal != null ? !this.lowerVal.equals(other.lowerVal) : other.lowerVal != null) return false;
     if (this.upperVal != null ? !this.upperVal.equals(other.upperVal) : other.upperVal != null) return false;
@@ -483,6 +632,7 @@ public abstract class FieldCacheRangeFilter<T> extends Filter {
     h ^= (upperVal != null) ? upperVal.hashCode() : -1674416163;
     h ^= (parser != null) ? parser.hashCode() : -1572457324;
     h ^= (includeLower ? 1549299360 : -365038026) ^ (includeUpper ? 1721088258 : 1948649653);
+    h ^= diskResident ? 1086203589 : -827613170;
     return h;
   }
 
@@ -501,6 +651,9 @@ public abstract class FieldCacheRangeFilter<T> extends Filter {
   /** Returns the upper value of this range filter */
   public T getUpperVal() { return upperVal; }
   
+  /** Returns <code>true</code> if {@link DocValues} are read from disk rather than loaded onto the heap */
+  public boolean isDiskResident() { return diskResident; }
+
   /** Returns the current numeric parser ({@code null} for {@code T} is {@code String}} */
   public FieldCache.Parser getParser() { return parser; }
 }
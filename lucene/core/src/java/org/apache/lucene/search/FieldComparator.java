@@ -388,16 +388,20 @@ public abstract class FieldComparator<T> {
     }
   }
 
-  /** Uses float index values to sort by ascending value */
+  /** Uses float index values to sort by ascending value. Values are
+   *  either loaded onto the heap or, if <code>diskResident</code> is
+   *  true, read through {@link DocValues#getDirectSource()}. */
   public static final class FloatDocValuesComparator extends FieldComparator<Double> {
     private final double[] values;
     private final String field;
+    private final boolean diskResident;
     private DocValues.Source currentReaderValues;
     private double bottom;
 
-    FloatDocValuesComparator(int numHits, String field) {
+    FloatDocValuesComparator(int numHits, String field, boolean diskResident) {
       values = new double[numHits];
       this.field = field;
+      this.diskResident = diskResident;
     }
 
     @Override
@@ -434,7 +438,7 @@ public abstract class FieldComparator<T> {
     public FieldComparator<Double> setNextReader(AtomicReaderContext context) throws IOException {
       final DocValues docValues = context.reader().docValues(field);
       if (docValues != null) {
-        currentReaderValues = docValues.getSource(); 
+        currentReaderValues = diskResident ? docValues.getDirectSource() : docValues.getSource();
       } else {
         currentReaderValues = DocValues.getDefaultSource(DocValues.Type.FLOAT_64);
       }
@@ -738,16 +742,20 @@ public abstract class FieldComparator<T> {
     }
   }
 
-  /** Loads int index values and sorts by ascending value. */
+  /** Uses int index values to sort by ascending value. Values are
+   *  either loaded onto the heap or, if <code>diskResident</code> is
+   *  true, read through {@link DocValues#getDirectSource()}. */
   public static final class IntDocValuesComparator extends FieldComparator<Long> {
     private final long[] values;
     private DocValues.Source currentReaderValues;
     private final String field;
+    private final boolean diskResident;
     private long bottom;
 
-    IntDocValuesComparator(int numHits, String field) {
+    IntDocValuesComparator(int numHits, String field, boolean diskResident) {
       values = new long[numHits];
       this.field = field;
+      this.diskResident = diskResident;
     }
 
     @Override
@@ -788,7 +796,7 @@ public abstract class FieldComparator<T> {
     public FieldComparator<Long> setNextReader(AtomicReaderContext context) throws IOException {
       DocValues docValues = context.reader().docValues(field);
       if (docValues != null) {
-        currentReaderValues = docValues.getSource();
+        currentReaderValues = diskResident ? docValues.getDirectSource() : docValues.getSource();
       } else {
         currentReaderValues = DocValues.getDefaultSource(DocValues.Type.FIXED_INTS_64);
       }
@@ -1504,6 +1512,8 @@ public abstract class FieldComparator<T> {
 
     private final String field;
 
+    private final boolean diskResident;
+
     /* Bottom slot, or -1 if queue isn't full yet
        @lucene.internal */
     int bottomSlot = -1;
@@ -1527,10 +1537,17 @@ public abstract class FieldComparator<T> {
     final BytesRef tempBR = new BytesRef();
 
     public TermOrdValDocValuesComparator(int numHits, String field) {
+      this(numHits, field, false);
+    }
+
+    /** Creates a new comparator, reading ords through {@link
+     *  DocValues#getDirectSource()} if <code>diskResident</code> is true. */
+    public TermOrdValDocValuesComparator(int numHits, String field, boolean diskResident) {
       ords = new int[numHits];
       values = new BytesRef[numHits];
       readerGen = new int[numHits];
       this.field = field;
+      this.diskResident = diskResident;
     }
 
     @Override
@@ -1822,12 +1839,13 @@ public abstract class FieldComparator<T> {
         // byte[]) in this case:
         termsIndex = DocValues.getDefaultSortedSource(DocValues.Type.BYTES_VAR_SORTED, context.reader().maxDoc());
       } else {
-        termsIndex = dv.getSource().asSortedSource();
+        final DocValues.Source source = diskResident ? dv.getDirectSource() : dv.getSource();
+        termsIndex = source.asSortedSource();
         if (termsIndex == null) {
           // This means segment has doc values, but they are
           // not able to provide a sorted source; consider
           // this a hard error:
-          throw new IllegalStateException("DocValues exist for field \"" + field + "\", but not as a sorted source: type=" + dv.getSource().getType() + " reader=" + context.reader());
+          throw new IllegalStateException("DocValues exist for field \"" + field + "\", but not as a sorted source: type=" + source.getType() + " reader=" + context.reader());
         }
       }
 
@@ -2005,12 +2023,14 @@ public abstract class FieldComparator<T> {
     private BytesRef[] values;
     private DocValues.Source docTerms;
     private final String field;
+    private final boolean diskResident;
     private BytesRef bottom;
     private final BytesRef tempBR = new BytesRef();
 
-    TermValDocValuesComparator(int numHits, String field) {
+    TermValDocValuesComparator(int numHits, String field, boolean diskResident) {
       values = new BytesRef[numHits];
       this.field = field;
+      this.diskResident = diskResident;
     }
 
     @Override
@@ -2038,7 +2058,7 @@ public abstract class FieldComparator<T> {
     public FieldComparator<BytesRef> setNextReader(AtomicReaderContext context) throws IOException {
       final DocValues dv = context.reader().docValues(field);
       if (dv != null) {
-        docTerms = dv.getSource();
+        docTerms = diskResident ? dv.getDirectSource() : dv.getSource();
       } else {
         docTerms = DocValues.getDefaultSource(DocValues.Type.BYTES_VAR_DEREF);
       }
@@ -0,0 +1,499 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * A cache of {@link Filter} results that is shared across filters and
+ * keyed per segment core: since the core of a segment does not change
+ * when an index is reopened (for example to see new documents in near
+ * real-time), cached results of segments that did not change are reused
+ * by the new reader.  Deletions are not cached but applied on the fly,
+ * like {@link CachingWrapperFilter} does when it does not recache deletes.
+ *
+ * <p>The cache is bounded both by a number of entries (one entry is the
+ * result of one filter on one segment) and by an amount of RAM; when
+ * either bound is exceeded, the least recently used filter is evicted
+ * from all segments.  A filter is only cached once it has been used at
+ * least {@code minFrequency} times among the last {@code historySize}
+ * searches, so that filters that are used only once do not evict useful
+ * entries.
+ *
+ * <p>Results are stored as a sorted array of doc IDs when they are sparse,
+ * and as a {@link FixedBitSet} otherwise.
+ *
+ * <p>Filters are cached by wrapping them with {@link #doCache(Filter)}.
+ * Since they are used as keys, filters must implement
+ * {@link Object#equals(Object)} and {@link Object#hashCode()}, and must not
+ * be modified once cached.
+ *
+ * @lucene.experimental
+ */
+public class FilterCache {
+
+  /** Default number of recent searches considered for admission. */
+  public static final int DEFAULT_HISTORY_SIZE = 256;
+
+  /** Default number of times a filter must have been used among recent
+   *  searches before it is cached. */
+  public static final int DEFAULT_MIN_FREQUENCY = 2;
+
+  // Rough RAM usage of an entry in addition to the cached doc IDs,
+  // including a share of the filter itself whose size we cannot know:
+  static final long ENTRY_RAM_BYTES_USED = 64 + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  private final int maxSize;
+  private final long maxRamBytesUsed;
+  private final int minFrequency;
+
+  // core cache key -> filter -> cached doc IDs
+  private final Map<Object,Map<Filter,DocIdSet>> cache = new HashMap<Object,Map<Filter,DocIdSet>>();
+  // cached filters, in least recently used first order:
+  private final LinkedHashMap<Filter,Filter> filters = new LinkedHashMap<Filter,Filter>(16, 0.75f, true);
+  // cached filter -> number of segment cores it is cached on:
+  private final Map<Filter,Integer> numCores = new HashMap<Filter,Integer>();
+
+  // ring buffer of the recently used filters and their frequencies:
+  private final Filter[] history;
+  private int historyUpto;
+  private final Map<Filter,Integer> frequencies = new HashMap<Filter,Integer>();
+
+  private int size;
+  private long ramBytesUsed;
+  private long hitCount, missCount, cacheCount, evictionCount;
+
+  // segment cores don't purge until the shared core closes.
+  private final SegmentReader.CoreClosedListener purgeCore = new SegmentReader.CoreClosedListener() {
+    @Override
+    public void onClose(SegmentReader owner) {
+      purge(owner.getCoreCacheKey());
+    }
+  };
+
+  // other readers don't purge until they are closed.
+  private final IndexReader.ReaderClosedListener purgeReader = new IndexReader.ReaderClosedListener() {
+    @Override
+    public void onClose(IndexReader owner) {
+      purge(((AtomicReader) owner).getCoreCacheKey());
+    }
+  };
+
+  /** Creates a cache that holds at most {@code maxSize} entries using at
+   *  most {@code maxRamBytesUsed} bytes, with the default admission
+   *  policy. */
+  public FilterCache(int maxSize, long maxRamBytesUsed) {
+    this(maxSize, maxRamBytesUsed, DEFAULT_MIN_FREQUENCY, DEFAULT_HISTORY_SIZE);
+  }
+
+  /** Creates a cache that holds at most {@code maxSize} entries using at
+   *  most {@code maxRamBytesUsed} bytes, and that caches a filter once it
+   *  has been used at least {@code minFrequency} times among the last
+   *  {@code historySize} searches.  A {@code minFrequency} of 1 caches
+   *  every filter on first use. */
+  public FilterCache(int maxSize, long maxRamBytesUsed, int minFrequency, int historySize) {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize must be >= 0, got " + maxSize);
+    }
+    if (maxRamBytesUsed < 0) {
+      throw new IllegalArgumentException("maxRamBytesUsed must be >= 0, got " + maxRamBytesUsed);
+    }
+    if (minFrequency < 1) {
+      throw new IllegalArgumentException("minFrequency must be >= 1, got " + minFrequency);
+    }
+    if (historySize < minFrequency) {
+      throw new IllegalArgumentException("historySize must be >= minFrequency (= " + minFrequency + "), got " + historySize);
+    }
+    this.maxSize = maxSize;
+    this.maxRamBytesUsed = maxRamBytesUsed;
+    this.minFrequency = minFrequency;
+    this.history = new Filter[historySize];
+  }
+
+  /** Returns a {@link Filter} that returns the same documents as
+   *  {@code filter}, and whose results are cached by this cache. */
+  public Filter doCache(Filter filter) {
+    if (filter instanceof CachingFilter && ((CachingFilter) filter).getCache() == this) {
+      return filter;
+    }
+    return new CachingFilter(filter);
+  }
+
+  /** Returns the {@link DocIdSet} of {@code filter} on the given segment,
+   *  from the cache if possible.  Only the documents that are also in
+   *  {@code acceptDocs} are returned. */
+  public DocIdSet getDocIdSet(Filter filter, AtomicReaderContext context, Bits acceptDocs) throws IOException {
+    final AtomicReader reader = context.reader();
+    final Object coreKey = reader.getCoreCacheKey();
+
+    final boolean doCache;
+    DocIdSet docIdSet;
+    synchronized (this) {
+      if (context.ord == 0) {
+        // one use per search: searches visit the first leaf once
+        onUse(filter);
+      }
+      docIdSet = get(coreKey, filter);
+      if (docIdSet != null) {
+        hitCount++;
+      } else {
+        missCount++;
+      }
+      doCache = docIdSet == null && shouldCache(filter);
+    }
+
+    if (docIdSet == null) {
+      if (!doCache) {
+        return filter.getDocIdSet(context, acceptDocs);
+      }
+      docIdSet = cacheImpl(filter.getDocIdSet(context, null), reader.maxDoc());
+      put(reader, coreKey, filter, docIdSet);
+    }
+    return BitsFilteredDocIdSet.wrap(docIdSet, acceptDocs);
+  }
+
+  private void onUse(Filter filter) {
+    final Filter evicted = history[historyUpto];
+    if (evicted != null) {
+      final int freq = frequencies.remove(evicted);
+      if (freq > 1) {
+        frequencies.put(evicted, freq - 1);
+      }
+    }
+    history[historyUpto] = filter;
+    historyUpto = (historyUpto + 1) % history.length;
+    final Integer freq = frequencies.get(filter);
+    frequencies.put(filter, freq == null ? 1 : freq + 1);
+  }
+
+  private boolean shouldCache(Filter filter) {
+    if (filters.containsKey(filter)) {
+      // already cached on other segments
+      return true;
+    }
+    final Integer freq = frequencies.get(filter);
+    return freq != null && freq >= minFrequency;
+  }
+
+  private DocIdSet get(Object coreKey, Filter filter) {
+    final Map<Filter,DocIdSet> coreCache = cache.get(coreKey);
+    if (coreCache == null) {
+      return null;
+    }
+    final DocIdSet docIdSet = coreCache.get(filter);
+    if (docIdSet != null) {
+      // mark the filter as recently used
+      filters.get(filter);
+    }
+    return docIdSet;
+  }
+
+  private synchronized void put(AtomicReader reader, Object coreKey, Filter filter, DocIdSet docIdSet) {
+    Map<Filter,DocIdSet> coreCache = cache.get(coreKey);
+    if (coreCache == null) {
+      coreCache = new HashMap<Filter,DocIdSet>();
+      cache.put(coreKey, coreCache);
+      initReader(reader);
+    }
+    final DocIdSet previous = coreCache.put(filter, docIdSet);
+    if (previous == null) {
+      size++;
+      final Integer count = numCores.get(filter);
+      numCores.put(filter, count == null ? 1 : count + 1);
+    } else {
+      // another thread cached it concurrently
+      ramBytesUsed -= ramBytesUsed(previous);
+    }
+    ramBytesUsed += ramBytesUsed(docIdSet);
+    filters.put(filter, filter);
+    cacheCount++;
+    evictIfNecessary();
+  }
+
+  private void initReader(AtomicReader reader) {
+    if (reader instanceof SegmentReader) {
+      ((SegmentReader) reader).addCoreClosedListener(purgeCore);
+    } else {
+      // we have a slow reader of some sort, try to register a purge event
+      // rather than relying on eviction:
+      final Object key = reader.getCoreCacheKey();
+      if (key instanceof AtomicReader) {
+        ((AtomicReader) key).addReaderClosedListener(purgeReader);
+      } else {
+        reader.addReaderClosedListener(purgeReader);
+      }
+    }
+  }
+
+  private void evictIfNecessary() {
+    final Iterator<Filter> it = filters.keySet().iterator();
+    while ((size > maxSize || ramBytesUsed > maxRamBytesUsed) && it.hasNext()) {
+      final Filter filter = it.next();
+      it.remove();
+      numCores.remove(filter);
+      for (Map<Filter,DocIdSet> coreCache : cache.values()) {
+        final DocIdSet docIdSet = coreCache.remove(filter);
+        if (docIdSet != null) {
+          size--;
+          ramBytesUsed -= ramBytesUsed(docIdSet);
+          evictionCount++;
+        }
+      }
+    }
+  }
+
+  /** Removes all cached entries of the given segment core. */
+  synchronized void purge(Object coreKey) {
+    final Map<Filter,DocIdSet> coreCache = cache.remove(coreKey);
+    if (coreCache != null) {
+      for (Map.Entry<Filter,DocIdSet> entry : coreCache.entrySet()) {
+        size--;
+        ramBytesUsed -= ramBytesUsed(entry.getValue());
+        // forget filters that are not cached on any segment anymore, so that
+        // they go through admission again and are not retained forever
+        final Filter filter = entry.getKey();
+        final int count = numCores.remove(filter);
+        if (count > 1) {
+          numCores.put(filter, count - 1);
+        } else {
+          filters.remove(filter);
+        }
+      }
+    }
+  }
+
+  /** Removes all entries from the cache, and forgets about the filters that
+   *  were recently used. */
+  public synchronized void clear() {
+    cache.clear();
+    filters.clear();
+    numCores.clear();
+    Arrays.fill(history, null);
+    historyUpto = 0;
+    frequencies.clear();
+    size = 0;
+    ramBytesUsed = 0;
+  }
+
+  /** Returns a cacheable, compact copy of the given {@link DocIdSet}: a
+   *  sorted array of doc IDs if less than 1/32th of the documents of the
+   *  segment match, and a {@link FixedBitSet} otherwise. */
+  protected DocIdSet cacheImpl(DocIdSet docIdSet, int maxDoc) throws IOException {
+    if (docIdSet == null) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    if (docIdSet instanceof FixedBitSet) {
+      final FixedBitSet bits = (FixedBitSet) docIdSet;
+      if (bits.cardinality() >= (maxDoc >>> 5)) {
+        return bits;
+      }
+    }
+    final DocIdSetIterator it = docIdSet.iterator();
+    if (it == null) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    // buffer doc IDs until there are too many of them to be sparse:
+    final int maxSparseSize = maxDoc >>> 5;
+    int[] docs = new int[Math.min(maxSparseSize, 16)];
+    int length = 0;
+    int doc;
+    while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+      if (length == maxSparseSize) {
+        final FixedBitSet bits = new FixedBitSet(maxDoc);
+        for (int i = 0; i < length; ++i) {
+          bits.set(docs[i]);
+        }
+        bits.set(doc);
+        bits.or(it);
+        return bits;
+      }
+      if (length == docs.length) {
+        docs = ArrayUtil.grow(docs, length + 1);
+      }
+      docs[length++] = doc;
+    }
+    if (length == 0) {
+      return DocIdSet.EMPTY_DOCIDSET;
+    }
+    return new SortedIntDocIdSet(Arrays.copyOf(docs, length));
+  }
+
+  static long ramBytesUsed(DocIdSet docIdSet) {
+    final long docsRamBytesUsed;
+    if (docIdSet instanceof FixedBitSet) {
+      docsRamBytesUsed = RamUsageEstimator.sizeOf(((FixedBitSet) docIdSet).getBits());
+    } else if (docIdSet instanceof SortedIntDocIdSet) {
+      docsRamBytesUsed = RamUsageEstimator.sizeOf(((SortedIntDocIdSet) docIdSet).docs);
+    } else {
+      docsRamBytesUsed = 0;
+    }
+    return ENTRY_RAM_BYTES_USED + docsRamBytesUsed;
+  }
+
+  /** Returns the number of cached entries. */
+  public synchronized int size() {
+    return size;
+  }
+
+  /** Returns the approximate RAM used by the cached entries, in bytes. */
+  public synchronized long ramBytesUsed() {
+    return ramBytesUsed;
+  }
+
+  /** Returns the number of lookups that found a cached entry. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that did not find a cached entry. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /** Returns the number of entries that were added to the cache. */
+  public synchronized long getCacheCount() {
+    return cacheCount;
+  }
+
+  /** Returns the number of entries that were evicted because the cache
+   *  was full; entries of closed segments are not counted. */
+  public synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "FilterCache(size=" + size + ", ramBytesUsed=" + ramBytesUsed + ", hitCount=" + hitCount
+        + ", missCount=" + missCount + ", evictionCount=" + evictionCount + ")";
+  }
+
+  /** Filter that looks up the results of the wrapped filter in this cache. */
+  private final class CachingFilter extends Filter {
+
+    private final Filter in;
+
+    CachingFilter(Filter in) {
+      this.in = in;
+    }
+
+    FilterCache getCache() {
+      return FilterCache.this;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      return FilterCache.this.getDocIdSet(in, context, acceptDocs);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof CachingFilter)) return false;
+      final CachingFilter other = (CachingFilter) o;
+      return getCache() == other.getCache() && in.equals(other.in);
+    }
+
+    @Override
+    public int hashCode() {
+      return in.hashCode() ^ 0x3A4B5C6D;
+    }
+
+    @Override
+    public String toString() {
+      return "FilterCache.CachingFilter(" + in + ")";
+    }
+  }
+
+  /** A sparse {@link DocIdSet} backed by a sorted array of doc IDs. */
+  static final class SortedIntDocIdSet extends DocIdSet {
+
+    final int[] docs;
+
+    SortedIntDocIdSet(int[] docs) {
+      this.docs = docs;
+    }
+
+    @Override
+    public boolean isCacheable() {
+      return true;
+    }
+
+    @Override
+    public DocIdSetIterator iterator() {
+      return new DocIdSetIterator() {
+        int i = -1;
+        int doc = -1;
+
+        @Override
+        public int docID() {
+          return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+          if (++i >= docs.length) {
+            return doc = NO_MORE_DOCS;
+          }
+          return doc = docs[i];
+        }
+
+        @Override
+        public int advance(int target) {
+          // galloping search from the current position
+          int lo = i + 1;
+          int step = 1;
+          int hi = lo;
+          while (hi < docs.length && docs[hi] < target) {
+            lo = hi + 1;
+            hi += step;
+            step <<= 1;
+          }
+          if (hi >= docs.length) {
+            hi = docs.length - 1;
+          }
+          while (lo <= hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (docs[mid] < target) {
+              lo = mid + 1;
+            } else {
+              hi = mid - 1;
+            }
+          }
+          i = lo;
+          if (i >= docs.length) {
+            return doc = NO_MORE_DOCS;
+          }
+          return doc = docs[i];
+        }
+      };
+    }
+  }
+}
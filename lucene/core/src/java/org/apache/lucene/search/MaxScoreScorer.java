@@ -0,0 +1,246 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.lucene.search.BooleanQuery.BooleanWeight;
+
+/**
+ * A top-level {@link Scorer} for disjunctions of terms that skips documents
+ * which cannot make it into the top hits, using the MaxScore algorithm.
+ * <p>
+ * Each term has an upper bound of its score in the current segment (see
+ * {@link TermScorer#maxScore()}). Terms are sorted by increasing upper bound,
+ * and the longest prefix of terms whose upper bounds sum up to less than the
+ * minimum competitive score of the collector are <i>non-essential</i>: a
+ * document that only matches non-essential terms cannot compete, so only the
+ * postings of the essential terms are iterated, and non-essential terms are
+ * only advanced to the candidate documents whose score may still compete.
+ * <p>
+ * Skipping only happens when the collector is a {@link TopScoreDocCollector}
+ * that does not track the total number of hits. In every other case, this
+ * scorer delegates to a {@link BooleanScorer} or {@link BooleanScorer2}
+ * created over the same sub scorers.
+ */
+final class MaxScoreScorer extends Scorer {
+
+  // Relative slack applied to upper bounds, so that the rounding errors of
+  // the float sums can never make us skip a competitive document.
+  private static final double SLACK = 1e-6;
+
+  private final boolean disableCoord;
+  private final int minNrShouldMatch;
+  private final List<Scorer> optional;
+  private final int maxCoord;
+  private final boolean scoreDocsInOrder;
+  private final float[] coordFactors;
+  private Scorer fallback;
+
+  MaxScoreScorer(BooleanWeight weight, boolean disableCoord, int minNrShouldMatch,
+      List<Scorer> optional, int maxCoord, boolean scoreDocsInOrder) {
+    super(weight);
+    assert minNrShouldMatch <= 1;
+    for (Scorer scorer : optional) {
+      assert scorer instanceof TermScorer;
+    }
+    this.disableCoord = disableCoord;
+    this.minNrShouldMatch = minNrShouldMatch;
+    this.optional = optional;
+    this.maxCoord = maxCoord;
+    this.scoreDocsInOrder = scoreDocsInOrder;
+    coordFactors = new float[optional.size() + 1];
+    for (int i = 0; i < coordFactors.length; i++) {
+      coordFactors[i] = disableCoord ? 1.0f : weight.coord(i, maxCoord);
+    }
+  }
+
+  private Scorer fallback() throws IOException {
+    if (fallback == null) {
+      final BooleanWeight weight = (BooleanWeight) this.weight;
+      final List<Scorer> none = Collections.emptyList();
+      if (scoreDocsInOrder) {
+        fallback = new BooleanScorer2(weight, disableCoord, minNrShouldMatch, none, none, optional, maxCoord);
+      } else {
+        fallback = new BooleanScorer(weight, disableCoord, minNrShouldMatch, optional, none, maxCoord);
+      }
+    }
+    return fallback;
+  }
+
+  @Override
+  public void score(Collector collector) throws IOException {
+    if (fallback == null
+        && collector instanceof TopScoreDocCollector
+        && !((TopScoreDocCollector) collector).trackTotalHits) {
+      scoreCompetitive((TopScoreDocCollector) collector);
+    } else {
+      fallback().score(collector);
+    }
+  }
+
+  private double upperBound(double sumOfMaxScores, float maxCoordFactor) {
+    return sumOfMaxScores * maxCoordFactor * (1 + SLACK);
+  }
+
+  private void scoreCompetitive(TopScoreDocCollector collector) throws IOException {
+    collector.setScorer(this);
+
+    final int numScorers = optional.size();
+    final TermScorer[] scorers = new TermScorer[numScorers];
+    for (int i = 0; i < numScorers; ++i) {
+      scorers[i] = (TermScorer) optional.get(i);
+    }
+    final float[] maxScores = new float[numScorers];
+    for (int i = 0; i < numScorers; ++i) {
+      maxScores[i] = scorers[i].maxScore();
+    }
+    // sort by increasing max score
+    final Integer[] ords = new Integer[numScorers];
+    for (int i = 0; i < numScorers; ++i) {
+      ords[i] = i;
+    }
+    Arrays.sort(ords, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Float.compare(maxScores[o1], maxScores[o2]);
+      }
+    });
+    final TermScorer[] sorted = new TermScorer[numScorers];
+    // sumOfMaxScores[i] is the sum of the max scores of sorted[0..i]
+    final double[] sumOfMaxScores = new double[numScorers];
+    double sum = 0;
+    for (int i = 0; i < numScorers; ++i) {
+      sorted[i] = scorers[ords[i]];
+      sum += maxScores[ords[i]];
+      sumOfMaxScores[i] = sum;
+    }
+    float maxCoordFactor = 0;
+    for (float coordFactor : coordFactors) {
+      maxCoordFactor = Math.max(maxCoordFactor, coordFactor);
+    }
+
+    for (TermScorer scorer : sorted) {
+      scorer.nextDoc();
+    }
+
+    // sorted[0..firstEssential-1] are non-essential
+    int firstEssential = 0;
+    float minCompetitiveScore = collector.minCompetitiveScore();
+    while (true) {
+      while (firstEssential < numScorers
+          && upperBound(sumOfMaxScores[firstEssential], maxCoordFactor) < minCompetitiveScore) {
+        ++firstEssential;
+      }
+      if (firstEssential == numScorers) {
+        // no remaining document can compete
+        break;
+      }
+
+      int doc = NO_MORE_DOCS;
+      for (int i = firstEssential; i < numScorers; ++i) {
+        doc = Math.min(doc, sorted[i].docID());
+      }
+      if (doc == NO_MORE_DOCS) {
+        break;
+      }
+
+      double score = 0;
+      int coord = 0;
+      for (int i = firstEssential; i < numScorers; ++i) {
+        final TermScorer scorer = sorted[i];
+        if (scorer.docID() == doc) {
+          score += scorer.score();
+          ++coord;
+          scorer.nextDoc();
+        }
+      }
+
+      boolean competitive = true;
+      for (int i = firstEssential - 1; i >= 0; --i) {
+        if (upperBound(score + sumOfMaxScores[i], maxCoordFactor) < minCompetitiveScore) {
+          competitive = false;
+          break;
+        }
+        final TermScorer scorer = sorted[i];
+        if (scorer.docID() < doc) {
+          scorer.advance(doc);
+        }
+        if (scorer.docID() == doc) {
+          score += scorer.score();
+          ++coord;
+        }
+      }
+
+      if (competitive) {
+        collector.collect(doc, (float) (score * coordFactors[coord]));
+        minCompetitiveScore = collector.minCompetitiveScore();
+      }
+    }
+  }
+
+  @Override
+  public boolean score(Collector collector, int max, int firstDocID) throws IOException {
+    return fallback().score(collector, max, firstDocID);
+  }
+
+  @Override
+  public int docID() {
+    return fallback == null ? -1 : fallback.docID();
+  }
+
+  @Override
+  public int nextDoc() throws IOException {
+    return fallback().nextDoc();
+  }
+
+  @Override
+  public int advance(int target) throws IOException {
+    return fallback().advance(target);
+  }
+
+  @Override
+  public float score() throws IOException {
+    return fallback().score();
+  }
+
+  @Override
+  public float freq() throws IOException {
+    return fallback().freq();
+  }
+
+  @Override
+  public Collection<ChildScorer> getChildren() {
+    final List<ChildScorer> children = new ArrayList<ChildScorer>();
+    for (Scorer scorer : optional) {
+      children.add(new ChildScorer(scorer, "SHOULD"));
+    }
+    return children;
+  }
+
+  @Override
+  public String toString() {
+    return "maxscore(" + optional + ")";
+  }
+}
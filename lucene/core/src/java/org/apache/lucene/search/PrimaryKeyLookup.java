@@ -0,0 +1,295 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SorterTemplate;
+
+/**
+ * Looks up documents by a primary key field, a field that has at most one
+ * live document per term (like Solr's unique key).
+ *
+ * <p>Segments are visited from the newest to the oldest: when documents are
+ * updated, the live version of a document is most likely in a recent
+ * segment, so lookups of hot keys stop early.  Terms dictionaries that
+ * support it (such as the bloom filtering postings format) reject absent
+ * keys cheaply in {@link TermsEnum#seekExact(BytesRef, boolean)}.
+ *
+ * <p>The {@link TermState} of keys that were found is cached per segment
+ * core, so that a later lookup of the same key in the same segment, even
+ * through a reopened reader, skips the terms dictionary.  Each segment
+ * caches at most {@code maxCachedKeysPerSegment} keys, evicting the least
+ * recently used one.  Entries are purged when the segment core is closed.
+ *
+ * <p>{@link #lookup(IndexReader, BytesRef[], int[])} looks up many keys at
+ * once, seeking each segment's {@link TermsEnum} in key order so that
+ * consecutive seeks share their prefix in the terms dictionary.
+ *
+ * <p>Instances are thread-safe and are meant to be shared by all readers
+ * of an index.
+ *
+ * @lucene.experimental
+ */
+public class PrimaryKeyLookup {
+
+  /** Default maximum number of cached keys per segment. */
+  public static final int DEFAULT_MAX_CACHED_KEYS_PER_SEGMENT = 1024;
+
+  private final String field;
+  private final int maxCachedKeysPerSegment;
+
+  // core cache key -> key -> term state, in least recently used first order
+  private final Map<Object,LinkedHashMap<BytesRef,TermState>> cache = new HashMap<Object,LinkedHashMap<BytesRef,TermState>>();
+
+  private long hitCount, missCount;
+
+  // segment cores don't purge until the shared core closes.
+  private final SegmentReader.CoreClosedListener purgeCore = new SegmentReader.CoreClosedListener() {
+    @Override
+    public void onClose(SegmentReader owner) {
+      purge(owner.getCoreCacheKey());
+    }
+  };
+
+  // other readers don't purge until they are closed.
+  private final IndexReader.ReaderClosedListener purgeReader = new IndexReader.ReaderClosedListener() {
+    @Override
+    public void onClose(IndexReader owner) {
+      purge(((AtomicReader) owner).getCoreCacheKey());
+    }
+  };
+
+  /** Creates a lookup on {@code field} with the default cache size. */
+  public PrimaryKeyLookup(String field) {
+    this(field, DEFAULT_MAX_CACHED_KEYS_PER_SEGMENT);
+  }
+
+  /** Creates a lookup on {@code field} that caches the term states of at
+   *  most {@code maxCachedKeysPerSegment} keys per segment; 0 disables
+   *  caching. */
+  public PrimaryKeyLookup(String field, int maxCachedKeysPerSegment) {
+    if (field == null) {
+      throw new IllegalArgumentException("field must not be null");
+    }
+    if (maxCachedKeysPerSegment < 0) {
+      throw new IllegalArgumentException("maxCachedKeysPerSegment must be >= 0, got " + maxCachedKeysPerSegment);
+    }
+    this.field = field;
+    this.maxCachedKeysPerSegment = maxCachedKeysPerSegment;
+  }
+
+  /** Returns the primary key field. */
+  public String getField() {
+    return field;
+  }
+
+  /** Returns the doc ID (relative to {@code reader}) of the live document
+   *  that has {@code key}, or -1 if there is none. */
+  public int lookup(IndexReader reader, BytesRef key) throws IOException {
+    final List<AtomicReaderContext> leaves = reader.leaves();
+    for (int i = leaves.size() - 1; i >= 0; i--) {
+      final AtomicReaderContext context = leaves.get(i);
+      final Terms terms = context.reader().terms(field);
+      if (terms == null) {
+        continue;
+      }
+      final int doc = lookup(context, terms.iterator(null), key);
+      if (doc != -1) {
+        return context.docBase + doc;
+      }
+    }
+    return -1;
+  }
+
+  /** Looks up all {@code keys} at once and stores the doc ID (relative to
+   *  {@code reader}) of the live document that has {@code keys[i]} in
+   *  {@code docIDs[i]}, or -1 if there is none.  Keys don't need to be
+   *  sorted. */
+  public void lookup(IndexReader reader, final BytesRef[] keys, int[] docIDs) throws IOException {
+    if (docIDs.length < keys.length) {
+      throw new IllegalArgumentException("docIDs is too small: " + docIDs.length + " < " + keys.length);
+    }
+    Arrays.fill(docIDs, 0, keys.length, -1);
+
+    // visit keys in sorted order
+    final int[] order = new int[keys.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    new SorterTemplate() {
+      private BytesRef pivot;
+
+      @Override
+      protected void swap(int i, int j) {
+        final int tmp = order[i];
+        order[i] = order[j];
+        order[j] = tmp;
+      }
+
+      @Override
+      protected int compare(int i, int j) {
+        return keys[order[i]].compareTo(keys[order[j]]);
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = keys[order[i]];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return pivot.compareTo(keys[order[j]]);
+      }
+    }.mergeSort(0, order.length - 1);
+
+    int remaining = keys.length;
+    final List<AtomicReaderContext> leaves = reader.leaves();
+    for (int i = leaves.size() - 1; i >= 0 && remaining > 0; i--) {
+      final AtomicReaderContext context = leaves.get(i);
+      final Terms terms = context.reader().terms(field);
+      if (terms == null) {
+        continue;
+      }
+      // one enum per segment, seeked forward only
+      final TermsEnum termsEnum = terms.iterator(null);
+      for (int ord : order) {
+        if (docIDs[ord] == -1) {
+          final int doc = lookup(context, termsEnum, keys[ord]);
+          if (doc != -1) {
+            docIDs[ord] = context.docBase + doc;
+            remaining--;
+          }
+        }
+      }
+    }
+  }
+
+  private int lookup(AtomicReaderContext context, TermsEnum termsEnum, BytesRef key) throws IOException {
+    final AtomicReader reader = context.reader();
+    final Object coreKey = reader.getCoreCacheKey();
+    final TermState cached = get(coreKey, key);
+    if (cached != null) {
+      termsEnum.seekExact(key, cached);
+    } else if (!termsEnum.seekExact(key, false)) {
+      return -1;
+    } else if (maxCachedKeysPerSegment > 0) {
+      put(reader, coreKey, key, termsEnum.termState());
+    }
+
+    final Bits liveDocs = reader.getLiveDocs();
+    final DocsEnum docs = termsEnum.docs(liveDocs, null, 0);
+    if (docs == null) {
+      return -1;
+    }
+    final int doc = docs.nextDoc();
+    return doc == DocIdSetIterator.NO_MORE_DOCS ? -1 : doc;
+  }
+
+  private synchronized TermState get(Object coreKey, BytesRef key) {
+    final LinkedHashMap<BytesRef,TermState> coreCache = cache.get(coreKey);
+    final TermState termState = coreCache == null ? null : coreCache.get(key);
+    if (termState == null) {
+      missCount++;
+    } else {
+      hitCount++;
+    }
+    return termState;
+  }
+
+  private synchronized void put(AtomicReader reader, Object coreKey, BytesRef key, TermState termState) {
+    LinkedHashMap<BytesRef,TermState> coreCache = cache.get(coreKey);
+    if (coreCache == null) {
+      coreCache = new LinkedHashMap<BytesRef,TermState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<BytesRef,TermState> eldest) {
+          return size() > maxCachedKeysPerSegment;
+        }
+      };
+      cache.put(coreKey, coreCache);
+      initReader(reader);
+    }
+    coreCache.put(BytesRef.deepCopyOf(key), termState);
+  }
+
+  private void initReader(AtomicReader reader) {
+    if (reader instanceof SegmentReader) {
+      ((SegmentReader) reader).addCoreClosedListener(purgeCore);
+    } else {
+      // we have a slow reader of some sort, try to register a purge event
+      // rather than relying on eviction:
+      final Object key = reader.getCoreCacheKey();
+      if (key instanceof AtomicReader) {
+        ((AtomicReader) key).addReaderClosedListener(purgeReader);
+      } else {
+        reader.addReaderClosedListener(purgeReader);
+      }
+    }
+  }
+
+  /** Removes all cached term states of the given segment core. */
+  synchronized void purge(Object coreKey) {
+    cache.remove(coreKey);
+  }
+
+  /** Removes all cached term states. */
+  public synchronized void clear() {
+    cache.clear();
+  }
+
+  /** Returns the number of cached term states. */
+  public synchronized int size() {
+    int size = 0;
+    for (Map<BytesRef,TermState> coreCache : cache.values()) {
+      size += coreCache.size();
+    }
+    return size;
+  }
+
+  /** Returns the number of lookups in a segment that found a cached term
+   *  state. */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups in a segment that did not find a cached
+   *  term state. */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "PrimaryKeyLookup(field=" + field + ", size=" + size() + ", hitCount=" + hitCount + ", missCount=" + missCount + ")";
+  }
+}
@@ -86,7 +86,45 @@ public abstract class Scorer extends DocIdSetIterator {
     }
     return doc != NO_MORE_DOCS;
   }
-  
+
+  /**
+   * Expert: Bulk-advances to the next matching documents, filling
+   * <code>docs</code> with their IDs and <code>scores</code> with their
+   * scores, starting at offset 0. Returns the number of documents read, which
+   * is <code>0</code> only when the scorer is exhausted; it is legal to call
+   * this method again after a batch that exhausted the scorer. After this method
+   * returns, {@link #docID()} is the last document that was read, or
+   * {@link #NO_MORE_DOCS}.
+   * <p>
+   * The default implementation calls {@link #nextDoc()} and {@link #score()}
+   * for every document. Scorers that can decode and score several documents
+   * at a time should override it.
+   *
+   * @param docs
+   *          buffer for document IDs, must not be empty
+   * @param scores
+   *          buffer for the scores, at least as large as <code>docs</code>
+   * @return the number of documents that were read
+   * @lucene.experimental
+   */
+  public int nextDocs(int[] docs, float[] scores) throws IOException {
+    assert docs.length > 0 && scores.length >= docs.length;
+    if (docID() == NO_MORE_DOCS) {
+      return 0;
+    }
+    int count = 0;
+    while (count < docs.length) {
+      final int doc = nextDoc();
+      if (doc == NO_MORE_DOCS) {
+        break;
+      }
+      docs[count] = doc;
+      scores[count] = score();
+      ++count;
+    }
+    return count;
+  }
+
   /** Returns the score of the current document matching the query.
    * Initially invalid, until {@link #nextDoc()} or {@link #advance(int)}
    * is called the first time, or when called from within
@@ -257,7 +257,7 @@ public class SortField {
   @Override
   public String toString() {
     StringBuilder buffer = new StringBuilder();
-    String dv = useIndexValues ? " [dv]" : "";
+    String dv = useIndexValues ? (indexValuesDiskResident ? " [dv,disk]" : " [dv]") : "";
     switch (type) {
       case SCORE:
         buffer.append("<score>");
@@ -348,6 +348,7 @@ public class SortField {
   }
 
   private boolean useIndexValues;
+  private boolean indexValuesDiskResident;
 
   public void setUseIndexValues(boolean b) {
     useIndexValues = b;
@@ -357,6 +358,22 @@ public class SortField {
     return useIndexValues;
   }
 
+  /** Set to <code>true</code> to read index values through {@link
+   *  org.apache.lucene.index.DocValues#getDirectSource()} instead of
+   *  loading them onto the heap. This has no effect unless {@link
+   *  #setUseIndexValues} is <code>true</code>.
+   *
+   * @lucene.experimental */
+  public void setIndexValuesDiskResident(boolean b) {
+    indexValuesDiskResident = b;
+  }
+
+  /** Returns whether index values are read from disk.
+   *  @see #setIndexValuesDiskResident */
+  public boolean getIndexValuesDiskResident() {
+    return indexValuesDiskResident;
+  }
+
   private Comparator<BytesRef> bytesComparator = BytesRef.getUTF8SortedAsUnicodeComparator();
 
   public void setBytesComparator(Comparator<BytesRef> b) {
@@ -390,14 +407,14 @@ public class SortField {
 
     case INT:
       if (useIndexValues) {
-        return new FieldComparator.IntDocValuesComparator(numHits, field);
+        return new FieldComparator.IntDocValuesComparator(numHits, field, indexValuesDiskResident);
       } else {
         return new FieldComparator.IntComparator(numHits, field, parser, (Integer) missingValue);
       }
 
     case FLOAT:
       if (useIndexValues) {
-        return new FieldComparator.FloatDocValuesComparator(numHits, field);
+        return new FieldComparator.FloatDocValuesComparator(numHits, field, indexValuesDiskResident);
       } else {
         return new FieldComparator.FloatComparator(numHits, field, parser, (Float) missingValue);
       }
@@ -420,14 +437,14 @@ public class SortField {
 
     case STRING:
       if (useIndexValues) {
-        return new FieldComparator.TermOrdValDocValuesComparator(numHits, field);
+        return new FieldComparator.TermOrdValDocValuesComparator(numHits, field, indexValuesDiskResident);
       } else {
         return new FieldComparator.TermOrdValComparator(numHits, field);
       }
 
     case STRING_VAL:
       if (useIndexValues) {
-        return new FieldComparator.TermValDocValuesComparator(numHits, field);
+        return new FieldComparator.TermValDocValuesComparator(numHits, field, indexValuesDiskResident);
       } else {
         return new FieldComparator.TermValComparator(numHits, field);
       }
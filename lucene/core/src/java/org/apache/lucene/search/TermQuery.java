@@ -22,6 +22,7 @@ import java.util.Set;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.ReaderUtil;
@@ -85,7 +86,17 @@ public class TermQuery extends Query {
       }
       DocsEnum docs = termsEnum.docs(acceptDocs, null);
       assert docs != null;
-      return new TermScorer(this, docs, similarity.exactSimScorer(stats, context), termsEnum.docFreq());
+      int maxFreq = docs.maxFreq();
+      if (maxFreq == -1) {
+        final long totalTermFreq = termsEnum.totalTermFreq();
+        if (totalTermFreq != -1) {
+          // every document has a freq of at least 1
+          maxFreq = (int) Math.min(Integer.MAX_VALUE, totalTermFreq - termsEnum.docFreq() + 1);
+        } else if (context.reader().getFieldInfos().fieldInfo(term.field()).getIndexOptions() == IndexOptions.DOCS_ONLY) {
+          maxFreq = 1;
+        }
+      }
+      return new TermScorer(this, docs, similarity.exactSimScorer(stats, context), termsEnum.docFreq(), maxFreq);
     }
     
     /**
@@ -25,9 +25,14 @@ import org.apache.lucene.search.similarities.Similarity;
 /** Expert: A <code>Scorer</code> for documents matching a <code>Term</code>.
  */
 final class TermScorer extends Scorer {
+  /** Number of documents that are scored at once by {@link #score(Collector)}. */
+  static final int BULK_SIZE = 128;
+
   private final DocsEnum docsEnum;
   private final Similarity.ExactSimScorer docScorer;
   private final int docFreq;
+  private final int maxFreq;
+  private int[] freqBuffer;
   
   /**
    * Construct a <code>TermScorer</code>.
@@ -41,12 +46,16 @@ final class TermScorer extends Scorer {
    *          to be used for score computations.
    * @param docFreq
    *          per-segment docFreq of this term
+   * @param maxFreq
+   *          upper bound of the per-segment freq of this term, or -1 if
+   *          unknown
    */
-  TermScorer(Weight weight, DocsEnum td, Similarity.ExactSimScorer docScorer, int docFreq) {
+  TermScorer(Weight weight, DocsEnum td, Similarity.ExactSimScorer docScorer, int docFreq, int maxFreq) {
     super(weight);
     this.docScorer = docScorer;
     this.docsEnum = td;
     this.docFreq = docFreq;
+    this.maxFreq = maxFreq;
   }
 
   @Override
@@ -75,6 +84,41 @@ final class TermScorer extends Scorer {
     return docScorer.score(docsEnum.docID(), docsEnum.freq());  
   }
 
+  @Override
+  public int nextDocs(int[] docs, float[] scores) throws IOException {
+    if (docsEnum.docID() == NO_MORE_DOCS) {
+      // the previous batch exhausted the enum
+      return 0;
+    }
+    if (freqBuffer == null || freqBuffer.length < docs.length) {
+      freqBuffer = new int[docs.length];
+    }
+    final int[] freqs = freqBuffer;
+    final int count = docsEnum.read(docs, freqs);
+    for (int i = 0; i < count; ++i) {
+      scores[i] = docScorer.score(docs[i], freqs[i]);
+    }
+    return count;
+  }
+
+  @Override
+  public void score(Collector collector) throws IOException {
+    if (collector instanceof TopScoreDocCollector) {
+      // decode and score postings a block at a time, and let the collector
+      // consume whole batches
+      final TopScoreDocCollector topCollector = (TopScoreDocCollector) collector;
+      topCollector.setScorer(this);
+      final int[] docs = new int[BULK_SIZE];
+      final float[] scores = new float[BULK_SIZE];
+      int count;
+      while ((count = nextDocs(docs, scores)) != 0) {
+        topCollector.collect(docs, scores, count);
+      }
+    } else {
+      super.score(collector);
+    }
+  }
+
   /**
    * Advances to the first match beyond the current whose document number is
    * greater than or equal to a given target. <br>
@@ -106,4 +150,10 @@ final class TermScorer extends Scorer {
   int getDocFreq() {
     return docFreq;
   }
+
+  /** Returns an upper bound of the score of any document matching this
+   *  scorer, see {@link Similarity.ExactSimScorer#maxScore(int)}. */
+  float maxScore() {
+    return docScorer.maxScore(maxFreq);
+  }
 }
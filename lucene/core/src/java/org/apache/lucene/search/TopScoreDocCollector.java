@@ -38,14 +38,17 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
 
   // Assumes docs are scored in order.
   private static class InOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private InOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private InOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     @Override
     public void collect(int doc) throws IOException {
-      float score = scorer.score();
+      collect(doc, scorer.score());
+    }
 
+    @Override
+    void collect(int doc, float score) {
       // This collector cannot handle these scores:
       assert score != Float.NEGATIVE_INFINITY;
       assert !Float.isNaN(score);
@@ -61,6 +64,26 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
       pqTop.score = score;
       pqTop = pq.updateTop();
     }
+
+    @Override
+    void collect(int[] docs, float[] scores, int count) {
+      totalHits += count;
+      float bottomScore = pqTop.score;
+      for (int i = 0; i < count; ++i) {
+        final float score = scores[i];
+        // This collector cannot handle these scores:
+        assert score != Float.NEGATIVE_INFINITY;
+        assert !Float.isNaN(score);
+        if (score <= bottomScore) {
+          // see collect(int, float)
+          continue;
+        }
+        pqTop.doc = docs[i] + docBase;
+        pqTop.score = score;
+        pqTop = pq.updateTop();
+        bottomScore = pqTop.score;
+      }
+    }
     
     @Override
     public boolean acceptsDocsOutOfOrder() {
@@ -75,15 +98,18 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     private int afterDoc;
     private int collectedHits;
 
-    private InOrderPagingScoreDocCollector(ScoreDoc after, int numHits) {
-      super(numHits);
+    private InOrderPagingScoreDocCollector(ScoreDoc after, int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
       this.after = after;
     }
     
     @Override
     public void collect(int doc) throws IOException {
-      float score = scorer.score();
+      collect(doc, scorer.score());
+    }
 
+    @Override
+    void collect(int doc, float score) {
       // This collector cannot handle these scores:
       assert score != Float.NEGATIVE_INFINITY;
       assert !Float.isNaN(score);
@@ -131,14 +157,17 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
 
   // Assumes docs are scored out of order.
   private static class OutOfOrderTopScoreDocCollector extends TopScoreDocCollector {
-    private OutOfOrderTopScoreDocCollector(int numHits) {
-      super(numHits);
+    private OutOfOrderTopScoreDocCollector(int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
     }
     
     @Override
     public void collect(int doc) throws IOException {
-      float score = scorer.score();
+      collect(doc, scorer.score());
+    }
 
+    @Override
+    void collect(int doc, float score) {
       // This collector cannot handle NaN
       assert !Float.isNaN(score);
 
@@ -170,15 +199,18 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     private int afterDoc;
     private int collectedHits;
 
-    private OutOfOrderPagingScoreDocCollector(ScoreDoc after, int numHits) {
-      super(numHits);
+    private OutOfOrderPagingScoreDocCollector(ScoreDoc after, int numHits, boolean trackTotalHits) {
+      super(numHits, trackTotalHits);
       this.after = after;
     }
     
     @Override
     public void collect(int doc) throws IOException {
-      float score = scorer.score();
+      collect(doc, scorer.score());
+    }
 
+    @Override
+    void collect(int doc, float score) {
       // This collector cannot handle NaN
       assert !Float.isNaN(score);
 
@@ -249,6 +281,28 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
    * objects.
    */
   public static TopScoreDocCollector create(int numHits, ScoreDoc after, boolean docsScoredInOrder) {
+    return create(numHits, after, docsScoredInOrder, true);
+  }
+
+  /**
+   * Creates a new {@link TopScoreDocCollector} given the number of hits to
+   * collect, the bottom of the previous page, whether documents are scored in
+   * order by the input {@link Scorer} to {@link #setScorer(Scorer)} and
+   * whether the total number of hits must be computed.
+   *
+   * <p>When <code>trackTotalHits</code> is <code>false</code>, scorers may
+   * skip documents whose score cannot be greater than the score of the
+   * current bottom of the queue: this can make disjunctions of terms much
+   * faster, but {@link TopDocs#totalHits} is then only a lower bound of the
+   * number of matching documents.
+   *
+   * <p><b>NOTE</b>: The instances returned by this method
+   * pre-allocate a full array of length
+   * <code>numHits</code>, and fill the array with sentinel
+   * objects.
+   * @lucene.experimental
+   */
+  public static TopScoreDocCollector create(int numHits, ScoreDoc after, boolean docsScoredInOrder, boolean trackTotalHits) {
     
     if (numHits <= 0) {
       throw new IllegalArgumentException("numHits must be > 0; please use TotalHitCountCollector if you just need the total hit count");
@@ -256,12 +310,12 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     
     if (docsScoredInOrder) {
       return after == null 
-        ? new InOrderTopScoreDocCollector(numHits) 
-        : new InOrderPagingScoreDocCollector(after, numHits);
+        ? new InOrderTopScoreDocCollector(numHits, trackTotalHits) 
+        : new InOrderPagingScoreDocCollector(after, numHits, trackTotalHits);
     } else {
       return after == null
-        ? new OutOfOrderTopScoreDocCollector(numHits)
-        : new OutOfOrderPagingScoreDocCollector(after, numHits);
+        ? new OutOfOrderTopScoreDocCollector(numHits, trackTotalHits)
+        : new OutOfOrderPagingScoreDocCollector(after, numHits, trackTotalHits);
     }
     
   }
@@ -269,10 +323,12 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
   ScoreDoc pqTop;
   int docBase = 0;
   Scorer scorer;
+  final boolean trackTotalHits;
     
   // prevents instantiation
-  private TopScoreDocCollector(int numHits) {
+  private TopScoreDocCollector(int numHits, boolean trackTotalHits) {
     super(new HitQueue(numHits, true));
+    this.trackTotalHits = trackTotalHits;
     // HitQueue implements getSentinelObject to return a ScoreDoc, so we know
     // that at this point top() is already initialized.
     pqTop = pq.top();
@@ -299,6 +355,28 @@ public abstract class TopScoreDocCollector extends TopDocsCollector<ScoreDoc> {
     return new TopDocs(totalHits, results, maxScore);
   }
   
+  /** Returns the minimum score that a document must exceed in order to be
+   *  collected, or {@link Float#NEGATIVE_INFINITY} if the queue is not full
+   *  yet. Documents whose score is less than this value may be skipped by
+   *  scorers when {@link #trackTotalHits} is <code>false</code>. */
+  float minCompetitiveScore() {
+    return pqTop.score;
+  }
+
+  /** Collects a document whose score has already been computed. */
+  abstract void collect(int doc, float score);
+
+  /**
+   * Collects a batch of <code>count</code> documents, in the order of the
+   * batch, together with their scores. This is used by scorers that can
+   * compute scores in bulk, see {@link Scorer#nextDocs(int[], float[])}.
+   */
+  void collect(int[] docs, float[] scores, int count) {
+    for (int i = 0; i < count; ++i) {
+      collect(docs[i], scores[i]);
+    }
+  }
+
   @Override
   public void setNextReader(AtomicReaderContext context) {
     docBase = context.docBase;
@@ -245,6 +245,24 @@ public class BM25Similarity extends Similarity {
     public float score(int doc, int freq) {
       return weightValue * freq / (freq + cache[norms[doc] & 0xFF]);
     }
+
+    @Override
+    public float maxScore(int maxFreq) {
+      if (maxFreq < 0 || weightValue < 0) {
+        return Float.POSITIVE_INFINITY;
+      }
+      // the score decreases with the length normalization factor
+      float minCache = Float.POSITIVE_INFINITY;
+      for (float c : cache) {
+        if (c < minCache) {
+          minCache = c;
+        }
+      }
+      if (minCache < 0) {
+        return Float.POSITIVE_INFINITY;
+      }
+      return weightValue * maxFreq / (maxFreq + minCache);
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -273,6 +291,14 @@ public class BM25Similarity extends Similarity {
         ? scoreCache[freq]                  // cache hit
         : weightValue * freq / (freq + k1); // cache miss
     }
+
+    @Override
+    public float maxScore(int maxFreq) {
+      if (maxFreq < 0 || weightValue < 0) {
+        return Float.POSITIVE_INFINITY;
+      }
+      return score(-1, maxFreq);
+    }
     
     @Override
     public Explanation explain(int doc, Explanation freq) {
@@ -91,6 +91,15 @@ public class MultiSimilarity extends Similarity {
       return sum;
     }
 
+    @Override
+    public float maxScore(int maxFreq) {
+      float sum = 0.0f;
+      for (ExactSimScorer subScorer : subScorers) {
+        sum += subScorer.maxScore(maxFreq);
+      }
+      return sum;
+    }
+
     @Override
     public Explanation explain(int doc, Explanation freq) {
       Explanation expl = new Explanation(score(doc, (int)freq.getValue()), "sum of:");
@@ -213,6 +213,20 @@ public abstract class Similarity {
      * @return document's score
      */
     public abstract float score(int doc, int freq);
+
+    /**
+     * Returns an upper bound of {@link #score(int, int)} for any document
+     * of the segment and any term frequency less than or equal to
+     * <code>maxFreq</code>. This allows disjunctions to skip documents that
+     * cannot compete. The default implementation returns
+     * {@link Float#POSITIVE_INFINITY}, which disables such skipping.
+     * @param maxFreq upper bound of the term frequency
+     * @return an upper bound of the score of the term in this segment
+     * @lucene.experimental
+     */
+    public float maxScore(int maxFreq) {
+      return Float.POSITIVE_INFINITY;
+    }
     
     /**
      * Explain the score for a single document
@@ -19,6 +19,9 @@ package org.apache.lucene.search.similarities;
 
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DocValues;
@@ -683,6 +686,30 @@ public abstract class TFIDFSimilarity extends Similarity {
     return NORM_TABLE[b & 0xFF];  // & 0xFF maps negative bytes to positive above 127
   }
 
+  /** Largest decoded norm value of a segment, keyed by the norms array. */
+  private final Map<byte[],Float> maxNorms = Collections.synchronizedMap(new WeakHashMap<byte[],Float>());
+
+  /** Returns the largest decoded norm value of the given array, or 0 if
+   *  all values are negative. */
+  private float maxNorm(byte[] norms) {
+    Float maxNorm = maxNorms.get(norms);
+    if (maxNorm == null) {
+      final boolean[] seen = new boolean[256];
+      for (byte b : norms) {
+        seen[b & 0xFF] = true;
+      }
+      float max = 0;
+      for (int i = 0; i < seen.length; ++i) {
+        if (seen[i]) {
+          max = Math.max(max, decodeNormValue((byte) i));
+        }
+      }
+      maxNorm = max;
+      maxNorms.put(norms, maxNorm);
+    }
+    return maxNorm;
+  }
+
   /** Encodes a normalization factor for storage in an index.
   *
   * <p>The encoding uses a three-bit mantissa, a five-bit exponent, and
@@ -775,6 +802,22 @@ public abstract class TFIDFSimilarity extends Similarity {
       return norms == null ? raw : raw * decodeNormValue(norms[doc]); // normalize for field
     }
 
+    @Override
+    public float maxScore(int maxFreq) {
+      if (maxFreq < 0 || weightValue < 0) {
+        return Float.POSITIVE_INFINITY;
+      }
+      float maxRaw = 0;
+      for (int i = 1, last = Math.min(maxFreq, SCORE_CACHE_SIZE - 1); i <= last; ++i) {
+        maxRaw = Math.max(maxRaw, scoreCache[i]);
+      }
+      if (maxFreq >= SCORE_CACHE_SIZE) {
+        // assumes that tf is non-decreasing for large frequencies
+        maxRaw = Math.max(maxRaw, tf(maxFreq)*weightValue);
+      }
+      return norms == null ? maxRaw : maxRaw * maxNorm(norms);
+    }
+
     @Override
     public Explanation explain(int doc, Explanation freq) {
       return explainScore(doc, freq, stats, norms);
@@ -211,6 +211,21 @@ abstract class ByteBufferIndexInput extends IndexInput {
     return clone;
   }
   
+  /**
+   * Returns a lock-free view that reads with absolute {@link ByteBuffer} gets.
+   * The view is backed by a slice that is registered like any other clone,
+   * so it throws {@link AlreadyClosedException} once this input is closed.
+   */
+  @Override
+  public final RandomAccessInput randomAccessSlice(long offset, long length) {
+    return buildSlice(offset, length).new ByteBufferRandomAccessInput();
+  }
+
+  @Override
+  public final boolean hasFastRandomAccessSlice() {
+    return true;
+  }
+
   private ByteBufferIndexInput buildSlice(long offset, long length) {
     if (buffers == null) {
       throw new AlreadyClosedException("Already closed: " + this);
@@ -291,6 +306,67 @@ abstract class ByteBufferIndexInput extends IndexInput {
     }
   }
   
+  /** Reads at absolute positions of this (sliced) input without touching
+   *  the current buffer, so it is safe for concurrent use. */
+  private final class ByteBufferRandomAccessInput implements RandomAccessInput {
+
+    private ByteBuffer buffer(long pos) throws IOException {
+      if (pos < 0L) {
+        throw new IllegalArgumentException("Reading at negative position: " + ByteBufferIndexInput.this);
+      }
+      try {
+        return buffers[(int) ((pos + offset) >> chunkSizePower)];
+      } catch (ArrayIndexOutOfBoundsException aioobe) {
+        throw new EOFException("read past EOF: " + ByteBufferIndexInput.this);
+      } catch (NullPointerException npe) {
+        throw new AlreadyClosedException("Already closed: " + ByteBufferIndexInput.this);
+      }
+    }
+
+    private int bufferPos(long pos) {
+      return (int) ((pos + offset) & chunkSizeMask);
+    }
+
+    @Override
+    public byte readByte(long pos) throws IOException {
+      try {
+        return buffer(pos).get(bufferPos(pos));
+      } catch (IndexOutOfBoundsException ioobe) {
+        throw new EOFException("read past EOF: " + ByteBufferIndexInput.this);
+      }
+    }
+
+    @Override
+    public short readShort(long pos) throws IOException {
+      try {
+        return buffer(pos).getShort(bufferPos(pos));
+      } catch (IndexOutOfBoundsException ioobe) {
+        // the value spans two buffers (or we are at EOF)
+        return (short) (((readByte(pos) & 0xFF) << 8) | (readByte(pos + 1) & 0xFF));
+      }
+    }
+
+    @Override
+    public int readInt(long pos) throws IOException {
+      try {
+        return buffer(pos).getInt(bufferPos(pos));
+      } catch (IndexOutOfBoundsException ioobe) {
+        // the value spans two buffers (or we are at EOF)
+        return ((readShort(pos) & 0xFFFF) << 16) | (readShort(pos + 2) & 0xFFFF);
+      }
+    }
+
+    @Override
+    public long readLong(long pos) throws IOException {
+      try {
+        return buffer(pos).getLong(bufferPos(pos));
+      } catch (IndexOutOfBoundsException ioobe) {
+        // the value spans two buffers (or we are at EOF)
+        return (((long) readInt(pos)) << 32) | (readInt(pos + 4) & 0xFFFFFFFFL);
+      }
+    }
+  }
+
   /**
    * Called when the contents of a buffer will be no longer needed.
    */
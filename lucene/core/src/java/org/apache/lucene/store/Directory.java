@@ -327,6 +327,19 @@ public abstract class Directory implements Closeable {
      */
     @Override
     protected void seekInternal(long pos) {}
+
+    @Override
+    public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > this.length) {
+        throw new IllegalArgumentException("randomAccessSlice() out of bounds: offset=" + offset + ",length=" + length + ",fileLength=" + this.length + ": " + this);
+      }
+      return base.randomAccessSlice(fileOffset + offset, length);
+    }
+
+    @Override
+    public boolean hasFastRandomAccessSlice() {
+      return base.hasFastRandomAccessSlice();
+    }
     
     /** Closes the stream to further operations. */
     @Override
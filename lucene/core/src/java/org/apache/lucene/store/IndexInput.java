@@ -18,6 +18,7 @@ package org.apache.lucene.store;
  */
 
 import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
 
 /** Abstract base class for input from a file in a {@link Directory}.  A
@@ -81,4 +82,80 @@ public abstract class IndexInput extends DataInput implements Cloneable,Closeabl
   public IndexInput clone() {
     return (IndexInput) super.clone();
   }
+
+  /**
+   * Creates a {@link RandomAccessInput} over <code>length</code> bytes of
+   * this input, starting at <code>offset</code>. The returned view does not
+   * use nor change the file pointer of this input and can be shared across
+   * threads, so it is an alternative to cloning when the data is accessed at
+   * absolute positions (for example fixed-width index files).
+   * <p>
+   * The default implementation reads from a private clone of this input
+   * under a lock. Subclasses that can read at absolute positions without
+   * holding state (like memory-mapped inputs) should override it.
+   *
+   * @lucene.experimental
+   */
+  public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+    if (offset < 0 || length < 0 || offset + length > length()) {
+      throw new IllegalArgumentException("randomAccessSlice() out of bounds: offset=" + offset + ",length=" + length + ",fileLength=" + length() + ": " + this);
+    }
+    return new LockingRandomAccessInput(clone(), offset, length);
+  }
+
+  /**
+   * Returns <code>true</code> if the views returned by
+   * {@link #randomAccessSlice} read without locking nor allocating, so that
+   * sharing one view across threads is cheaper than reading from clones of
+   * this input. The default implementation returns <code>false</code>.
+   *
+   * @lucene.experimental
+   */
+  public boolean hasFastRandomAccessSlice() {
+    return false;
+  }
+
+  /** Default {@link RandomAccessInput}: seeks a private clone under a lock. */
+  private static final class LockingRandomAccessInput implements RandomAccessInput {
+    private final IndexInput in;
+    private final long offset;
+    private final long length;
+
+    LockingRandomAccessInput(IndexInput in, long offset, long length) {
+      this.in = in;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    private void seek(long pos, int numBytes) throws IOException {
+      if (pos < 0 || pos + numBytes > length) {
+        throw new EOFException("read past EOF: pos=" + pos + ",length=" + length + ": " + in);
+      }
+      in.seek(offset + pos);
+    }
+
+    @Override
+    public synchronized byte readByte(long pos) throws IOException {
+      seek(pos, 1);
+      return in.readByte();
+    }
+
+    @Override
+    public synchronized short readShort(long pos) throws IOException {
+      seek(pos, 2);
+      return in.readShort();
+    }
+
+    @Override
+    public synchronized int readInt(long pos) throws IOException {
+      seek(pos, 4);
+      return in.readInt();
+    }
+
+    @Override
+    public synchronized long readLong(long pos) throws IOException {
+      seek(pos, 8);
+      return in.readLong();
+    }
+  }
 }
@@ -221,11 +221,36 @@ public class MMapDirectory extends FSDirectory {
     File f = new File(getDirectory(), name);
     RandomAccessFile raf = new RandomAccessFile(f, "r");
     try {
-      return new MMapIndexInput("MMapIndexInput(path=\"" + f + "\")", raf);
+      final long length = raf.length();
+      final ByteBuffer[] buffers = map(raf, 0, length);
+      boolean success = false;
+      try {
+        onMap(name, context, buffers);
+        success = true;
+      } finally {
+        if (!success) {
+          for (ByteBuffer buffer : buffers) {
+            cleanMapping(buffer);
+          }
+        }
+      }
+      return new MMapIndexInput("MMapIndexInput(path=\"" + f + "\")", buffers, length);
     } finally {
       raf.close();
     }
   }
+
+  /**
+   * Expert: called with the buffers that a file was just mapped into by
+   * {@link #openInput}, before anything is read from them. The default
+   * implementation does nothing; subclasses may for example give access
+   * pattern hints to the operating system or load the buffers into physical
+   * memory, depending on the file and the {@link IOContext}.
+   * <p>Slices of compound files share the buffers of the compound file, so
+   * this is called once for the whole compound file.
+   */
+  protected void onMap(String name, IOContext context, ByteBuffer[] buffers) throws IOException {
+  }
   
   @Override
   public IndexInputSlicer createSlicer(String name, IOContext context) throws IOException {
@@ -252,8 +277,8 @@ public class MMapDirectory extends FSDirectory {
 
   private final class MMapIndexInput extends ByteBufferIndexInput {
     
-    MMapIndexInput(String resourceDescription, RandomAccessFile raf) throws IOException {
-      super(resourceDescription, map(raf, 0, raf.length()), raf.length(), chunkSizePower);
+    MMapIndexInput(String resourceDescription, ByteBuffer[] buffers, long length) throws IOException {
+      super(resourceDescription, buffers, length, chunkSizePower);
     }
     
     @Override
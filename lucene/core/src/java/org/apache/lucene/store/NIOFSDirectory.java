@@ -193,6 +193,66 @@ public class NIOFSDirectory extends FSDirectory {
 
     @Override
     protected void seekInternal(long pos) throws IOException {}
+
+    @Override
+    public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > length()) {
+        throw new IllegalArgumentException("randomAccessSlice() out of bounds: offset=" + offset + ",length=" + length + ",fileLength=" + length() + ": " + this);
+      }
+      return new PositionalRandomAccessInput(this, off + offset, length);
+    }
+  }
+
+  /** Lock-free {@link RandomAccessInput} using {@link FileChannel}'s positional read.
+   *  Every read allocates a buffer and issues a system call, so codecs still
+   *  prefer cloning ({@link IndexInput#hasFastRandomAccessSlice()} is false). */
+  private static final class PositionalRandomAccessInput implements RandomAccessInput {
+    private final NIOFSIndexInput in;
+    private final long start;
+    private final long length;
+
+    PositionalRandomAccessInput(NIOFSIndexInput in, long start, long length) {
+      this.in = in;
+      this.start = start;
+      this.length = length;
+    }
+
+    private ByteBuffer read(long pos, int numBytes) throws IOException {
+      if (pos < 0 || pos + numBytes > length) {
+        throw new EOFException("read past EOF: pos=" + pos + ",length=" + length + ": " + in);
+      }
+      final ByteBuffer bb = ByteBuffer.allocate(numBytes);
+      long filePos = start + pos;
+      while (bb.hasRemaining()) {
+        final int i = in.channel.read(bb, filePos);
+        if (i < 0) {
+          throw new EOFException("read past EOF: " + in);
+        }
+        filePos += i;
+      }
+      bb.flip();
+      return bb;
+    }
+
+    @Override
+    public byte readByte(long pos) throws IOException {
+      return read(pos, 1).get();
+    }
+
+    @Override
+    public short readShort(long pos) throws IOException {
+      return read(pos, 2).getShort();
+    }
+
+    @Override
+    public int readInt(long pos) throws IOException {
+      return read(pos, 4).getInt();
+    }
+
+    @Override
+    public long readLong(long pos) throws IOException {
+      return read(pos, 8).getLong();
+    }
   }
 
 }
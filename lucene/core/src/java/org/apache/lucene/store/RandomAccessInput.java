@@ -0,0 +1,55 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+/**
+ * Random-access view over a range of bytes of an {@link IndexInput}.
+ * <p>
+ * Unlike {@link IndexInput}, reads take an absolute position (relative to
+ * the start of the view) and never change any file pointer, so a single
+ * instance may be shared by several threads without cloning. Multi-byte
+ * values are read in the same (big-endian) byte order as
+ * {@link DataInput#readShort()}, {@link DataInput#readInt()} and
+ * {@link DataInput#readLong()}.
+ * <p>
+ * Like clones, a view is invalid once the {@link IndexInput} it was created
+ * from is closed.
+ *
+ * @see IndexInput#randomAccessSlice(long, long)
+ * @lucene.experimental
+ */
+public interface RandomAccessInput {
+
+  /** Reads the byte at position <code>pos</code>. */
+  byte readByte(long pos) throws IOException;
+
+  /** Reads the short starting at position <code>pos</code>.
+   * @see DataInput#readShort() */
+  short readShort(long pos) throws IOException;
+
+  /** Reads the int starting at position <code>pos</code>.
+   * @see DataInput#readInt() */
+  int readInt(long pos) throws IOException;
+
+  /** Reads the long starting at position <code>pos</code>.
+   * @see DataInput#readLong() */
+  long readLong(long pos) throws IOException;
+
+}
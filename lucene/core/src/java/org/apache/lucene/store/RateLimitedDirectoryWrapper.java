@@ -0,0 +1,251 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+
+/** A delegating Directory that pauses all reads and writes
+ *  of the {@link IndexInput}s and {@link IndexOutput}s it
+ *  opens through a {@link RateLimiter}.  IndexWriter uses
+ *  this to throttle merges.
+ *
+ *  <p>Inputs and outputs are buffered so that the rate
+ *  limiter sees one call per buffer refill or flush
+ *  instead of one per byte.
+ *
+ * @lucene.experimental */
+public final class RateLimitedDirectoryWrapper extends Directory implements Closeable {
+
+  private final Directory other;
+  private final RateLimiter rateLimiter;
+
+  public RateLimitedDirectoryWrapper(Directory other, RateLimiter rateLimiter) {
+    this.other = other;
+    this.rateLimiter = rateLimiter;
+  }
+
+  /** Returns the {@link RateLimiter} that throttles this
+   *  directory. */
+  public RateLimiter getRateLimiter() {
+    return rateLimiter;
+  }
+
+  /** Returns the wrapped {@link Directory}. */
+  public Directory getDelegate() {
+    return other;
+  }
+
+  @Override
+  public String[] listAll() throws IOException {
+    return other.listAll();
+  }
+
+  @Override
+  public boolean fileExists(String name) throws IOException {
+    return other.fileExists(name);
+  }
+
+  @Override
+  public void deleteFile(String name) throws IOException {
+    other.deleteFile(name);
+  }
+
+  @Override
+  public long fileLength(String name) throws IOException {
+    return other.fileLength(name);
+  }
+
+  @Override
+  public IndexOutput createOutput(String name, IOContext context) throws IOException {
+    return new RateLimitedIndexOutput(other.createOutput(name, context), rateLimiter);
+  }
+
+  @Override
+  public void sync(Collection<String> names) throws IOException {
+    other.sync(names);
+  }
+
+  @Override
+  public IndexInput openInput(String name, IOContext context) throws IOException {
+    return new RateLimitedIndexInput("RateLimitedIndexInput(" + name + ")", other.openInput(name, context),
+                                     rateLimiter, BufferedIndexInput.bufferSize(context));
+  }
+
+  @Override
+  public Lock makeLock(String name) {
+    return other.makeLock(name);
+  }
+
+  @Override
+  public void clearLock(String name) throws IOException {
+    other.clearLock(name);
+  }
+
+  @Override
+  public void close() throws IOException {
+    other.close();
+  }
+
+  @Override
+  public void setLockFactory(LockFactory lockFactory) throws IOException {
+    other.setLockFactory(lockFactory);
+  }
+
+  @Override
+  public LockFactory getLockFactory() {
+    return other.getLockFactory();
+  }
+
+  @Override
+  public String getLockID() {
+    return other.getLockID();
+  }
+
+  @Override
+  public String toString() {
+    return "RateLimitedDirectoryWrapper(" + other.toString() + ")";
+  }
+
+  @Override
+  public Directory.IndexInputSlicer createSlicer(final String name, final IOContext context) throws IOException {
+    final Directory.IndexInputSlicer slicer = other.createSlicer(name, context);
+    final int bufferSize = BufferedIndexInput.bufferSize(context);
+    return new Directory.IndexInputSlicer() {
+      @Override
+      public IndexInput openSlice(String sliceDescription, long offset, long length) throws IOException {
+        return new RateLimitedIndexInput("RateLimitedIndexInput(" + sliceDescription + " in " + name + ")",
+                                         slicer.openSlice(sliceDescription, offset, length), rateLimiter, bufferSize);
+      }
+
+      @Override
+      public void close() throws IOException {
+        slicer.close();
+      }
+
+      @Override
+      @Deprecated
+      public IndexInput openFullSlice() throws IOException {
+        return new RateLimitedIndexInput("RateLimitedIndexInput(" + name + ")",
+                                         slicer.openFullSlice(), rateLimiter, bufferSize);
+      }
+    };
+  }
+
+  /** Pauses before each buffer refill. */
+  private static final class RateLimitedIndexInput extends BufferedIndexInput {
+    private IndexInput delegate;
+    private final RateLimiter rateLimiter;
+    private boolean isClone;
+
+    RateLimitedIndexInput(String resourceDesc, IndexInput delegate, RateLimiter rateLimiter, int bufferSize) {
+      super(resourceDesc, bufferSize);
+      this.delegate = delegate;
+      this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void readInternal(byte[] b, int offset, int len) throws IOException {
+      final long start = getFilePointer();
+      if (start + len > delegate.length()) {
+        throw new EOFException("read past EOF: " + this);
+      }
+      rateLimiter.pause(len);
+      delegate.seek(start);
+      delegate.readBytes(b, offset, len, false);
+    }
+
+    @Override
+    protected void seekInternal(long pos) {
+      // the delegate is positioned on the next refill
+    }
+
+    @Override
+    public long length() {
+      return delegate.length();
+    }
+
+    @Override
+    public RateLimitedIndexInput clone() {
+      final RateLimitedIndexInput clone = (RateLimitedIndexInput) super.clone();
+      clone.delegate = delegate.clone();
+      clone.isClone = true;
+      return clone;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!isClone) {
+        delegate.close();
+      }
+    }
+  }
+
+  /** Pauses before each buffer flush. */
+  private static final class RateLimitedIndexOutput extends BufferedIndexOutput {
+    private final IndexOutput delegate;
+    private final RateLimiter rateLimiter;
+
+    RateLimitedIndexOutput(IndexOutput delegate, RateLimiter rateLimiter) {
+      this.delegate = delegate;
+      this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    protected void flushBuffer(byte[] b, int offset, int len) throws IOException {
+      rateLimiter.pause(len);
+      delegate.writeBytes(b, offset, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        super.flush();
+      } finally {
+        delegate.flush();
+      }
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+      super.seek(pos);
+      delegate.seek(pos);
+    }
+
+    @Override
+    public long length() throws IOException {
+      return delegate.length();
+    }
+
+    @Override
+    public void setLength(long length) throws IOException {
+      delegate.setLength(length);
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        super.close();
+      } finally {
+        delegate.close();
+      }
+    }
+  }
+}
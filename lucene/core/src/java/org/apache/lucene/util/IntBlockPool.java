@@ -0,0 +1,131 @@
+package org.apache.lucene.util;
+
+import java.util.Arrays;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Pool of fixed-size int[] blocks, used by the indexing chain to store the
+ * addresses of the byte slices of each term. Blocks are obtained from and
+ * returned to an {@link Allocator}.
+ * 
+ * @lucene.internal
+ */
+public final class IntBlockPool {
+  public final static int INT_BLOCK_SHIFT = 13;
+  public final static int INT_BLOCK_SIZE = 1 << INT_BLOCK_SHIFT;
+  public final static int INT_BLOCK_MASK = INT_BLOCK_SIZE - 1;
+
+  /** Abstract class for allocating and freeing int
+   *  blocks. */
+  public abstract static class Allocator {
+    protected final int blockSize;
+
+    public Allocator(int blockSize) {
+      this.blockSize = blockSize;
+    }
+
+    public abstract void recycleIntBlocks(int[][] blocks, int start, int end);
+
+    public int[] getIntBlock() {
+      return new int[blockSize];
+    }
+  }
+
+  /** A simple {@link Allocator} that never recycles. */
+  public static final class DirectAllocator extends Allocator {
+
+    public DirectAllocator() {
+      super(INT_BLOCK_SIZE);
+    }
+
+    @Override
+    public void recycleIntBlocks(int[][] blocks, int start, int end) {
+    }
+  }
+
+  /** A simple {@link Allocator} that never recycles, but
+   *  tracks how much total RAM is in use. */
+  public static class DirectTrackingAllocator extends Allocator {
+    private final Counter bytesUsed;
+
+    public DirectTrackingAllocator(Counter bytesUsed) {
+      super(INT_BLOCK_SIZE);
+      this.bytesUsed = bytesUsed;
+    }
+
+    @Override
+    public int[] getIntBlock() {
+      bytesUsed.addAndGet(blockSize * RamUsageEstimator.NUM_BYTES_INT);
+      return new int[blockSize];
+    }
+
+    @Override
+    public void recycleIntBlocks(int[][] blocks, int start, int end) {
+      bytesUsed.addAndGet(-((end-start) * blockSize * RamUsageEstimator.NUM_BYTES_INT));
+      for (int i = start; i < end; i++) {
+        blocks[i] = null;
+      }
+    }
+  }
+
+  public int[][] buffers = new int[10][];
+
+  int bufferUpto = -1;                        // Which buffer we are upto
+  /** Where we are in head buffer */
+  public int intUpto = INT_BLOCK_SIZE;
+
+  /** Current head buffer */
+  public int[] buffer;
+  /** Current head offset */
+  public int intOffset = -INT_BLOCK_SIZE;
+
+  private final Allocator allocator;
+
+  public IntBlockPool(Allocator allocator) {
+    this.allocator = allocator;
+  }
+
+  public void reset() {
+    if (bufferUpto != -1) {
+      // Recycle all but the first buffer
+      if (bufferUpto > 0) {
+        allocator.recycleIntBlocks(buffers, 1, 1+bufferUpto);
+        Arrays.fill(buffers, 1, 1+bufferUpto, null);
+      }
+      // Reuse first buffer
+      bufferUpto = 0;
+      intUpto = 0;
+      intOffset = 0;
+      buffer = buffers[0];
+    }
+  }
+
+  public void nextBuffer() {
+    if (1+bufferUpto == buffers.length) {
+      int[][] newBuffers = new int[(int) (buffers.length*1.5)][];
+      System.arraycopy(buffers, 0, newBuffers, 0, buffers.length);
+      buffers = newBuffers;
+    }
+    buffer = buffers[1+bufferUpto] = allocator.getIntBlock();
+    bufferUpto++;
+
+    intUpto = 0;
+    intOffset += INT_BLOCK_SIZE;
+  }
+}
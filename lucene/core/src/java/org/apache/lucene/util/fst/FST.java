@@ -31,12 +31,15 @@ import java.util.Map;
 import org.apache.lucene.codecs.CodecUtil;
 import org.apache.lucene.store.DataInput;
 import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.InputStreamDataInput;
 import org.apache.lucene.store.OutputStreamDataOutput;
+import org.apache.lucene.store.RandomAccessInput;
 import org.apache.lucene.util.ArrayUtil;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.IntsRef;
 import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.util.fst.Builder.UnCompiledNode;
 import org.apache.lucene.util.packed.GrowableWriter;
 import org.apache.lucene.util.packed.PackedInts;
@@ -143,6 +146,11 @@ public final class FST<T> {
   byte[] bytes;
   int byteUpto = 0;
 
+  // if non-null, bytes is null and the FST is read from
+  // this (memory-mapped) input instead of the heap
+  private RandomAccessInput offHeapBytes;
+  private int numOffHeapBytes;
+
   private int startNode = -1;
 
   public final Outputs<T> outputs;
@@ -284,6 +292,23 @@ public final class FST<T> {
 
   /** Load a previously saved FST. */
   public FST(DataInput in, Outputs<T> outputs) throws IOException {
+    this(in, outputs, false);
+  }
+
+  /** Load a previously saved FST. If <code>offHeap</code>
+   *  is true, the FST's bytes are not copied to the heap
+   *  but read on demand from the input using {@link
+   *  IndexInput#randomAccessSlice}, which is cheap when
+   *  the file is memory-mapped; the input must then stay
+   *  open as long as this FST is used. On return, the
+   *  input is positioned after the FST in both cases.
+   *
+   * @lucene.experimental */
+  public FST(IndexInput in, Outputs<T> outputs, boolean offHeap) throws IOException {
+    this((DataInput) in, outputs, offHeap);
+  }
+
+  private FST(DataInput in, Outputs<T> outputs, boolean offHeap) throws IOException {
     this.outputs = outputs;
     writer = null;
     // NOTE: only reads most recent format; we don't have
@@ -328,8 +353,18 @@ public final class FST<T> {
     arcCount = in.readVInt();
     arcWithOutputCount = in.readVInt();
 
-    bytes = new byte[in.readVInt()];
-    in.readBytes(bytes, 0, bytes.length);
+    final int numBytes = in.readVInt();
+    if (offHeap) {
+      final IndexInput indexIn = (IndexInput) in;
+      final long start = indexIn.getFilePointer();
+      offHeapBytes = indexIn.randomAccessSlice(start, numBytes);
+      numOffHeapBytes = numBytes;
+      bytes = null;
+      indexIn.seek(start + numBytes);
+    } else {
+      bytes = new byte[numBytes];
+      in.readBytes(bytes, 0, bytes.length);
+    }
     NO_OUTPUT = outputs.getNoOutput();
 
     cacheRootArcs();
@@ -339,15 +374,52 @@ public final class FST<T> {
     return inputType;
   }
 
+  /** Returns true if the bytes of this FST are read from
+   *  disk rather than held on the heap.
+   * @see #FST(IndexInput, Outputs, boolean) */
+  public boolean isOffHeap() {
+    return offHeapBytes != null;
+  }
+
   /** Returns bytes used to represent the FST */
   public int sizeInBytes() {
-    int size = bytes.length;
+    int size = offHeapBytes != null ? numOffHeapBytes : bytes.length;
+    if (packed) {
+      size += nodeRefToAddress.ramBytesUsed();
+    } else if (nodeAddress != null) {
+      size += nodeAddress.ramBytesUsed();
+      size += inCounts.ramBytesUsed();
+    }
+    return size;
+  }
+
+  /** Returns the approximate number of bytes of heap
+   *  memory used by this FST: unlike {@link #sizeInBytes},
+   *  this does not include the bytes of an {@link
+   *  #isOffHeap() off-heap} FST, but it includes the cached
+   *  root arcs. */
+  public long ramBytesUsed() {
+    long size = RamUsageEstimator.shallowSizeOf(this);
+    if (bytes != null) {
+      size += RamUsageEstimator.sizeOf(bytes);
+    }
+    if (emptyOutputBytes != null) {
+      size += RamUsageEstimator.sizeOf(emptyOutputBytes);
+    }
     if (packed) {
       size += nodeRefToAddress.ramBytesUsed();
     } else if (nodeAddress != null) {
       size += nodeAddress.ramBytesUsed();
       size += inCounts.ramBytesUsed();
     }
+    if (cachedRootArcs != null) {
+      size += RamUsageEstimator.shallowSizeOf(cachedRootArcs);
+      for (Arc<T> arc : cachedRootArcs) {
+        if (arc != null) {
+          size += RamUsageEstimator.shallowSizeOf(arc);
+        }
+      }
+    }
     return size;
   }
 
@@ -473,8 +545,15 @@ public final class FST<T> {
     out.writeVInt(nodeCount);
     out.writeVInt(arcCount);
     out.writeVInt(arcWithOutputCount);
-    out.writeVInt(bytes.length);
-    out.writeBytes(bytes, 0, bytes.length);
+    if (offHeapBytes != null) {
+      out.writeVInt(numOffHeapBytes);
+      for (int i = 0; i < numOffHeapBytes; i++) {
+        out.writeByte(offHeapBytes.readByte(i));
+      }
+    } else {
+      out.writeVInt(bytes.length);
+      out.writeBytes(bytes, 0, bytes.length);
+    }
   }
   
   /**
@@ -906,11 +985,13 @@ public final class FST<T> {
 
     if (arc.label == END_LABEL) {
       //System.out.println("    nextArc fake " + arc.nextArc);
-      in.pos = getNodeAddress(arc.nextArc);
-      final byte b = bytes[in.pos];
-      if (b == ARCS_AS_FIXED_ARRAY) {
+      final int pos = getNodeAddress(arc.nextArc);
+      in.pos = pos;
+      final byte b = in.readByte();
+      if (b != ARCS_AS_FIXED_ARRAY) {
+        in.pos = pos;
+      } else {
         //System.out.println("    nextArc fake array");
-        in.skip(1);
         in.readVInt();
         if (packed) {
           in.readVInt();
@@ -1223,7 +1304,13 @@ public final class FST<T> {
 
   public BytesReader getBytesReader(int pos) {
     // TODO: maybe re-use via ThreadLocal?
-    if (packed) {
+    if (offHeapBytes != null) {
+      if (packed) {
+        return new OffHeapForwardBytesReader(offHeapBytes, pos);
+      } else {
+        return new OffHeapReverseBytesReader(offHeapBytes, pos);
+      }
+    } else if (packed) {
       return new ForwardBytesReader(bytes, pos);
     } else {
       return new ReverseBytesReader(bytes, pos);
@@ -1300,6 +1387,64 @@ public final class FST<T> {
     }
   }
 
+  final static class OffHeapReverseBytesReader extends BytesReader {
+    private final RandomAccessInput in;
+
+    public OffHeapReverseBytesReader(RandomAccessInput in, int pos) {
+      super(null, pos);
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte(pos--);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = in.readByte(pos--);
+      }
+    }
+
+    public void skip(int count) {
+      pos -= count;
+    }
+
+    public void skip(int base, int count) {
+      pos = base - count;
+    }
+  }
+
+  final static class OffHeapForwardBytesReader extends BytesReader {
+    private final RandomAccessInput in;
+
+    public OffHeapForwardBytesReader(RandomAccessInput in, int pos) {
+      super(null, pos);
+      this.in = in;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return in.readByte(pos++);
+    }
+
+    @Override
+    public void readBytes(byte[] b, int offset, int len) throws IOException {
+      for(int i=0;i<len;i++) {
+        b[offset+i] = in.readByte(pos++);
+      }
+    }
+
+    public void skip(int count) {
+      pos += count;
+    }
+
+    public void skip(int base, int count) {
+      pos = base + count;
+    }
+  }
+
   private static class ArcAndState<T> {
     final Arc<T> arc;
     final IntsRef chain;
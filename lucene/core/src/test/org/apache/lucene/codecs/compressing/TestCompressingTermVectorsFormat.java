@@ -0,0 +1,254 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockPayloadAnalyzer;
+import org.apache.lucene.codecs.lucene40.Lucene40Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+import com.carrotsearch.randomizedtesting.generators.RandomInts;
+
+public class TestCompressingTermVectorsFormat extends LuceneTestCase {
+
+  private static final String[] WORDS = new String[] {
+    "a", "b", "c", "abc", "abd", "lucene", "lucid", "luck", "term", "terms", "vector", "vectors"
+  };
+
+  private Directory leftDir, rightDir;
+  private IndexWriter leftWriter, rightWriter;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    leftDir = newDirectory();
+    rightDir = newDirectory();
+    final Analyzer analyzer = new MockPayloadAnalyzer();
+    final int maxBufferedDocs = RandomInts.randomIntBetween(random(), 2, 30);
+    // the reference index uses the default term vectors format
+    IndexWriterConfig leftConf = newIndexWriterConfig(TEST_VERSION_CURRENT, analyzer);
+    leftConf.setCodec(new Lucene40Codec());
+    leftConf.setMaxBufferedDocs(maxBufferedDocs);
+    leftConf.setMergePolicy(newLogMergePolicy());
+    leftWriter = new IndexWriter(leftDir, leftConf);
+    IndexWriterConfig rightConf = newIndexWriterConfig(TEST_VERSION_CURRENT, analyzer);
+    rightConf.setCodec(CompressingCodec.randomInstance(random()));
+    rightConf.setMaxBufferedDocs(maxBufferedDocs);
+    rightConf.setMergePolicy(newLogMergePolicy());
+    rightWriter = new IndexWriter(rightDir, rightConf);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    super.tearDown();
+    IOUtils.close(leftWriter, rightWriter, leftDir, rightDir);
+  }
+
+  private String randomText(int maxTokens) {
+    final int numTokens = random().nextInt(maxTokens + 1);
+    final StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < numTokens; ++i) {
+      if (i > 0) {
+        sb.append(' ');
+      }
+      if (random().nextBoolean()) {
+        sb.append(WORDS[random().nextInt(WORDS.length)]);
+      } else {
+        sb.append(_TestUtil.randomSimpleString(random()));
+      }
+    }
+    return sb.toString();
+  }
+
+  private FieldType randomFieldType() {
+    final FieldType ft = new FieldType(TextField.TYPE_NOT_STORED);
+    ft.setStoreTermVectors(true);
+    ft.setStoreTermVectorPositions(random().nextBoolean());
+    ft.setStoreTermVectorOffsets(random().nextBoolean());
+    ft.setStoreTermVectorPayloads(ft.storeTermVectorPositions() && random().nextBoolean());
+    ft.freeze();
+    return ft;
+  }
+
+  private void addDocuments(int numDocs, int maxTokens) throws IOException {
+    final FieldType[] fieldTypes = new FieldType[5];
+    for (int i = 0; i < fieldTypes.length; ++i) {
+      fieldTypes[i] = randomFieldType();
+    }
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      for (int j = 0; j < fieldTypes.length; ++j) {
+        if (random().nextInt(4) != 0) {
+          doc.add(new Field("f" + j, randomText(maxTokens), fieldTypes[j]));
+        }
+      }
+      leftWriter.addDocument(doc);
+      rightWriter.addDocument(doc);
+    }
+  }
+
+  private void deleteDocuments(int numDocs) throws IOException {
+    for (int i = 0; i < numDocs; ++i) {
+      if (random().nextInt(5) == 0) {
+        final Term term = new Term("id", Integer.toString(i));
+        leftWriter.deleteDocuments(term);
+        rightWriter.deleteDocuments(term);
+      }
+    }
+  }
+
+  private void assertSameTermVectors() throws IOException {
+    final IndexReader leftReader = DirectoryReader.open(leftWriter, true);
+    final IndexReader rightReader = DirectoryReader.open(rightWriter, true);
+    try {
+      assertEquals(leftReader.maxDoc(), rightReader.maxDoc());
+      for (int i = 0; i < leftReader.maxDoc(); ++i) {
+        assertFields(leftReader.getTermVectors(i), rightReader.getTermVectors(i));
+      }
+    } finally {
+      IOUtils.close(leftReader, rightReader);
+    }
+  }
+
+  private void assertFields(Fields left, Fields right) throws IOException {
+    if (left == null) {
+      assertNull(right);
+      return;
+    }
+    assertNotNull(right);
+    assertEquals(left.size(), right.size());
+    final Iterator<String> leftIt = left.iterator();
+    final Iterator<String> rightIt = right.iterator();
+    TermsEnum leftTermsEnum = null, rightTermsEnum = null;
+    DocsAndPositionsEnum leftPositions = null, rightPositions = null;
+    while (leftIt.hasNext()) {
+      assertTrue(rightIt.hasNext());
+      final String field = leftIt.next();
+      assertEquals(field, rightIt.next());
+      final Terms leftTerms = left.terms(field);
+      final Terms rightTerms = right.terms(field);
+      assertEquals(leftTerms.size(), rightTerms.size());
+      assertEquals(leftTerms.hasPositions(), rightTerms.hasPositions());
+      assertEquals(leftTerms.hasOffsets(), rightTerms.hasOffsets());
+      assertEquals(leftTerms.hasPayloads(), rightTerms.hasPayloads());
+      leftTermsEnum = leftTerms.iterator(leftTermsEnum);
+      rightTermsEnum = rightTerms.iterator(rightTermsEnum);
+      for (BytesRef term = leftTermsEnum.next(); term != null; term = leftTermsEnum.next()) {
+        assertEquals(term, rightTermsEnum.next());
+        assertEquals(leftTermsEnum.totalTermFreq(), rightTermsEnum.totalTermFreq());
+        final DocsEnum rightDocs = rightTermsEnum.docs(null, null);
+        assertEquals(0, rightDocs.nextDoc());
+        assertEquals(leftTermsEnum.totalTermFreq(), rightDocs.freq());
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, rightDocs.nextDoc());
+
+        leftPositions = leftTermsEnum.docsAndPositions(null, leftPositions);
+        rightPositions = rightTermsEnum.docsAndPositions(null, rightPositions);
+        if (leftPositions == null) {
+          assertNull(rightPositions);
+          continue;
+        }
+        assertNotNull(rightPositions);
+        assertEquals(0, leftPositions.nextDoc());
+        assertEquals(0, rightPositions.nextDoc());
+        assertEquals(leftPositions.freq(), rightPositions.freq());
+        for (int i = 0; i < leftPositions.freq(); ++i) {
+          assertEquals(leftPositions.nextPosition(), rightPositions.nextPosition());
+          assertEquals(leftPositions.startOffset(), rightPositions.startOffset());
+          assertEquals(leftPositions.endOffset(), rightPositions.endOffset());
+          assertEquals(leftPositions.getPayload(), rightPositions.getPayload());
+        }
+        assertEquals(DocIdSetIterator.NO_MORE_DOCS, rightPositions.nextDoc());
+      }
+      assertNull(rightTermsEnum.next());
+
+      // seeking
+      for (int i = 0; i < 5; ++i) {
+        rightTermsEnum = rightTerms.iterator(rightTermsEnum);
+        leftTermsEnum = leftTerms.iterator(leftTermsEnum);
+        final BytesRef target = new BytesRef(WORDS[random().nextInt(WORDS.length)]);
+        final TermsEnum.SeekStatus status = leftTermsEnum.seekCeil(target);
+        assertEquals(status, rightTermsEnum.seekCeil(target));
+        if (status != TermsEnum.SeekStatus.END) {
+          assertEquals(leftTermsEnum.term(), rightTermsEnum.term());
+        }
+      }
+    }
+    assertFalse(rightIt.hasNext());
+  }
+
+  public void testRandom() throws IOException {
+    final int numDocs = atLeast(200);
+    addDocuments(numDocs, 20);
+    assertSameTermVectors();
+  }
+
+  public void testMergeWithDeletes() throws IOException {
+    final int numDocs = atLeast(200);
+    addDocuments(numDocs, 20);
+    deleteDocuments(numDocs);
+    leftWriter.forceMerge(1);
+    rightWriter.forceMerge(1);
+    assertSameTermVectors();
+  }
+
+  public void testBulkMerge() throws IOException {
+    // no deletions so that chunks can be copied verbatim
+    final int numDocs = atLeast(500);
+    addDocuments(numDocs, 20);
+    leftWriter.forceMerge(1);
+    rightWriter.forceMerge(1);
+    assertSameTermVectors();
+    addDocuments(numDocs, 20);
+    leftWriter.forceMerge(1);
+    rightWriter.forceMerge(1);
+    assertSameTermVectors();
+  }
+
+  public void testBigDocuments() throws IOException {
+    final int numDocs = atLeast(5);
+    addDocuments(numDocs, atLeast(3000));
+    leftWriter.forceMerge(1);
+    rightWriter.forceMerge(1);
+    assertSameTermVectors();
+  }
+
+}
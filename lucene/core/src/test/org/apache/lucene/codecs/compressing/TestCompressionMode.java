@@ -0,0 +1,148 @@
+package org.apache.lucene.codecs.compressing;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.lucene.store.ByteArrayDataInput;
+import org.apache.lucene.store.ByteArrayDataOutput;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+import com.carrotsearch.randomizedtesting.generators.RandomInts;
+
+public class TestCompressionMode extends LuceneTestCase {
+
+  static byte[] randomArray() {
+    final int max = random().nextBoolean()
+        ? random().nextInt(4)
+        : random().nextInt(256);
+    final int length = random().nextBoolean()
+        ? random().nextInt(20)
+        : random().nextInt(192 * 1024);
+    return randomArray(length, max);
+  }
+
+  static byte[] randomArray(int length, int max) {
+    final byte[] arr = new byte[length];
+    for (int i = 0; i < arr.length; ++i) {
+      arr[i] = (byte) RandomInts.randomIntBetween(random(), 0, max);
+    }
+    return arr;
+  }
+
+  byte[] compress(CompressionMode mode, byte[] decompressed) throws IOException {
+    byte[] compressed = new byte[decompressed.length * 2 + 16]; // should be enough
+    ByteArrayDataOutput out = new ByteArrayDataOutput(compressed);
+    mode.newCompressor().compress(decompressed, 0, decompressed.length, out);
+    final int compressedLen = out.getPosition();
+    return Arrays.copyOf(compressed, compressedLen);
+  }
+
+  byte[] decompress(CompressionMode mode, byte[] compressed, int originalLength) throws IOException {
+    BytesRef bytes = new BytesRef();
+    mode.newDecompressor().decompress(new ByteArrayDataInput(compressed), originalLength, 0, originalLength, bytes);
+    return Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset + bytes.length);
+  }
+
+  byte[] decompress(CompressionMode mode, byte[] compressed, int originalLength, int offset, int length) throws IOException {
+    BytesRef bytes = new BytesRef();
+    mode.newDecompressor().decompress(new ByteArrayDataInput(compressed), originalLength, offset, length, bytes);
+    return Arrays.copyOfRange(bytes.bytes, bytes.offset, bytes.offset + bytes.length);
+  }
+
+  static CompressionMode randomMode() {
+    return random().nextBoolean() ? CompressionMode.FAST : CompressionMode.HIGH_COMPRESSION;
+  }
+
+  public void testDecompress() throws IOException {
+    final int iterations = atLeast(10);
+    for (int i = 0; i < iterations; ++i) {
+      final CompressionMode mode = randomMode();
+      final byte[] decompressed = randomArray();
+      final byte[] compressed = compress(mode, decompressed);
+      final byte[] restored = decompress(mode, compressed, decompressed.length);
+      assertArrayEquals(decompressed, restored);
+    }
+  }
+
+  public void testPartialDecompress() throws IOException {
+    final int iterations = atLeast(10);
+    for (int i = 0; i < iterations; ++i) {
+      final CompressionMode mode = randomMode();
+      final byte[] decompressed = randomArray();
+      final byte[] compressed = compress(mode, decompressed);
+      final int offset, length;
+      if (decompressed.length == 0) {
+        offset = length = 0;
+      } else {
+        offset = random().nextInt(decompressed.length);
+        length = random().nextInt(decompressed.length - offset);
+      }
+      final byte[] restored = decompress(mode, compressed, decompressed.length, offset, length);
+      assertArrayEquals(Arrays.copyOfRange(decompressed, offset, offset + length), restored);
+    }
+  }
+
+  public void testEmptySequence() throws IOException {
+    for (CompressionMode mode : new CompressionMode[] {CompressionMode.FAST, CompressionMode.HIGH_COMPRESSION}) {
+      final byte[] compressed = compress(mode, new byte[0]);
+      assertEquals(0, decompress(mode, compressed, 0).length);
+    }
+  }
+
+  public void testShortSequence() throws IOException {
+    for (CompressionMode mode : new CompressionMode[] {CompressionMode.FAST, CompressionMode.HIGH_COMPRESSION}) {
+      final byte[] decompressed = new byte[] { (byte) random().nextInt(256) };
+      assertArrayEquals(decompressed, decompress(mode, compress(mode, decompressed), 1));
+    }
+  }
+
+  public void testIncompressible() throws IOException {
+    final byte[] decompressed = new byte[RandomInts.randomIntBetween(random(), 20, 256)];
+    for (int i = 0; i < decompressed.length; ++i) {
+      decompressed[i] = (byte) i;
+    }
+    final CompressionMode mode = randomMode();
+    assertArrayEquals(decompressed, decompress(mode, compress(mode, decompressed), decompressed.length));
+  }
+
+  public void testConstant() throws IOException {
+    final byte[] decompressed = new byte[_TestUtil.nextInt(random(), 1, 10000)];
+    Arrays.fill(decompressed, (byte) random().nextInt());
+    final CompressionMode mode = randomMode();
+    final byte[] compressed = compress(mode, decompressed);
+    assertTrue(compressed.length < decompressed.length || decompressed.length < 64);
+    assertArrayEquals(decompressed, decompress(mode, compressed, decompressed.length));
+  }
+
+  public void testLZ4LongMatches() throws IOException {
+    // matches and literals longer than 15 bytes need extra length bytes
+    final byte[] pattern = randomArray(RandomInts.randomIntBetween(random(), 16, 600), 255);
+    final byte[] decompressed = new byte[pattern.length * RandomInts.randomIntBetween(random(), 2, 20)];
+    for (int i = 0; i < decompressed.length; i += pattern.length) {
+      System.arraycopy(pattern, 0, decompressed, i, pattern.length);
+    }
+    final byte[] compressed = compress(CompressionMode.FAST, decompressed);
+    assertTrue(compressed.length < decompressed.length);
+    assertArrayEquals(decompressed, decompress(CompressionMode.FAST, compressed, decompressed.length));
+  }
+
+}
@@ -0,0 +1,118 @@
+package org.apache.lucene.codecs.lucene40;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.codecs.BlockTreeTermsReader;
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MultiFields;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+import org.apache.lucene.store.NIOFSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/**
+ * Tests that {@link BlockTreeTermsReader.FSTLoadMode#AUTO} reads the terms
+ * index of unique-key fields off-heap on memory-mapped indexes.
+ */
+public class TestBlockTreeFSTLoadMode extends LuceneTestCase {
+
+  public void testAutoLoadMode() throws Exception {
+    assumeTrue("test requires a jre that supports unmapping", MMapDirectory.UNMAP_SUPPORTED);
+    final Directory dir = new MMapDirectory(_TestUtil.getTempDir("testAutoLoadMode"));
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(Codec.forName("Lucene40"));
+    final RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; i++) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      doc.add(new StringField("category", Integer.toString(i % 5), Field.Store.NO));
+      doc.add(new TextField("body", "common " + (i % 7) + " " + (i % 13), Field.Store.NO));
+      iw.addDocument(doc);
+    }
+    final DirectoryReader reader = iw.getReader();
+    iw.close();
+
+    for (AtomicReaderContext context : reader.leaves()) {
+      final Terms idTerms = context.reader().terms("id");
+      final Terms categoryTerms = context.reader().terms("category");
+      final Terms bodyTerms = context.reader().terms("body");
+      assertTrue(idTerms instanceof BlockTreeTermsReader.FieldReader);
+      assertTrue(categoryTerms instanceof BlockTreeTermsReader.FieldReader);
+      assertTrue(bodyTerms instanceof BlockTreeTermsReader.FieldReader);
+      final BlockTreeTermsReader.FieldReader id = (BlockTreeTermsReader.FieldReader) idTerms;
+      final BlockTreeTermsReader.FieldReader category = (BlockTreeTermsReader.FieldReader) categoryTerms;
+      final BlockTreeTermsReader.FieldReader body = (BlockTreeTermsReader.FieldReader) bodyTerms;
+      // every document has exactly one id and every id one document,
+      // categories are single-valued but usually shared by several
+      // documents, documents have several body terms
+      assertTrue(id.isIndexOffHeap());
+      assertEquals(category.size() == category.getDocCount(), category.isIndexOffHeap());
+      assertFalse(body.isIndexOffHeap());
+      assertTrue(id.ramBytesUsed() > 0);
+      assertTrue(body.ramBytesUsed() > 0);
+    }
+
+    // all ids can be looked up through the off-heap index
+    final Terms terms = MultiFields.getTerms(reader, "id");
+    final TermsEnum termsEnum = terms.iterator(null);
+    for (int i = 0; i < numDocs; i++) {
+      assertTrue(termsEnum.seekExact(new BytesRef(Integer.toString(i)), random().nextBoolean()));
+    }
+    assertFalse(termsEnum.seekExact(new BytesRef("foo"), random().nextBoolean()));
+
+    reader.close();
+    dir.close();
+  }
+
+  public void testAutoLoadModeWithoutFastRandomAccess() throws Exception {
+    final Directory dir = new NIOFSDirectory(_TestUtil.getTempDir("testAutoLoadModeNIOFS"));
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setCodec(Codec.forName("Lucene40"));
+    final RandomIndexWriter iw = new RandomIndexWriter(random(), dir, iwc);
+    final int numDocs = atLeast(50);
+    for (int i = 0; i < numDocs; i++) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      iw.addDocument(doc);
+    }
+    final DirectoryReader reader = iw.getReader();
+    iw.close();
+
+    for (AtomicReaderContext context : reader.leaves()) {
+      // positional reads would be too slow to walk an FST
+      assertFalse(((BlockTreeTermsReader.FieldReader) context.reader().terms("id")).isIndexOffHeap());
+    }
+
+    reader.close();
+    dir.close();
+  }
+}
@@ -24,7 +24,12 @@ import java.util.List;
 import java.util.ArrayList;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.analysis.CannedTokenStream;
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.analysis.Token;
@@ -97,6 +102,123 @@ public class TestCheckIndex extends LuceneTestCase {
     dir.close();
   }
   
+  private static void addDocs(IndexWriter writer, int numDocs) throws IOException {
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      doc.add(newTextField("field", "aaa" + i + " bbb", Field.Store.YES));
+      writer.addDocument(doc);
+    }
+  }
+
+  private static CheckIndex.Status checkIndex(CheckIndex checker) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(1024);
+    checker.setInfoStream(new PrintStream(bos, false, "UTF-8"));
+    CheckIndex.Status status = checker.checkIndex();
+    if (VERBOSE) {
+      System.out.println(bos.toString("UTF-8"));
+    }
+    return status;
+  }
+
+  public void testChecksums() throws IOException {
+    MockDirectoryWrapper dir = newMockDirectory();
+    dir.setCheckIndexOnClose(false); // we corrupt the index
+    dir.setPreventDoubleWrite(false);
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setChecksumSegmentFiles(true);
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 5, 20));
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    addDocs(writer, atLeast(50));
+    writer.close();
+
+    CheckIndex checker = new CheckIndex(dir);
+    checker.setChecksumsOnly(true);
+    CheckIndex.Status status = checkIndex(checker);
+    assertTrue(status.clean);
+    assertTrue(status.segmentInfos.size() > 0);
+    for (CheckIndex.Status.SegmentInfoStatus seg : status.segmentInfos) {
+      assertNotNull(seg.checksumStatus);
+      assertNull(seg.checksumStatus.error);
+      assertFalse(seg.checksumStatus.missing);
+      assertTrue(seg.checksumStatus.numFiles > 0);
+      // only checksums were verified
+      assertFalse(seg.openReaderPassed);
+      assertNull(seg.termIndexStatus);
+    }
+
+    // flip a bit in one of the files of the first segment
+    SegmentInfos sis = new SegmentInfos();
+    sis.read(dir);
+    List<String> files = new ArrayList<String>();
+    for (String file : sis.info(0).info.files()) {
+      if (dir.fileLength(file) > 0 && !file.endsWith("." + IndexFileNames.GEN_EXTENSION) && !file.endsWith(".si")) {
+        files.add(file);
+      }
+    }
+    String file = files.get(random().nextInt(files.size()));
+    byte[] bytes = new byte[(int) dir.fileLength(file)];
+    IndexInput in = dir.openInput(file, IOContext.DEFAULT);
+    in.readBytes(bytes, 0, bytes.length);
+    in.close();
+    bytes[random().nextInt(bytes.length)] ^= 1 << random().nextInt(8);
+    dir.deleteFile(file);
+    IndexOutput out = dir.createOutput(file, IOContext.DEFAULT);
+    out.writeBytes(bytes, bytes.length);
+    out.close();
+
+    status = checkIndex(checker);
+    assertFalse(status.clean);
+    assertEquals(1, status.numBadSegments);
+    assertNotNull(status.segmentInfos.get(0).checksumStatus.error);
+    dir.close();
+  }
+
+  public void testConcurrentAndSinceCommit() throws IOException {
+    Directory dir = newDirectory();
+    IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(NoMergePolicy.COMPOUND_FILES);
+    iwc.setMaxBufferedDocs(100); // one segment per commit
+    IndexWriter writer = new IndexWriter(dir, iwc);
+    int numOldSegments = _TestUtil.nextInt(random(), 1, 5);
+    for (int i = 0; i < numOldSegments; i++) {
+      addDocs(writer, _TestUtil.nextInt(random(), 1, 10));
+      writer.commit();
+    }
+    DirectoryReader reader = DirectoryReader.open(dir);
+    IndexCommit oldCommit = reader.getIndexCommit();
+    reader.close();
+    int numNewSegments = _TestUtil.nextInt(random(), 1, 5);
+    for (int i = 0; i < numNewSegments; i++) {
+      addDocs(writer, _TestUtil.nextInt(random(), 1, 10));
+      writer.commit();
+    }
+    writer.close();
+
+    CheckIndex checker = new CheckIndex(dir);
+    checker.setThreadCount(_TestUtil.nextInt(random(), 2, 4));
+    CheckIndex.Status status = checkIndex(checker);
+    assertTrue(status.clean);
+    assertFalse(status.partial);
+    assertEquals(numOldSegments + numNewSegments, status.segmentInfos.size());
+    SegmentInfos sis = new SegmentInfos();
+    sis.read(dir);
+    for (int i = 0; i < status.segmentInfos.size(); i++) {
+      CheckIndex.Status.SegmentInfoStatus seg = status.segmentInfos.get(i);
+      // statuses are in segment order
+      assertEquals(sis.info(i).info.name, seg.name);
+      assertTrue(seg.openReaderPassed);
+      assertNull(seg.termIndexStatus.error);
+    }
+
+    checker.setSinceCommit(oldCommit);
+    status = checkIndex(checker);
+    assertTrue(status.clean);
+    assertTrue(status.partial);
+    assertEquals(numOldSegments, status.numSkippedSegments);
+    assertEquals(numNewSegments, status.segmentInfos.size());
+    dir.close();
+  }
+
   // LUCENE-4221: we have to let these thru, for now
   public void testBogusTermVectors() throws IOException {
     Directory dir = newDirectory();
@@ -18,14 +18,26 @@ package org.apache.lucene.index;
  */
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.analysis.MockAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.PackedLongDocValuesField;
+import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.IndexWriterConfig.OpenMode;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.MockDirectoryWrapper;
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.NamedThreadFactory;
 
 public class TestConcurrentMergeScheduler extends LuceneTestCase {
   
@@ -245,4 +257,181 @@ public class TestConcurrentMergeScheduler extends LuceneTestCase {
 
     directory.close();
   }
+
+  public void testMergeRateStats() throws IOException {
+    Directory directory = newDirectory();
+    final List<MergePolicy.OneMerge> merges = Collections.synchronizedList(new ArrayList<MergePolicy.OneMerge>());
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler() {
+      @Override
+      protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+        // throttle both reads and writes to 1 MB/sec
+        merge.rateLimiter.setMbPerSec(1.0);
+        super.doMerge(merge);
+        merges.add(merge);
+      }
+    };
+    IndexWriter writer = new IndexWriter(
+        directory,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
+            setMaxBufferedDocs(10).
+            setMergeScheduler(cms).
+            setMergePolicy(newLogMergePolicy())
+    );
+    final int numDocs = atLeast(100);
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(newTextField("content", "some text to merge " + i, Field.Store.YES));
+      writer.addDocument(doc);
+    }
+    writer.forceMerge(1);
+    writer.close();
+
+    assertFalse(merges.isEmpty());
+    long totalPausedNS = 0;
+    for (MergePolicy.OneMerge merge : merges) {
+      assertTrue(merge.rateLimiter.getTotalBytes() > 0);
+      assertEquals(1.0, merge.rateLimiter.getMbPerSec(), 0.0);
+      totalPausedNS += merge.rateLimiter.getTotalPausedNS();
+    }
+    assertTrue(totalPausedNS > 0);
+
+    IndexReader reader = DirectoryReader.open(directory);
+    assertEquals(numDocs, reader.numDocs());
+    reader.close();
+    directory.close();
+  }
+
+  public void testUnthrottledMergesBypassRateLimiter() throws IOException {
+    Directory directory = newDirectory();
+    final List<MergePolicy.OneMerge> merges = Collections.synchronizedList(new ArrayList<MergePolicy.OneMerge>());
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler() {
+      @Override
+      protected void doMerge(MergePolicy.OneMerge merge) throws IOException {
+        super.doMerge(merge);
+        merges.add(merge);
+      }
+    };
+    IndexWriter writer = new IndexWriter(
+        directory,
+        newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
+            setMaxBufferedDocs(10).
+            setMergeScheduler(cms).
+            setMergePolicy(newLogMergePolicy())
+    );
+    final int numDocs = atLeast(100);
+    for(int i=0;i<numDocs;i++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      writer.addDocument(doc);
+    }
+    writer.forceMerge(1);
+    writer.close();
+
+    assertFalse(merges.isEmpty());
+    for (MergePolicy.OneMerge merge : merges) {
+      assertEquals(0, merge.rateLimiter.getTotalBytes());
+    }
+    directory.close();
+  }
+
+  public void testAutoIOThrottleFeedback() {
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    assertFalse(cms.getAutoIOThrottle());
+    assertEquals(Double.POSITIVE_INFINITY, cms.getIORateLimitMBPerSec(), 0.0);
+
+    cms.enableAutoIOThrottle();
+    assertTrue(cms.getAutoIOThrottle());
+    final double startMBPerSec = cms.getIORateLimitMBPerSec();
+    assertTrue(startMBPerSec > 0 && startMBPerSec < Double.POSITIVE_INFINITY);
+
+    ConcurrentMergeScheduler.SearchLatencyFeedback feedback = new ConcurrentMergeScheduler.SearchLatencyFeedback(10.0);
+    cms.setIOThrottleFeedback(feedback);
+    // no latency recorded yet: no opinion
+    assertEquals(1.0, feedback.getPressure(), 0.0);
+    assertEquals(startMBPerSec, cms.getIORateLimitMBPerSec(), 0.0);
+
+    // searches are slower than the target: merges slow down
+    feedback.recordLatency(20 * 1000000L);
+    assertEquals(20.0, feedback.getAverageLatencyMS(), 0.0001);
+    assertEquals(2.0, feedback.getPressure(), 0.0001);
+    final double slowMBPerSec = cms.getIORateLimitMBPerSec();
+    assertTrue(slowMBPerSec < startMBPerSec);
+
+    // searches get faster than the target: merges speed up
+    for(int i=0;i<200;i++) {
+      feedback.recordLatency(1000000L);
+    }
+    assertTrue(feedback.getPressure() < 1.0);
+    assertTrue(cms.getIORateLimitMBPerSec() > startMBPerSec);
+
+    try {
+      new ConcurrentMergeScheduler.SearchLatencyFeedback(0.0);
+      fail("should have hit IllegalArgumentException");
+    } catch (IllegalArgumentException iae) {
+      // expected
+    }
+
+    cms.disableAutoIOThrottle();
+    assertEquals(Double.POSITIVE_INFINITY, cms.getIORateLimitMBPerSec(), 0.0);
+  }
+
+  public void testIntraMergeExecutor() throws Exception {
+    assumeTrue("cannot work with Lucene3x codec",
+               defaultCodecSupportsDocValues());
+    final ExecutorService pool = Executors.newFixedThreadPool(3, new NamedThreadFactory("testIntraMergeExecutor"));
+    final AtomicInteger executed = new AtomicInteger();
+    ConcurrentMergeScheduler cms = new ConcurrentMergeScheduler();
+    cms.setIntraMergeExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        executed.incrementAndGet();
+        pool.execute(command);
+      }
+    });
+    Directory directory = newDirectory();
+    final int numDocs = atLeast(100);
+    try {
+      IndexWriter writer = new IndexWriter(
+          directory,
+          newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).
+              setMaxBufferedDocs(10).
+              setMergeScheduler(cms).
+              setMergePolicy(newLogMergePolicy())
+      );
+      final FieldType vectorsType = new FieldType(TextField.TYPE_NOT_STORED);
+      vectorsType.setStoreTermVectors(true);
+      for(int i=0;i<numDocs;i++) {
+        Document doc = new Document();
+        doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+        doc.add(newTextField("content", "some text to merge " + i, Field.Store.NO));
+        doc.add(new Field("vectors", "more text " + i, vectorsType));
+        doc.add(new PackedLongDocValuesField("dv", i));
+        writer.addDocument(doc);
+      }
+      writer.forceMerge(1);
+      writer.close();
+    } finally {
+      pool.shutdown();
+      pool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // stored fields are merged in the merge thread, the
+    // other parts on the executor:
+    assertTrue(executed.get() > 0);
+
+    IndexReader reader = DirectoryReader.open(directory);
+    assertEquals(1, reader.leaves().size());
+    assertEquals(numDocs, reader.numDocs());
+    AtomicReader leaf = reader.leaves().get(0).reader();
+    DocValues.Source dv = leaf.docValues("dv").getSource();
+    for(int i=0;i<numDocs;i++) {
+      final int id = Integer.parseInt(leaf.document(i).get("id"));
+      assertEquals(id, dv.getInt(i));
+      assertEquals(3, leaf.getTermVectors(i).terms("vectors").size());
+      assertEquals(1, leaf.docFreq(new Term("content", Integer.toString(id))));
+    }
+    reader.close();
+    directory.close();
+  }
 }
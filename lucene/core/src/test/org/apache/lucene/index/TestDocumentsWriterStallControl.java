@@ -54,6 +54,40 @@ public class TestDocumentsWriterStallControl extends LuceneTestCase {
     join(waitThreads);
   }
   
+  public void testThrottle() throws InterruptedException {
+    final DocumentsWriterStallControl ctrl = new DocumentsWriterStallControl();
+    ctrl.updateStalled(false, 0);
+    assertFalse(ctrl.isThrottled());
+    ctrl.waitIfThrottled(); // returns immediately
+
+    // throttle for much longer than the test runs, release by relaxing
+    ctrl.updateStalled(false, TimeUnit.HOURS.toNanos(1));
+    assertTrue(ctrl.isThrottled());
+    assertTrue(ctrl.isHealthy());
+    Thread[] throttled = throttledThreads(atLeast(1), ctrl);
+    start(throttled);
+    awaitState(Thread.State.TIMED_WAITING, throttled);
+    ctrl.updateStalled(false, 0);
+    assertFalse(ctrl.isThrottled());
+    join(throttled);
+
+    // stalling ends the pause, callers then go through waitIfStalled
+    ctrl.updateStalled(false, TimeUnit.HOURS.toNanos(1));
+    throttled = throttledThreads(atLeast(1), ctrl);
+    start(throttled);
+    awaitState(Thread.State.TIMED_WAITING, throttled);
+    ctrl.updateStalled(true, TimeUnit.HOURS.toNanos(1));
+    assertFalse(ctrl.isThrottled());
+    join(throttled);
+    ctrl.updateStalled(false);
+
+    // a short pause is over without any update
+    ctrl.updateStalled(false, TimeUnit.MILLISECONDS.toNanos(1));
+    throttled = throttledThreads(atLeast(1), ctrl);
+    start(throttled);
+    join(throttled);
+  }
+  
   public void testRandom() throws InterruptedException {
     final DocumentsWriterStallControl ctrl = new DocumentsWriterStallControl();
     ctrl.updateStalled(false);
@@ -326,6 +360,19 @@ public class TestDocumentsWriterStallControl extends LuceneTestCase {
     return array;
   }
 
+  public static Thread[] throttledThreads(int num,
+      final DocumentsWriterStallControl ctrl) {
+    Thread[] array = new Thread[num];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = new Thread() {
+        public void run() {
+          ctrl.waitIfThrottled();
+        }
+      };
+    }
+    return array;
+  }
+
   /** Waits for all incoming threads to be in wait()
    *  methods. */
   public static void awaitState(Thread.State state,
@@ -76,6 +76,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     assertEquals(ThreadAffinityDocumentsWriterThreadPool.class, conf.getIndexerThreadPool().getClass());
     assertEquals(FlushByRamOrCountsPolicy.class, conf.getFlushPolicy().getClass());
     assertEquals(IndexWriterConfig.DEFAULT_RAM_PER_THREAD_HARD_LIMIT_MB, conf.getRAMPerThreadHardLimitMB());
+    assertEquals(IndexWriterConfig.DEFAULT_MAX_FLUSH_THREADS, conf.getMaxFlushThreads());
+    assertEquals(IndexWriterConfig.DEFAULT_INDEXING_BUFFER_POOL_MB, conf.getIndexingBufferPoolMB());
+    assertEquals(IndexWriterConfig.DEFAULT_CHECKSUM_SEGMENT_FILES, conf.getChecksumSegmentFiles());
     assertEquals(Codec.getDefault(), conf.getCodec());
     assertEquals(InfoStream.getDefault(), conf.getInfoStream());
     // Sanity check - validate that all getters are covered.
@@ -102,6 +105,9 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     getters.add("getReaderTermsIndexDivisor");
     getters.add("getFlushPolicy");
     getters.add("getRAMPerThreadHardLimitMB");
+    getters.add("getMaxFlushThreads");
+    getters.add("getIndexingBufferPoolMB");
+    getters.add("getChecksumSegmentFiles");
     getters.add("getCodec");
     getters.add("getInfoStream");
     
@@ -319,6 +325,20 @@ public class TestIndexWriterConfig extends LuceneTestCase {
     } catch (IllegalArgumentException e) {
       // this is expected
     }
+
+    try {
+      conf.setMaxFlushThreads(-1);
+      fail("should not have succeeded to set maxFlushThreads to -1");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
+
+    try {
+      conf.setIndexingBufferPoolMB(-1);
+      fail("should not have succeeded to set indexingBufferPoolMB to -1");
+    } catch (IllegalArgumentException e) {
+      // this is expected
+    }
     
     // Test MergePolicy
     assertEquals(TieredMergePolicy.class, conf.getMergePolicy().getClass());
@@ -0,0 +1,164 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+/**
+ * Tests flushing segments on background flush threads, see
+ * {@link IndexWriterConfig#setMaxFlushThreads(int)}.
+ */
+public class TestIndexWriterFlushThreads extends LuceneTestCase {
+
+  private IndexWriterConfig newConfig() {
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMaxFlushThreads(1 + random().nextInt(3));
+    if (random().nextBoolean()) {
+      iwc.setMaxBufferedDocs(2 + random().nextInt(20));
+      iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    } else {
+      iwc.setRAMBufferSizeMB(0.1 + random().nextDouble() / 2);
+      iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    }
+    return iwc;
+  }
+
+  public void testConcurrentIndexing() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter writer = new IndexWriter(dir, newConfig());
+    final int numThreads = 1 + random().nextInt(4);
+    final int docsPerThread = atLeast(300);
+    final List<Throwable> exceptions = Collections.synchronizedList(new ArrayList<Throwable>());
+    final Thread[] threads = new Thread[numThreads];
+    for (int i = 0; i < numThreads; i++) {
+      final int thread = i;
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < docsPerThread; j++) {
+              final Document doc = new Document();
+              doc.add(newStringField("id", thread + "_" + j, Field.Store.NO));
+              doc.add(newTextField("body", "some text " + random().nextInt(100), Field.Store.NO));
+              writer.addDocument(doc);
+              if (j % 10 == 9) {
+                writer.deleteDocuments(new Term("id", thread + "_" + (j - 5)));
+              }
+            }
+          } catch (Throwable t) {
+            exceptions.add(t);
+          }
+        }
+      };
+    }
+    for (Thread t : threads) {
+      t.start();
+    }
+    for (Thread t : threads) {
+      t.join();
+    }
+    assertTrue(exceptions.toString(), exceptions.isEmpty());
+
+    writer.commit();
+    final int numDeletes = docsPerThread / 10;
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numThreads * (docsPerThread - numDeletes), reader.numDocs());
+    reader.close();
+    writer.close();
+
+    reader = DirectoryReader.open(dir);
+    assertEquals(numThreads * (docsPerThread - numDeletes), reader.numDocs());
+    reader.close();
+    dir.close();
+  }
+
+  public void testBackgroundFlushTriggersMerges() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newConfig();
+    iwc.setMaxBufferedDocs(2);
+    iwc.setRAMBufferSizeMB(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    final LogDocMergePolicy mp = new LogDocMergePolicy();
+    mp.setMergeFactor(2);
+    iwc.setMergePolicy(mp);
+    final List<String> mergeThreads = Collections.synchronizedList(new ArrayList<String>());
+    iwc.setMergeScheduler(new SerialMergeScheduler() {
+      @Override
+      public synchronized void merge(IndexWriter writer) throws IOException {
+        mergeThreads.add(Thread.currentThread().getName());
+        super.merge(writer);
+      }
+    });
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(50);
+    for (int i = 0; i < numDocs; i++) {
+      final Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.commit();
+    boolean mergedByFlushThread = false;
+    for (String name : mergeThreads) {
+      mergedByFlushThread |= name.startsWith("IndexWriter-flush");
+    }
+    assertTrue(mergeThreads.toString(), mergedByFlushThread);
+    writer.close();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numDocs, reader.numDocs());
+    assertTrue(reader.leaves().size() < numDocs / 2);
+    reader.close();
+    dir.close();
+  }
+
+  public void testRamSizeInBytesPerThread() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newConfig();
+    iwc.setRAMBufferSizeMB(256);
+    iwc.setMaxBufferedDocs(IndexWriterConfig.DISABLE_AUTO_FLUSH);
+    final IndexWriter writer = new IndexWriter(dir, iwc);
+    for (long bytes : writer.ramSizeInBytesPerThread()) {
+      assertEquals(0, bytes);
+    }
+    final Document doc = new Document();
+    doc.add(newTextField("body", "some text", Field.Store.NO));
+    writer.addDocument(doc);
+    long sum = 0;
+    for (long bytes : writer.ramSizeInBytesPerThread()) {
+      assertTrue(bytes >= 0);
+      sum += bytes;
+    }
+    assertTrue(sum > 0);
+    assertEquals(0, writer.flushingRamSizeInBytes());
+    assertEquals(sum, writer.ramSizeInBytes());
+    writer.commit();
+    for (long bytes : writer.ramSizeInBytesPerThread()) {
+      assertEquals(0, bytes);
+    }
+    writer.close();
+    dir.close();
+  }
+}
@@ -98,6 +98,9 @@ public class TestPostingsFormat extends LuceneTestCase {
     // Sometimes check payloads
     PAYLOADS,
 
+    // Sometimes read docs/freqs in bulk
+    BULK_READ,
+
     // Test w/ multiple threads
     THREADS};
 
@@ -653,6 +656,34 @@ public class TestPostingsFormat extends LuceneTestCase {
       }
     }
 
+    if (options.contains(Option.BULK_READ) && !doCheckPositions && random().nextInt(3) == 1) {
+      final int[] docs = new int[_TestUtil.nextInt(random(), 1, 300)];
+      final int[] freqs = doCheckFreqs ? new int[docs.length] : null;
+      if (VERBOSE) {
+        System.out.println("  bulk read with buffer size=" + docs.length);
+      }
+      int upto = 0;
+      while (docsEnum.docID() != DocsEnum.NO_MORE_DOCS) {
+        final int count = docsEnum.read(docs, freqs);
+        if (count == 0) {
+          break;
+        }
+        for (int i = 0; i < count; ++i) {
+          assertTrue("too many docs", upto < expected.size());
+          final Posting posting = expected.get(upto++);
+          assertEquals("docID is wrong", posting.docID, docs[i]);
+          if (freqs != null) {
+            assertEquals("freq is wrong", posting.positions.size(), freqs[i]);
+          }
+        }
+        final int docID = docsEnum.docID();
+        assertTrue("docID is wrong: " + docID, docID == docs[count - 1] || docID == DocsEnum.NO_MORE_DOCS);
+      }
+      assertEquals("wrong number of docs", expected.size(), upto);
+      assertEquals("DocsEnum should have ended but didn't", DocsEnum.NO_MORE_DOCS, docsEnum.docID());
+      return;
+    }
+
     int nextPosting = 0;
     while (nextPosting <= stopAt) {
       if (nextPosting == stopAt) {
@@ -20,8 +20,12 @@ package org.apache.lucene.search;
 import java.io.IOException;
 
 
+import org.apache.lucene.document.DoubleDocValuesField;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongDocValuesField;
+import org.apache.lucene.index.AtomicReaderContext;
 import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.IndexWriter;
@@ -562,5 +566,84 @@ public class TestFieldCacheRangeFilter extends BaseTestRangeFilter {
     reader.close();
     dir.close();
   }
+
+  @Test
+  public void testIndexValuesRange() throws IOException {
+    assumeTrue("cannot work with Lucene3x codec",
+               defaultCodecSupportsDocValues());
+    Directory dir = newDirectory();
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig( TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+
+    for (int d = -20; d <= 20; d++) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(d), Field.Store.NO));
+      doc.add(newStringField("body", "body", Field.Store.NO));
+      if (d != 5) {
+        // documents without a value are treated as 0
+        doc.add(new LongDocValuesField("long", d));
+        doc.add(new DoubleDocValuesField("double", d));
+      }
+      writer.addDocument(doc);
+    }
+    
+    writer.deleteDocuments(new Term("id","0"));
+    writer.close();
+
+    IndexReader reader = DirectoryReader.open(dir);
+    IndexSearcher search = newSearcher(reader);
+
+    ScoreDoc[] result;
+    Query q = new TermQuery(new Term("body","body"));
+
+    for (boolean diskResident : new boolean[] {false, true}) {
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesLongRange("long",-20L,20L,T,T,diskResident), 100).scoreDocs;
+      assertEquals("find all", 40, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,diskResident), 100).scoreDocs;
+      assertEquals("pos", 20, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,null,F,F,diskResident), 100).scoreDocs;
+      assertEquals("pos, exclusive", 19, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesLongRange("long",null,-10L,T,T,diskResident), 100).scoreDocs;
+      assertEquals("neg", 11, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesDoubleRange("double",-20d,20d,T,T,diskResident), 100).scoreDocs;
+      assertEquals("find all", 40, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesDoubleRange("double",-0.5d,0.5d,T,T,diskResident), 100).scoreDocs;
+      assertEquals("missing", 1, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesDoubleRange("double",10d,null,T,F,diskResident), 100).scoreDocs;
+      assertEquals("pos", 11, result.length);
+
+      result = search.search(q,FieldCacheRangeFilter.newIndexValuesLongRange("nofield",null,null,T,T,diskResident), 100).scoreDocs;
+      assertEquals("no field", 40, result.length);
+    }
+
+    assertFalse(FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,false)
+        .equals(FieldCacheRangeFilter.newLongRange("long",0L,20L,T,T)));
+    assertFalse(FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,false)
+        .equals(FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,true)));
+    assertFalse(FieldCacheRangeFilter.newIndexValuesDoubleRange("double",0d,20d,T,T,false).hashCode()
+        == FieldCacheRangeFilter.newIndexValuesDoubleRange("double",0d,20d,T,T,true).hashCode());
+
+    for (AtomicReaderContext context : reader.leaves()) {
+      // a direct source must not be shared, so such sets must not be cached either
+      assertFalse(FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,true)
+          .getDocIdSet(context, null).isCacheable());
+      assertTrue(FieldCacheRangeFilter.newIndexValuesLongRange("long",0L,20L,T,T,false)
+          .getDocIdSet(context, null).isCacheable());
+
+      DocValues docValues = context.reader().docValues("long");
+      if (docValues != null) {
+        docValues.getSource();
+        assertTrue(docValues.ramBytesUsed() > 0);
+      }
+    }
+
+    reader.close();
+    dir.close();
+  }
   
 }
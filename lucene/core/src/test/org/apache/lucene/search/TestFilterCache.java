@@ -0,0 +1,323 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestFilterCache extends LuceneTestCase {
+
+  private static final String[] COLORS = new String[] {"red", "green", "blue", "yellow"};
+
+  private static Document newColorDocument(int id) {
+    final Document doc = new Document();
+    doc.add(newStringField("id", Integer.toString(id), Field.Store.NO));
+    doc.add(newStringField("color", COLORS[random().nextInt(COLORS.length)], Field.Store.NO));
+    return doc;
+  }
+
+  private static Filter colorFilter(String color) {
+    return new QueryWrapperFilter(new TermQuery(new Term("color", color)));
+  }
+
+  private static void assertSameHits(IndexSearcher searcher, Filter expected, Filter actual) throws IOException {
+    final Query query = new MatchAllDocsQuery();
+    final int numHits = searcher.getIndexReader().maxDoc() + 1;
+    final TopDocs expectedDocs = searcher.search(query, expected, numHits, Sort.INDEXORDER);
+    final TopDocs actualDocs = searcher.search(query, actual, numHits, Sort.INDEXORDER);
+    assertEquals(expectedDocs.totalHits, actualDocs.totalHits);
+    for (int i = 0; i < expectedDocs.scoreDocs.length; ++i) {
+      assertEquals(expectedDocs.scoreDocs[i].doc, actualDocs.scoreDocs[i].doc);
+    }
+  }
+
+  public void testRandom() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    final FilterCache cache = new FilterCache(_TestUtil.nextInt(random(), 1, 20), random().nextBoolean() ? Long.MAX_VALUE : 4096,
+        _TestUtil.nextInt(random(), 1, 3), _TestUtil.nextInt(random(), 3, 10));
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    final int iters = atLeast(20);
+    int id = 0;
+    for (int iter = 0; iter < iters; ++iter) {
+      final int numDocs = random().nextInt(100);
+      for (int i = 0; i < numDocs; ++i) {
+        w.addDocument(newColorDocument(id++));
+      }
+      if (id > 0 && random().nextBoolean()) {
+        w.deleteDocuments(new Term("id", Integer.toString(random().nextInt(id))));
+      }
+      final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w, random().nextBoolean());
+      if (newReader != null) {
+        reader.close();
+        reader = newReader;
+      }
+      // don't wrap the reader: the cache would not be purged when the wrapper is not closed
+      final IndexSearcher searcher = newSearcher(reader, false);
+      for (int i = 0; i < 5; ++i) {
+        final Filter filter = colorFilter(COLORS[random().nextInt(COLORS.length)]);
+        assertSameHits(searcher, filter, cache.doCache(filter));
+      }
+      assertTrue(cache.size() >= 0);
+      assertTrue(cache.ramBytesUsed() >= 0);
+    }
+    reader.close();
+    w.close();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.ramBytesUsed());
+    dir.close();
+  }
+
+  public void testSurvivesReopen() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())).setMaxBufferedDocs(1000).setMergePolicy(NoMergePolicy.COMPOUND_FILES));
+    for (int i = 0; i < 100; ++i) {
+      w.addDocument(newColorDocument(i));
+    }
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    assertEquals(1, reader.leaves().size());
+
+    final FilterCache cache = new FilterCache(100, Long.MAX_VALUE, 1, 1);
+    final Filter filter = cache.doCache(colorFilter("red"));
+    new IndexSearcher(reader).search(new MatchAllDocsQuery(), filter, 1);
+    assertEquals(0, cache.getHitCount());
+    assertEquals(1, cache.getMissCount());
+    assertEquals(1, cache.size());
+
+    // new documents and deletes: the segment core does not change
+    w.addDocument(newColorDocument(100));
+    w.deleteDocuments(new Term("id", "0"));
+    final DirectoryReader newReader = DirectoryReader.openIfChanged(reader, w, true);
+    assertNotNull(newReader);
+    reader.close();
+    reader = newReader;
+    assertEquals(2, reader.leaves().size());
+
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    assertSameHits(searcher, colorFilter("red"), filter);
+    assertTrue(cache.getHitCount() >= 1);
+    assertEquals(2, cache.size());
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testAdmission() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    for (int i = 0; i < 50; ++i) {
+      w.addDocument(newColorDocument(i));
+    }
+    final DirectoryReader reader = DirectoryReader.open(w, true);
+    final IndexSearcher searcher = new IndexSearcher(reader);
+
+    final FilterCache cache = new FilterCache(100, Long.MAX_VALUE, 2, 3);
+    final Filter red = cache.doCache(colorFilter("red"));
+    final Filter green = cache.doCache(colorFilter("green"));
+
+    // first use: not cached yet
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    assertEquals(0, cache.size());
+    // second use: cached
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    assertEquals(reader.leaves().size(), cache.size());
+
+    // used twice but not among the last 3 uses
+    searcher.search(new MatchAllDocsQuery(), green, 1);
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    searcher.search(new MatchAllDocsQuery(), green, 1);
+    assertEquals(reader.leaves().size(), cache.size());
+
+    assertSame(red, cache.doCache(red));
+    assertEquals(red, cache.doCache(colorFilter("red")));
+    assertFalse(red.equals(new FilterCache(100, Long.MAX_VALUE).doCache(colorFilter("red"))));
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testPurgeAndClearForgetFilters() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    for (int i = 0; i < 50; ++i) {
+      w.addDocument(newColorDocument(i));
+    }
+    w.forceMerge(1);
+
+    final FilterCache cache = new FilterCache(100, Long.MAX_VALUE, 2, 2);
+    final Filter red = cache.doCache(colorFilter("red"));
+    final Filter green = cache.doCache(colorFilter("green"));
+    DirectoryReader reader = DirectoryReader.open(w, true);
+    IndexSearcher searcher = new IndexSearcher(reader);
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    assertEquals(1, cache.size());
+    assertEquals(1, cache.getCacheCount());
+
+    // merging away the segment purges its entries, red must then go through
+    // admission again
+    reader.close();
+    w.addDocument(newColorDocument(50));
+    w.forceMerge(1);
+    assertEquals(0, cache.size());
+    reader = DirectoryReader.open(w, true);
+    searcher = new IndexSearcher(reader);
+    searcher.search(new MatchAllDocsQuery(), green, 1);
+    searcher.search(new MatchAllDocsQuery(), green, 1);
+    assertEquals(2, cache.getCacheCount());
+    searcher.search(new MatchAllDocsQuery(), red, 1);
+    assertEquals(2, cache.getCacheCount());
+
+    // clear() also forgets the admission history
+    cache.clear();
+    searcher.search(new MatchAllDocsQuery(), green, 1);
+    assertEquals(0, cache.size());
+    assertEquals(2, cache.getCacheCount());
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testEviction() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    for (int i = 0; i < 200; ++i) {
+      w.addDocument(newColorDocument(i));
+    }
+    w.forceMerge(1);
+    final DirectoryReader reader = DirectoryReader.open(w, true);
+    final IndexSearcher searcher = new IndexSearcher(reader);
+
+    final FilterCache cache = new FilterCache(2, Long.MAX_VALUE, 1, 1);
+    for (String color : COLORS) {
+      searcher.search(new MatchAllDocsQuery(), cache.doCache(colorFilter(color)), 1);
+      assertTrue(cache.size() <= 2);
+    }
+    assertEquals(2, cache.size());
+    assertEquals(COLORS.length, cache.getCacheCount());
+    assertEquals(COLORS.length - 2, cache.getEvictionCount());
+
+    // the most recently used filters are still cached
+    final long hitCount = cache.getHitCount();
+    searcher.search(new MatchAllDocsQuery(), cache.doCache(colorFilter(COLORS[COLORS.length - 1])), 1);
+    assertEquals(hitCount + 1, cache.getHitCount());
+
+    // RAM bound
+    final FilterCache ramCache = new FilterCache(100, FilterCache.ENTRY_RAM_BYTES_USED * 2 + 200, 1, 1);
+    for (String color : COLORS) {
+      searcher.search(new MatchAllDocsQuery(), ramCache.doCache(colorFilter(color)), 1);
+      assertTrue(ramCache.ramBytesUsed() <= FilterCache.ENTRY_RAM_BYTES_USED * 2 + 200);
+    }
+    assertTrue(ramCache.getEvictionCount() > 0);
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.ramBytesUsed());
+
+    reader.close();
+    w.close();
+    dir.close();
+  }
+
+  public void testCompactDocIdSets() throws IOException {
+    final FilterCache cache = new FilterCache(100, Long.MAX_VALUE);
+    final int maxDoc = _TestUtil.nextInt(random(), 1, 10000);
+    final int iters = atLeast(10);
+    for (int iter = 0; iter < iters; ++iter) {
+      final FixedBitSet expected = new FixedBitSet(maxDoc);
+      final int numBits = random().nextBoolean() ? random().nextInt(1 + maxDoc / 40) : random().nextInt(maxDoc + 1);
+      for (int i = 0; i < numBits; ++i) {
+        expected.set(random().nextInt(maxDoc));
+      }
+      final DocIdSet docIdSet = cache.cacheImpl(new DocIdSet() {
+        @Override
+        public DocIdSetIterator iterator() throws IOException {
+          return expected.iterator();
+        }
+      }, maxDoc);
+      assertTrue(docIdSet.isCacheable());
+      final int cardinality = expected.cardinality();
+      if (cardinality == 0) {
+        assertSame(DocIdSet.EMPTY_DOCIDSET, docIdSet);
+        continue;
+      } else if (cardinality < (maxDoc >>> 5)) {
+        assertTrue(docIdSet instanceof FilterCache.SortedIntDocIdSet);
+      } else {
+        assertTrue(docIdSet instanceof FixedBitSet);
+      }
+
+      // nextDoc
+      DocIdSetIterator it = docIdSet.iterator();
+      for (int doc = expected.nextSetBit(0); doc != -1; doc = doc + 1 >= maxDoc ? -1 : expected.nextSetBit(doc + 1)) {
+        assertEquals(doc, it.nextDoc());
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, it.nextDoc());
+
+      // advance
+      it = docIdSet.iterator();
+      int target = 0;
+      while (true) {
+        target += 1 + random().nextInt(1 + maxDoc / 10);
+        final int doc = it.advance(target);
+        final int expectedDoc = target >= maxDoc ? -1 : expected.nextSetBit(target);
+        if (expectedDoc == -1) {
+          assertEquals(DocIdSetIterator.NO_MORE_DOCS, doc);
+          break;
+        }
+        assertEquals(expectedDoc, doc);
+        target = doc;
+      }
+    }
+  }
+
+  public void testNullDocIdSet() throws IOException {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    w.addDocument(newColorDocument(0));
+    final DirectoryReader reader = DirectoryReader.open(w, true);
+    final FilterCache cache = new FilterCache(100, Long.MAX_VALUE, 1, 1);
+    final Filter filter = cache.doCache(new Filter() {
+      @Override
+      public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) {
+        return null;
+      }
+    });
+    assertEquals(0, new IndexSearcher(reader).search(new MatchAllDocsQuery(), filter, 1).totalHits);
+    assertEquals(1, cache.size());
+    reader.close();
+    w.close();
+    dir.close();
+  }
+}
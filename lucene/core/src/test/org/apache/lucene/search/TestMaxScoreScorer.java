@@ -0,0 +1,155 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.search.similarities.DefaultSimilarity;
+import org.apache.lucene.search.similarities.Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestMaxScoreScorer extends LuceneTestCase {
+
+  private static final String FIELD = "body";
+
+  private Directory dir;
+  private IndexReader reader;
+  private int numTerms;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    numTerms = 2 + random().nextInt(10);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = new Document();
+      final StringBuilder sb = new StringBuilder();
+      final int numTokens = 1 + random().nextInt(20);
+      for (int j = 0; j < numTokens; ++j) {
+        // skewed term distribution: t0 is frequent, the last terms are rare
+        final int term = Math.min(numTerms - 1, (int) Math.abs(random().nextGaussian() * numTerms / 3));
+        sb.append("t").append(term).append(' ');
+      }
+      doc.add(newTextField(FIELD, sb.toString(), Field.Store.NO));
+      w.addDocument(doc);
+    }
+    reader = w.getReader();
+    w.close();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    reader.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  private BooleanQuery randomDisjunction() {
+    final BooleanQuery query = new BooleanQuery(random().nextBoolean());
+    final int numClauses = 2 + random().nextInt(4);
+    for (int i = 0; i < numClauses; ++i) {
+      final TermQuery clause = new TermQuery(new Term(FIELD, "t" + random().nextInt(numTerms)));
+      if (random().nextInt(5) == 0) {
+        clause.setBoost(1 + random().nextInt(5));
+      }
+      query.add(clause, BooleanClause.Occur.SHOULD);
+    }
+    return query;
+  }
+
+  private void assertSameTopHits(IndexSearcher searcher) throws Exception {
+    for (int iter = 0; iter < 10; ++iter) {
+      final BooleanQuery query = randomDisjunction();
+      final boolean inOrder = random().nextBoolean();
+      final int numHits = 1 + random().nextInt(20);
+
+      // a queue which is larger than the index never gets full, so nothing
+      // is skipped
+      final TopScoreDocCollector all = TopScoreDocCollector.create(reader.maxDoc(), null, inOrder, false);
+      searcher.search(query, all);
+      final TopDocs expected = all.topDocs(0, numHits);
+
+      final TopScoreDocCollector top = TopScoreDocCollector.create(numHits, null, inOrder, false);
+      searcher.search(query, top);
+      final TopDocs actual = top.topDocs();
+
+      assertTrue(actual.totalHits <= all.getTotalHits());
+      assertEquals(query.toString(), expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; ++i) {
+        assertEquals(query.toString(), expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(query.toString(), expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+
+      // the same hits are returned when all hits are counted, up to the
+      // order of floating-point additions
+      final TopScoreDocCollector counting = TopScoreDocCollector.create(numHits, null, inOrder, true);
+      searcher.search(query, counting);
+      final TopDocs countingHits = counting.topDocs();
+      assertEquals(all.getTotalHits(), countingHits.totalHits);
+      assertEquals(expected.scoreDocs.length, countingHits.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; ++i) {
+        assertEquals(expected.scoreDocs[i].score, countingHits.scoreDocs[i].score, 0.0001f);
+      }
+    }
+  }
+
+  public void testDefaultSimilarity() throws Exception {
+    doTestSimilarity(new DefaultSimilarity());
+  }
+
+  public void testBM25Similarity() throws Exception {
+    doTestSimilarity(new BM25Similarity());
+  }
+
+  public void testRandomSimilarity() throws Exception {
+    assertSameTopHits(newSearcher(reader));
+  }
+
+  private void doTestSimilarity(Similarity similarity) throws Exception {
+    final IndexSearcher searcher = newSearcher(reader);
+    searcher.setSimilarity(similarity);
+    assertSameTopHits(searcher);
+  }
+
+  public void testMaxScore() throws Exception {
+    final IndexSearcher searcher = newSearcher(reader);
+    searcher.setSimilarity(random().nextBoolean() ? new DefaultSimilarity() : new BM25Similarity());
+    for (int i = 0; i < numTerms; ++i) {
+      final TermQuery query = new TermQuery(new Term(FIELD, "t" + i));
+      final Weight weight = searcher.createNormalizedWeight(query);
+      for (AtomicReaderContext context : searcher.getIndexReader().leaves()) {
+        final TermScorer scorer = (TermScorer) weight.scorer(context, true, false, null);
+        if (scorer == null) {
+          continue;
+        }
+        final float maxScore = scorer.maxScore();
+        while (scorer.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+          assertTrue(scorer.score() + " > " + maxScore, scorer.score() <= maxScore * (1 + 1e-6));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+package org.apache.lucene.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+
+public class TestPrimaryKeyLookup extends LuceneTestCase {
+
+  private static Document newDocument(int id, int version) {
+    final Document doc = new Document();
+    doc.add(newStringField("id", Integer.toString(id), Field.Store.NO));
+    doc.add(newStringField("version", Integer.toString(version), Field.Store.YES));
+    return doc;
+  }
+
+  public void testLookup() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    final PrimaryKeyLookup lookup = new PrimaryKeyLookup("id", random().nextInt(50));
+    final int numIds = atLeast(100);
+    final Map<Integer,Integer> versions = new HashMap<Integer,Integer>();
+    DirectoryReader reader = null;
+
+    final int iters = atLeast(5);
+    for (int iter = 0; iter < iters; iter++) {
+      // add and update documents
+      final int numUpdates = atLeast(50);
+      for (int i = 0; i < numUpdates; i++) {
+        final int id = random().nextInt(numIds);
+        final Integer previous = versions.get(id);
+        final int version = previous == null ? 0 : previous + 1;
+        versions.put(id, version);
+        w.updateDocument(new Term("id", Integer.toString(id)), newDocument(id, version));
+        if (random().nextInt(20) == 0) {
+          w.commit();
+        }
+      }
+      final int deleteId = random().nextInt(numIds);
+      versions.remove(deleteId);
+      w.deleteDocuments(new Term("id", Integer.toString(deleteId)));
+
+      // reopen: unchanged segments reuse their cached term states
+      final DirectoryReader newReader = reader == null ? DirectoryReader.open(w, true) : DirectoryReader.openIfChanged(reader, w, true);
+      if (newReader != null) {
+        if (reader != null) {
+          reader.close();
+        }
+        reader = newReader;
+      }
+
+      // single lookups, twice to hit the cache
+      for (int pass = 0; pass < 2; pass++) {
+        for (int id = 0; id < numIds; id++) {
+          final int doc = lookup.lookup(reader, new BytesRef(Integer.toString(id)));
+          assertVersion(reader, versions.get(id), doc);
+        }
+      }
+
+      // batch lookup
+      final BytesRef[] keys = new BytesRef[numIds + 1];
+      for (int id = 0; id < numIds; id++) {
+        keys[id] = new BytesRef(Integer.toString(id));
+      }
+      keys[numIds] = new BytesRef("missing");
+      final int[] docIDs = new int[keys.length];
+      lookup.lookup(reader, keys, docIDs);
+      for (int id = 0; id < numIds; id++) {
+        assertVersion(reader, versions.get(id), docIDs[id]);
+      }
+      assertEquals(-1, docIDs[numIds]);
+    }
+
+    assertTrue(lookup.getMissCount() > 0);
+    if (lookup.size() > 0) {
+      assertTrue(lookup.getHitCount() > 0);
+    }
+
+    w.close();
+    reader.close();
+    // cached term states are purged when segments are closed
+    assertEquals(0, lookup.size());
+    dir.close();
+  }
+
+  private static void assertVersion(DirectoryReader reader, Integer expectedVersion, int doc) throws Exception {
+    if (expectedVersion == null) {
+      assertEquals(-1, doc);
+    } else {
+      assertTrue(doc >= 0);
+      assertEquals(expectedVersion.toString(), reader.document(doc).get("version"));
+    }
+  }
+
+  public void testNoCache() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriter w = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random())));
+    w.addDocument(newDocument(1, 0));
+    final DirectoryReader reader = DirectoryReader.open(w, true);
+    final PrimaryKeyLookup lookup = new PrimaryKeyLookup("id", 0);
+    assertEquals(0, lookup.lookup(reader, new BytesRef("1")));
+    assertEquals(0, lookup.lookup(reader, new BytesRef("1")));
+    assertEquals(-1, lookup.lookup(reader, new BytesRef("2")));
+    assertEquals(0, lookup.size());
+    assertEquals(0, lookup.getHitCount());
+    reader.close();
+    w.close();
+    dir.close();
+  }
+}
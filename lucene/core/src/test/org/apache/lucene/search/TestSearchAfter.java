@@ -52,6 +52,7 @@ public class TestSearchAfter extends LuceneTestCase {
 
   private static SortField useDocValues(SortField field) {
     field.setUseIndexValues(true);
+    field.setIndexValuesDiskResident(random().nextBoolean());
     return field;
   }
 
@@ -379,6 +379,7 @@ public class TestSort extends LuceneTestCase {
 
   private static SortField useDocValues(SortField field) {
     field.setUseIndexValues(true);
+    field.setIndexValuesDiskResident(random().nextBoolean());
     return field;
   }
   // test sorts where the type of field is specified
@@ -1434,6 +1435,7 @@ public class TestSort extends LuceneTestCase {
       if (random.nextBoolean()) {
         sf = new SortField("stringdv", SortField.Type.STRING, reverse);
         sf.setUseIndexValues(true);
+        sf.setIndexValuesDiskResident(random.nextBoolean());
       } else {
         sf = new SortField("string", SortField.Type.STRING, reverse);
       }
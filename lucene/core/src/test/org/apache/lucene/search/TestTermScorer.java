@@ -165,6 +165,87 @@ public class TestTermScorer extends LuceneTestCase {
     assertTrue("doc should be number 5", ts.docID() == 5);
   }
   
+  public void testNextDocs() throws Exception {
+    Term allTerm = new Term(FIELD, "all");
+    TermQuery termQuery = new TermQuery(allTerm);
+    
+    Weight weight = indexSearcher.createNormalizedWeight(termQuery);
+    AtomicReaderContext context = (AtomicReaderContext) indexSearcher.getTopReaderContext();
+    Scorer ts = weight.scorer(context, true, true, context.reader().getLiveDocs());
+    final int[] docs = new int[1];
+    final float[] scores = new float[1];
+    assertEquals(1, ts.nextDocs(docs, scores));
+    assertEquals(0, docs[0]);
+    assertEquals(1.6931472f, scores[0], 0f);
+    assertEquals(0, ts.docID());
+    assertEquals(1, ts.nextDocs(docs, scores));
+    assertEquals(5, docs[0]);
+    assertEquals(1.6931472f, scores[0], 0f);
+    assertEquals(0, ts.nextDocs(docs, scores));
+    assertEquals(DocIdSetIterator.NO_MORE_DOCS, ts.docID());
+  }
+  
+  public void testRandomBulk() throws Exception {
+    Directory dir = newDirectory();
+    RandomIndexWriter w = new RandomIndexWriter(random(), dir);
+    final int numDocs = atLeast(1000);
+    for (int i = 0; i < numDocs; i++) {
+      Document doc = new Document();
+      StringBuilder sb = new StringBuilder();
+      final int numTokens = 1 + random().nextInt(5);
+      for (int j = 0; j < numTokens; j++) {
+        sb.append(random().nextInt(3) == 0 ? "a " : "b ");
+      }
+      doc.add(newTextField(FIELD, sb.toString(), Field.Store.NO));
+      w.addDocument(doc);
+      if (random().nextInt(50) == 0) {
+        w.deleteDocuments(new Term(FIELD, "b"));
+      }
+    }
+    IndexReader r = w.getReader();
+    w.close();
+    IndexSearcher s = newSearcher(r);
+    TermQuery q = new TermQuery(new Term(FIELD, "a"));
+    Weight weight = s.createNormalizedWeight(q);
+    for (AtomicReaderContext context : r.leaves()) {
+      Scorer expected = weight.scorer(context, true, true, context.reader().getLiveDocs());
+      Scorer actual = weight.scorer(context, true, true, context.reader().getLiveDocs());
+      if (expected == null) {
+        assertNull(actual);
+        continue;
+      }
+      final int[] docs = new int[1 + random().nextInt(300)];
+      final float[] scores = new float[docs.length];
+      int count;
+      while ((count = actual.nextDocs(docs, scores)) != 0) {
+        for (int i = 0; i < count; i++) {
+          assertEquals(expected.nextDoc(), docs[i]);
+          assertEquals(expected.score(), scores[i], 0f);
+        }
+        if (actual.docID() != DocIdSetIterator.NO_MORE_DOCS) {
+          assertEquals(expected.docID(), actual.docID());
+        }
+      }
+      assertEquals(DocIdSetIterator.NO_MORE_DOCS, expected.nextDoc());
+    }
+    // collectors consume batches of hits
+    for (boolean inOrder : new boolean[] {true, false}) {
+      final int numHits = 1 + random().nextInt(20);
+      TopScoreDocCollector c = TopScoreDocCollector.create(numHits, inOrder);
+      s.search(q, c);
+      TopDocs actual = c.topDocs();
+      TopDocs expected = s.search(q, null, numHits, Sort.RELEVANCE, true, true);
+      assertEquals(expected.totalHits, actual.totalHits);
+      assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+      for (int i = 0; i < expected.scoreDocs.length; i++) {
+        assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+        assertEquals(expected.scoreDocs[i].score, actual.scoreDocs[i].score, 0f);
+      }
+    }
+    r.close();
+    dir.close();
+  }
+  
   private class TestHit {
     public int doc;
     public float score;
@@ -0,0 +1,186 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.EOFException;
+import java.io.File;
+
+import org.apache.lucene.store.Directory.IndexInputSlicer;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+/**
+ * Tests {@link IndexInput#randomAccessSlice(long, long)} against the
+ * sequential read methods of {@link IndexInput}.
+ */
+public class TestRandomAccessInput extends LuceneTestCase {
+
+  private static final String NAME = "bytes";
+
+  private int writeRandomFile(Directory dir) throws Exception {
+    final int length = _TestUtil.nextInt(random(), 1, 3000);
+    final byte[] bytes = new byte[length];
+    random().nextBytes(bytes);
+    final IndexOutput out = dir.createOutput(NAME, newIOContext(random()));
+    out.writeBytes(bytes, length);
+    out.close();
+    return length;
+  }
+
+  private void assertSameValues(IndexInput in, long offset, RandomAccessInput slice, long length) throws Exception {
+    final IndexInput clone = in.clone();
+    for (int i = 0; i < 200; i++) {
+      final long pos = length == 0 ? 0 : _TestUtil.nextInt(random(), 0, (int) length - 1);
+      final long remaining = length - pos;
+      if (remaining >= 1) {
+        clone.seek(offset + pos);
+        assertEquals(clone.readByte(), slice.readByte(pos));
+      }
+      if (remaining >= 2) {
+        clone.seek(offset + pos);
+        assertEquals(clone.readShort(), slice.readShort(pos));
+      }
+      if (remaining >= 4) {
+        clone.seek(offset + pos);
+        assertEquals(clone.readInt(), slice.readInt(pos));
+      }
+      if (remaining >= 8) {
+        clone.seek(offset + pos);
+        assertEquals(clone.readLong(), slice.readLong(pos));
+      }
+    }
+    // reading past the end of the slice must fail
+    try {
+      slice.readLong(Math.max(0, length - 7));
+      fail("Must throw EOFException");
+    } catch (EOFException expected) {
+      // pass
+    }
+    try {
+      slice.readByte(length);
+      fail("Must throw EOFException");
+    } catch (EOFException expected) {
+      // pass
+    }
+  }
+
+  private void doTestRandomAccess(Directory dir) throws Exception {
+    final int length = writeRandomFile(dir);
+    final IndexInput in = dir.openInput(NAME, newIOContext(random()));
+    final long fp = _TestUtil.nextInt(random(), 0, length);
+    in.seek(fp);
+    assertSameValues(in, 0, in.randomAccessSlice(0, length), length);
+    for (int i = 0; i < 10; i++) {
+      final long offset = _TestUtil.nextInt(random(), 0, length);
+      final long sliceLength = _TestUtil.nextInt(random(), 0, (int) (length - offset));
+      assertSameValues(in, offset, in.randomAccessSlice(offset, sliceLength), sliceLength);
+    }
+    // the file pointer of the input is left untouched
+    assertEquals(fp, in.getFilePointer());
+    try {
+      in.randomAccessSlice(1, length);
+      fail("Must throw IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      // pass
+    }
+    in.close();
+
+    // slices of a compound-file-like slicer
+    final IndexInputSlicer slicer = dir.createSlicer(NAME, newIOContext(random()));
+    final long sliceOffset = _TestUtil.nextInt(random(), 0, length);
+    final long sliceLength = _TestUtil.nextInt(random(), 0, (int) (length - sliceOffset));
+    final IndexInput sliced = slicer.openSlice("slice", sliceOffset, sliceLength);
+    assertSameValues(sliced, 0, sliced.randomAccessSlice(0, sliceLength), sliceLength);
+    sliced.close();
+    slicer.close();
+  }
+
+  public void testRandomDirectory() throws Exception {
+    final Directory dir = newDirectory();
+    doTestRandomAccess(dir);
+    dir.close();
+  }
+
+  public void testNIOFS() throws Exception {
+    final Directory dir = new NIOFSDirectory(_TestUtil.getTempDir("testNIOFS"));
+    doTestRandomAccess(dir);
+    dir.close();
+  }
+
+  public void testSimpleFS() throws Exception {
+    final Directory dir = new SimpleFSDirectory(_TestUtil.getTempDir("testSimpleFS"));
+    doTestRandomAccess(dir);
+    dir.close();
+  }
+
+  public void testMultiMMap() throws Exception {
+    assumeTrue("test requires a jre that supports unmapping", MMapDirectory.UNMAP_SUPPORTED);
+    final File path = _TestUtil.getTempDir("testMultiMMap");
+    for (int chunkSizePower = 1; chunkSizePower < 12; chunkSizePower++) {
+      // small chunks so that values span buffers
+      final Directory dir = new MMapDirectory(path, null, 1 << chunkSizePower);
+      doTestRandomAccess(dir);
+      dir.deleteFile(NAME);
+      dir.close();
+    }
+  }
+
+  private boolean hasFastRandomAccessSlice(Directory dir) throws Exception {
+    writeRandomFile(dir);
+    final IndexInput in = dir.openInput(NAME, newIOContext(random()));
+    final boolean fast = in.hasFastRandomAccessSlice();
+    in.close();
+    final IndexInputSlicer slicer = dir.createSlicer(NAME, newIOContext(random()));
+    final IndexInput sliced = slicer.openSlice("slice", 0, 1);
+    assertEquals(fast, sliced.hasFastRandomAccessSlice());
+    sliced.close();
+    slicer.close();
+    return fast;
+  }
+
+  public void testHasFastRandomAccessSlice() throws Exception {
+    Directory dir = new SimpleFSDirectory(_TestUtil.getTempDir("testHasFastRandomAccessSlice"));
+    assertFalse(hasFastRandomAccessSlice(dir));
+    dir.close();
+    dir = new NIOFSDirectory(_TestUtil.getTempDir("testHasFastRandomAccessSlice"));
+    assertFalse(hasFastRandomAccessSlice(dir));
+    dir.close();
+    dir = new MMapDirectory(_TestUtil.getTempDir("testHasFastRandomAccessSlice"));
+    assertTrue(hasFastRandomAccessSlice(dir));
+    dir.close();
+  }
+
+  public void testMMapCloseSafety() throws Exception {
+    assumeTrue("test requires a jre that supports unmapping", MMapDirectory.UNMAP_SUPPORTED);
+    final MMapDirectory dir = new MMapDirectory(_TestUtil.getTempDir("testMMapCloseSafety"));
+    final IndexOutput out = dir.createOutput(NAME, newIOContext(random()));
+    out.writeLong(42L);
+    out.close();
+    final IndexInput in = dir.openInput(NAME, newIOContext(random()));
+    final RandomAccessInput slice = in.randomAccessSlice(0, in.length());
+    assertEquals(42L, slice.readLong(0));
+    in.close();
+    try {
+      slice.readLong(0);
+      fail("Must throw AlreadyClosedException");
+    } catch (AlreadyClosedException expected) {
+      // pass
+    }
+    dir.close();
+  }
+}
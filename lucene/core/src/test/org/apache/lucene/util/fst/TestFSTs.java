@@ -2289,4 +2289,69 @@ public class TestFSTs extends LuceneTestCase {
       }
     }
   }
+
+  public void testOffHeap() throws Exception {
+    final Directory dir = newDirectory();
+    final PositiveIntOutputs outputs = PositiveIntOutputs.getSingleton(random().nextBoolean());
+    final boolean doPack = random().nextBoolean();
+    final Builder<Long> builder = new Builder<Long>(FST.INPUT_TYPE.BYTE1, 0, 0, true, true, Integer.MAX_VALUE, outputs, null, doPack);
+
+    final int numWords = atLeast(500);
+    final SortedMap<BytesRef,Long> words = new TreeMap<BytesRef,Long>();
+    while (words.size() < numWords) {
+      words.put(new BytesRef(_TestUtil.randomSimpleString(random(), 20)), (long) random().nextInt(1000000));
+    }
+    final IntsRef scratch = new IntsRef();
+    for (Map.Entry<BytesRef,Long> entry : words.entrySet()) {
+      builder.add(Util.toIntsRef(entry.getKey(), scratch), entry.getValue());
+    }
+    FST<Long> fst = builder.finish();
+    if (doPack) {
+      fst = fst.pack(_TestUtil.nextInt(random(), 1, 10), _TestUtil.nextInt(random(), 0, 10000000), random().nextFloat());
+    }
+
+    // save with some leading and trailing bytes:
+    final int prefix = random().nextInt(10);
+    IndexOutput out = dir.createOutput("fst.bin", newIOContext(random()));
+    for (int i = 0; i < prefix; i++) {
+      out.writeByte((byte) i);
+    }
+    fst.save(out);
+    out.writeLong(42L);
+    out.close();
+
+    final IndexInput in = dir.openInput("fst.bin", newIOContext(random()));
+    in.seek(prefix);
+    final FST<Long> onHeap = new FST<Long>(in, outputs, false);
+    assertEquals(42L, in.readLong());
+    in.seek(prefix);
+    final FST<Long> offHeap = new FST<Long>(in, outputs, true);
+    // positioned after the FST:
+    assertEquals(42L, in.readLong());
+
+    assertFalse(onHeap.isOffHeap());
+    assertTrue(offHeap.isOffHeap());
+    assertEquals(onHeap.sizeInBytes(), offHeap.sizeInBytes());
+    assertTrue(offHeap.ramBytesUsed() + " vs " + onHeap.ramBytesUsed(), offHeap.ramBytesUsed() < onHeap.ramBytesUsed());
+
+    for (Map.Entry<BytesRef,Long> entry : words.entrySet()) {
+      assertEquals(entry.getValue(), Util.get(offHeap, entry.getKey()));
+    }
+    for (int i = 0; i < 100; i++) {
+      final BytesRef term = new BytesRef(_TestUtil.randomSimpleString(random(), 20));
+      assertEquals(Util.get(onHeap, term), Util.get(offHeap, term));
+    }
+
+    final BytesRefFSTEnum<Long> fstEnum = new BytesRefFSTEnum<Long>(offHeap);
+    for (Map.Entry<BytesRef,Long> entry : words.entrySet()) {
+      final InputOutput<Long> io = fstEnum.next();
+      assertNotNull(io);
+      assertEquals(entry.getKey(), io.input);
+      assertEquals(entry.getValue(), io.output);
+    }
+    assertNull(fstEnum.next());
+
+    in.close();
+    dir.close();
+  }
 }
@@ -0,0 +1,442 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.store.IOContext;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.NumericUtils;
+
+/**
+ * A {@link MergePolicy} for append-mostly, time-based data such as logs.
+ * <p>
+ * Segments are grouped into time windows of {@link #setWindowSize windowSize}
+ * according to the largest value of a {@link LongField} timestamp field that
+ * they contain, and the wrapped {@link MergePolicy} (a {@link TieredMergePolicy}
+ * by default) is asked to select merges in each window separately, so old
+ * segments are never merged with new ones. Segments which have no value for the
+ * timestamp field form a window of their own.
+ * <p>
+ * The range of timestamps of merged segments is recorded in their
+ * {@link SegmentInfo#getDiagnostics() diagnostics} (see {@link #MIN_TIMESTAMP_PROP}
+ * and {@link #MAX_TIMESTAMP_PROP}). Flushed segments don't have it, so it is
+ * computed once from the full-precision terms of the timestamp field, using the
+ * {@link IndexWriter}'s pooled reader for the segment, and cached for as long as
+ * the segment is live.
+ * <p>
+ * Segments whose timestamps are all older than {@link #setExpireBefore expireBefore}
+ * are dropped wholesale on the next call to {@link #findMerges}, for example
+ * after {@link IndexWriter#maybeMerge()}: the merge that removes them feeds no
+ * document to the merger, so expiring old data costs about the same whatever
+ * the size of the segments, unlike deleting them by query.
+ * <p>
+ * Merges selected by the wrapped {@link MergePolicy} are delegated to, so that
+ * for instance the merges of a
+ * {@link org.apache.lucene.index.sorter.SortingMergePolicy} still sort
+ * documents.
+ * <p><b>NOTE</b>: {@link IndexWriter#forceMerge(int)} merges down to the
+ * requested number of segments <i>per window</i>.
+ *
+ * @lucene.experimental
+ */
+public final class TimeWindowMergePolicy extends MergePolicy {
+
+  /** Put in the diagnostics of merged segments to denote the field that the
+   *  timestamps were read from. */
+  public static final String TIMESTAMP_FIELD_PROP = "timeWindow.field";
+
+  /** Put in the diagnostics of merged segments to record the smallest
+   *  timestamp they may contain. */
+  public static final String MIN_TIMESTAMP_PROP = "timeWindow.min";
+
+  /** Put in the diagnostics of merged segments to record the largest
+   *  timestamp they may contain. */
+  public static final String MAX_TIMESTAMP_PROP = "timeWindow.max";
+
+  // cached for segments without a value for the field
+  private static final long[] NO_RANGE = new long[0];
+
+  /** Wraps a merge selected by the wrapped {@link MergePolicy} in order to
+   *  record the range of timestamps of the merged segment. */
+  class TimeWindowOneMerge extends OneMerge {
+
+    final OneMerge in;
+    final long[] range;
+
+    TimeWindowOneMerge(OneMerge in, long[] range) {
+      super(in.segments);
+      this.in = in;
+      this.range = range;
+    }
+
+    @Override
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      // IndexWriter only initializes the readers of this merge
+      in.readers = readers;
+      return in.getMergeReaders();
+    }
+
+    @Override
+    public void setInfo(SegmentInfoPerCommit info) {
+      if (range != NO_RANGE) {
+        final Map<String,String> diagnostics = new HashMap<String,String>(info.info.getDiagnostics());
+        diagnostics.put(TIMESTAMP_FIELD_PROP, field);
+        diagnostics.put(MIN_TIMESTAMP_PROP, Long.toString(range[0]));
+        diagnostics.put(MAX_TIMESTAMP_PROP, Long.toString(range[1]));
+        info.info.setDiagnostics(diagnostics);
+      }
+      in.setInfo(info);
+      super.setInfo(info);
+    }
+
+    @Override
+    public DocMap getDocMap(MergeState mergeState) {
+      return in.getDocMap(mergeState);
+    }
+  }
+
+  /** Feeds no document to the merger: the merged segment is empty, so
+   *  {@link IndexWriter} drops it together with the merged segments.
+   *  {@link IndexWriter} still opens a merge reader (without terms index) on
+   *  each segment and the merger writes the files of an empty segment, but
+   *  the cost doesn't depend on the size of the segments. */
+  static class ExpiringOneMerge extends OneMerge {
+
+    ExpiringOneMerge(List<SegmentInfoPerCommit> segments) {
+      super(segments);
+    }
+
+    @Override
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      return Collections.emptyList();
+    }
+  }
+
+  final MergePolicy in;
+  final String field;
+  private long windowSize;
+  private volatile long expireBefore = Long.MIN_VALUE;
+
+  // segment name -> {min, max} or NO_RANGE
+  private final Map<String,long[]> ranges = new HashMap<String,long[]>();
+
+  /** Create a new {@link TimeWindowMergePolicy} that groups segments into
+   *  windows of <code>windowSize</code> according to the {@link LongField}
+   *  <code>field</code>, and selects merges in each window with <code>in</code>. */
+  public TimeWindowMergePolicy(MergePolicy in, String field, long windowSize) {
+    if (in == null || field == null) {
+      throw new NullPointerException();
+    }
+    this.in = in;
+    this.field = field;
+    setWindowSize(windowSize);
+  }
+
+  /** Same as {@link #TimeWindowMergePolicy(MergePolicy, String, long)} with a
+   *  {@link TieredMergePolicy}. */
+  public TimeWindowMergePolicy(String field, long windowSize) {
+    this(new TieredMergePolicy(), field, windowSize);
+  }
+
+  /** Size of a time window, in the unit of the timestamp field. Windows are
+   *  aligned on multiples of this size. */
+  public TimeWindowMergePolicy setWindowSize(long windowSize) {
+    if (windowSize <= 0) {
+      throw new IllegalArgumentException("windowSize must be > 0 (got " + windowSize + ")");
+    }
+    this.windowSize = windowSize;
+    return this;
+  }
+
+  /** Returns the current windowSize setting.
+   *
+   * @see #setWindowSize */
+  public long getWindowSize() {
+    return windowSize;
+  }
+
+  /** Segments whose timestamps are all strictly less than
+   *  <code>expireBefore</code> will be dropped by the next call to
+   *  {@link #findMerges}. Default is {@link Long#MIN_VALUE}, which never
+   *  expires anything. */
+  public TimeWindowMergePolicy setExpireBefore(long expireBefore) {
+    this.expireBefore = expireBefore;
+    return this;
+  }
+
+  /** Returns the current expireBefore setting.
+   *
+   * @see #setExpireBefore */
+  public long getExpireBefore() {
+    return expireBefore;
+  }
+
+  /** Returns the name of the timestamp field. */
+  public String getField() {
+    return field;
+  }
+
+  /** Returns the {@link MergePolicy} used to select merges in a window. */
+  public MergePolicy getMergePolicy() {
+    return in;
+  }
+
+  /** Returns <code>{min, max}</code>, the range of timestamps of the given
+   *  segment, or <code>null</code> if it has no value for the timestamp field.
+   *  The segment must be live in the {@link IndexWriter} that uses this
+   *  policy. */
+  public long[] getTimestampRange(SegmentInfoPerCommit info) throws IOException {
+    final IndexWriter writer = this.writer.get();
+    final long[] range;
+    synchronized (writer) {
+      range = range(liveInfo(writer, info));
+    }
+    return range == NO_RANGE ? null : range.clone();
+  }
+
+  /** Returns the instance of <code>info</code> that the writer's reader pool
+   *  knows about, <code>info</code> may come from another reader. */
+  private static SegmentInfoPerCommit liveInfo(IndexWriter writer, SegmentInfoPerCommit info) {
+    assert Thread.holdsLock(writer);
+    for (SegmentInfoPerCommit live : writer.segmentInfos) {
+      if (live.info.equals(info.info)) {
+        return live;
+      }
+    }
+    throw new IllegalArgumentException("segment " + info.info.name + " is not live in " + writer);
+  }
+
+  private synchronized long[] range(SegmentInfoPerCommit info) throws IOException {
+    long[] range = ranges.get(info.info.name);
+    if (range == null) {
+      final Map<String,String> diagnostics = info.info.getDiagnostics();
+      if (diagnostics != null && field.equals(diagnostics.get(TIMESTAMP_FIELD_PROP))) {
+        range = new long[] {
+            Long.parseLong(diagnostics.get(MIN_TIMESTAMP_PROP)),
+            Long.parseLong(diagnostics.get(MAX_TIMESTAMP_PROP)) };
+      } else {
+        range = readRange(info);
+      }
+      ranges.put(info.info.name, range);
+    }
+    return range;
+  }
+
+  private long[] readRange(SegmentInfoPerCommit info) throws IOException {
+    // go through the writer's pool, which may already have an open reader
+    // for this segment (NRT), instead of opening a new one
+    final IndexWriter.ReaderPool readerPool = writer.get().readerPool;
+    final ReadersAndLiveDocs rld = readerPool.get(info, true);
+    try {
+      final SegmentReader reader = rld.getReader(IOContext.READ);
+      try {
+        return readRange(reader);
+      } finally {
+        rld.release(reader);
+      }
+    } finally {
+      readerPool.release(rld);
+    }
+  }
+
+  private long[] readRange(SegmentReader reader) throws IOException {
+    final Terms terms = reader.terms(field);
+    if (terms == null) {
+      return NO_RANGE;
+    }
+    final TermsEnum termsEnum = terms.iterator(null);
+    // full-precision terms sort first
+    BytesRef term = termsEnum.next();
+    if (term == null || NumericUtils.getPrefixCodedLongShift(term) != 0) {
+      return NO_RANGE;
+    }
+    final long min = NumericUtils.prefixCodedToLong(term);
+    long max = min;
+    while ((term = termsEnum.next()) != null && NumericUtils.getPrefixCodedLongShift(term) == 0) {
+      max = NumericUtils.prefixCodedToLong(term);
+    }
+    return new long[] {min, max};
+  }
+
+  /** Forgets the ranges of segments which are not in <code>infos</code> anymore. */
+  private synchronized void prune(SegmentInfos infos) {
+    final Set<String> names = new HashSet<String>();
+    for (SegmentInfoPerCommit info : infos) {
+      names.add(info.info.name);
+    }
+    for (Iterator<String> it = ranges.keySet().iterator(); it.hasNext(); ) {
+      if (!names.contains(it.next())) {
+        it.remove();
+      }
+    }
+  }
+
+  private long window(long timestamp) {
+    // floor division, so that windows are aligned for negative timestamps too
+    return timestamp >= 0 ? timestamp / windowSize : -((-timestamp - 1) / windowSize) - 1;
+  }
+
+  /** Splits <code>infos</code> into windows, in increasing order of time.
+   *  Segments without timestamps come last. */
+  private List<SegmentInfos> windows(SegmentInfos infos, Collection<SegmentInfoPerCommit> exclude) throws IOException {
+    final TreeMap<Long,SegmentInfos> windows = new TreeMap<Long,SegmentInfos>();
+    final SegmentInfos noRange = new SegmentInfos();
+    for (SegmentInfoPerCommit info : infos) {
+      if (exclude.contains(info)) {
+        continue;
+      }
+      final long[] range = range(info);
+      final SegmentInfos window;
+      if (range == NO_RANGE) {
+        window = noRange;
+      } else {
+        final Long key = window(range[1]);
+        SegmentInfos w = windows.get(key);
+        if (w == null) {
+          w = new SegmentInfos();
+          windows.put(key, w);
+        }
+        window = w;
+      }
+      window.add(info);
+    }
+    final List<SegmentInfos> result = new ArrayList<SegmentInfos>(windows.values());
+    if (noRange.size() > 0) {
+      result.add(noRange);
+    }
+    return result;
+  }
+
+  private long[] union(List<SegmentInfoPerCommit> segments) throws IOException {
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (SegmentInfoPerCommit info : segments) {
+      final long[] range = range(info);
+      if (range == NO_RANGE) {
+        return NO_RANGE;
+      }
+      min = Math.min(min, range[0]);
+      max = Math.max(max, range[1]);
+    }
+    return new long[] {min, max};
+  }
+
+  private MergeSpecification add(MergeSpecification spec, MergeSpecification windowSpec) throws IOException {
+    if (windowSpec == null) {
+      return spec;
+    }
+    if (spec == null) {
+      spec = new MergeSpecification();
+    }
+    for (OneMerge merge : windowSpec.merges) {
+      spec.add(new TimeWindowOneMerge(merge, union(merge.segments)));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findMerges(SegmentInfos segmentInfos) throws IOException {
+    prune(segmentInfos);
+    final Collection<SegmentInfoPerCommit> merging = writer.get().getMergingSegments();
+
+    MergeSpecification spec = null;
+    final long expireBefore = this.expireBefore;
+    final List<SegmentInfoPerCommit> expired = new ArrayList<SegmentInfoPerCommit>();
+    if (expireBefore != Long.MIN_VALUE) {
+      for (SegmentInfoPerCommit info : segmentInfos) {
+        final long[] range = range(info);
+        if (range != NO_RANGE && range[1] < expireBefore && !merging.contains(info)) {
+          expired.add(info);
+        }
+      }
+      if (!expired.isEmpty()) {
+        spec = new MergeSpecification();
+        spec.add(new ExpiringOneMerge(expired));
+      }
+    }
+
+    for (SegmentInfos window : windows(segmentInfos, expired)) {
+      spec = add(spec, in.findMerges(window));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos segmentInfos,
+      int maxSegmentCount, Map<SegmentInfoPerCommit,Boolean> segmentsToMerge)
+      throws IOException {
+    prune(segmentInfos);
+    MergeSpecification spec = null;
+    for (SegmentInfos window : windows(segmentInfos, Collections.<SegmentInfoPerCommit>emptySet())) {
+      spec = add(spec, in.findForcedMerges(window, maxSegmentCount, segmentsToMerge));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos)
+      throws IOException {
+    prune(segmentInfos);
+    MergeSpecification spec = null;
+    for (SegmentInfos window : windows(segmentInfos, Collections.<SegmentInfoPerCommit>emptySet())) {
+      spec = add(spec, in.findForcedDeletesMerges(window));
+    }
+    return spec;
+  }
+
+  @Override
+  public MergePolicy clone() {
+    return new TimeWindowMergePolicy(in.clone(), field, windowSize).setExpireBefore(expireBefore);
+  }
+
+  @Override
+  public void close() {
+    in.close();
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos segments,
+      SegmentInfoPerCommit newSegment) throws IOException {
+    return in.useCompoundFile(segments, newSegment);
+  }
+
+  @Override
+  public void setIndexWriter(IndexWriter writer) {
+    super.setIndexWriter(writer);
+    in.setIndexWriter(writer);
+  }
+
+  @Override
+  public String toString() {
+    return "TimeWindowMergePolicy(" + in + ", field=" + field + ", windowSize=" + windowSize
+        + ", expireBefore=" + expireBefore + ")";
+  }
+
+}
@@ -0,0 +1,206 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.FieldComparator;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.SorterTemplate;
+
+/**
+ * Computes the permutation of doc IDs which sorts the documents of an
+ * {@link IndexReader} according to a {@link Sort}, the same way as
+ * {@link org.apache.lucene.search.TopFieldCollector} would rank them. Ties
+ * are broken by doc ID.
+ * <p>
+ * Values are computed with the {@link FieldComparator}s of the sort fields,
+ * so sorting by a field which is not indexed with doc values populates the
+ * {@link org.apache.lucene.search.FieldCache} of the leaves of the reader.
+ * Sorting by relevance is not supported.
+ *
+ * @lucene.experimental
+ */
+public final class Sorter {
+
+  /**
+   * A permutation of doc IDs. For every document ID between <tt>0</tt> and
+   * {@link IndexReader#maxDoc()}, <code>oldToNew(newToOld(docID))</code> must
+   * return <code>docID</code>.
+   */
+  public static abstract class DocMap {
+
+    /** Sole constructor. */
+    protected DocMap() {}
+
+    /** Given a doc ID from the original index, return its ordinal in the
+     *  sorted index. */
+    public abstract int oldToNew(int docID);
+
+    /** Given the ordinal of a doc ID, return its doc ID in the original index. */
+    public abstract int newToOld(int docID);
+
+    /** Return the number of documents in this map. This must be equal to the
+     *  {@link IndexReader#maxDoc() number of documents} of the
+     *  reader which is sorted. */
+    public abstract int size();
+
+  }
+
+  private final Sort sort;
+  private final String id;
+
+  /** Create a new {@link Sorter} for the given {@link Sort}. */
+  public Sorter(Sort sort) {
+    for (SortField field : sort.getSort()) {
+      switch (field.getType()) {
+        case SCORE:
+        case REWRITEABLE:
+          throw new IllegalArgumentException("Cannot sort documents by " + field);
+        default:
+          break;
+      }
+    }
+    this.sort = sort;
+    this.id = sort.toString();
+  }
+
+  /** Return the {@link Sort} which is used to sort documents. */
+  public Sort getSort() {
+    return sort;
+  }
+
+  /**
+   * Return an identifier of this sorter. Two sorters that have the same
+   * identifier sort documents the same way. It is recorded in the diagnostics
+   * of the segments that have been sorted.
+   */
+  public String getID() {
+    return id;
+  }
+
+  /**
+   * Compute the {@link DocMap} which sorts the documents of
+   * <code>reader</code>. Deleted documents are sorted too. Returns
+   * <code>null</code> if the documents are already sorted.
+   */
+  public DocMap sort(IndexReader reader) throws IOException {
+    final int maxDoc = reader.maxDoc();
+    if (maxDoc <= 1) {
+      return null;
+    }
+
+    final SortField[] fields = sort.getSort();
+    final FieldComparator<?>[] comparators = new FieldComparator<?>[fields.length];
+    final int[] reverseMul = new int[fields.length];
+    for (int i = 0; i < fields.length; ++i) {
+      // one slot per document: the slot of a document is its doc ID
+      comparators[i] = fields[i].getComparator(maxDoc, i);
+      reverseMul[i] = fields[i].getReverse() ? -1 : 1;
+    }
+    for (AtomicReaderContext context : reader.leaves()) {
+      final int docBase = context.docBase;
+      final int leafMaxDoc = context.reader().maxDoc();
+      for (int i = 0; i < comparators.length; ++i) {
+        comparators[i] = comparators[i].setNextReader(context);
+        for (int doc = 0; doc < leafMaxDoc; ++doc) {
+          comparators[i].copy(docBase + doc, doc);
+        }
+      }
+    }
+
+    final int[] newToOld = new int[maxDoc];
+    for (int i = 0; i < maxDoc; ++i) {
+      newToOld[i] = i;
+    }
+    new SorterTemplate() {
+      private int pivot;
+
+      private int compareDocs(int doc1, int doc2) {
+        for (int i = 0; i < comparators.length; ++i) {
+          final int cmp = reverseMul[i] * comparators[i].compare(doc1, doc2);
+          if (cmp != 0) {
+            return cmp;
+          }
+        }
+        return doc1 < doc2 ? -1 : (doc1 == doc2 ? 0 : 1);
+      }
+
+      @Override
+      protected void swap(int i, int j) {
+        final int tmp = newToOld[i];
+        newToOld[i] = newToOld[j];
+        newToOld[j] = tmp;
+      }
+
+      @Override
+      protected int compare(int i, int j) {
+        return compareDocs(newToOld[i], newToOld[j]);
+      }
+
+      @Override
+      protected void setPivot(int i) {
+        pivot = newToOld[i];
+      }
+
+      @Override
+      protected int comparePivot(int j) {
+        return compareDocs(pivot, newToOld[j]);
+      }
+    }.quickSort(0, maxDoc - 1);
+
+    boolean sorted = true;
+    final int[] oldToNew = new int[maxDoc];
+    for (int i = 0; i < maxDoc; ++i) {
+      oldToNew[newToOld[i]] = i;
+      if (newToOld[i] != i) {
+        sorted = false;
+      }
+    }
+    if (sorted) {
+      return null;
+    }
+
+    return new DocMap() {
+
+      @Override
+      public int oldToNew(int docID) {
+        return oldToNew[docID];
+      }
+
+      @Override
+      public int newToOld(int docID) {
+        return newToOld[docID];
+      }
+
+      @Override
+      public int size() {
+        return maxDoc;
+      }
+    };
+  }
+
+  @Override
+  public String toString() {
+    return getID();
+  }
+
+}
@@ -0,0 +1,661 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.FieldInfos;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterAtomicReader;
+import org.apache.lucene.index.StoredFieldVisitor;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.SorterTemplate;
+import org.apache.lucene.util.automaton.CompiledAutomaton;
+import org.apache.lucene.util.packed.PackedInts;
+
+/**
+ * An {@link AtomicReader} which presents the documents of another reader in
+ * the order of a {@link Sorter.DocMap}: postings, stored fields, term
+ * vectors, norms, doc values and live docs are all remapped, so that
+ * {@link org.apache.lucene.index.IndexWriter#addIndexes(org.apache.lucene.index.IndexReader...)}
+ * or a merge of this reader writes a segment whose documents are sorted.
+ * <p>
+ * Postings are sorted on the fly: every {@link DocsEnum} buffers the
+ * postings of its term, which makes this reader fine for merging but too
+ * slow for searching.
+ *
+ * @lucene.experimental
+ */
+public class SortingAtomicReader extends FilterAtomicReader {
+
+  /** Return a sorted view of <code>reader</code> according to the order
+   *  defined by <code>docMap</code>. If the docMap is null, then
+   *  <code>reader</code> is returned as-is. */
+  public static AtomicReader wrap(AtomicReader reader, Sorter.DocMap docMap) {
+    if (docMap == null) {
+      // the reader is already sorted
+      return reader;
+    }
+    if (reader.maxDoc() != docMap.size()) {
+      throw new IllegalArgumentException("reader.maxDoc() should be equal to docMap.size(), got " + reader.maxDoc() + " != " + docMap.size());
+    }
+    return new SortingAtomicReader(reader, docMap);
+  }
+
+  /** Return a view of <code>reader</code> which is sorted with
+   *  <code>sorter</code>. */
+  public static AtomicReader wrap(AtomicReader reader, Sorter sorter) throws IOException {
+    return wrap(reader, sorter.sort(reader));
+  }
+
+  final Sorter.DocMap docMap;
+
+  private SortingAtomicReader(AtomicReader in, Sorter.DocMap docMap) {
+    super(in);
+    this.docMap = docMap;
+  }
+
+  @Override
+  public Fields fields() throws IOException {
+    final Fields fields = in.fields();
+    return fields == null ? null : new SortingFields(fields, docMap);
+  }
+
+  @Override
+  public Bits getLiveDocs() {
+    final Bits inLiveDocs = in.getLiveDocs();
+    return inLiveDocs == null ? null : new SortingBits(inLiveDocs, docMap);
+  }
+
+  @Override
+  public void document(int docID, StoredFieldVisitor visitor) throws IOException {
+    in.document(docMap.newToOld(docID), visitor);
+  }
+
+  @Override
+  public Fields getTermVectors(int docID) throws IOException {
+    return in.getTermVectors(docMap.newToOld(docID));
+  }
+
+  @Override
+  public DocValues docValues(String field) throws IOException {
+    final DocValues values = in.docValues(field);
+    return values == null ? null : new SortingDocValues(values, docMap);
+  }
+
+  @Override
+  public DocValues normValues(String field) throws IOException {
+    final DocValues values = in.normValues(field);
+    return values == null ? null : new SortingDocValues(values, docMap);
+  }
+
+  @Override
+  public FieldInfos getFieldInfos() {
+    return in.getFieldInfos();
+  }
+
+  @Override
+  public Object getCoreCacheKey() {
+    // documents are reordered, so cached values of the wrapped reader
+    // can't be used
+    return this;
+  }
+
+  @Override
+  public Object getCombinedCoreAndDeletesKey() {
+    return this;
+  }
+
+  @Override
+  public String toString() {
+    return "SortingAtomicReader(" + in + ")";
+  }
+
+  private static class SortingBits implements Bits {
+
+    private final Bits in;
+    private final Sorter.DocMap docMap;
+
+    SortingBits(Bits in, Sorter.DocMap docMap) {
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public boolean get(int index) {
+      return in.get(docMap.newToOld(index));
+    }
+
+    @Override
+    public int length() {
+      return in.length();
+    }
+  }
+
+  private static class SortingFields extends FilterFields {
+
+    private final Sorter.DocMap docMap;
+
+    SortingFields(Fields in, Sorter.DocMap docMap) {
+      super(in);
+      this.docMap = docMap;
+    }
+
+    @Override
+    public Terms terms(String field) throws IOException {
+      final Terms terms = in.terms(field);
+      return terms == null ? null : new SortingTerms(terms, docMap);
+    }
+  }
+
+  private static class SortingTerms extends FilterTerms {
+
+    private final Sorter.DocMap docMap;
+
+    SortingTerms(Terms in, Sorter.DocMap docMap) {
+      super(in);
+      this.docMap = docMap;
+    }
+
+    @Override
+    public TermsEnum iterator(TermsEnum reuse) throws IOException {
+      if (reuse instanceof SortingTermsEnum) {
+        reuse = ((SortingTermsEnum) reuse).getWrapped();
+      }
+      return new SortingTermsEnum(in.iterator(reuse), docMap);
+    }
+
+    @Override
+    public TermsEnum intersect(CompiledAutomaton compiled, BytesRef startTerm) throws IOException {
+      return new SortingTermsEnum(in.intersect(compiled, startTerm), docMap);
+    }
+  }
+
+  private static class SortingTermsEnum extends FilterTermsEnum {
+
+    private final Sorter.DocMap docMap;
+
+    SortingTermsEnum(TermsEnum in, Sorter.DocMap docMap) {
+      super(in);
+      this.docMap = docMap;
+    }
+
+    TermsEnum getWrapped() {
+      return in;
+    }
+
+    @Override
+    public DocsEnum docs(Bits liveDocs, DocsEnum reuse, int flags) throws IOException {
+      final SortingDocsEnum sortingReuse;
+      final DocsEnum inReuse;
+      if (reuse instanceof SortingDocsEnum && ((SortingDocsEnum) reuse).docMap == docMap) {
+        sortingReuse = (SortingDocsEnum) reuse;
+        inReuse = sortingReuse.getWrapped();
+      } else {
+        sortingReuse = null;
+        inReuse = null;
+      }
+      // live docs are checked after doc IDs have been remapped
+      final DocsEnum inDocs = in.docs(null, inReuse, flags);
+      if (inDocs == null) {
+        return null;
+      }
+      final boolean withFreqs = (flags & DocsEnum.FLAG_FREQS) != 0;
+      return new SortingDocsEnum(sortingReuse, inDocs, withFreqs, liveDocs, docMap);
+    }
+
+    @Override
+    public DocsAndPositionsEnum docsAndPositions(Bits liveDocs, DocsAndPositionsEnum reuse, int flags) throws IOException {
+      final SortingDocsAndPositionsEnum sortingReuse;
+      final DocsAndPositionsEnum inReuse;
+      if (reuse instanceof SortingDocsAndPositionsEnum && ((SortingDocsAndPositionsEnum) reuse).docMap == docMap) {
+        sortingReuse = (SortingDocsAndPositionsEnum) reuse;
+        inReuse = sortingReuse.getWrapped();
+      } else {
+        sortingReuse = null;
+        inReuse = null;
+      }
+      final DocsAndPositionsEnum inDocsAndPositions = in.docsAndPositions(null, inReuse, flags);
+      if (inDocsAndPositions == null) {
+        return null;
+      }
+      return new SortingDocsAndPositionsEnum(sortingReuse, inDocsAndPositions, liveDocs, docMap);
+    }
+  }
+
+  static class SortingDocsEnum extends FilterDocsEnum {
+
+    final Sorter.DocMap docMap;
+    private final boolean withFreqs;
+    private int[] docs;
+    private int[] freqs;
+    private final int upto;
+    private int docIt = -1;
+
+    SortingDocsEnum(SortingDocsEnum reuse, DocsEnum in, boolean withFreqs, Bits liveDocs, Sorter.DocMap docMap) throws IOException {
+      super(in);
+      this.docMap = docMap;
+      this.withFreqs = withFreqs;
+      if (reuse != null) {
+        docs = reuse.docs;
+        freqs = reuse.freqs;
+      } else {
+        docs = new int[64];
+      }
+      if (withFreqs && (freqs == null || freqs.length < docs.length)) {
+        freqs = new int[docs.length];
+      }
+      int i = 0;
+      for (int doc = in.nextDoc(); doc != NO_MORE_DOCS; doc = in.nextDoc()) {
+        final int newDoc = docMap.oldToNew(doc);
+        if (liveDocs != null && !liveDocs.get(newDoc)) {
+          continue;
+        }
+        if (i == docs.length) {
+          docs = ArrayUtil.grow(docs, i + 1);
+          if (withFreqs) {
+            freqs = ArrayUtil.grow(freqs, docs.length);
+          }
+        }
+        docs[i] = newDoc;
+        if (withFreqs) {
+          freqs[i] = in.freq();
+        }
+        ++i;
+      }
+      upto = i;
+      new SorterTemplate() {
+        private int pivot;
+
+        @Override
+        protected void swap(int i, int j) {
+          int tmp = docs[i];
+          docs[i] = docs[j];
+          docs[j] = tmp;
+          if (SortingDocsEnum.this.withFreqs) {
+            tmp = freqs[i];
+            freqs[i] = freqs[j];
+            freqs[j] = tmp;
+          }
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+          return docs[i] - docs[j];
+        }
+
+        @Override
+        protected void setPivot(int i) {
+          pivot = docs[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+          return pivot - docs[j];
+        }
+      }.quickSort(0, upto - 1);
+    }
+
+    DocsEnum getWrapped() {
+      return in;
+    }
+
+    @Override
+    public int docID() {
+      return docIt < 0 ? -1 : docIt >= upto ? NO_MORE_DOCS : docs[docIt];
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return withFreqs && docIt < upto ? freqs[docIt] : 1;
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      if (++docIt >= upto) {
+        return NO_MORE_DOCS;
+      }
+      return docs[docIt];
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      // this enum is used for merging, advance is rarely called
+      int doc;
+      while ((doc = nextDoc()) < target) {
+      }
+      return doc;
+    }
+
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      int count = 0;
+      while (count < docs.length && docIt + 1 < upto) {
+        ++docIt;
+        docs[count] = this.docs[docIt];
+        if (freqs != null) {
+          freqs[count] = freq();
+        }
+        ++count;
+      }
+      if (count == 0) {
+        docIt = upto;
+      }
+      return count;
+    }
+  }
+
+  static class SortingDocsAndPositionsEnum extends FilterDocsAndPositionsEnum {
+
+    final Sorter.DocMap docMap;
+
+    // per document
+    private int[] docs;
+    private int[] freqs;
+    private int[] postingStarts;
+    private final int upto;
+    private int docIt = -1;
+
+    // per position
+    private int[] positions;
+    private int[] startOffsets;
+    private int[] endOffsets;
+    private int[] payloadStarts;
+    private int[] payloadLengths;
+    private byte[] payloadBytes;
+    private int posIt;
+
+    private final BytesRef payload = new BytesRef();
+
+    SortingDocsAndPositionsEnum(SortingDocsAndPositionsEnum reuse, DocsAndPositionsEnum in, Bits liveDocs, Sorter.DocMap docMap) throws IOException {
+      super(in);
+      this.docMap = docMap;
+      if (reuse != null) {
+        docs = reuse.docs;
+        freqs = reuse.freqs;
+        postingStarts = reuse.postingStarts;
+        positions = reuse.positions;
+        startOffsets = reuse.startOffsets;
+        endOffsets = reuse.endOffsets;
+        payloadStarts = reuse.payloadStarts;
+        payloadLengths = reuse.payloadLengths;
+        payloadBytes = reuse.payloadBytes;
+      } else {
+        docs = new int[16];
+        freqs = new int[16];
+        postingStarts = new int[16];
+        positions = new int[64];
+        startOffsets = new int[64];
+        endOffsets = new int[64];
+        payloadStarts = new int[64];
+        payloadLengths = new int[64];
+        payloadBytes = new byte[128];
+      }
+
+      int i = 0;
+      int numPostings = 0;
+      int numPayloadBytes = 0;
+      for (int doc = in.nextDoc(); doc != NO_MORE_DOCS; doc = in.nextDoc()) {
+        final int newDoc = docMap.oldToNew(doc);
+        if (liveDocs != null && !liveDocs.get(newDoc)) {
+          continue;
+        }
+        if (i == docs.length) {
+          docs = ArrayUtil.grow(docs, i + 1);
+          freqs = ArrayUtil.grow(freqs, i + 1);
+          postingStarts = ArrayUtil.grow(postingStarts, i + 1);
+        }
+        final int freq = in.freq();
+        docs[i] = newDoc;
+        freqs[i] = freq;
+        postingStarts[i] = numPostings;
+        ++i;
+
+        if (numPostings + freq > positions.length) {
+          final int minSize = numPostings + freq;
+          positions = ArrayUtil.grow(positions, minSize);
+          startOffsets = ArrayUtil.grow(startOffsets, minSize);
+          endOffsets = ArrayUtil.grow(endOffsets, minSize);
+          payloadStarts = ArrayUtil.grow(payloadStarts, minSize);
+          payloadLengths = ArrayUtil.grow(payloadLengths, minSize);
+        }
+        for (int j = 0; j < freq; ++j) {
+          positions[numPostings] = in.nextPosition();
+          startOffsets[numPostings] = in.startOffset();
+          endOffsets[numPostings] = in.endOffset();
+          final BytesRef payload = in.getPayload();
+          payloadStarts[numPostings] = numPayloadBytes;
+          if (payload == null || payload.length == 0) {
+            payloadLengths[numPostings] = 0;
+          } else {
+            payloadBytes = ArrayUtil.grow(payloadBytes, numPayloadBytes + payload.length);
+            System.arraycopy(payload.bytes, payload.offset, payloadBytes, numPayloadBytes, payload.length);
+            payloadLengths[numPostings] = payload.length;
+            numPayloadBytes += payload.length;
+          }
+          ++numPostings;
+        }
+      }
+      upto = i;
+
+      // only per-document data is swapped, positions are found through
+      // postingStarts
+      new SorterTemplate() {
+        private int pivot;
+
+        private void swap(int[] arr, int i, int j) {
+          final int tmp = arr[i];
+          arr[i] = arr[j];
+          arr[j] = tmp;
+        }
+
+        @Override
+        protected void swap(int i, int j) {
+          swap(docs, i, j);
+          swap(freqs, i, j);
+          swap(postingStarts, i, j);
+        }
+
+        @Override
+        protected int compare(int i, int j) {
+          return docs[i] - docs[j];
+        }
+
+        @Override
+        protected void setPivot(int i) {
+          pivot = docs[i];
+        }
+
+        @Override
+        protected int comparePivot(int j) {
+          return pivot - docs[j];
+        }
+      }.quickSort(0, upto - 1);
+    }
+
+    DocsAndPositionsEnum getWrapped() {
+      return in;
+    }
+
+    @Override
+    public int docID() {
+      return docIt < 0 ? -1 : docIt >= upto ? NO_MORE_DOCS : docs[docIt];
+    }
+
+    @Override
+    public int freq() throws IOException {
+      return freqs[docIt];
+    }
+
+    @Override
+    public int nextDoc() throws IOException {
+      if (++docIt >= upto) {
+        return NO_MORE_DOCS;
+      }
+      posIt = postingStarts[docIt] - 1;
+      return docs[docIt];
+    }
+
+    @Override
+    public int advance(int target) throws IOException {
+      // this enum is used for merging, advance is rarely called
+      int doc;
+      while ((doc = nextDoc()) < target) {
+      }
+      return doc;
+    }
+
+    @Override
+    public int nextPosition() throws IOException {
+      return positions[++posIt];
+    }
+
+    @Override
+    public int startOffset() throws IOException {
+      return startOffsets[posIt];
+    }
+
+    @Override
+    public int endOffset() throws IOException {
+      return endOffsets[posIt];
+    }
+
+    @Override
+    public BytesRef getPayload() throws IOException {
+      final int length = payloadLengths[posIt];
+      if (length == 0) {
+        return null;
+      }
+      payload.bytes = payloadBytes;
+      payload.offset = payloadStarts[posIt];
+      payload.length = length;
+      return payload;
+    }
+  }
+
+  private static class SortingDocValues extends DocValues {
+
+    private final DocValues in;
+    private final Sorter.DocMap docMap;
+
+    SortingDocValues(DocValues in, Sorter.DocMap docMap) {
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public Source load() throws IOException {
+      return new SortingSource(in.load(), docMap);
+    }
+
+    @Override
+    public Source getDirectSource() throws IOException {
+      return new SortingSource(in.getDirectSource(), docMap);
+    }
+
+    @Override
+    public Type getType() {
+      return in.getType();
+    }
+
+    @Override
+    public int getValueSize() {
+      return in.getValueSize();
+    }
+  }
+
+  private static class SortingSource extends DocValues.Source {
+
+    private final DocValues.Source in;
+    private final Sorter.DocMap docMap;
+
+    SortingSource(DocValues.Source in, Sorter.DocMap docMap) {
+      super(in.getType());
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public long getInt(int docID) {
+      return in.getInt(docMap.newToOld(docID));
+    }
+
+    @Override
+    public double getFloat(int docID) {
+      return in.getFloat(docMap.newToOld(docID));
+    }
+
+    @Override
+    public BytesRef getBytes(int docID, BytesRef ref) {
+      return in.getBytes(docMap.newToOld(docID), ref);
+    }
+
+    @Override
+    public DocValues.SortedSource asSortedSource() {
+      final DocValues.SortedSource sortedSource = in.asSortedSource();
+      return sortedSource == null ? null : new SortingSortedSource(sortedSource, docMap);
+    }
+  }
+
+  private static class SortingSortedSource extends DocValues.SortedSource {
+
+    private final DocValues.SortedSource in;
+    private final Sorter.DocMap docMap;
+
+    SortingSortedSource(DocValues.SortedSource in, Sorter.DocMap docMap) {
+      super(in.getType(), in.getComparator());
+      this.in = in;
+      this.docMap = docMap;
+    }
+
+    @Override
+    public int ord(int docID) {
+      return in.ord(docMap.newToOld(docID));
+    }
+
+    @Override
+    public BytesRef getByOrd(int ord, BytesRef result) {
+      return in.getByOrd(ord, result);
+    }
+
+    @Override
+    public int getOrdByValue(BytesRef value, BytesRef spare) {
+      return in.getOrdByValue(value, spare);
+    }
+
+    @Override
+    public PackedInts.Reader getDocToOrd() {
+      // ords are not in doc ID order anymore
+      return null;
+    }
+
+    @Override
+    public int getValueCount() {
+      return in.getValueCount();
+    }
+  }
+
+}
@@ -0,0 +1,252 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.MergeState;
+import org.apache.lucene.index.MultiReader;
+import org.apache.lucene.index.SegmentInfoPerCommit;
+import org.apache.lucene.index.SegmentInfos;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.util.Bits;
+
+/**
+ * A {@link MergePolicy} that reorders documents according to a {@link Sort}
+ * before merging them. As a consequence, all segments resulting from a merge
+ * will be sorted while segments resulting from a flush will be in the order
+ * in which documents have been added.
+ * <p>
+ * The sort is recorded in the diagnostics of the merged segments (see
+ * {@link #SORTER_ID_PROP}), so that {@link EarlyTerminatingSortingCollector}
+ * can stop collecting a segment early when it knows the segment is sorted.
+ * <p><b>NOTE</b>: Never use this {@link MergePolicy} if you rely on
+ * {@link IndexWriter#addDocuments(Iterable, org.apache.lucene.analysis.Analyzer)}
+ * to have sequentially-assigned doc IDs, this policy will scatter doc IDs.
+ * <p><b>NOTE</b>: This {@link MergePolicy} should only be used with idempotent
+ * {@link Sort}s so that the order of segments is predictable. For example,
+ * using {@link Sort#INDEXORDER} in reverse (which is not idempotent) will make
+ * the order of documents in a segment depend on the number of times the segment
+ * has been merged.
+ *
+ * @lucene.experimental
+ */
+public final class SortingMergePolicy extends MergePolicy {
+
+  /**
+   * Put in the {@link org.apache.lucene.index.SegmentInfo#getDiagnostics() diagnostics}
+   * to denote that this segment is sorted.
+   */
+  public static final String SORTER_ID_PROP = "sorter";
+
+  class SortingOneMerge extends OneMerge {
+
+    List<AtomicReader> unsortedReaders;
+    Sorter.DocMap docMap;
+    AtomicReader sortedView;
+
+    SortingOneMerge(List<SegmentInfoPerCommit> segments) {
+      super(segments);
+    }
+
+    @Override
+    public List<AtomicReader> getMergeReaders() throws IOException {
+      if (unsortedReaders == null) {
+        unsortedReaders = super.getMergeReaders();
+        final IndexReader view;
+        if (unsortedReaders.size() == 1) {
+          view = unsortedReaders.get(0);
+        } else {
+          // doesn't close the sub readers, the MultiReader is never closed
+          view = new MultiReader(unsortedReaders.toArray(new AtomicReader[unsortedReaders.size()]));
+        }
+        docMap = unsortedReaders.isEmpty() ? null : sorter.sort(view);
+        if (docMap == null) {
+          // already sorted, merge the readers as-is
+          sortedView = null;
+        } else if (view instanceof AtomicReader) {
+          sortedView = SortingAtomicReader.wrap((AtomicReader) view, docMap);
+        } else {
+          sortedView = SortingAtomicReader.wrap(SlowCompositeReaderWrapper.wrap(view), docMap);
+        }
+      }
+      // a null docMap means that readers are already sorted
+      return docMap == null ? unsortedReaders : Collections.singletonList(sortedView);
+    }
+
+    @Override
+    public void setInfo(SegmentInfoPerCommit info) {
+      final Map<String,String> diagnostics = new HashMap<String,String>(info.info.getDiagnostics());
+      diagnostics.put(SORTER_ID_PROP, sorter.getID());
+      info.info.setDiagnostics(diagnostics);
+      super.setInfo(info);
+    }
+
+    private int[] deletes(List<AtomicReader> readers) {
+      // deletes[i] is the number of deleted documents before the i-th live
+      // document in the concatenation of the readers
+      int numDocs = 0;
+      for (AtomicReader reader : readers) {
+        numDocs += reader.numDocs();
+      }
+      final int[] deletes = new int[numDocs];
+      int deleteCount = 0;
+      int upto = 0;
+      for (AtomicReader reader : readers) {
+        final int maxDoc = reader.maxDoc();
+        final Bits liveDocs = reader.getLiveDocs();
+        for (int i = 0; i < maxDoc; ++i) {
+          if (liveDocs != null && !liveDocs.get(i)) {
+            ++deleteCount;
+          } else {
+            deletes[upto++] = deleteCount;
+          }
+        }
+      }
+      assert upto == numDocs;
+      return deletes;
+    }
+
+    @Override
+    public MergePolicy.DocMap getDocMap(final MergeState mergeState) {
+      if (unsortedReaders == null) {
+        throw new IllegalStateException();
+      }
+      if (docMap == null) {
+        return super.getDocMap(mergeState);
+      }
+      assert mergeState.docMaps.length == 1; // we returned a singleton reader
+      final int[] deletes = deletes(unsortedReaders);
+      return new MergePolicy.DocMap() {
+        @Override
+        public int map(int old) {
+          final int oldWithDeletes = old + deletes[old];
+          final int newWithDeletes = docMap.oldToNew(oldWithDeletes);
+          return mergeState.docMaps[0].get(newWithDeletes);
+        }
+      };
+    }
+
+  }
+
+  class SortingMergeSpecification extends MergeSpecification {
+
+    @Override
+    public void add(OneMerge merge) {
+      super.add(new SortingOneMerge(merge.segments));
+    }
+
+    @Override
+    public String segString(org.apache.lucene.store.Directory dir) {
+      return "SortingMergeSpec(" + super.segString(dir) + ", sorter=" + sorter + ")";
+    }
+
+  }
+
+  /** Returns true if the given reader is sorted by the given sorter. */
+  public static boolean isSorted(AtomicReader reader, Sorter sorter) {
+    if (reader instanceof SegmentReader) {
+      final SegmentReader segReader = (SegmentReader) reader;
+      final Map<String, String> diagnostics = segReader.getSegmentInfo().info.getDiagnostics();
+      if (diagnostics != null && sorter.getID().equals(diagnostics.get(SORTER_ID_PROP))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private MergeSpecification sortedMergeSpecification(MergeSpecification specification) {
+    if (specification == null) {
+      return null;
+    }
+    MergeSpecification sortingSpec = new SortingMergeSpecification();
+    for (OneMerge merge : specification.merges) {
+      sortingSpec.add(merge);
+    }
+    return sortingSpec;
+  }
+
+  final MergePolicy in;
+  final Sorter sorter;
+
+  /** Create a new {@link MergePolicy} that sorts documents with <code>sort</code>. */
+  public SortingMergePolicy(MergePolicy in, Sort sort) {
+    this.in = in;
+    this.sorter = new Sorter(sort);
+  }
+
+  /** Return the {@link Sorter} used to sort segments. */
+  public Sorter getSorter() {
+    return sorter;
+  }
+
+  @Override
+  public MergeSpecification findMerges(SegmentInfos segmentInfos) throws IOException {
+    return sortedMergeSpecification(in.findMerges(segmentInfos));
+  }
+
+  @Override
+  public MergeSpecification findForcedMerges(SegmentInfos segmentInfos,
+      int maxSegmentCount, Map<SegmentInfoPerCommit,Boolean> segmentsToMerge)
+      throws IOException {
+    return sortedMergeSpecification(in.findForcedMerges(segmentInfos, maxSegmentCount, segmentsToMerge));
+  }
+
+  @Override
+  public MergeSpecification findForcedDeletesMerges(SegmentInfos segmentInfos)
+      throws IOException {
+    return sortedMergeSpecification(in.findForcedDeletesMerges(segmentInfos));
+  }
+
+  @Override
+  public MergePolicy clone() {
+    return new SortingMergePolicy(in.clone(), sorter.getSort());
+  }
+
+  @Override
+  public void close() {
+    in.close();
+  }
+
+  @Override
+  public boolean useCompoundFile(SegmentInfos segments,
+      SegmentInfoPerCommit newSegment) throws IOException {
+    return in.useCompoundFile(segments, newSegment);
+  }
+
+  @Override
+  public void setIndexWriter(IndexWriter writer) {
+    in.setIndexWriter(writer);
+  }
+
+  @Override
+  public String toString() {
+    return "SortingMergePolicy(" + in + ", sorter=" + sorter + ")";
+  }
+
+}
@@ -0,0 +1,291 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.store.IOContext.Context;
+
+/**
+ * An {@link MMapDirectory} that tells the operating system how each file
+ * is going to be accessed, depending on its type, so that cold files do
+ * not page-fault randomly on first use (for example after a restart or
+ * after replication).
+ *
+ * <p>An {@link Advice} can be configured per file type with
+ * {@link #setAdvice}; the file type is the extension of the file, except
+ * for norms, whose type is <code>nrm</code>. By default, the terms
+ * dictionary and index (<code>tim</code>, <code>tip</code>) and norms are
+ * {@link Advice#PRELOAD preloaded} on open, and postings (<code>frq</code>,
+ * <code>prx</code>, <code>doc</code>, <code>pos</code>, <code>pay</code>)
+ * are read {@link Advice#RANDOM randomly}. Files that are opened for
+ * merging or read once are read {@link Advice#SEQUENTIAL sequentially},
+ * see {@link #setMergeAdvice}.
+ *
+ * <p>Access pattern hints are given with <code>madvise</code> through
+ * {@link NativePosixUtil}, which requires to compile
+ * NativePosixUtil.cpp (see {@link NativeUnixDirectory}). If the native
+ * library cannot be loaded, only {@link Advice#PRELOAD}, which is
+ * implemented in pure Java by touching every page, has an effect; see
+ * {@link #NATIVE_AVAILABLE}.
+ *
+ * <p>{@link #getResidentBytes} reports how much of a file is currently in
+ * the page cache.
+ *
+ * <p><b>NOTE</b>: compound files are advised as a whole, according to the
+ * type of the compound file (<code>cfs</code>).
+ *
+ * @lucene.experimental
+ */
+public class AdvisingMMapDirectory extends MMapDirectory {
+
+  /** How a file is going to be accessed. */
+  public static enum Advice {
+    /** No particular access pattern. */
+    NORMAL(NativePosixUtil.NORMAL),
+    /** Reads are sequential: the OS may read ahead aggressively and free
+     *  pages soon after they have been read. */
+    SEQUENTIAL(NativePosixUtil.SEQUENTIAL),
+    /** Reads are random: the OS should not read ahead. */
+    RANDOM(NativePosixUtil.RANDOM),
+    /** The file will be needed soon: the OS may read it ahead
+     *  asynchronously. */
+    WILLNEED(NativePosixUtil.WILLNEED),
+    /** Load the whole file into memory when it is opened, by touching every
+     *  page. This does not require the native library. */
+    PRELOAD(NativePosixUtil.WILLNEED);
+
+    final int nativeAdvice;
+
+    private Advice(int nativeAdvice) {
+      this.nativeAdvice = nativeAdvice;
+    }
+  }
+
+  /** <code>true</code> if the native library that gives access pattern hints
+   *  to the OS could be loaded. */
+  public static final boolean NATIVE_AVAILABLE;
+
+  static {
+    boolean available = false;
+    try {
+      // triggers System.loadLibrary
+      Class.forName(NativePosixUtil.class.getName());
+      available = true;
+    } catch (LinkageError e) {
+      // library not on the linker path
+    } catch (ClassNotFoundException e) {
+      // cannot happen
+    } catch (SecurityException e) {
+      // not allowed to load native code
+    }
+    NATIVE_AVAILABLE = available;
+  }
+
+  // granularity of the residency stats
+  private static final int RESIDENCY_WINDOW = 256 * 1024;
+
+  private final Map<String,Advice> advice = new ConcurrentHashMap<String,Advice>();
+  private volatile Advice defaultAdvice = Advice.NORMAL;
+  private volatile Advice mergeAdvice = Advice.SEQUENTIAL;
+  private final AtomicLong preloadedBytes = new AtomicLong();
+
+  /** Create a new AdvisingMMapDirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @param maxChunkSize maximum chunk size used for memory mapping, see
+   * {@link MMapDirectory#MMapDirectory(File, LockFactory, int)}
+   * @throws IOException if there is a low-level I/O error
+   */
+  public AdvisingMMapDirectory(File path, LockFactory lockFactory, int maxChunkSize) throws IOException {
+    super(path, lockFactory, maxChunkSize);
+    setAdvice("tim", Advice.PRELOAD);
+    setAdvice("tip", Advice.PRELOAD);
+    setAdvice("nrm", Advice.PRELOAD);
+    setAdvice("frq", Advice.RANDOM);
+    setAdvice("prx", Advice.RANDOM);
+    setAdvice("doc", Advice.RANDOM);
+    setAdvice("pos", Advice.RANDOM);
+    setAdvice("pay", Advice.RANDOM);
+  }
+
+  /** Create a new AdvisingMMapDirectory for the named location.
+   *
+   * @param path the path of the directory
+   * @param lockFactory the lock factory to use, or null for the default
+   * ({@link NativeFSLockFactory});
+   * @throws IOException if there is a low-level I/O error
+   */
+  public AdvisingMMapDirectory(File path, LockFactory lockFactory) throws IOException {
+    this(path, lockFactory, DEFAULT_MAX_BUFF);
+  }
+
+  /** Create a new AdvisingMMapDirectory for the named location and
+   *  {@link NativeFSLockFactory}.
+   *
+   * @param path the path of the directory
+   * @throws IOException if there is a low-level I/O error
+   */
+  public AdvisingMMapDirectory(File path) throws IOException {
+    this(path, null);
+  }
+
+  /** Sets the advice for files of the given type, or removes it if
+   *  <code>advice</code> is null, in which case the {@link #setDefaultAdvice
+   *  default advice} applies. */
+  public void setAdvice(String fileType, Advice advice) {
+    if (advice == null) {
+      this.advice.remove(fileType);
+    } else {
+      this.advice.put(fileType, advice);
+    }
+  }
+
+  /** Sets the advice for the files whose type has no advice. Default is
+   *  {@link Advice#NORMAL}. */
+  public void setDefaultAdvice(Advice advice) {
+    if (advice == null) {
+      throw new NullPointerException();
+    }
+    defaultAdvice = advice;
+  }
+
+  /** Sets the advice for the files that are opened for merging or read
+   *  once, whatever their type, or null to use the advice of their type.
+   *  Default is {@link Advice#SEQUENTIAL}. */
+  public void setMergeAdvice(Advice advice) {
+    mergeAdvice = advice;
+  }
+
+  /** Returns the type of the given file, which is its extension, or
+   *  <code>nrm</code> for norms, or null if the file has no
+   *  extension. */
+  protected String getFileType(String name) {
+    if (IndexFileNames.stripSegmentName(name).startsWith("_nrm.")) {
+      return "nrm";
+    }
+    final int idx = name.lastIndexOf('.');
+    return idx == -1 ? null : name.substring(idx + 1);
+  }
+
+  /** Returns the advice for a file that is opened with the given
+   *  context. */
+  public Advice getAdvice(String name, IOContext context) {
+    final Advice mergeAdvice = this.mergeAdvice;
+    if (mergeAdvice != null && (context.context == Context.MERGE || context.readOnce)) {
+      return mergeAdvice;
+    }
+    final String fileType = getFileType(name);
+    final Advice advice = fileType == null ? null : this.advice.get(fileType);
+    return advice == null ? defaultAdvice : advice;
+  }
+
+  @Override
+  protected void onMap(String name, IOContext context, ByteBuffer[] buffers) throws IOException {
+    final Advice advice = getAdvice(name, context);
+    if (advice == Advice.PRELOAD) {
+      for (ByteBuffer buffer : buffers) {
+        ((MappedByteBuffer) buffer).load();
+        preloadedBytes.addAndGet(buffer.capacity());
+      }
+    } else if (NATIVE_AVAILABLE && advice != Advice.NORMAL) {
+      for (ByteBuffer buffer : buffers) {
+        if (buffer.capacity() > 0) {
+          try {
+            NativePosixUtil.madvise(buffer, advice.nativeAdvice);
+          } catch (IOException e) {
+            // only a hint: the file can be read anyway
+          }
+        }
+      }
+    }
+  }
+
+  /** Returns the total number of bytes that were preloaded. */
+  public long getPreloadedBytes() {
+    return preloadedBytes.get();
+  }
+
+  /** Returns an estimate of the number of bytes of the given file that are
+   *  resident in physical memory. The estimate is computed on windows of
+   *  256 KB, so it is coarse for small files. */
+  public long getResidentBytes(String name) throws IOException {
+    ensureOpen();
+    final RandomAccessFile raf = new RandomAccessFile(new File(getDirectory(), name), "r");
+    try {
+      final long length = raf.length();
+      final FileChannel channel = raf.getChannel();
+      long residentBytes = 0;
+      for (long pos = 0; pos < length; pos += RESIDENCY_WINDOW) {
+        final long size = Math.min(RESIDENCY_WINDOW, length - pos);
+        final MappedByteBuffer window = channel.map(MapMode.READ_ONLY, pos, size);
+        try {
+          if (window.isLoaded()) {
+            residentBytes += size;
+          }
+        } finally {
+          cleanMapping(window);
+        }
+      }
+      return residentBytes;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /** Returns, for every file type in this directory, an estimate of the
+   *  number of bytes that are resident in physical memory.
+   *  @see #getResidentBytes */
+  public Map<String,Long> getResidentBytesByFileType() throws IOException {
+    final Map<String,Long> residentBytes = new TreeMap<String,Long>();
+    for (String name : listAll()) {
+      final String fileType = getFileType(name);
+      if (fileType == null) {
+        continue;
+      }
+      final long bytes;
+      try {
+        bytes = getResidentBytes(name);
+      } catch (IOException e) {
+        // deleted concurrently
+        continue;
+      }
+      final Long previous = residentBytes.get(fileType);
+      residentBytes.put(fileType, previous == null ? bytes : previous + bytes);
+    }
+    return residentBytes;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " advice=" + advice + " defaultAdvice=" + defaultAdvice + " mergeAdvice=" + mergeAdvice;
+  }
+}
@@ -0,0 +1,213 @@
+package org.apache.lucene.index;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.index.sorter.SortingMergePolicy;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
+import org.apache.lucene.util._TestUtil;
+
+@SuppressCodecs("Lucene3x")
+public class TestTimeWindowMergePolicy extends LuceneTestCase {
+
+  private static final String TIMESTAMP = "timestamp";
+  private static final long WINDOW_SIZE = 100;
+
+  private Directory dir;
+  private IndexWriter writer;
+  private TimeWindowMergePolicy mp;
+  private int numWindows;
+  private int docsPerWindow;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    dir = newDirectory();
+    final LogDocMergePolicy in = new LogDocMergePolicy();
+    in.setMergeFactor(2);
+    in.setMinMergeDocs(1);
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(new TimeWindowMergePolicy(in, TIMESTAMP, WINDOW_SIZE));
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 2, 10));
+    writer = new IndexWriter(dir, iwc);
+    // the writer works on a clone of the config
+    mp = (TimeWindowMergePolicy) writer.getConfig().getMergePolicy();
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    writer.close();
+    dir.close();
+    super.tearDown();
+  }
+
+  /** Indexes windows [-1, numWindows - 1), committing at window boundaries so
+   *  that flushed segments never span several windows. */
+  private void indexWindows() throws IOException {
+    numWindows = _TestUtil.nextInt(random(), 2, 5);
+    docsPerWindow = _TestUtil.nextInt(random(), 10, 50);
+    for (int w = -1; w < numWindows - 1; ++w) {
+      for (int i = 0; i < docsPerWindow; ++i) {
+        final Document doc = new Document();
+        doc.add(new LongField(TIMESTAMP, w * WINDOW_SIZE + random().nextInt((int) WINDOW_SIZE), Field.Store.NO));
+        writer.addDocument(doc);
+      }
+      writer.commit();
+    }
+  }
+
+  private static long window(long timestamp) {
+    return (long) Math.floor((double) timestamp / WINDOW_SIZE);
+  }
+
+  private void assertSingleWindowSegments(DirectoryReader reader) throws IOException {
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      final AtomicReader leaf = ctx.reader();
+      final long[] timestamps = FieldCache.DEFAULT.getLongs(leaf, TIMESTAMP, FieldCache.NUMERIC_UTILS_LONG_PARSER, true);
+      final Bits docsWithField = FieldCache.DEFAULT.getDocsWithField(leaf, TIMESTAMP);
+      Long window = null;
+      for (int doc = 0; doc < leaf.maxDoc(); ++doc) {
+        if (docsWithField.get(doc)) {
+          final long w = window(timestamps[doc]);
+          if (window == null) {
+            window = w;
+          } else {
+            assertEquals("segment " + leaf + " spans several windows", window.longValue(), w);
+          }
+        }
+      }
+    }
+  }
+
+  public void testNeverMergesAcrossWindows() throws IOException {
+    indexWindows();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertSingleWindowSegments(reader);
+    reader.close();
+
+    writer.forceMerge(1);
+    writer.commit();
+    reader = DirectoryReader.open(dir);
+    assertEquals(numWindows, reader.leaves().size());
+    assertSingleWindowSegments(reader);
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      final SegmentInfoPerCommit info = ((SegmentReader) ctx.reader()).getSegmentInfo();
+      final Map<String,String> diagnostics = info.info.getDiagnostics();
+      if ("merge".equals(diagnostics.get("source"))) {
+        assertEquals(TIMESTAMP, diagnostics.get(TimeWindowMergePolicy.TIMESTAMP_FIELD_PROP));
+        final long min = Long.parseLong(diagnostics.get(TimeWindowMergePolicy.MIN_TIMESTAMP_PROP));
+        final long max = Long.parseLong(diagnostics.get(TimeWindowMergePolicy.MAX_TIMESTAMP_PROP));
+        assertTrue(min <= max);
+        assertEquals(window(min), window(max));
+      }
+      final long[] range = mp.getTimestampRange(info);
+      assertNotNull(range);
+      assertEquals(window(range[0]), window(range[1]));
+    }
+    reader.close();
+  }
+
+  public void testWrapsSortingMergePolicy() throws IOException {
+    writer.close();
+    final LogDocMergePolicy logMP = new LogDocMergePolicy();
+    logMP.setMergeFactor(2);
+    logMP.setMinMergeDocs(1);
+    final Sort sort = new Sort(new SortField(TIMESTAMP, FieldCache.NUMERIC_UTILS_LONG_PARSER));
+    final SortingMergePolicy sortingMP = new SortingMergePolicy(logMP, sort);
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    iwc.setMergePolicy(new TimeWindowMergePolicy(sortingMP, TIMESTAMP, WINDOW_SIZE));
+    iwc.setMergeScheduler(new SerialMergeScheduler());
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 2, 10));
+    writer = new IndexWriter(dir, iwc);
+    indexWindows();
+    writer.forceMerge(1);
+    writer.commit();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numWindows, reader.leaves().size());
+    assertSingleWindowSegments(reader);
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      final AtomicReader leaf = ctx.reader();
+      final Map<String,String> diagnostics = ((SegmentReader) leaf).getSegmentInfo().info.getDiagnostics();
+      if ("merge".equals(diagnostics.get("source"))) {
+        // both policies recorded their diagnostics
+        assertTrue(SortingMergePolicy.isSorted(leaf, sortingMP.getSorter()));
+        assertEquals(TIMESTAMP, diagnostics.get(TimeWindowMergePolicy.TIMESTAMP_FIELD_PROP));
+        final long[] timestamps = FieldCache.DEFAULT.getLongs(leaf, TIMESTAMP, FieldCache.NUMERIC_UTILS_LONG_PARSER, false);
+        for (int doc = 1; doc < leaf.maxDoc(); ++doc) {
+          assertTrue(timestamps[doc - 1] <= timestamps[doc]);
+        }
+      }
+    }
+    reader.close();
+  }
+
+  public void testSegmentsWithoutTimestamp() throws IOException {
+    indexWindows();
+    final int numNoTimestamp = atLeast(20);
+    for (int i = 0; i < numNoTimestamp; ++i) {
+      final Document doc = new Document();
+      doc.add(new StringField("id", Integer.toString(i), Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.forceMerge(1);
+    writer.commit();
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals(numWindows + 1, reader.leaves().size());
+    assertEquals(numWindows * docsPerWindow + numNoTimestamp, reader.numDocs());
+    assertSingleWindowSegments(reader);
+    reader.close();
+  }
+
+  public void testExpire() throws IOException {
+    indexWindows();
+    // also delete a few docs from the windows which are going to expire
+    writer.deleteDocuments(NumericRangeQuery.newLongRange(TIMESTAMP, -WINDOW_SIZE, -WINDOW_SIZE + 10, true, true));
+    writer.commit();
+
+    final int numExpired = _TestUtil.nextInt(random(), 1, numWindows);
+    final long expireBefore = (numExpired - 1) * WINDOW_SIZE;
+    mp.setExpireBefore(expireBefore);
+    writer.maybeMerge();
+    writer.commit();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    assertEquals((numWindows - numExpired) * docsPerWindow, reader.numDocs());
+    for (AtomicReaderContext ctx : reader.leaves()) {
+      final long[] range = mp.getTimestampRange(((SegmentReader) ctx.reader()).getSegmentInfo());
+      assertTrue(range[1] >= expireBefore);
+    }
+    reader.close();
+  }
+
+}
@@ -0,0 +1,152 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestEarlyTerminatingSortingCollector extends LuceneTestCase {
+
+  private int numDocs;
+  private Sort sort;
+  private Directory dir;
+  private IndexWriter iw;
+  private DirectoryReader reader;
+
+  private Document randomDocument() {
+    final Document doc = new Document();
+    doc.add(new StringField("sort", Integer.toString(random().nextInt(1000)), Field.Store.YES));
+    doc.add(new StringField("s", Integer.toString(random().nextInt(10)), Field.Store.YES));
+    return doc;
+  }
+
+  private void createRandomIndexes(int maxSegments, boolean addUnsortedDocs) throws IOException {
+    dir = newDirectory();
+    numDocs = atLeast(150);
+    sort = new Sort(new SortField("sort", SortField.Type.INT, random().nextBoolean()));
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()));
+    // make sure that several segments are flushed so that merges happen
+    iwc.setMaxBufferedDocs(_TestUtil.nextInt(random(), 10, 30));
+    iwc.setMergePolicy(new SortingMergePolicy(newLogMergePolicy(), sort));
+    iw = new IndexWriter(dir, iwc);
+    for (int i = 0; i < numDocs; ++i) {
+      iw.addDocument(randomDocument());
+      if (random().nextInt(50) == 0) {
+        iw.commit();
+      }
+    }
+    iw.forceMerge(maxSegments);
+    if (addUnsortedDocs) {
+      // these documents end up in a flushed segment, which is not sorted
+      final int numUnsorted = 1 + random().nextInt(20);
+      for (int i = 0; i < numUnsorted; ++i) {
+        iw.addDocument(randomDocument());
+      }
+      iw.commit();
+    }
+    reader = DirectoryReader.open(iw, true);
+  }
+
+  private void closeIndex() throws IOException {
+    reader.close();
+    iw.close();
+    dir.close();
+  }
+
+  private static void assertTopDocsEquals(TopDocs expected, TopDocs actual) {
+    assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+    for (int i = 0; i < expected.scoreDocs.length; ++i) {
+      final ScoreDoc expectedDoc = expected.scoreDocs[i];
+      final ScoreDoc actualDoc = actual.scoreDocs[i];
+      assertEquals(expectedDoc.doc, actualDoc.doc);
+      assertArrayEquals(((FieldDoc) expectedDoc).fields, ((FieldDoc) actualDoc).fields);
+    }
+  }
+
+  public void testEarlyTermination() throws IOException {
+    createRandomIndexes(5, random().nextBoolean());
+    final int numHits = _TestUtil.nextInt(random(), 1, numDocs / 10);
+    final boolean fillFields = random().nextBoolean();
+    final boolean trackDocScores = random().nextBoolean();
+    final boolean trackMaxScore = random().nextBoolean();
+    final boolean inOrder = random().nextBoolean();
+    final IndexSearcher searcher = newSearcher(reader);
+    for (int i = 0; i < 10; ++i) {
+      final Query query = random().nextBoolean()
+          ? new TermQuery(new Term("s", Integer.toString(random().nextInt(10))))
+          : new MatchAllDocsQuery();
+      final TopFieldCollector collector1 = TopFieldCollector.create(sort, numHits, fillFields, trackDocScores, trackMaxScore, inOrder);
+      final TopFieldCollector collector2 = TopFieldCollector.create(sort, numHits, fillFields, trackDocScores, trackMaxScore, inOrder);
+      searcher.search(query, collector1);
+      searcher.search(query, new EarlyTerminatingSortingCollector(collector2, sort, numHits));
+      assertTrue(collector1.getTotalHits() >= collector2.getTotalHits());
+      assertTopDocsEquals(collector1.topDocs(), collector2.topDocs());
+    }
+    closeIndex();
+  }
+
+  public void testTerminatesSortedSegments() throws IOException {
+    createRandomIndexes(1, false);
+    final int numHits = _TestUtil.nextInt(random(), 1, numDocs / 10);
+    // don't wrap the reader, sorted segments could not be detected otherwise
+    final IndexSearcher searcher = new IndexSearcher(reader);
+    final TopFieldCollector collector = TopFieldCollector.create(sort, numHits, true, false, false, random().nextBoolean());
+    searcher.search(new MatchAllDocsQuery(), new EarlyTerminatingSortingCollector(collector, sort, numHits));
+    assertEquals(numHits, collector.getTotalHits());
+    closeIndex();
+  }
+
+  public void testEarlyTerminationDifferentSorter() throws IOException {
+    // test that the collector works correctly when the index was sorted by a
+    // different sorter than the one specified in the ctor.
+    createRandomIndexes(5, false);
+    final int numHits = _TestUtil.nextInt(random(), 1, numDocs / 10);
+    final Sort sort = new Sort(new SortField("s", SortField.Type.INT, false));
+    final IndexSearcher searcher = newSearcher(reader);
+    final TopFieldCollector collector1 = TopFieldCollector.create(sort, numHits, true, false, false, random().nextBoolean());
+    final TopFieldCollector collector2 = TopFieldCollector.create(sort, numHits, true, false, false, random().nextBoolean());
+    final Query query = new MatchAllDocsQuery();
+    searcher.search(query, collector1);
+    searcher.search(query, new EarlyTerminatingSortingCollector(collector2, sort, numHits));
+    assertEquals(collector1.getTotalHits(), collector2.getTotalHits());
+    assertTopDocsEquals(collector1.topDocs(), collector2.topDocs());
+    closeIndex();
+  }
+
+}
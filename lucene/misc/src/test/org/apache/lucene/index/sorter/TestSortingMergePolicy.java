@@ -0,0 +1,309 @@
+package org.apache.lucene.index.sorter;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.MockTokenizer;
+import org.apache.lucene.analysis.MockVariableLengthPayloadFilter;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldType;
+import org.apache.lucene.document.LongDocValuesField;
+import org.apache.lucene.document.SortedBytesDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.DocValues;
+import org.apache.lucene.index.DocsAndPositionsEnum;
+import org.apache.lucene.index.FieldInfo.IndexOptions;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.SlowCompositeReaderWrapper;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
+import org.apache.lucene.util._TestUtil;
+
+@SuppressCodecs("Lucene3x")
+public class TestSortingMergePolicy extends LuceneTestCase {
+
+  private static final String ID = "id";
+  private static final String SORT_FIELD = "sort";
+
+  private Sort sort;
+  private Directory dir1, dir2;
+  private DirectoryReader unsortedReader, sortedReader;
+
+  private static Analyzer analyzer(final long seed) {
+    // the payload filter is seeded so that two analyzers produce the same
+    // payloads for the same documents
+    return new Analyzer() {
+      @Override
+      protected TokenStreamComponents createComponents(String fieldName, Reader reader) {
+        final MockTokenizer tokenizer = new MockTokenizer(reader, MockTokenizer.WHITESPACE, false);
+        return new TokenStreamComponents(tokenizer, new MockVariableLengthPayloadFilter(new java.util.Random(seed), tokenizer));
+      }
+    };
+  }
+
+  private static Document randomDocument(int id) {
+    final Document doc = new Document();
+    doc.add(new StringField(ID, Integer.toString(id), Field.Store.YES));
+    if (random().nextInt(10) != 0) {
+      doc.add(new StringField(SORT_FIELD, Integer.toString(random().nextInt(100)), Field.Store.NO));
+    }
+    final FieldType bodyType = new FieldType(TextField.TYPE_STORED);
+    bodyType.setIndexOptions(IndexOptions.DOCS_AND_FREQS_AND_POSITIONS_AND_OFFSETS);
+    bodyType.setStoreTermVectors(true);
+    bodyType.setStoreTermVectorPositions(true);
+    final StringBuilder body = new StringBuilder();
+    final int numTokens = 1 + random().nextInt(10);
+    for (int i = 0; i < numTokens; ++i) {
+      body.append("t").append(random().nextInt(20)).append(' ');
+    }
+    doc.add(new Field("body", body.toString(), bodyType));
+    doc.add(new LongDocValuesField("dv", random().nextLong()));
+    doc.add(new SortedBytesDocValuesField("sorted_dv", new BytesRef(_TestUtil.randomSimpleString(random())), false));
+    return doc;
+  }
+
+  private IndexWriterConfig newConfig(MergePolicy mp, long analyzerSeed) {
+    final IndexWriterConfig iwc = newIndexWriterConfig(TEST_VERSION_CURRENT, analyzer(analyzerSeed));
+    iwc.setMaxBufferedDocs(10 + random().nextInt(50));
+    iwc.setMergePolicy(mp);
+    return iwc;
+  }
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    sort = new Sort(new SortField(SORT_FIELD, SortField.Type.LONG, random().nextBoolean()));
+    dir1 = newDirectory();
+    dir2 = newDirectory();
+    final long analyzerSeed = random().nextLong();
+    final IndexWriter iw1 = new IndexWriter(dir1, newConfig(newLogMergePolicy(), analyzerSeed));
+    final IndexWriter iw2 = new IndexWriter(dir2, newConfig(new SortingMergePolicy(newLogMergePolicy(), sort), analyzerSeed));
+    final int numDocs = atLeast(300);
+    // both writers get the same documents and deletes
+    for (int i = 0; i < numDocs; ++i) {
+      final Document doc = randomDocument(i);
+      iw1.addDocument(doc);
+      iw2.addDocument(doc);
+      if (random().nextInt(5) == 0) {
+        final Term term = new Term(ID, Integer.toString(random().nextInt(i + 1)));
+        iw1.deleteDocuments(term);
+        iw2.deleteDocuments(term);
+      }
+    }
+    iw1.forceMerge(1);
+    iw2.forceMerge(1);
+    iw1.close();
+    iw2.close();
+    unsortedReader = DirectoryReader.open(dir1);
+    sortedReader = DirectoryReader.open(dir2);
+  }
+
+  @Override
+  public void tearDown() throws Exception {
+    unsortedReader.close();
+    sortedReader.close();
+    dir1.close();
+    dir2.close();
+    super.tearDown();
+  }
+
+  private static void assertSorted(AtomicReader reader, Sort sort) throws IOException {
+    final SortField sortField = sort.getSort()[0];
+    final long[] values = FieldCache.DEFAULT.getLongs(reader, SORT_FIELD, false);
+    for (int i = 1; i < reader.maxDoc(); ++i) {
+      if (sortField.getReverse()) {
+        assertTrue(values[i - 1] >= values[i]);
+      } else {
+        assertTrue(values[i - 1] <= values[i]);
+      }
+    }
+  }
+
+  private static Map<String,Integer> ids(AtomicReader reader) throws IOException {
+    final Map<String,Integer> ids = new HashMap<String,Integer>();
+    final Bits liveDocs = reader.getLiveDocs();
+    for (int i = 0; i < reader.maxDoc(); ++i) {
+      if (liveDocs == null || liveDocs.get(i)) {
+        ids.put(reader.document(i).get(ID), i);
+      }
+    }
+    return ids;
+  }
+
+  // id -> freq, positions, offsets and payloads of every posting of the field
+  private static Map<String,List<String>> postings(AtomicReader reader, String field) throws IOException {
+    final Map<String,List<String>> postings = new HashMap<String,List<String>>();
+    final Terms terms = reader.terms(field);
+    final TermsEnum termsEnum = terms.iterator(null);
+    DocsAndPositionsEnum docsAndPositions = null;
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      docsAndPositions = termsEnum.docsAndPositions(reader.getLiveDocs(), docsAndPositions);
+      int lastDoc = -1;
+      int doc;
+      while ((doc = docsAndPositions.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        assertTrue(doc > lastDoc);
+        lastDoc = doc;
+        final StringBuilder sb = new StringBuilder(term.utf8ToString());
+        final int freq = docsAndPositions.freq();
+        sb.append(" freq=").append(freq);
+        for (int i = 0; i < freq; ++i) {
+          sb.append(" pos=").append(docsAndPositions.nextPosition());
+          sb.append(" off=").append(docsAndPositions.startOffset()).append('-').append(docsAndPositions.endOffset());
+          final BytesRef payload = docsAndPositions.getPayload();
+          sb.append(" payload=").append(payload == null ? null : payload.toString());
+        }
+        final String id = reader.document(doc).get(ID);
+        List<String> list = postings.get(id);
+        if (list == null) {
+          list = new ArrayList<String>();
+          postings.put(id, list);
+        }
+        list.add(sb.toString());
+      }
+    }
+    return postings;
+  }
+
+  private static String termVector(AtomicReader reader, int doc) throws IOException {
+    final TermsEnum termsEnum = reader.getTermVectors(doc).terms("body").iterator(null);
+    final StringBuilder sb = new StringBuilder();
+    BytesRef term;
+    while ((term = termsEnum.next()) != null) {
+      sb.append(term.utf8ToString()).append(':').append(termsEnum.totalTermFreq()).append(' ');
+    }
+    return sb.toString();
+  }
+
+  public void testSortedSegment() throws IOException {
+    assertEquals(1, sortedReader.leaves().size());
+    final AtomicReader sorted = sortedReader.leaves().get(0).reader();
+    assertTrue(SortingMergePolicy.isSorted(sorted, new Sorter(sort)));
+    assertFalse(SortingMergePolicy.isSorted(sorted, new Sorter(new Sort(new SortField("foo", SortField.Type.INT)))));
+    assertSorted(sorted, sort);
+    assertFalse(SortingMergePolicy.isSorted(unsortedReader.leaves().get(0).reader(), new Sorter(sort)));
+  }
+
+  public void testSameContent() throws IOException {
+    final AtomicReader unsorted = SlowCompositeReaderWrapper.wrap(unsortedReader);
+    final AtomicReader sorted = SlowCompositeReaderWrapper.wrap(sortedReader);
+    assertEquals(unsorted.numDocs(), sorted.numDocs());
+
+    final Map<String,Integer> unsortedIds = ids(unsorted);
+    final Map<String,Integer> sortedIds = ids(sorted);
+    assertEquals(unsortedIds.keySet(), sortedIds.keySet());
+
+    assertEquals(postings(unsorted, "body"), postings(sorted, "body"));
+
+    final DocValues.Source unsortedDV = unsorted.docValues("dv").getSource();
+    final DocValues.Source sortedDV = sorted.docValues("dv").getSource();
+    final DocValues.SortedSource unsortedSortedDV = unsorted.docValues("sorted_dv").getSource().asSortedSource();
+    final DocValues.SortedSource sortedSortedDV = sorted.docValues("sorted_dv").getSource().asSortedSource();
+    final DocValues.Source unsortedNorms = unsorted.normValues("body").getSource();
+    final DocValues.Source sortedNorms = sorted.normValues("body").getSource();
+    final BytesRef scratch1 = new BytesRef(), scratch2 = new BytesRef();
+    for (String id : unsortedIds.keySet()) {
+      final int unsortedDoc = unsortedIds.get(id);
+      final int sortedDoc = sortedIds.get(id);
+      assertEquals(unsorted.document(unsortedDoc).get("body"), sorted.document(sortedDoc).get("body"));
+      assertEquals(termVector(unsorted, unsortedDoc), termVector(sorted, sortedDoc));
+      assertEquals(unsortedDV.getInt(unsortedDoc), sortedDV.getInt(sortedDoc));
+      assertEquals(unsortedSortedDV.getBytes(unsortedDoc, scratch1), sortedSortedDV.getBytes(sortedDoc, scratch2));
+      assertEquals(unsortedNorms.getInt(unsortedDoc), sortedNorms.getInt(sortedDoc));
+    }
+  }
+
+  public void testDeletesDuringMerge() throws Exception {
+    final Directory dir = newDirectory();
+    final IndexWriterConfig iwc = newConfig(new SortingMergePolicy(newLogMergePolicy(), sort), random().nextLong());
+    final IndexWriter iw = new IndexWriter(dir, iwc);
+    final int numDocs = atLeast(500);
+    for (int i = 0; i < numDocs; ++i) {
+      iw.addDocument(randomDocument(i));
+    }
+    iw.commit();
+
+    final AtomicBoolean done = new AtomicBoolean();
+    final Thread merger = new Thread() {
+      @Override
+      public void run() {
+        try {
+          iw.forceMerge(1);
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        } finally {
+          done.set(true);
+        }
+      }
+    };
+    merger.start();
+    // delete documents while the merge is running, commits apply the
+    // deletes to the segments which are being merged
+    final Set<String> deleted = new HashSet<String>();
+    while (!done.get() && deleted.size() < numDocs / 2) {
+      final String id = Integer.toString(random().nextInt(numDocs));
+      iw.deleteDocuments(new Term(ID, id));
+      deleted.add(id);
+      if (random().nextInt(10) == 0) {
+        iw.commit();
+      }
+    }
+    merger.join();
+    iw.close();
+
+    final DirectoryReader reader = DirectoryReader.open(dir);
+    final AtomicReader atomicReader = SlowCompositeReaderWrapper.wrap(reader);
+    final Set<String> ids = ids(atomicReader).keySet();
+    assertEquals(numDocs - deleted.size(), ids.size());
+    for (String id : deleted) {
+      assertFalse(ids.contains(id));
+    }
+    if (reader.leaves().size() == 1) {
+      assertSorted(atomicReader, sort);
+    }
+    reader.close();
+    dir.close();
+  }
+
+}
@@ -0,0 +1,105 @@
+package org.apache.lucene.store;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.File;
+import java.util.Map;
+
+import org.apache.lucene.analysis.MockAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AdvisingMMapDirectory.Advice;
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util._TestUtil;
+
+public class TestAdvisingMMapDirectory extends LuceneTestCase {
+
+  public void testAdvice() throws Exception {
+    File path = _TestUtil.getTempDir("testAdvisingMMap");
+    AdvisingMMapDirectory dir = new AdvisingMMapDirectory(path);
+    assertEquals(Advice.PRELOAD, dir.getAdvice("_0_Lucene40_0.tim", IOContext.DEFAULT));
+    assertEquals(Advice.PRELOAD, dir.getAdvice("_0.tip", IOContext.READ));
+    assertEquals(Advice.PRELOAD, dir.getAdvice("_0_nrm.cfs", IOContext.DEFAULT));
+    assertEquals(Advice.PRELOAD, dir.getAdvice("_0.nrm", IOContext.DEFAULT));
+    assertEquals(Advice.RANDOM, dir.getAdvice("_0_Lucene40_0.frq", IOContext.DEFAULT));
+    assertEquals(Advice.NORMAL, dir.getAdvice("_0.fdt", IOContext.DEFAULT));
+    assertEquals(Advice.NORMAL, dir.getAdvice("segments_1", IOContext.DEFAULT));
+
+    // merges and read-once files are read sequentially
+    final IOContext merge = new IOContext(new MergeInfo(10, 1000, false, -1));
+    assertEquals(Advice.SEQUENTIAL, dir.getAdvice("_0_Lucene40_0.tim", merge));
+    assertEquals(Advice.SEQUENTIAL, dir.getAdvice("_0.fdt", IOContext.READONCE));
+    dir.setMergeAdvice(null);
+    assertEquals(Advice.PRELOAD, dir.getAdvice("_0_Lucene40_0.tim", merge));
+
+    dir.setAdvice("fdt", Advice.WILLNEED);
+    assertEquals(Advice.WILLNEED, dir.getAdvice("_0.fdt", IOContext.DEFAULT));
+    dir.setAdvice("fdt", null);
+    dir.setDefaultAdvice(Advice.RANDOM);
+    assertEquals(Advice.RANDOM, dir.getAdvice("_0.fdt", IOContext.DEFAULT));
+    dir.close();
+  }
+
+  public void testIndexAndSearch() throws Exception {
+    File path = _TestUtil.getTempDir("testAdvisingMMap");
+    AdvisingMMapDirectory dir = new AdvisingMMapDirectory(path, null, _TestUtil.nextInt(random(), 1 << 10, 1 << 20));
+    // preload everything, whatever the codec
+    dir.setDefaultAdvice(Advice.PRELOAD);
+    dir.setAdvice("frq", random().nextBoolean() ? Advice.RANDOM : Advice.WILLNEED);
+
+    IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig(TEST_VERSION_CURRENT, new MockAnalyzer(random()))
+        .setMergePolicy(newLogMergePolicy(false)));
+    final int numDocs = atLeast(200);
+    for (int i = 0; i < numDocs; ++i) {
+      Document doc = new Document();
+      doc.add(newStringField("id", Integer.toString(i), Field.Store.YES));
+      doc.add(newTextField("body", "some text " + (i % 10), Field.Store.NO));
+      writer.addDocument(doc);
+    }
+    writer.close();
+
+    final long preloadedBeforeOpen = dir.getPreloadedBytes();
+    DirectoryReader reader = DirectoryReader.open(dir);
+    assertTrue(dir.getPreloadedBytes() > preloadedBeforeOpen);
+    IndexSearcher searcher = newSearcher(reader);
+    assertEquals(1, searcher.search(new TermQuery(new Term("id", "7")), 1).totalHits);
+    assertEquals(numDocs / 10 + (numDocs % 10 > 3 ? 1 : 0), searcher.search(new TermQuery(new Term("body", "3")), 1).totalHits);
+
+    long totalLength = 0;
+    for (String name : dir.listAll()) {
+      final long length = dir.fileLength(name);
+      final long resident = dir.getResidentBytes(name);
+      assertTrue(resident >= 0 && resident <= length);
+      totalLength += length;
+    }
+    long totalResident = 0;
+    for (Map.Entry<String,Long> entry : dir.getResidentBytesByFileType().entrySet()) {
+      assertTrue(entry.getValue() >= 0);
+      totalResident += entry.getValue();
+    }
+    assertTrue(totalResident <= totalLength);
+
+    reader.close();
+    dir.close();
+  }
+}
@@ -20,6 +20,7 @@ import java.io.IOException;
 import java.util.Map;
 
 import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.DocValues.Source;
 import org.apache.lucene.index.DocValues.Type;
 import org.apache.lucene.queries.function.FunctionValues;
@@ -36,15 +37,32 @@ import org.apache.lucene.queries.function.ValueSource;
 public class NumericIndexDocValueSource extends ValueSource {
 
   private final String field;
+  private final boolean diskResident;
 
   public NumericIndexDocValueSource(String field) {
+    this(field, false);
+  }
+
+  /**
+   * @param field the field to read values from
+   * @param diskResident if <code>true</code>, values are read through
+   *        {@link DocValues#getDirectSource()} instead of being loaded onto
+   *        the heap
+   */
+  public NumericIndexDocValueSource(String field, boolean diskResident) {
     this.field = field;
+    this.diskResident = diskResident;
   }
 
   @Override
   public FunctionValues getValues(Map context, AtomicReaderContext readerContext) throws IOException {
-    final Source source = readerContext.reader().docValues(field)
-        .getSource();
+    final DocValues docValues = readerContext.reader().docValues(field);
+    final Source source;
+    if (docValues == null) {
+      source = DocValues.getDefaultSource(Type.FLOAT_64);
+    } else {
+      source = diskResident ? docValues.getDirectSource() : docValues.getSource();
+    }
     Type type = source.getType();
     switch (type) {
     case FLOAT_32:
@@ -61,8 +79,17 @@ public class NumericIndexDocValueSource extends ValueSource {
         public float floatVal(int doc) {
           return (float) source.getFloat(doc);
         }
+
+        @Override
+        public double doubleVal(int doc) {
+          return source.getFloat(doc);
+        }
       };
 
+    case FIXED_INTS_8:
+    case FIXED_INTS_16:
+    case FIXED_INTS_32:
+    case FIXED_INTS_64:
     case VAR_INTS:
       return new FunctionValues() {
         @Override
@@ -74,6 +101,21 @@ public class NumericIndexDocValueSource extends ValueSource {
         public float floatVal(int doc) {
           return (float) source.getInt(doc);
         }
+
+        @Override
+        public int intVal(int doc) {
+          return (int) source.getInt(doc);
+        }
+
+        @Override
+        public long longVal(int doc) {
+          return source.getInt(doc);
+        }
+
+        @Override
+        public double doubleVal(int doc) {
+          return source.getInt(doc);
+        }
       };
     default:
       throw new IOException("Type: " + type + "is not numeric");
@@ -91,6 +133,7 @@ public class NumericIndexDocValueSource extends ValueSource {
     final int prime = 31;
     int result = 1;
     result = prime * result + ((field == null) ? 0 : field.hashCode());
+    result = prime * result + (diskResident ? 1231 : 1237);
     return result;
   }
 
@@ -103,6 +146,8 @@ public class NumericIndexDocValueSource extends ValueSource {
     if (getClass() != obj.getClass())
       return false;
     NumericIndexDocValueSource other = (NumericIndexDocValueSource) obj;
+    if (diskResident != other.diskResident)
+      return false;
     if (field == null) {
       if (other.field != null)
         return false;
@@ -332,6 +332,12 @@ public final class MockRandomPostingsFormat extends PostingsFormat {
         System.out.println("MockRandomCodec: reading BlockTree terms dict");
       }
 
+      final BlockTreeTermsReader.FSTLoadMode fstLoadMode =
+        BlockTreeTermsReader.FSTLoadMode.values()[random.nextInt(BlockTreeTermsReader.FSTLoadMode.values().length)];
+      if (LuceneTestCase.VERBOSE) {
+        System.out.println("MockRandomCodec: fstLoadMode=" + fstLoadMode);
+      }
+
       boolean success = false;
       try {
         fields = new BlockTreeTermsReader(state.dir,
@@ -340,7 +346,8 @@ public final class MockRandomPostingsFormat extends PostingsFormat {
                                           postingsReader,
                                           state.context,
                                           state.segmentSuffix,
-                                          state.termsIndexDivisor);
+                                          state.termsIndexDivisor,
+                                          fstLoadMode);
         success = true;
       } finally {
         if (!success) {
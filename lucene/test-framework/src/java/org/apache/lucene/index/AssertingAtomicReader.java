@@ -252,6 +252,29 @@ public class AssertingAtomicReader extends FilterAtomicReader {
       return advanced;
     }
 
+    @Override
+    public int read(int[] docs, int[] freqs) throws IOException {
+      assert state != DocsEnumState.FINISHED : "read() called after NO_MORE_DOCS";
+      assert docs.length > 0 : "read() called with an empty buffer";
+      final int lastDoc = in.docID();
+      final int count = super.read(docs, freqs);
+      assert count >= 0 && count <= docs.length : "invalid count: " + count;
+      for (int i = 0; i < count; ++i) {
+        assert docs[i] >= 0 && docs[i] != DocIdSetIterator.NO_MORE_DOCS : "invalid doc id: " + docs[i];
+        assert docs[i] > (i == 0 ? lastDoc : docs[i - 1]) : "docs out of order: " + docs[i];
+        assert freqs == null || freqs[i] > 0 : "invalid freq: " + freqs[i];
+      }
+      final int docID = in.docID();
+      if (count == 0 || docID == DocIdSetIterator.NO_MORE_DOCS) {
+        assert count > 0 || docID == DocIdSetIterator.NO_MORE_DOCS;
+        state = DocsEnumState.FINISHED;
+      } else {
+        assert docID == docs[count - 1] : "docID()=" + docID + " but last doc read is " + docs[count - 1];
+        state = DocsEnumState.ITERATING;
+      }
+      return count;
+    }
+
     // NOTE: We don't assert anything for docId(). Specifically DocsEnum javadocs
     // are ambiguous with DocIdSetIterator here, DocIdSetIterator says its ok
     // to call this method before nextDoc(), just that it must be -1 or NO_MORE_DOCS!
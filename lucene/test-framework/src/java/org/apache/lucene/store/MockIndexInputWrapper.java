@@ -106,6 +106,17 @@ public class MockIndexInputWrapper extends IndexInput {
     return delegate.length();
   }
 
+  @Override
+  public RandomAccessInput randomAccessSlice(long offset, long length) throws IOException {
+    ensureOpen();
+    return delegate.randomAccessSlice(offset, length);
+  }
+
+  @Override
+  public boolean hasFastRandomAccessSlice() {
+    return delegate.hasFastRandomAccessSlice();
+  }
+
   @Override
   public byte readByte() throws IOException {
     ensureOpen();
@@ -767,6 +767,10 @@ public abstract class LuceneTestCase extends Assert {
 
     c.setReaderPooling(r.nextBoolean());
     c.setReaderTermsIndexDivisor(_TestUtil.nextInt(r, 1, 4));
+    if (rarely(r)) {
+      c.setIndexingBufferPoolMB(_TestUtil.nextInt(r, 1, 16));
+    }
+    c.setChecksumSegmentFiles(rarely(r));
     return c;
   }
 
@@ -2,7 +2,9 @@ package org.apache.solr.core;
 
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.bloom.BloomFilteringPostingsFormat;
 import org.apache.lucene.codecs.lucene40.Lucene40Codec;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.schema.IndexSchema;
 import org.apache.solr.schema.SchemaAware;
 import org.apache.solr.schema.SchemaField;
@@ -28,10 +30,18 @@ import org.apache.solr.schema.SchemaField;
  * Per-field CodecFactory implementation, extends Lucene's 
  * and returns postings format implementations according to the 
  * schema configuration.
+ * <p>
+ * With the <code>bloomFilterUniqueKey</code> init arg set to true, the
+ * uniqueKey field wraps its postings format with a
+ * {@link BloomFilteringPostingsFormat}, so that id lookups and deletes
+ * by id skip the segments that cannot contain the id.
  * @lucene.experimental
  */
 public class SchemaCodecFactory extends CodecFactory implements SchemaAware {
+  public static final String BLOOM_FILTER_UNIQUE_KEY = "bloomFilterUniqueKey";
+
   private Codec codec;
+  private boolean bloomFilterUniqueKey;
   // TODO: we need to change how solr does this?
   // rather than a string like "Pulsing" you need to be able to pass parameters
   // and everything to a field in the schema, e.g. we should provide factories for 
@@ -40,11 +50,30 @@ public class SchemaCodecFactory extends CodecFactory implements SchemaAware {
   // So I think a FieldType should return PostingsFormat, not a String.
   // how it constructs this from the XML... i don't care.
 
+  @Override
+  public void init(NamedList args) {
+    super.init(args);
+    Object value = args == null ? null : args.get(BLOOM_FILTER_UNIQUE_KEY);
+    bloomFilterUniqueKey = value != null && Boolean.parseBoolean(value.toString());
+  }
+
   @Override
   public void inform(final IndexSchema schema) {
+    final SchemaField uniqueKey = schema.getUniqueKeyField();
+    final PostingsFormat uniqueKeyPostingsFormat;
+    if (bloomFilterUniqueKey && uniqueKey != null) {
+      String postingsFormatName = uniqueKey.getType().getPostingsFormat();
+      uniqueKeyPostingsFormat = new BloomFilteringPostingsFormat(
+          PostingsFormat.forName(postingsFormatName != null ? postingsFormatName : "Lucene40"));
+    } else {
+      uniqueKeyPostingsFormat = null;
+    }
     codec = new Lucene40Codec() {
       @Override
       public PostingsFormat getPostingsFormatForField(String field) {
+        if (uniqueKeyPostingsFormat != null && field.equals(uniqueKey.getName())) {
+          return uniqueKeyPostingsFormat;
+        }
         final SchemaField fieldOrNull = schema.getFieldOrNull(field);
         if (fieldOrNull == null) {
           throw new IllegalArgumentException("no such field " + field);
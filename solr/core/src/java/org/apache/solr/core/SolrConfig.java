@@ -179,6 +179,8 @@ public class SolrConfig extends Config {
       conf = new CacheConfig(FastLRUCache.class, args, null);
     }
     fieldValueCacheConfig = conf;
+    perSegmentFilterCacheSize = getInt("query/perSegmentFilterCache/@size", 0);
+    perSegmentFilterCacheMaxRamMB = getDouble("query/perSegmentFilterCache/@maxRamMB", 64);
     unlockOnStartup = getBool(indexConfigPrefix+"/unlockOnStartup", false);
     useColdSearcher = getBool("query/useColdSearcher",false);
     dataDir = get("dataDir", null);
@@ -268,6 +270,8 @@ public class SolrConfig extends Config {
   public final CacheConfig documentCacheConfig;
   public final CacheConfig fieldValueCacheConfig;
   public final CacheConfig[] userCacheConfigs;
+  public final int perSegmentFilterCacheSize;
+  public final double perSegmentFilterCacheMaxRamMB;
   // SolrIndexSearcher - more...
   public final boolean useFilterForSortedQuery;
   public final int queryResultWindowSize;
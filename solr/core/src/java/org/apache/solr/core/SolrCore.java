@@ -23,6 +23,8 @@ import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexDeletionPolicy;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilterCache;
+import org.apache.lucene.search.PrimaryKeyLookup;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.solr.cloud.CloudDescriptor;
@@ -155,6 +157,8 @@ public final class SolrCore implements SolrInfoMBean {
   private DirectoryFactory directoryFactory;
   private IndexReaderFactory indexReaderFactory;
   private final Codec codec;
+  private final PrimaryKeyLookup primaryKeyLookup;
+  private final FilterCache perSegmentFilterCache;
 
   public long getStartTime() { return startTime; }
 
@@ -210,6 +214,25 @@ public final class SolrCore implements SolrInfoMBean {
     return schema;
   }
   
+  /**
+   * Gets the {@link PrimaryKeyLookup} on the uniqueKey field, or null if the
+   * schema has no uniqueKey. It is shared by all searchers of this core, so the
+   * per-segment term states it caches survive reopens.
+   */
+  public PrimaryKeyLookup getPrimaryKeyLookup() {
+    return primaryKeyLookup;
+  }
+
+  /**
+   * Gets the per-segment cache of filter results, or null if it is not
+   * configured. It is shared by all searchers of this core and keyed by
+   * segment, so the cached results of segments that did not change are
+   * reused by new searchers instead of being recomputed during autowarming.
+   */
+  public FilterCache getPerSegmentFilterCache() {
+    return perSegmentFilterCache;
+  }
+
   public String getDataDir() {
     return dataDir;
   }
@@ -629,10 +652,14 @@ public final class SolrCore implements SolrInfoMBean {
     infoRegistry.put("fieldCache", new SolrFieldCacheMBean());
 
     this.schema = schema;
+    this.primaryKeyLookup = schema.getUniqueKeyField() == null ? null : new PrimaryKeyLookup(schema.getUniqueKeyField().getName());
     this.dataDir = dataDir;
     this.solrConfig = config;
     this.startTime = System.currentTimeMillis();
     this.maxWarmingSearchers = config.maxWarmingSearchers;
+    // Solr caches every filter on first use, so does the per-segment cache
+    this.perSegmentFilterCache = config.perSegmentFilterCacheSize <= 0 ? null : new FilterCache(
+        config.perSegmentFilterCacheSize, (long) (config.perSegmentFilterCacheMaxRamMB * 1024 * 1024), 1, 1);
 
     booleanQueryMaxClauseCount();
   
@@ -0,0 +1,294 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.request;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocTermOrds;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.FacetParams;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.schema.FieldType;
+import org.apache.solr.search.DocSet;
+import org.apache.solr.search.SolrIndexSearcher;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+
+/**
+ * Facets on a multi-valued field by counting term ords per segment and
+ * merging the counts of equal terms across segments.  Ords are uninverted
+ * per segment through the {@link FieldCache}, so after a commit only new
+ * segments are uninverted, while {@link UnInvertedField} rebuilds the
+ * whole field.
+ * <p>
+ * Trie fields index several terms per value and are not supported: only
+ * their main values would need to be counted.
+ */
+class PerSegmentMultiValuedFaceting {
+
+  // input params
+  SolrIndexSearcher searcher;
+  DocSet docs;
+  String fieldName;
+  int offset;
+  int limit;
+  int mincount;
+  boolean missing;
+  String sort;
+  String prefix;
+
+  Filter baseSet;
+
+  int nThreads;
+
+  public PerSegmentMultiValuedFaceting(SolrIndexSearcher searcher, DocSet docs, String fieldName, int offset, int limit, int mincount, boolean missing, String sort, String prefix) {
+    this.searcher = searcher;
+    this.docs = docs;
+    this.fieldName = fieldName;
+    this.offset = offset;
+    this.limit = limit;
+    this.mincount = mincount;
+    this.missing = missing;
+    this.sort = sort;
+    this.prefix = prefix;
+  }
+
+  public void setNumThreads(int threads) {
+    nThreads = threads;
+  }
+
+
+  NamedList<Integer> getFacetCounts(Executor executor) throws IOException {
+
+    CompletionService<SegFacet> completionService = new ExecutorCompletionService<SegFacet>(executor);
+
+    // reuse the translation logic to go from top level set to per-segment set
+    baseSet = docs.getTopFilter();
+
+    final List<AtomicReaderContext> leaves = searcher.getTopReaderContext().leaves();
+    // The list of pending tasks that aren't immediately submitted
+    LinkedList<Callable<SegFacet>> pending = new LinkedList<Callable<SegFacet>>();
+
+    int threads = nThreads <= 0 ? Integer.MAX_VALUE : nThreads;
+
+    for (final AtomicReaderContext leave : leaves) {
+      final SegFacet segFacet = new SegFacet(leave);
+
+      Callable<SegFacet> task = new Callable<SegFacet>() {
+        public SegFacet call() throws Exception {
+          segFacet.countTerms();
+          return segFacet;
+        }
+      };
+
+      if (--threads >= 0) {
+        completionService.submit(task);
+      } else {
+        pending.add(task);
+      }
+    }
+
+
+    // now merge the per-segment results
+    PriorityQueue<SegFacet> queue = new PriorityQueue<SegFacet>(leaves.size()) {
+      @Override
+      protected boolean lessThan(SegFacet a, SegFacet b) {
+        return a.tempBR.compareTo(b.tempBR) < 0;
+      }
+    };
+
+
+    int missingCount=0;
+    for (int i=0, c=leaves.size(); i<c; i++) {
+      SegFacet seg = null;
+
+      try {
+        Future<SegFacet> future = completionService.take();
+        seg = future.get();
+        if (!pending.isEmpty()) {
+          completionService.submit(pending.removeFirst());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in per-segment faceting on field: " + fieldName, cause);
+        }
+      }
+
+      missingCount += seg.missingCount;
+      seg.pos = seg.startTermIndex;
+      if (seg.pos < seg.endTermIndex) {
+        seg.tenum.seekExact(seg.pos);
+        seg.tempBR = seg.tenum.term();
+        queue.add(seg);
+      }
+    }
+
+    FacetCollector collector;
+    if (sort.equals(FacetParams.FACET_SORT_COUNT) || sort.equals(FacetParams.FACET_SORT_COUNT_LEGACY)) {
+      collector = new CountSortedFacetCollector(offset, limit, mincount);
+    } else {
+      collector = new IndexSortedFacetCollector(offset, limit, mincount);
+    }
+
+    BytesRef val = new BytesRef();
+
+    while (queue.size() > 0) {
+      SegFacet seg = queue.top();
+
+      // make a deep copy: the terms enum may reuse its bytes when advanced
+      val.copyBytes(seg.tempBR);
+
+      int count = 0;
+
+      do {
+        count += seg.counts[seg.pos - seg.startTermIndex];
+
+        seg.pos++;
+        if (seg.pos >= seg.endTermIndex) {
+          queue.pop();
+          seg = queue.top();
+        }  else {
+          seg.tempBR = seg.tenum.next();
+          seg = queue.updateTop();
+        }
+      } while (seg != null && val.compareTo(seg.tempBR) == 0);
+
+      boolean stop = collector.collect(val, count);
+      if (stop) break;
+    }
+
+    NamedList<Integer> res = collector.getFacetCounts();
+
+    // convert labels to readable form
+    FieldType ft = searcher.getSchema().getFieldType(fieldName);
+    int sz = res.size();
+    for (int i=0; i<sz; i++) {
+      res.setName(i, ft.indexedToReadable(res.getName(i)));
+    }
+
+    if (missing) {
+      res.add(null, missingCount);
+    }
+
+    return res;
+  }
+
+  class SegFacet {
+    AtomicReaderContext context;
+    SegFacet(AtomicReaderContext context) {
+      this.context = context;
+    }
+
+    DocTermOrds dto;
+    int startTermIndex;
+    int endTermIndex;
+    int[] counts;
+    int missingCount;
+
+    int pos; // only used when merging
+    TermsEnum tenum;
+
+    BytesRef tempBR = new BytesRef();
+
+    void countTerms() throws IOException {
+      dto = FieldCache.DEFAULT.getDocTermOrds(context.reader(), fieldName);
+      // terms are listed even if none of their documents is live
+      tenum = dto.numTerms() == 0 ? null : dto.getOrdTermsEnum(context.reader());
+
+      if (tenum == null) {
+        startTermIndex = endTermIndex = 0;
+      } else if (prefix != null) {
+        BytesRef prefixRef = new BytesRef(prefix);
+        startTermIndex = seekCeil(prefixRef);
+        prefixRef.append(UnicodeUtil.BIG_TERM);
+        endTermIndex = seekCeil(prefixRef);
+      } else {
+        startTermIndex = 0;
+        endTermIndex = dto.numTerms();
+      }
+
+      final int nTerms = endTermIndex - startTermIndex;
+      if (nTerms == 0 && !missing) {
+        return;
+      }
+
+      // count collection array only needs to be as big as the number of terms we are
+      // going to collect counts for.
+      final int[] counts = this.counts = new int[nTerms];
+      DocIdSet idSet = baseSet.getDocIdSet(context, null);  // this set only includes live docs
+      DocIdSetIterator iter = idSet == null ? null : idSet.iterator();
+      if (iter == null) {
+        return;
+      }
+
+      int doc;
+      if (dto.isEmpty()) {
+        // no live document has a value in this segment
+        while ((doc = iter.nextDoc()) < DocIdSetIterator.NO_MORE_DOCS) {
+          missingCount++;
+        }
+        return;
+      }
+
+      final int[] buffer = new int[5];
+      DocTermOrds.TermOrdsIterator ordsIter = null;
+      while ((doc = iter.nextDoc()) < DocIdSetIterator.NO_MORE_DOCS) {
+        ordsIter = dto.lookup(doc, ordsIter);
+        boolean first = true;
+        int n;
+        do {
+          n = ordsIter.read(buffer);
+          if (first && n == 0) {
+            missingCount++;
+          }
+          first = false;
+          for (int i = 0; i < n; i++) {
+            int arrIdx = buffer[i] - startTermIndex;
+            if (arrIdx >= 0 && arrIdx < nTerms) counts[arrIdx]++;
+          }
+        } while (n == buffer.length);
+      }
+    }
+
+    /** Returns the ord of the first term that is greater than or equal to
+     *  the given term, or the number of terms if there is none. */
+    private int seekCeil(BytesRef term) throws IOException {
+      if (tenum.seekCeil(term, true) == TermsEnum.SeekStatus.END) {
+        return dto.numTerms();
+      }
+      return (int) tenum.ord();
+    }
+  }
+
+}
@@ -25,6 +25,7 @@ import org.apache.lucene.search.Filter;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.OpenBitSetIterator;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.search.DocIdSetIterator;
 
 /**
@@ -229,8 +230,11 @@ public class BitDocSet extends DocSetBase {
   }
 
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BitDocSet.class)
+      + RamUsageEstimator.shallowSizeOfInstance(OpenBitSet.class);
+
   public long memSize() {
-    return (bits.getBits().length << 3) + 16;
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bits.getBits());
   }
 
   @Override
@@ -88,8 +88,9 @@ public interface DocSet /* extends Collection<Integer> */ {
   public OpenBitSet getBits();
 
   /**
-   * Returns the approximate amount of memory taken by this DocSet.
-   * This is only an approximation and doesn't take into account java object overhead.
+   * Returns the approximate amount of memory taken by this DocSet, including
+   * java object overhead as estimated by {@link org.apache.lucene.util.RamUsageEstimator}.
+   * Arrays which are shared with other sets are fully accounted.
    *
    * @return
    * the approximate memory consumption in bytes
@@ -19,6 +19,8 @@ package org.apache.solr.search;
 
 import java.util.Arrays;
 
+import org.apache.lucene.util.RamUsageEstimator;
+
 /**
  * <code>DocSlice</code> implements DocList as an array of docids and optional scores.
  *
@@ -79,10 +81,12 @@ public class DocSlice extends DocSetBase implements DocList {
   public int matches() { return matches; }
 
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(DocSlice.class);
+
   public long memSize() {
-    return (docs.length<<2)
-            + (scores==null ? 0 : (scores.length<<2))
-            + 24;
+    return BASE_RAM_BYTES_USED
+            + RamUsageEstimator.sizeOf(docs)
+            + (scores==null ? 0 : RamUsageEstimator.sizeOf(scores));
   }
 
 
@@ -50,6 +50,7 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private String description = "Concurrent LRU Cache";
   private ConcurrentLRUCache<K,V> cache;
   private int showItems = 0;
+  private String maxRamMB;
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     super.init(args, regenerator);
@@ -82,8 +83,17 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
 
     str = (String) args.get("showItems");
     showItems = str == null ? 0 : Integer.parseInt(str);
+
+    // when the entries use more than maxRamMB, evict down to 90% of it
+    long maxRamBytes = SolrCacheRamEstimator.parseMaxRamBytes(args);
+    maxRamMB = (String) args.get("maxRamMB");
     description = generateDescription(limit, initialSize, minLimit, acceptableLimit, newThread);
-    cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    if (maxRamBytes < 0) {
+      cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null);
+    } else {
+      cache = new ConcurrentLRUCache<K,V>(limit, minLimit, acceptableLimit, initialSize, newThread, false, null,
+          maxRamBytes, (long) (maxRamBytes * 0.9), new SolrCacheRamEstimator<K,V>());
+    }
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLRUCache.Stats>) persistence;
@@ -106,6 +116,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   protected String generateDescription(int limit, int initialSize, int minLimit, int acceptableLimit, boolean newThread) {
     String description = "Concurrent LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
         ", minSize="+minLimit + ", acceptableSize="+acceptableLimit+", cleanupThread="+newThread;
+    if (maxRamMB != null) {
+      description += ", maxRamMB=" + maxRamMB;
+    }
     if (isAutowarmingOn()) {
       description += ", " + getAutowarmDescription();
     }
@@ -211,6 +224,9 @@ public class FastLRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamMB != null) {
+      lst.add("ramBytesUsed", stats.getRamBytesUsed());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("cumulative_lookups", clookups);
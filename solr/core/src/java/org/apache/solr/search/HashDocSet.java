@@ -18,6 +18,7 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.util.BitUtil;
+import org.apache.lucene.util.RamUsageEstimator;
 
 
 /**
@@ -147,8 +148,10 @@ public final class HashDocSet extends DocSetBase {
     };
   }
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(HashDocSet.class);
+
   public long memSize() {
-    return (table.length<<2) + 20;
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(table);
   }
 
   @Override
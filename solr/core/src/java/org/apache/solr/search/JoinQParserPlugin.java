@@ -25,6 +25,7 @@ import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.StringHelper;
 import org.apache.solr.common.SolrException;
+import org.apache.solr.common.params.CommonParams;
 import org.apache.solr.common.params.SolrParams;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
@@ -43,11 +44,17 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 
 public class JoinQParserPlugin extends QParserPlugin {
   public static String NAME = "join";
 
+  /** Value of the <code>method</code> local param which joins segment by
+   *  segment, from the term ords of the join fields.
+   *  @see PerSegmentJoin */
+  public static final String METHOD_fcs = "fcs";
+
   public void init(NamedList args) {
   }
 
@@ -57,6 +64,8 @@ public class JoinQParserPlugin extends QParserPlugin {
         String fromField = getParam("from");
         String fromIndex = getParam("fromIndex");
         String toField = getParam("to");
+        String method = getParam("method");
+        String threadStr = getParam(CommonParams.THREADS);
         String v = localParams.get("v");
         Query fromQuery;
         long fromCoreOpenTime = 0;
@@ -89,6 +98,10 @@ public class JoinQParserPlugin extends QParserPlugin {
 
         JoinQuery jq = new JoinQuery(fromField, toField, fromIndex, fromQuery);
         jq.fromCoreOpenTime = fromCoreOpenTime;
+        jq.method = method;
+        if (threadStr != null) {
+          jq.threads = Integer.parseInt(threadStr);
+        }
         return jq;
       }
     };
@@ -102,6 +115,8 @@ class JoinQuery extends Query {
   String fromIndex;
   Query q;
   long fromCoreOpenTime;
+  String method;
+  int threads = -1;
 
   public JoinQuery(String fromField, String toField, String fromIndex, Query subQuery) {
     this.fromField = fromField;
@@ -225,6 +240,7 @@ class JoinQuery extends Query {
         if (debug) {
           SimpleOrderedMap<Object> dbg = new SimpleOrderedMap<Object>();
           dbg.add("time", (end-start));
+          if (method != null) dbg.add("method", method);
           dbg.add("fromSetSize", fromSetSize);  // the input
           dbg.add("toSetSize", resultSet.size());    // the output
 
@@ -238,6 +254,9 @@ class JoinQuery extends Query {
           dbg.add("toTermDirectCount", toTermDirectCount);
           dbg.add("smallSetsDeferred", smallSetsDeferred);
           dbg.add("toSetDocsAdded", resultListDocs);
+          if (JoinQParserPlugin.METHOD_fcs.equals(method)) {
+            dbg.add("toSegmentsScanned", toSegmentsScanned);
+          }
 
           // TODO: perhaps synchronize  addDebug in the future...
           rb.addDebug(dbg, "join", JoinQuery.this.toString());
@@ -264,9 +283,14 @@ class JoinQuery extends Query {
     long toTermHitsTotalDf;   // sum of the df for the toTermHits
     int toTermDirectCount;    // number of toTerms that we set directly on a bitset rather than doing set intersections
     int smallSetsDeferred;    // number of small sets collected to be used later to intersect w/ bitset or create another small set
+    int toSegmentsScanned;    // number of to segments whose ords were scanned rather than their postings
 
 
     public DocSet getDocSet() throws IOException {
+      if (JoinQParserPlugin.METHOD_fcs.equals(method)) {
+        return getDocSetPerSegment();
+      }
+
       OpenBitSet resultBits = null;
 
       // minimum docFreq to use the cache
@@ -482,6 +506,23 @@ class JoinQuery extends Query {
       return new SortedIntDocSet(dedup, dedup.length);
     }
 
+    private DocSet getDocSetPerSegment() throws IOException {
+      DocSet fromSet = fromSearcher.getDocSet(q);
+      fromSetSize = fromSet.size();
+
+      PerSegmentJoin join = new PerSegmentJoin(fromSearcher, toSearcher, fromField, toField, fromSet);
+      Executor executor = threads == 0 ? PerSegmentJoin.directExecutor : PerSegmentJoin.joinExecutor;
+      join.setNumThreads(threads);
+      DocSet result = join.getDocSet(executor);
+
+      fromTermHits = join.fromTermHits;
+      toTermHits = join.toTermHits;
+      toTermHitsTotalDf = join.toTermHitsTotalDf;
+      toSegmentsScanned = join.toSegmentsScanned;
+      resultListDocs = result.size();
+      return result;
+    }
+
     @Override
     public Explanation explain(AtomicReaderContext context, int doc) throws IOException {
       Scorer scorer = scorer(context, true, false, context.reader().getLiveDocs());
@@ -549,6 +590,7 @@ class JoinQuery extends Query {
   public String toString(String field) {
     return "{!join from="+fromField+" to="+toField
         + (fromIndex != null ? " fromIndex="+fromIndex : "")
+        + (method != null ? " method="+method : "")
         +"}"+q.toString();
   }
 
@@ -562,6 +604,7 @@ class JoinQuery extends Query {
            && this.q.equals(other.q)
            && (this.fromIndex == other.fromIndex || this.fromIndex != null && this.fromIndex.equals(other.fromIndex))
            && this.fromCoreOpenTime == other.fromCoreOpenTime
+           && (this.method == other.method || this.method != null && this.method.equals(other.method))
         ;
   }
 
@@ -572,6 +615,7 @@ class JoinQuery extends Query {
     h = h * 31 + (int)fromCoreOpenTime;
     h = h * 31 + fromField.hashCode();
     h = h * 31 + toField.hashCode();
+    h = h * 31 + (method != null ? method.hashCode() : 0);
     return h;
   }
 
@@ -57,6 +57,7 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
   private String description = "Concurrent LFU Cache";
   private ConcurrentLFUCache<K, V> cache;
   private int showItems = 0;
+  private String maxRamMB;
   private Boolean timeDecay = true;
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
@@ -99,15 +100,27 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     str = (String) args.get("timeDecay");
     timeDecay = (str == null) ? true : Boolean.parseBoolean(str);
 
+    // when the entries use more than maxRamMB, evict down to 90% of it
+    long maxRamBytes = SolrCacheRamEstimator.parseMaxRamBytes(args);
+    maxRamMB = (String) args.get("maxRamMB");
+
     description = "Concurrent LFU Cache(maxSize=" + limit + ", initialSize=" + initialSize +
         ", minSize=" + minLimit + ", acceptableSize=" + acceptableSize + ", cleanupThread=" + newThread +
         ", timeDecay=" + Boolean.toString(timeDecay);
+    if (maxRamMB != null) {
+      description += ", maxRamMB=" + maxRamMB;
+    }
     if (autowarmCount > 0) {
       description += ", autowarmCount=" + autowarmCount + ", regenerator=" + regenerator;
     }
     description += ')';
 
-    cache = new ConcurrentLFUCache<K, V>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay);
+    if (maxRamBytes < 0) {
+      cache = new ConcurrentLFUCache<K, V>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay);
+    } else {
+      cache = new ConcurrentLFUCache<K, V>(limit, minLimit, acceptableSize, initialSize, newThread, false, null, timeDecay,
+          maxRamBytes, (long) (maxRamBytes * 0.9), new SolrCacheRamEstimator<K, V>());
+    }
     cache.setAlive(false);
 
     statsList = (List<ConcurrentLFUCache.Stats>) persistence;
@@ -239,6 +252,9 @@ public class LFUCache<K, V> implements SolrCache<K, V> {
     lst.add("inserts", inserts);
     lst.add("evictions", evictions);
     lst.add("size", size);
+    if (maxRamMB != null) {
+      lst.add("ramBytesUsed", stats.getRamBytesUsed());
+    }
 
     lst.add("warmupTime", warmupTime);
     lst.add("timeDecay", timeDecay);
@@ -25,6 +25,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.apache.solr.common.SolrException;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.common.util.SimpleOrderedMap;
+import org.apache.solr.util.RamEstimator;
 
 
 /**
@@ -50,11 +51,14 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   private long hits;
   private long inserts;
   private long evictions;
+  private long ramBytesUsed;
 
   private long warmupTime = 0;
 
   private Map<K,V> map;
   private String description="LRU Cache";
+  private long maxRamBytes = Long.MAX_VALUE;
+  private RamEstimator<K,V> ramEstimator;
 
   public Object init(Map args, Object persistence, CacheRegenerator regenerator) {
     super.init(args, regenerator);
@@ -62,7 +66,12 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
     final int limit = str==null ? 1024 : Integer.parseInt(str);
     str = (String)args.get("initialSize");
     final int initialSize = Math.min(str==null ? 1024 : Integer.parseInt(str), limit);
-    description = generateDescription(limit, initialSize);
+    final long maxRamBytes = SolrCacheRamEstimator.parseMaxRamBytes(args);
+    if (maxRamBytes >= 0) {
+      this.maxRamBytes = maxRamBytes;
+      ramEstimator = new SolrCacheRamEstimator<K,V>();
+    }
+    description = generateDescription(limit, initialSize, (String)args.get("maxRamMB"));
 
     map = new LinkedHashMap<K,V>(initialSize, 0.75f, true) {
         @Override
@@ -73,6 +82,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
             // only be called in the context of a higher level synchronized block.
             evictions++;
             stats.evictions.incrementAndGet();
+            if (ramEstimator != null) {
+              ramBytesUsed -= ramEstimator.ramBytesUsed((K)eldest.getKey(), (V)eldest.getValue());
+            }
             return true;
           }
           return false;
@@ -93,8 +105,11 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
    * 
    * @return Returns the description of this cache. 
    */
-  private String generateDescription(int limit, int initialSize) {
+  private String generateDescription(int limit, int initialSize, String maxRamMB) {
     String description = "LRU Cache(maxSize=" + limit + ", initialSize=" + initialSize;
+    if (maxRamMB != null) {
+      description += ", maxRamMB=" + maxRamMB;
+    }
     if (isAutowarmingOn()) {
       description += ", " + getAutowarmDescription();
     }
@@ -109,6 +124,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   }
 
   public V put(K key, V value) {
+    final long entryRamBytesUsed = ramEstimator == null ? 0 : ramEstimator.ramBytesUsed(key, value);
     synchronized (map) {
       if (getState() == State.LIVE) {
         stats.inserts.incrementAndGet();
@@ -117,7 +133,26 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       // increment local inserts regardless of state???
       // it does make it more consistent with the current size...
       inserts++;
-      return map.put(key,value);
+      if (ramEstimator == null) {
+        return map.put(key,value);
+      }
+
+      ramBytesUsed += entryRamBytesUsed;
+      V old = map.put(key,value);
+      if (old != null) {
+        ramBytesUsed -= ramEstimator.ramBytesUsed(key, old);
+      }
+      // evict the least recently used entries, possibly including this one,
+      // until the cache is within its RAM budget
+      Iterator<Map.Entry<K,V>> iter = map.entrySet().iterator();
+      while (ramBytesUsed > maxRamBytes && iter.hasNext()) {
+        Map.Entry<K,V> entry = iter.next();
+        ramBytesUsed -= ramEstimator.ramBytesUsed(entry.getKey(), entry.getValue());
+        iter.remove();
+        evictions++;
+        stats.evictions.incrementAndGet();
+      }
+      return old;
     }
   }
 
@@ -140,6 +175,7 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
   public void clear() {
     synchronized(map) {
       map.clear();
+      ramBytesUsed = 0;
     }
   }
 
@@ -220,6 +256,9 @@ public class LRUCache<K,V> extends SolrCacheBase implements SolrCache<K,V> {
       lst.add("inserts", inserts);
       lst.add("evictions", evictions);
       lst.add("size", map.size());
+      if (ramEstimator != null) {
+        lst.add("ramBytesUsed", ramBytesUsed);
+      }
     }
     lst.add("warmupTime", warmupTime);
     
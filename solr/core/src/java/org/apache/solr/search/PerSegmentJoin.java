@@ -0,0 +1,406 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.solr.search;
+
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DocTermOrds;
+import org.apache.lucene.index.DocsEnum;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.PriorityQueue;
+import org.apache.lucene.util.UnicodeUtil;
+import org.apache.solr.common.SolrException;
+import org.apache.solr.schema.TrieField;
+import org.apache.solr.util.DefaultSolrThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+
+
+/**
+ * Computes the documents matched by a {@link JoinQuery} segment by segment,
+ * from the term ords of the join fields.  The ords are uninverted per
+ * segment through the {@link FieldCache} on both sides of the join, so
+ * they are computed once per segment and survive reopens: after a commit
+ * only new segments are uninverted.
+ * <p>
+ * The terms of the documents matching the from query are first collected
+ * from the ords of each from segment, and merged into a single sorted
+ * list.  Each to segment then seeks those terms in order, leaping over
+ * the ones it does not have, and collects the documents having one of
+ * the ords found.  Segments are processed concurrently on both sides.
+ */
+class PerSegmentJoin {
+
+  static final Executor directExecutor = new Executor() {
+    public void execute(Runnable r) {
+      r.run();
+    }
+  };
+
+  static final Executor joinExecutor = new ThreadPoolExecutor(
+          0,
+          Integer.MAX_VALUE,
+          10, TimeUnit.SECONDS, // terminate idle threads after 10 sec
+          new SynchronousQueue<Runnable>()  // directly hand off tasks
+          , new DefaultSolrThreadFactory("joinExecutor")
+  );
+
+  // input params
+  SolrIndexSearcher fromSearcher;
+  SolrIndexSearcher toSearcher;
+  String fromField;
+  String toField;
+  DocSet fromSet;
+
+  int nThreads;
+
+  // statistics
+  int fromTermHits;         // number of distinct from terms of the documents matching the from query
+  int toTermHits;           // sum over the to segments of the number of from terms they have
+  long toTermHitsTotalDf;   // sum of the df of the toTermHits
+  int toSegmentsScanned;    // number of to segments whose ords were scanned rather than their postings
+
+  public PerSegmentJoin(SolrIndexSearcher fromSearcher, SolrIndexSearcher toSearcher, String fromField, String toField, DocSet fromSet) {
+    this.fromSearcher = fromSearcher;
+    this.toSearcher = toSearcher;
+    this.fromField = fromField;
+    this.toField = toField;
+    this.fromSet = fromSet;
+  }
+
+  public void setNumThreads(int threads) {
+    nThreads = threads;
+  }
+
+
+  DocSet getDocSet(Executor executor) throws IOException {
+    // reuse the translation logic to go from top level set to per-segment set
+    Filter fromFilter = fromSet.getTopFilter();
+
+    // A TrieField indexes lower precision terms too, which must not be joined on
+    String prefixStr = TrieField.getMainValuePrefix(fromSearcher.getSchema().getFieldType(fromField));
+    BytesRef prefix = prefixStr == null ? null : new BytesRef(prefixStr);
+
+    List<AtomicReaderContext> fromLeaves = fromSearcher.getTopReaderContext().leaves();
+    List<FromSegment> fromSegs = new ArrayList<FromSegment>(fromLeaves.size());
+    for (AtomicReaderContext leave : fromLeaves) {
+      fromSegs.add(new FromSegment(leave, fromFilter, prefix));
+    }
+    execute(fromSegs, executor);
+
+    BytesRef[] fromTerms = mergeTerms(fromSegs);
+    fromTermHits = fromTerms.length;
+    if (fromTerms.length == 0) {
+      return DocSet.EMPTY;
+    }
+
+    List<AtomicReaderContext> toLeaves = toSearcher.getTopReaderContext().leaves();
+    List<ToSegment> toSegs = new ArrayList<ToSegment>(toLeaves.size());
+    for (AtomicReaderContext leave : toLeaves) {
+      toSegs.add(new ToSegment(leave, fromTerms));
+    }
+    execute(toSegs, executor);
+
+    long size = 0;
+    for (ToSegment seg : toSegs) {
+      toTermHits += seg.termHits;
+      toTermHitsTotalDf += seg.termHitsTotalDf;
+      if (seg.scanned) toSegmentsScanned++;
+      size += seg.size;
+    }
+
+    int maxDoc = toSearcher.maxDoc();
+    if (size == 0) {
+      return DocSet.EMPTY;
+    } else if (size <= (maxDoc >> 6)) {
+      // the segments are in docid order, and so are their bits
+      int[] docs = new int[(int) size];
+      int pos = 0;
+      for (ToSegment seg : toSegs) {
+        if (seg.docs == null) continue;
+        for (int doc = seg.docs.nextSetBit(0); doc >= 0; doc = seg.docs.nextSetBit(doc + 1)) {
+          docs[pos++] = seg.context.docBase + doc;
+        }
+      }
+      return new SortedIntDocSet(docs, pos);
+    } else {
+      OpenBitSet bits = new OpenBitSet(maxDoc);
+      for (ToSegment seg : toSegs) {
+        if (seg.docs == null) continue;
+        for (int doc = seg.docs.nextSetBit(0); doc >= 0; doc = seg.docs.nextSetBit(doc + 1)) {
+          bits.fastSet(seg.context.docBase + doc);
+        }
+      }
+      return new BitDocSet(bits, (int) size);
+    }
+  }
+
+  /** Merges the sorted terms of the from segments into a single sorted
+   *  list of distinct terms. */
+  private BytesRef[] mergeTerms(List<FromSegment> segs) {
+    PriorityQueue<FromSegment> queue = new PriorityQueue<FromSegment>(segs.size()) {
+      @Override
+      protected boolean lessThan(FromSegment a, FromSegment b) {
+        return a.terms.get(a.pos).compareTo(b.terms.get(b.pos)) < 0;
+      }
+    };
+
+    int maxSize = 0;
+    for (FromSegment seg : segs) {
+      if (seg.terms.size() > 0) {
+        seg.pos = 0;
+        queue.add(seg);
+        maxSize = Math.max(maxSize, seg.terms.size());
+      }
+    }
+
+    List<BytesRef> merged = new ArrayList<BytesRef>(maxSize);
+    BytesRef last = null;
+    while (queue.size() > 0) {
+      FromSegment seg = queue.top();
+      BytesRef term = seg.terms.get(seg.pos);
+      if (last == null || !last.equals(term)) {
+        merged.add(term);
+        last = term;
+      }
+      if (++seg.pos >= seg.terms.size()) {
+        queue.pop();
+      } else {
+        queue.updateTop();
+      }
+    }
+
+    return merged.toArray(new BytesRef[merged.size()]);
+  }
+
+  private void execute(List<? extends SegmentTask> segs, Executor executor) {
+    CompletionService<SegmentTask> completionService = new ExecutorCompletionService<SegmentTask>(executor);
+
+    // The list of pending tasks that aren't immediately submitted
+    LinkedList<SegmentTask> pending = new LinkedList<SegmentTask>();
+
+    int threads = nThreads <= 0 ? Integer.MAX_VALUE : nThreads;
+
+    for (SegmentTask seg : segs) {
+      if (--threads >= 0) {
+        completionService.submit(seg);
+      } else {
+        pending.add(seg);
+      }
+    }
+
+    for (int i=0, c=segs.size(); i<c; i++) {
+      try {
+        completionService.take().get();
+        if (!pending.isEmpty()) {
+          completionService.submit(pending.removeFirst());
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException)cause;
+        } else {
+          throw new SolrException(SolrException.ErrorCode.SERVER_ERROR, "Error in per-segment join from field: " + fromField + " to field: " + toField, cause);
+        }
+      }
+    }
+  }
+
+  abstract static class SegmentTask implements Callable<SegmentTask> {
+    final AtomicReaderContext context;
+
+    SegmentTask(AtomicReaderContext context) {
+      this.context = context;
+    }
+
+    public SegmentTask call() throws Exception {
+      run();
+      return this;
+    }
+
+    abstract void run() throws IOException;
+  }
+
+  /** Collects the terms of the documents of a from segment matching the from query. */
+  class FromSegment extends SegmentTask {
+    final Filter filter;
+    final BytesRef prefix;
+
+    List<BytesRef> terms = new ArrayList<BytesRef>();
+    int pos; // only used when merging
+
+    FromSegment(AtomicReaderContext context, Filter filter, BytesRef prefix) {
+      super(context);
+      this.filter = filter;
+      this.prefix = prefix;
+    }
+
+    @Override
+    void run() throws IOException {
+      AtomicReader reader = context.reader();
+      DocTermOrds dto = FieldCache.DEFAULT.getDocTermOrds(reader, fromField);
+      if (dto.isEmpty()) return;
+      TermsEnum tenum = dto.getOrdTermsEnum(reader);
+      if (tenum == null) return;
+
+      int startTermIndex = 0;
+      int endTermIndex = dto.numTerms();
+      if (prefix != null) {
+        startTermIndex = seekCeil(tenum, prefix, endTermIndex);
+        BytesRef end = BytesRef.deepCopyOf(prefix);
+        end.append(UnicodeUtil.BIG_TERM);
+        endTermIndex = seekCeil(tenum, end, endTermIndex);
+      }
+      if (startTermIndex >= endTermIndex) return;
+
+      DocIdSet idSet = filter.getDocIdSet(context, null);  // this set only includes live docs
+      DocIdSetIterator iter = idSet == null ? null : idSet.iterator();
+      if (iter == null) return;
+
+      OpenBitSet ords = new OpenBitSet(dto.numTerms());
+      final int[] buffer = new int[5];
+      DocTermOrds.TermOrdsIterator ordsIter = null;
+      int doc;
+      while ((doc = iter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+        ordsIter = dto.lookup(doc, ordsIter);
+        int n;
+        do {
+          n = ordsIter.read(buffer);
+          for (int i = 0; i < n; i++) {
+            int ord = buffer[i];
+            if (ord >= startTermIndex && ord < endTermIndex) ords.fastSet(ord);
+          }
+        } while (n == buffer.length);
+      }
+
+      for (int ord = ords.nextSetBit(0); ord >= 0; ord = ords.nextSetBit(ord + 1)) {
+        tenum.seekExact(ord);
+        terms.add(BytesRef.deepCopyOf(tenum.term()));
+      }
+    }
+  }
+
+  /** Collects the documents of a to segment having one of the from terms. */
+  class ToSegment extends SegmentTask {
+    final BytesRef[] fromTerms;
+
+    OpenBitSet docs;
+    long size;
+    int termHits;
+    long termHitsTotalDf;
+    boolean scanned;
+
+    ToSegment(AtomicReaderContext context, BytesRef[] fromTerms) {
+      super(context);
+      this.fromTerms = fromTerms;
+    }
+
+    @Override
+    void run() throws IOException {
+      AtomicReader reader = context.reader();
+      DocTermOrds dto = FieldCache.DEFAULT.getDocTermOrds(reader, toField);
+      if (dto.isEmpty()) return;
+      TermsEnum tenum = dto.getOrdTermsEnum(reader);
+      if (tenum == null) return;
+
+      // intersect the sorted from terms with the terms of this segment
+      OpenBitSet ords = new OpenBitSet(dto.numTerms());
+      int i = 0;
+      while (i < fromTerms.length) {
+        TermsEnum.SeekStatus status = tenum.seekCeil(fromTerms[i], true);
+        if (status == TermsEnum.SeekStatus.END) break;
+        if (status == TermsEnum.SeekStatus.FOUND) {
+          ords.fastSet(tenum.ord());
+          termHits++;
+          termHitsTotalDf += tenum.docFreq();
+          i++;
+        } else {
+          // skip the from terms this segment doesn't have
+          BytesRef ceil = tenum.term();
+          do {
+            i++;
+          } while (i < fromTerms.length && fromTerms[i].compareTo(ceil) < 0);
+        }
+      }
+      if (termHits == 0) return;
+
+      int maxDoc = reader.maxDoc();
+      Bits liveDocs = reader.getLiveDocs();
+      docs = new OpenBitSet(maxDoc);
+
+      if (termHitsTotalDf < (maxDoc >> 4)) {
+        // few documents to collect: read the postings of the matching terms
+        DocsEnum docsEnum = null;
+        for (int ord = ords.nextSetBit(0); ord >= 0; ord = ords.nextSetBit(ord + 1)) {
+          tenum.seekExact(ord);
+          docsEnum = tenum.docs(liveDocs, docsEnum, 0);
+          int doc;
+          while ((doc = docsEnum.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+            docs.fastSet(doc);
+          }
+        }
+      } else {
+        // otherwise scan the ords of all documents, which is faster than
+        // decoding many postings lists
+        scanned = true;
+        final int[] buffer = new int[5];
+        DocTermOrds.TermOrdsIterator ordsIter = null;
+        for (int doc = 0; doc < maxDoc; doc++) {
+          if (liveDocs != null && !liveDocs.get(doc)) continue;
+          ordsIter = dto.lookup(doc, ordsIter);
+          int n;
+          outer: do {
+            n = ordsIter.read(buffer);
+            for (int j = 0; j < n; j++) {
+              if (ords.fastGet(buffer[j])) {
+                docs.fastSet(doc);
+                break outer;
+              }
+            }
+          } while (n == buffer.length);
+        }
+      }
+
+      size = docs.cardinality();
+    }
+  }
+
+  /** Returns the ord of the first term that is greater than or equal to
+   *  the given term, or the number of terms if there is none. */
+  private static int seekCeil(TermsEnum tenum, BytesRef term, int numTerms) throws IOException {
+    if (tenum.seekCeil(term, true) == TermsEnum.SeekStatus.END) {
+      return numTerms;
+    }
+    return (int) tenum.ord();
+  }
+
+}
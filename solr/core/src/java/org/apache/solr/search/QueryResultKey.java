@@ -20,6 +20,8 @@ package org.apache.solr.search;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.util.RamUsageEstimator;
+
 import java.util.List;
 
 /** A hash key encapsulating a query, a list of filters, and a sort
@@ -36,6 +38,9 @@ public final class QueryResultKey {
 
   private static SortField[] defaultSort = new SortField[0];
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(QueryResultKey.class);
+  private static final long SORT_FIELD_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SortField.class);
+
 
   public QueryResultKey(Query query, List<Query> filters, Sort sort, int nc_flags) {
     this.query = query;
@@ -90,6 +95,24 @@ public final class QueryResultKey {
   }
 
 
+  /**
+   * Returns the approximate amount of memory taken by this key.  Queries are
+   * accounted for {@link SolrCacheRamEstimator#QUERY_RAM_BYTES_USED} bytes each.
+   */
+  public long ramBytesUsed() {
+    long size = BASE_RAM_BYTES_USED + SolrCacheRamEstimator.QUERY_RAM_BYTES_USED;
+    if (sfields != defaultSort) {
+      size += RamUsageEstimator.shallowSizeOf(sfields) + sfields.length * SORT_FIELD_RAM_BYTES_USED;
+    }
+    if (filters != null) {
+      size += RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+          + (long) RamUsageEstimator.NUM_BYTES_OBJECT_REF * filters.size())
+          + filters.size() * SolrCacheRamEstimator.QUERY_RAM_BYTES_USED;
+    }
+    return size;
+  }
+
+
   private static boolean isEqual(Object o1, Object o2) {
     if (o1==o2) return true;  // takes care of identity and null cases
     if (o1==null || o2==null) return false;
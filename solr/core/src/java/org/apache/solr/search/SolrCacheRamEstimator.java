@@ -0,0 +1,132 @@
+package org.apache.solr.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.solr.request.UnInvertedField;
+import org.apache.solr.util.RamEstimator;
+
+/**
+ * Estimates the RAM used by the entries of Solr's caches, so that they can be
+ * bounded with the <code>maxRamMB</code> parameter.
+ * <p/>
+ * {@link DocSet}s (including {@link DocList}s), {@link QueryResultKey}s,
+ * {@link UnInvertedField}s, stored {@link Document}s, strings and numbers
+ * are measured.  {@link Query} keys are accounted for a fixed size: they may
+ * reference large objects which are not owned by the cache, such as index
+ * readers.  Other objects are accounted for a fixed size as well.
+ */
+public class SolrCacheRamEstimator<K,V> implements RamEstimator<K,V> {
+
+  /** Rough RAM usage of a query. */
+  public static final long QUERY_RAM_BYTES_USED = 256;
+
+  /** Rough RAM usage of objects which are not measured. */
+  public static final long DEFAULT_RAM_BYTES_USED = 256;
+
+  /** RAM usage of the hash table entry and of the cache's own entry object. */
+  public static final long ENTRY_RAM_BYTES_USED =
+      RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + 3 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + RamUsageEstimator.NUM_BYTES_INT)
+      + RamUsageEstimator.alignObjectSize(RamUsageEstimator.NUM_BYTES_OBJECT_HEADER
+          + 4 * RamUsageEstimator.NUM_BYTES_OBJECT_REF + 3 * RamUsageEstimator.NUM_BYTES_LONG)
+      + 2 * RamUsageEstimator.NUM_BYTES_OBJECT_REF;
+
+  private static final long STRING_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(String.class);
+  private static final long NUMBER_RAM_BYTES_USED = RamUsageEstimator.alignObjectSize(
+      RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + RamUsageEstimator.NUM_BYTES_LONG);
+  private static final long DOCUMENT_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Document.class)
+      + RamUsageEstimator.shallowSizeOfInstance(ArrayList.class);
+  private static final long FIELD_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Field.class);
+  private static final long BYTES_REF_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+
+  public long ramBytesUsed(K key, V value) {
+    return ENTRY_RAM_BYTES_USED + sizeOf(key) + sizeOf(value);
+  }
+
+  /** Returns the approximate number of bytes used by a cached key or value. */
+  public static long sizeOf(Object o) {
+    if (o == null) {
+      return 0;
+    } else if (o instanceof DocSet) {
+      return ((DocSet) o).memSize();
+    } else if (o instanceof QueryResultKey) {
+      return ((QueryResultKey) o).ramBytesUsed();
+    } else if (o instanceof Query) {
+      return QUERY_RAM_BYTES_USED;
+    } else if (o instanceof UnInvertedField) {
+      return ((UnInvertedField) o).memSize();
+    } else if (o instanceof Document) {
+      return sizeOf((Document) o);
+    } else if (o instanceof String) {
+      return sizeOf((String) o);
+    } else if (o instanceof Number) {
+      return NUMBER_RAM_BYTES_USED;
+    }
+    return DEFAULT_RAM_BYTES_USED;
+  }
+
+  static long sizeOf(String s) {
+    return STRING_RAM_BYTES_USED + RamUsageEstimator.alignObjectSize(
+        RamUsageEstimator.NUM_BYTES_ARRAY_HEADER + (long) RamUsageEstimator.NUM_BYTES_CHAR * s.length());
+  }
+
+  static long sizeOf(Document doc) {
+    long size = DOCUMENT_RAM_BYTES_USED;
+    for (IndexableField field : doc) {
+      // field names are interned and thus shared
+      size += RamUsageEstimator.NUM_BYTES_OBJECT_REF + FIELD_RAM_BYTES_USED;
+      final String s = field.stringValue();
+      if (s != null) {
+        size += sizeOf(s);
+      }
+      final BytesRef bytes = field.binaryValue();
+      if (bytes != null) {
+        size += BYTES_REF_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bytes.bytes);
+      }
+      if (field.numericValue() != null) {
+        size += NUMBER_RAM_BYTES_USED;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Parses the <code>maxRamMB</code> cache parameter, and returns the maximum
+   * number of bytes the entries of the cache may use, or -1 if unbounded.
+   */
+  static long parseMaxRamBytes(Map args) {
+    String str = (String) args.get("maxRamMB");
+    if (str == null) {
+      return -1;
+    }
+    double maxRamMB = Double.parseDouble(str);
+    if (maxRamMB <= 0) {
+      throw new IllegalArgumentException("maxRamMB must be > 0: " + str);
+    }
+    return Math.max(1, (long) (maxRamMB * RamUsageEstimator.ONE_MB));
+  }
+}
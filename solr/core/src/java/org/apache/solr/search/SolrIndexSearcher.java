@@ -97,6 +97,8 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
   private final SolrCache<QueryResultKey,DocList> queryResultCache;
   private final SolrCache<Integer,Document> documentCache;
   private final SolrCache<String,UnInvertedField> fieldValueCache;
+  // shared by all searchers of the core, may be null
+  private final FilterCache perSegmentFilterCache;
 
   private final LuceneQueryOptimizer optimizer;
   
@@ -186,11 +188,13 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
 
       cacheList = clist.toArray(new SolrCache[clist.size()]);
+      perSegmentFilterCache = core.getPerSegmentFilterCache();
     } else {
       filterCache=null;
       queryResultCache=null;
       documentCache=null;
       fieldValueCache=null;
+      perSegmentFilterCache=null;
       cacheMap = noGenericCaches;
       cacheList= noCaches;
     }
@@ -588,6 +592,10 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
    * @return the first document number containing the term
    */
   public int getFirstMatch(Term t) throws IOException {
+    final PrimaryKeyLookup pkLookup = core == null ? null : core.getPrimaryKeyLookup();
+    if (pkLookup != null && pkLookup.getField().equals(t.field())) {
+      return pkLookup.lookup(reader, t.bytes());
+    }
     Fields fields = atomicReader.fields();
     if (fields == null) return -1;
     Terms terms = fields.terms(t.field());
@@ -608,6 +616,14 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
    * @lucene.internal
    */
   public long lookupId(BytesRef idBytes) throws IOException {
+    final PrimaryKeyLookup pkLookup = core == null ? null : core.getPrimaryKeyLookup();
+    if (pkLookup != null) {
+      final int docID = pkLookup.lookup(reader, idBytes);
+      if (docID == -1) return -1;
+      final int i = ReaderUtil.subIndex(docID, leafContexts);
+      return (((long)i) << 32) | (docID - leafContexts.get(i).docBase);
+    }
+
     String field = schema.getUniqueKeyField().getName();
 
     for (int i=0, c=leafContexts.size(); i<c; i++) {
@@ -698,7 +714,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       }
     }
 
-    DocSet absAnswer = getDocSetNC(absQ, null);
+    DocSet absAnswer = getDocSetFromSegments(absQ);
     DocSet answer = positive ? absAnswer : getPositiveDocSet(matchAllDocsQuery).andNot(absAnswer);
 
     if (filterCache != null) {
@@ -716,7 +732,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
       answer = filterCache.get(q);
       if (answer!=null) return answer;
     }
-    answer = getDocSetNC(q,null);
+    answer = getDocSetFromSegments(q);
     if (filterCache != null) filterCache.put(
         q,answer);
     return answer;
@@ -724,6 +740,129 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
 
   private static Query matchAllDocsQuery = new MatchAllDocsQuery();
 
+  /**
+   * Returns the set of document ids matching a positive query, using the
+   * per-segment filter cache if it is configured: the query is only
+   * executed against the segments whose result is not cached yet, which are
+   * usually the segments that were added since the last searcher.
+   */
+  private DocSet getDocSetFromSegments(Query query) throws IOException {
+    if (perSegmentFilterCache == null || !isSegmentLocal(query)) {
+      return getDocSetNC(query, null);
+    }
+    final SegmentQueryFilter key = new SegmentQueryFilter(query, this);
+    try {
+      DocSetCollector collector = new DocSetCollector(maxDoc()>>6, maxDoc());
+      for (final AtomicReaderContext leaf : leafContexts) {
+        DocIdSet idSet = perSegmentFilterCache.getDocIdSet(key, leaf, leaf.reader().getLiveDocs());
+        DocIdSetIterator idIter = idSet == null ? null : idSet.iterator();
+        if (idIter == null) continue;
+        collector.setNextReader(leaf);
+        int docid;
+        while ((docid = idIter.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS) {
+          collector.collect(docid);
+        }
+      }
+      return collector.getDocSet();
+    } finally {
+      // the key may be kept by the cache, it must not keep this searcher alive
+      key.release();
+    }
+  }
+
+  /**
+   * Returns true if the matches of the query on a segment only depend on
+   * that segment, so that they can be cached per segment and reused by
+   * other searchers. Queries that look at the whole index, such as joins
+   * or functions of top-level ords, are not.
+   */
+  static boolean isSegmentLocal(Query query) {
+    if (query instanceof TermQuery
+        || query instanceof MultiTermQuery
+        || query instanceof PhraseQuery
+        || query instanceof MultiPhraseQuery
+        || query instanceof MatchAllDocsQuery
+        || query instanceof org.apache.lucene.search.spans.SpanQuery) {
+      return true;
+    } else if (query instanceof BooleanQuery) {
+      for (BooleanClause clause : ((BooleanQuery) query).clauses()) {
+        if (!isSegmentLocal(clause.getQuery())) {
+          return false;
+        }
+      }
+      return true;
+    } else if (query instanceof DisjunctionMaxQuery) {
+      for (Query disjunct : (DisjunctionMaxQuery) query) {
+        if (!isSegmentLocal(disjunct)) {
+          return false;
+        }
+      }
+      return true;
+    } else if (query instanceof ConstantScoreQuery) {
+      final Query inner = ((ConstantScoreQuery) query).getQuery();
+      return inner != null && isSegmentLocal(inner);
+    } else if (query instanceof WrappedQuery) {
+      return isSegmentLocal(((WrappedQuery) query).getWrappedQuery());
+    }
+    return false;
+  }
+
+  /**
+   * Key of the per-segment filter cache: equal for equal queries, and able
+   * to compute the matches of the query on a segment of the searcher it was
+   * created for until it is released.
+   */
+  private static final class SegmentQueryFilter extends Filter {
+    private final Query query;
+    private SolrIndexSearcher searcher;
+    private Weight weight;
+
+    SegmentQueryFilter(Query query, SolrIndexSearcher searcher) {
+      this.query = query;
+      this.searcher = searcher;
+    }
+
+    void release() {
+      searcher = null;
+      weight = null;
+    }
+
+    @Override
+    public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+      if (searcher == null) {
+        throw new IllegalStateException("released: " + this);
+      }
+      if (weight == null) {
+        weight = searcher.createNormalizedWeight(query);
+      }
+      final Scorer scorer = weight.scorer(context, true, false, acceptDocs);
+      if (scorer == null) {
+        return null;
+      }
+      return new DocIdSet() {
+        @Override
+        public DocIdSetIterator iterator() {
+          return scorer;
+        }
+      };
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof SegmentQueryFilter && query.equals(((SegmentQueryFilter) o).query);
+    }
+
+    @Override
+    public int hashCode() {
+      return query.hashCode() ^ 0x5e9f17e2;
+    }
+
+    @Override
+    public String toString() {
+      return "SegmentQueryFilter(" + query + ")";
+    }
+  }
+
 
   public static class ProcessedFilter {
     public DocSet answer;  // the answer, if non-null
@@ -1056,7 +1195,7 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     if (filterCache != null) {
       first = filterCache.get(absQ);
       if (first==null) {
-        first = getDocSetNC(absQ,null);
+        first = getDocSetFromSegments(absQ);
         filterCache.put(absQ,first);
       }
       return positive ? first.intersection(filter) : filter.andNot(first);
@@ -1992,6 +2131,12 @@ public class SolrIndexSearcher extends IndexSearcher implements Closeable,SolrIn
     lst.add("openedAt", new Date(openTime));
     if (registerTime!=0) lst.add("registeredAt", new Date(registerTime));
     lst.add("warmupTime", warmupTime);
+    if (perSegmentFilterCache != null) {
+      lst.add("perSegmentFilterCacheSize", perSegmentFilterCache.size());
+      lst.add("perSegmentFilterCacheRamBytesUsed", perSegmentFilterCache.ramBytesUsed());
+      lst.add("perSegmentFilterCacheHits", perSegmentFilterCache.getHitCount());
+      lst.add("perSegmentFilterCacheMisses", perSegmentFilterCache.getMissCount());
+    }
     return lst;
   }
 
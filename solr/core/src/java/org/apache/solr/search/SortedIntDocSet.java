@@ -20,6 +20,7 @@ package org.apache.solr.search;
 import org.apache.lucene.index.AtomicReader;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.lucene.search.BitsFilteredDocIdSet;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
@@ -52,8 +53,10 @@ public class SortedIntDocSet extends DocSetBase {
 
   public int size()      { return docs.length; }
 
+  private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(SortedIntDocSet.class);
+
   public long memSize() {
-    return (docs.length<<2)+8;
+    return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(docs);
   }
 
   public static int[] zeroInts = new int[0];
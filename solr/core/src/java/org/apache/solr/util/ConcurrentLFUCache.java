@@ -21,6 +21,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.TreeSet;
@@ -36,6 +37,11 @@ import java.util.concurrent.locks.ReentrantLock;
  * LRU version were not directly usable, perhaps it might be possible to
  * rewrite them with LFU in mind.
  * <p/>
+ * If a {@link RamEstimator} is given, the cache is also bounded by the RAM
+ * used by its entries: once they use more than 'ramUpperWaterMark' bytes,
+ * the least used items are evicted until they use at most
+ * 'ramLowerWaterMark' bytes.
+ * <p/>
  * <b>This API is experimental and subject to change</b>
  *
  * @since solr 1.6
@@ -55,13 +61,28 @@ public class ConcurrentLFUCache<K, V> {
   private final EvictionListener<K, V> evictionListener;
   private CleanupThread cleanupThread;
   private final boolean timeDecay;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
+  private final RamEstimator<K, V> ramEstimator;
 
   public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K, V> evictionListener, boolean timeDecay) {
+    this(upperWaterMark, lowerWaterMark, acceptableSize, initialSize, runCleanupThread,
+        runNewThreadForCleanup, evictionListener, timeDecay, Long.MAX_VALUE, Long.MAX_VALUE - 1, null);
+  }
+
+  public ConcurrentLFUCache(int upperWaterMark, final int lowerWaterMark, int acceptableSize,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K, V> evictionListener, boolean timeDecay,
+                            long ramUpperWaterMark, long ramLowerWaterMark, RamEstimator<K, V> ramEstimator) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramLowerWaterMark >= ramUpperWaterMark)
+      throw new IllegalArgumentException("ramLowerWaterMark must be  < ramUpperWaterMark");
+    this.ramUpperWaterMark = ramEstimator == null ? Long.MAX_VALUE : ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
+    this.ramEstimator = ramEstimator;
     map = new ConcurrentHashMap<Object, CacheEntry<K, V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
@@ -101,6 +122,7 @@ public class ConcurrentLFUCache<K, V> {
     CacheEntry<K, V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      stats.ramBytes.addAndGet(-cacheEntry.ramBytesUsed);
       return cacheEntry.value;
     }
     return null;
@@ -108,13 +130,17 @@ public class ConcurrentLFUCache<K, V> {
 
   public V put(K key, V val) {
     if (val == null) return null;
-    CacheEntry<K, V> e = new CacheEntry<K, V>(key, val, stats.accessCounter.incrementAndGet());
+    CacheEntry<K, V> e = new CacheEntry<K, V>(key, val, stats.accessCounter.incrementAndGet(),
+        ramEstimator == null ? 0 : ramEstimator.ramBytesUsed(key, val));
     CacheEntry<K, V> oldCacheEntry = map.put(key, e);
     int currentSize;
+    long currentRamBytes;
     if (oldCacheEntry == null) {
       currentSize = stats.size.incrementAndGet();
+      currentRamBytes = stats.ramBytes.addAndGet(e.ramBytesUsed);
     } else {
       currentSize = stats.size.get();
+      currentRamBytes = stats.ramBytes.addAndGet(e.ramBytesUsed - oldCacheEntry.ramBytesUsed);
     }
     if (islive) {
       stats.putCounter.incrementAndGet();
@@ -132,7 +158,7 @@ public class ConcurrentLFUCache<K, V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || currentRamBytes > ramUpperWaterMark) && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -149,6 +175,48 @@ public class ConcurrentLFUCache<K, V> {
     return oldCacheEntry == null ? null : oldCacheEntry.value;
   }
 
+  /**
+   * Removes items from the cache to bring the size down to an acceptable
+   * value ('acceptableWaterMark'), and the RAM usage down to
+   * 'ramLowerWaterMark'.
+   */
+  private void markAndSweep() {
+    if (stats.size.get() > upperWaterMark) {
+      markAndSweepByCacheSize();
+    }
+    if (stats.ramBytes.get() > ramUpperWaterMark) {
+      markAndSweepByRamSize();
+    }
+  }
+
+  /**
+   * Evicts the least used items until the entries use at most
+   * 'ramLowerWaterMark' bytes.
+   */
+  private void markAndSweepByRamSize() {
+    if (!markAndSweepLock.tryLock()) return;
+    try {
+      long lowHitCount = this.lowHitCount;
+      isCleaning = true;
+      this.lowHitCount = lowHitCount;     // volatile write to make isCleaning visible
+
+      @SuppressWarnings("unchecked")
+      CacheEntry<K, V>[] eset = map.values().toArray(new CacheEntry[0]);
+      for (CacheEntry<K, V> ce : eset) {
+        ce.hitsCopy = ce.hits.get();
+        ce.lastAccessedCopy = ce.lastAccessed;
+      }
+      // CacheEntry sorts the most used first
+      Arrays.sort(eset);
+      for (int i = eset.length - 1; i >= 0 && stats.ramBytes.get() > ramLowerWaterMark; i--) {
+        evictEntry(eset[i].key);
+      }
+    } finally {
+      isCleaning = false;  // set before markAndSweep.unlock() for visibility
+      markAndSweepLock.unlock();
+    }
+  }
+
   /**
    * Removes items from the cache to bring the size down
    * to an acceptable value ('acceptableWaterMark').
@@ -160,7 +228,7 @@ public class ConcurrentLFUCache<K, V> {
    * The second stage is more intensive and tries to bring down the cache size
    * to the 'lowerWaterMark' config parameter.
    */
-  private void markAndSweep() {
+  private void markAndSweepByCacheSize() {
     if (!markAndSweepLock.tryLock()) return;
     try {
       long lowHitCount = this.lowHitCount;
@@ -209,6 +277,7 @@ public class ConcurrentLFUCache<K, V> {
     CacheEntry<K, V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    stats.ramBytes.addAndGet(-o.ramBytesUsed);
     stats.evictionCounter.incrementAndGet();
     if (evictionListener != null) evictionListener.evictedEntry(o.key, o.value);
   }
@@ -305,8 +374,18 @@ public class ConcurrentLFUCache<K, V> {
     return stats.size.get();
   }
 
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
+  }
+
   public void clear() {
-    map.clear();
+    for (Object key : map.keySet()) {
+      CacheEntry<K, V> o = map.remove(key);
+      if (o != null) {
+        stats.size.decrementAndGet();
+        stats.ramBytes.addAndGet(-o.ramBytesUsed);
+      }
+    }
   }
 
   public Map<Object, CacheEntry<K, V>> getMap() {
@@ -320,11 +399,13 @@ public class ConcurrentLFUCache<K, V> {
     long hitsCopy = 0;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    final long ramBytesUsed;
 
-    public CacheEntry(K key, V value, long lastAccessed) {
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytesUsed) {
       this.key = key;
       this.value = value;
       this.lastAccessed = lastAccessed;
+      this.ramBytesUsed = ramBytesUsed;
     }
 
     public int compareTo(CacheEntry<K, V> that) {
@@ -376,6 +457,7 @@ public class ConcurrentLFUCache<K, V> {
         nonLivePutCounter = new AtomicLong(0),
         missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -398,6 +480,10 @@ public class ConcurrentLFUCache<K, V> {
       return size.get();
     }
 
+    public long getRamBytesUsed() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
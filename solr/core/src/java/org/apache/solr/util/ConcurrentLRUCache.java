@@ -39,6 +39,11 @@ import java.lang.ref.WeakReference;
  * strategy. Instead it strives to remove least recently used items but when the initial
  * cleanup does not remove enough items to reach the 'acceptableWaterMark' limit, it can
  * remove more items forcefully regardless of access order.
+ * <p/>
+ * If a {@link RamEstimator} is given, the cache is also bounded by the RAM
+ * used by its entries: once they use more than 'ramUpperWaterMark' bytes,
+ * the least recently used items are evicted until they use at most
+ * 'ramLowerWaterMark' bytes.
  *
  *
  * @since solr 1.4
@@ -57,13 +62,28 @@ public class ConcurrentLRUCache<K,V> {
   private long oldestEntry = 0;  // not volatile, only accessed in the cleaning method
   private final EvictionListener<K,V> evictionListener;
   private CleanupThread cleanupThread ;
+  private final long ramUpperWaterMark, ramLowerWaterMark;
+  private final RamEstimator<K,V> ramEstimator;
 
   public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
                             int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
                             EvictionListener<K,V> evictionListener) {
+    this(upperWaterMark, lowerWaterMark, acceptableWatermark, initialSize, runCleanupThread,
+            runNewThreadForCleanup, evictionListener, Long.MAX_VALUE, Long.MAX_VALUE - 1, null);
+  }
+
+  public ConcurrentLRUCache(int upperWaterMark, final int lowerWaterMark, int acceptableWatermark,
+                            int initialSize, boolean runCleanupThread, boolean runNewThreadForCleanup,
+                            EvictionListener<K,V> evictionListener,
+                            long ramUpperWaterMark, long ramLowerWaterMark, RamEstimator<K,V> ramEstimator) {
     if (upperWaterMark < 1) throw new IllegalArgumentException("upperWaterMark must be > 0");
     if (lowerWaterMark >= upperWaterMark)
       throw new IllegalArgumentException("lowerWaterMark must be  < upperWaterMark");
+    if (ramLowerWaterMark >= ramUpperWaterMark)
+      throw new IllegalArgumentException("ramLowerWaterMark must be  < ramUpperWaterMark");
+    this.ramUpperWaterMark = ramEstimator == null ? Long.MAX_VALUE : ramUpperWaterMark;
+    this.ramLowerWaterMark = ramLowerWaterMark;
+    this.ramEstimator = ramEstimator;
     map = new ConcurrentHashMap<Object, CacheEntry<K,V>>(initialSize);
     newThreadForCleanup = runNewThreadForCleanup;
     this.upperWaterMark = upperWaterMark;
@@ -99,6 +119,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> cacheEntry = map.remove(key);
     if (cacheEntry != null) {
       stats.size.decrementAndGet();
+      stats.ramBytes.addAndGet(-cacheEntry.ramBytesUsed);
       return cacheEntry.value;
     }
     return null;
@@ -106,13 +127,17 @@ public class ConcurrentLRUCache<K,V> {
 
   public V put(K key, V val) {
     if (val == null) return null;
-    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet());
+    CacheEntry<K,V> e = new CacheEntry<K,V>(key, val, stats.accessCounter.incrementAndGet(),
+            ramEstimator == null ? 0 : ramEstimator.ramBytesUsed(key, val));
     CacheEntry<K,V> oldCacheEntry = map.put(key, e);
     int currentSize;
+    long currentRamBytes;
     if (oldCacheEntry == null) {
       currentSize = stats.size.incrementAndGet();
+      currentRamBytes = stats.ramBytes.addAndGet(e.ramBytesUsed);
     } else {
       currentSize = stats.size.get();
+      currentRamBytes = stats.ramBytes.addAndGet(e.ramBytesUsed - oldCacheEntry.ramBytesUsed);
     }
     if (islive) {
       stats.putCounter.incrementAndGet();
@@ -130,7 +155,7 @@ public class ConcurrentLRUCache<K,V> {
     //
     // Thread safety note: isCleaning read is piggybacked (comes after) other volatile reads
     // in this method.
-    if (currentSize > upperWaterMark && !isCleaning) {
+    if ((currentSize > upperWaterMark || currentRamBytes > ramUpperWaterMark) && !isCleaning) {
       if (newThreadForCleanup) {
         new Thread() {
           @Override
@@ -147,6 +172,48 @@ public class ConcurrentLRUCache<K,V> {
     return oldCacheEntry == null ? null : oldCacheEntry.value;
   }
 
+  /**
+   * Removes items from the cache to bring the size down to an acceptable
+   * value ('acceptableWaterMark'), and the RAM usage down to
+   * 'ramLowerWaterMark'.
+   */
+  private void markAndSweep() {
+    if (stats.size.get() > upperWaterMark) {
+      markAndSweepByCacheSize();
+    }
+    if (stats.ramBytes.get() > ramUpperWaterMark) {
+      markAndSweepByRamSize();
+    }
+  }
+
+  /**
+   * Evicts the least recently used items until the entries use at most
+   * 'ramLowerWaterMark' bytes.  Unlike eviction by cache size, this sorts all
+   * entries, but entries are expected to be few when they are large.
+   */
+  private void markAndSweepByRamSize() {
+    if (!markAndSweepLock.tryLock()) return;
+    try {
+      long oldestEntry = this.oldestEntry;
+      isCleaning = true;
+      this.oldestEntry = oldestEntry;     // volatile write to make isCleaning visible
+
+      @SuppressWarnings("unchecked") // generic array's are anoying
+      CacheEntry<K,V>[] eset = map.values().toArray(new CacheEntry[0]);
+      for (CacheEntry<K,V> ce : eset) {
+        ce.lastAccessedCopy = ce.lastAccessed;
+      }
+      // CacheEntry sorts the most recently used first
+      Arrays.sort(eset);
+      for (int i = eset.length - 1; i >= 0 && stats.ramBytes.get() > ramLowerWaterMark; i--) {
+        evictEntry(eset[i].key);
+      }
+    } finally {
+      isCleaning = false;  // set before markAndSweep.unlock() for visibility
+      markAndSweepLock.unlock();
+    }
+  }
+
   /**
    * Removes items from the cache to bring the size down
    * to an acceptable value ('acceptableWaterMark').
@@ -158,7 +225,7 @@ public class ConcurrentLRUCache<K,V> {
    * The second stage is more intensive and tries to bring down the cache size
    * to the 'lowerWaterMark' config parameter.
    */
-  private void markAndSweep() {
+  private void markAndSweepByCacheSize() {
     // if we want to keep at least 1000 entries, then timestamps of
     // current through current-1000 are guaranteed not to be the oldest (but that does
     // not mean there are 1000 entries in that group... it's acutally anywhere between
@@ -395,6 +462,7 @@ public class ConcurrentLRUCache<K,V> {
     CacheEntry<K,V> o = map.remove(key);
     if (o == null) return;
     stats.size.decrementAndGet();
+    stats.ramBytes.addAndGet(-o.ramBytesUsed);
     stats.evictionCounter.incrementAndGet();
     if(evictionListener != null) evictionListener.evictedEntry(o.key,o.value);
   }
@@ -468,8 +536,18 @@ public class ConcurrentLRUCache<K,V> {
     return stats.size.get();
   }
 
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
+  }
+
   public void clear() {
-    map.clear();
+    for (Object key : map.keySet()) {
+      CacheEntry<K,V> o = map.remove(key);
+      if (o != null) {
+        stats.size.decrementAndGet();
+        stats.ramBytes.addAndGet(-o.ramBytesUsed);
+      }
+    }
   }
 
   public Map<Object, CacheEntry<K,V>> getMap() {
@@ -481,12 +559,14 @@ public class ConcurrentLRUCache<K,V> {
     V value;
     volatile long lastAccessed = 0;
     long lastAccessedCopy = 0;
+    final long ramBytesUsed;
 
 
-    public CacheEntry(K key, V value, long lastAccessed) {
+    public CacheEntry(K key, V value, long lastAccessed, long ramBytesUsed) {
       this.key = key;
       this.value = value;
       this.lastAccessed = lastAccessed;
+      this.ramBytesUsed = ramBytesUsed;
     }
 
     public void setLastAccessed(long lastAccessed) {
@@ -536,6 +616,7 @@ public class ConcurrentLRUCache<K,V> {
             nonLivePutCounter = new AtomicLong(0),
             missCounter = new AtomicLong();
     private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong ramBytes = new AtomicLong();
     private AtomicLong evictionCounter = new AtomicLong();
 
     public long getCumulativeLookups() {
@@ -558,6 +639,10 @@ public class ConcurrentLRUCache<K,V> {
       return size.get();
     }
 
+    public long getRamBytesUsed() {
+      return ramBytes.get();
+    }
+
     public long getCumulativeNonLivePuts() {
       return nonLivePutCounter.get();
     }
@@ -0,0 +1,502 @@
+package org.apache.solr.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A cache that admits new entries based on how frequently their keys have
+ * been requested recently, so that entries which are only requested once do
+ * not evict frequently used ones (see "TinyLFU: A Highly Efficient Cache
+ * Admission Policy" by Einziger and Friedman).
+ * <p/>
+ * New entries first go to a small LRU admission window.  When the window is
+ * full, its least recently used entry competes with the least recently used
+ * entry of the main LRU space: the one whose key was requested least often
+ * according to a compact frequency sketch is evicted.  Frequencies are
+ * periodically halved so that the sketch follows changes in popularity.
+ * <p/>
+ * Lookups never lock: the entries they hit are recorded in lossy striped
+ * buffers, which are drained to update the LRU order by whichever thread
+ * obtains the eviction lock.  Puts take the eviction lock, and evictions
+ * are O(1).  The cache is bounded both by a number of entries and by the
+ * RAM used by its entries, as estimated by a {@link RamEstimator}.
+ *
+ * @see ConcurrentLRUCache
+ */
+public class ConcurrentTinyLFUCache<K,V> {
+
+  // queues a node may be in
+  private static final int NONE = 0, WINDOW = 1, MAIN = 2;
+
+  private static final int READ_BUFFER_SIZE = 16; // must be a power of 2
+  private static final int MAX_READ_BUFFERS = 16;
+
+  private final ConcurrentHashMap<Object,Node<K,V>> map;
+  private final int maxSize;
+  private final int maxWindowSize;
+  private final long maxRamBytes;
+  private final RamEstimator<K,V> ramEstimator;
+  private final FrequencySketch sketch;
+  private final ReadBuffer<K,V>[] readBuffers;
+  private final Stats stats = new Stats();
+  private volatile boolean islive = true;
+
+  // guarded by evictionLock:
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final Node<K,V> window = new Node<K,V>(null, null, 0); // sentinel of a circular list, LRU first
+  private final Node<K,V> main = new Node<K,V>(null, null, 0);
+  private int windowSize, mainSize;
+
+  /**
+   * Creates a cache that holds at most <code>maxSize</code> entries which use
+   * at most <code>maxRamBytes</code> bytes in total.  If
+   * <code>ramEstimator</code> is null, entries are only bounded by count.
+   */
+  @SuppressWarnings("unchecked")
+  public ConcurrentTinyLFUCache(int maxSize, long maxRamBytes, int initialSize, RamEstimator<K,V> ramEstimator) {
+    if (maxSize < 1) throw new IllegalArgumentException("maxSize must be > 0");
+    if (maxRamBytes < 0) throw new IllegalArgumentException("maxRamBytes must be >= 0");
+    this.maxSize = maxSize;
+    this.maxWindowSize = Math.max(1, maxSize / 100);
+    this.maxRamBytes = ramEstimator == null ? Long.MAX_VALUE : maxRamBytes;
+    this.ramEstimator = ramEstimator;
+    map = new ConcurrentHashMap<Object,Node<K,V>>(initialSize);
+    sketch = new FrequencySketch(maxSize);
+    int numBuffers = 1;
+    while (numBuffers < Runtime.getRuntime().availableProcessors() && numBuffers < MAX_READ_BUFFERS) {
+      numBuffers <<= 1;
+    }
+    readBuffers = new ReadBuffer[numBuffers];
+    for (int i = 0; i < numBuffers; i++) {
+      readBuffers[i] = new ReadBuffer<K,V>();
+    }
+    window.prev = window.next = window;
+    main.prev = main.next = main;
+  }
+
+  public void setAlive(boolean live) {
+    islive = live;
+  }
+
+  public V get(K key) {
+    sketch.increment(key);
+    Node<K,V> n = map.get(key);
+    if (n == null) {
+      if (islive) stats.missCounter.incrementAndGet();
+      return null;
+    }
+    if (islive) stats.hitCounter.incrementAndGet();
+    recordRead(n);
+    return n.value;
+  }
+
+  public V remove(K key) {
+    Node<K,V> n = map.remove(key);
+    if (n == null) {
+      return null;
+    }
+    stats.size.decrementAndGet();
+    evictionLock.lock();
+    try {
+      unlink(n);
+    } finally {
+      evictionLock.unlock();
+    }
+    return n.value;
+  }
+
+  public V put(K key, V val) {
+    if (val == null) return null;
+    Node<K,V> n = new Node<K,V>(key, val, ramEstimator == null ? 0 : ramEstimator.ramBytesUsed(key, val));
+    if (n.ramBytesUsed > maxRamBytes) {
+      // caching it would evict all other entries before evicting itself:
+      // reject it up front, and drop the value it replaces
+      if (islive) {
+        stats.putCounter.incrementAndGet();
+      } else {
+        stats.nonLivePutCounter.incrementAndGet();
+      }
+      stats.evictionCounter.incrementAndGet();
+      return remove(key);
+    }
+    Node<K,V> old = map.put(key, n);
+    if (old == null) {
+      stats.size.incrementAndGet();
+    }
+    if (islive) {
+      stats.putCounter.incrementAndGet();
+    } else {
+      stats.nonLivePutCounter.incrementAndGet();
+    }
+
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      if (old != null) {
+        unlink(old);
+      }
+      // another thread may have replaced or removed the entry meanwhile
+      if (map.get(key) == n) {
+        link(n, WINDOW);
+        evict();
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+    return old == null ? null : old.value;
+  }
+
+  /** Records that a node was read, so that it is moved to the most recently
+   *  used end of its queue later on.  Reads may be dropped under contention. */
+  private void recordRead(Node<K,V> n) {
+    final ReadBuffer<K,V> buffer = readBuffers[(int) Thread.currentThread().getId() & (readBuffers.length - 1)];
+    final int i = buffer.writeCounter.getAndIncrement();
+    buffer.nodes.lazySet(i & (READ_BUFFER_SIZE - 1), n);
+    if ((i & (READ_BUFFER_SIZE - 1)) == READ_BUFFER_SIZE - 1 && evictionLock.tryLock()) {
+      try {
+        drainReadBuffers();
+      } finally {
+        evictionLock.unlock();
+      }
+    }
+  }
+
+  private void drainReadBuffers() {
+    assert evictionLock.isHeldByCurrentThread();
+    for (ReadBuffer<K,V> buffer : readBuffers) {
+      for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+        final Node<K,V> n = buffer.nodes.getAndSet(i, null);
+        if (n != null && n.queue != NONE) {
+          final int queue = n.queue;
+          unlinkFromQueue(n);
+          linkToQueue(n, queue);
+        }
+      }
+    }
+  }
+
+  private void link(Node<K,V> n, int queue) {
+    linkToQueue(n, queue);
+    stats.ramBytes.addAndGet(n.ramBytesUsed);
+  }
+
+  private void unlink(Node<K,V> n) {
+    if (n.queue != NONE) {
+      unlinkFromQueue(n);
+      stats.ramBytes.addAndGet(-n.ramBytesUsed);
+    }
+  }
+
+  private void linkToQueue(Node<K,V> n, int queue) {
+    final Node<K,V> head;
+    if (queue == WINDOW) {
+      head = window;
+      windowSize++;
+    } else {
+      head = main;
+      mainSize++;
+    }
+    n.queue = queue;
+    n.prev = head.prev;
+    n.next = head;
+    head.prev.next = n;
+    head.prev = n;
+  }
+
+  private void unlinkFromQueue(Node<K,V> n) {
+    if (n.queue == WINDOW) {
+      windowSize--;
+    } else {
+      mainSize--;
+    }
+    n.queue = NONE;
+    n.prev.next = n.next;
+    n.next.prev = n.prev;
+    n.prev = n.next = null;
+  }
+
+  private void evict() {
+    // entries leaving the window are admitted to the main space only if
+    // their key is requested more often than the key they would evict
+    while (windowSize > maxWindowSize) {
+      final Node<K,V> candidate = window.next;
+      unlinkFromQueue(candidate);
+      if (mainSize < maxSize - maxWindowSize) {
+        linkToQueue(candidate, MAIN);
+      } else {
+        final Node<K,V> victim = main.next;
+        // with room for the window only (maxSize == 1) there is no victim
+        if (victim != main && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+          evictNode(victim);
+          linkToQueue(candidate, MAIN);
+        } else {
+          stats.ramBytes.addAndGet(-candidate.ramBytesUsed);
+          removeEvicted(candidate);
+        }
+      }
+    }
+    while (stats.ramBytes.get() > maxRamBytes && (mainSize > 0 || windowSize > 0)) {
+      evictNode(mainSize > 0 ? main.next : window.next);
+    }
+  }
+
+  private void evictNode(Node<K,V> n) {
+    unlink(n);
+    removeEvicted(n);
+  }
+
+  private void removeEvicted(Node<K,V> n) {
+    if (map.remove(n.key, n)) {
+      stats.size.decrementAndGet();
+      stats.evictionCounter.incrementAndGet();
+    }
+  }
+
+  /**
+   * Returns 'n' number of most recently used items, main space first, in
+   * most recently used first order.
+   */
+  public Map<K,V> getLatestAccessedItems(int n) {
+    final Map<K,V> result = new LinkedHashMap<K,V>();
+    evictionLock.lock();
+    try {
+      drainReadBuffers();
+      for (Node<K,V> node = main.prev; node != main && result.size() < n; node = node.prev) {
+        result.put(node.key, node.value);
+      }
+      for (Node<K,V> node = window.prev; node != window && result.size() < n; node = node.prev) {
+        result.put(node.key, node.value);
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+    return result;
+  }
+
+  public int size() {
+    return stats.size.get();
+  }
+
+  public long ramBytesUsed() {
+    return stats.ramBytes.get();
+  }
+
+  public void clear() {
+    evictionLock.lock();
+    try {
+      // entries are removed one by one so that the size stays consistent
+      // with concurrent puts and removes, which unlink their nodes later on
+      for (Map.Entry<Object,Node<K,V>> entry : map.entrySet()) {
+        if (map.remove(entry.getKey(), entry.getValue())) {
+          stats.size.decrementAndGet();
+        }
+      }
+      // detach all nodes, so that pending reads, puts and removes of cleared
+      // nodes don't link them back nor corrupt the new queues
+      drainReadBuffers();
+      detachAll(window);
+      detachAll(main);
+      windowSize = mainSize = 0;
+      stats.ramBytes.set(0);
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void detachAll(Node<K,V> head) {
+    Node<K,V> n = head.next;
+    while (n != head) {
+      final Node<K,V> next = n.next;
+      n.queue = NONE;
+      n.prev = n.next = null;
+      n = next;
+    }
+    head.prev = head.next = head;
+  }
+
+  public Stats getStats() {
+    return stats;
+  }
+
+  private static final class Node<K,V> {
+    final K key;
+    final V value;
+    final long ramBytesUsed;
+    // guarded by evictionLock, except queue which is read when draining
+    int queue = NONE;
+    Node<K,V> prev, next;
+
+    Node(K key, V value, long ramBytesUsed) {
+      this.key = key;
+      this.value = value;
+      this.ramBytesUsed = ramBytesUsed;
+    }
+  }
+
+  private static final class ReadBuffer<K,V> {
+    final AtomicInteger writeCounter = new AtomicInteger();
+    final AtomicReferenceArray<Node<K,V>> nodes = new AtomicReferenceArray<Node<K,V>>(READ_BUFFER_SIZE);
+  }
+
+  /**
+   * A count-min sketch of 4-bit counters, with 4 counters per key.  Once
+   * 10 times as many increments as the maximum cache size have been
+   * recorded, all counters are halved.
+   */
+  static final class FrequencySketch {
+    private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int maxSize) {
+      int tableSize = 1;
+      while (tableSize < maxSize && tableSize < (1 << 30)) {
+        tableSize <<= 1;
+      }
+      table = new AtomicLongArray(tableSize);
+      tableMask = tableSize - 1;
+      sampleSize = (int) Math.min(10L * maxSize, Integer.MAX_VALUE);
+    }
+
+    int frequency(Object key) {
+      final int hash = spread(key.hashCode());
+      final int start = (hash & 3) << 2;
+      int frequency = Integer.MAX_VALUE;
+      for (int i = 0; i < 4; i++) {
+        final int offset = (start + i) << 2;
+        final int count = (int) ((table.get(indexOf(hash, i)) >>> offset) & 0xfL);
+        frequency = Math.min(frequency, count);
+      }
+      return frequency;
+    }
+
+    void increment(Object key) {
+      final int hash = spread(key.hashCode());
+      final int start = (hash & 3) << 2;
+      boolean added = false;
+      for (int i = 0; i < 4; i++) {
+        added |= incrementAt(indexOf(hash, i), start + i);
+      }
+      if (added && additions.incrementAndGet() == sampleSize) {
+        reset();
+      }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+      final int offset = counter << 2;
+      final long mask = 0xfL << offset;
+      for (;;) {
+        final long value = table.get(index);
+        if ((value & mask) == mask) {
+          return false; // saturated
+        }
+        if (table.compareAndSet(index, value, value + (1L << offset))) {
+          return true;
+        }
+      }
+    }
+
+    private void reset() {
+      for (int i = 0; i < table.length(); i++) {
+        for (;;) {
+          final long value = table.get(i);
+          if (table.compareAndSet(i, value, (value >>> 1) & RESET_MASK)) {
+            break;
+          }
+        }
+      }
+      additions.set(sampleSize / 2);
+    }
+
+    private int indexOf(int hash, int i) {
+      long h = (hash + SEEDS[i]) * SEEDS[i];
+      h += h >>> 32;
+      return ((int) h) & tableMask;
+    }
+
+    private static int spread(int h) {
+      h = ((h >>> 16) ^ h) * 0x45d9f3b;
+      h = ((h >>> 16) ^ h) * 0x45d9f3b;
+      return (h >>> 16) ^ h;
+    }
+  }
+
+  public static class Stats {
+    private final AtomicLong hitCounter = new AtomicLong(),
+            missCounter = new AtomicLong(),
+            putCounter = new AtomicLong(),
+            nonLivePutCounter = new AtomicLong(),
+            evictionCounter = new AtomicLong(),
+            ramBytes = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    public long getCumulativeLookups() {
+      return hitCounter.get() + missCounter.get();
+    }
+
+    public long getCumulativeHits() {
+      return hitCounter.get();
+    }
+
+    public long getCumulativePuts() {
+      return putCounter.get();
+    }
+
+    public long getCumulativeEvictions() {
+      return evictionCounter.get();
+    }
+
+    public int getCurrentSize() {
+      return size.get();
+    }
+
+    public long getRamBytesUsed() {
+      return ramBytes.get();
+    }
+
+    public long getCumulativeNonLivePuts() {
+      return nonLivePutCounter.get();
+    }
+
+    public long getCumulativeMisses() {
+      return missCounter.get();
+    }
+
+    public void add(Stats other) {
+      hitCounter.addAndGet(other.hitCounter.get());
+      missCounter.addAndGet(other.missCounter.get());
+      putCounter.addAndGet(other.putCounter.get());
+      nonLivePutCounter.addAndGet(other.nonLivePutCounter.get());
+      evictionCounter.addAndGet(other.evictionCounter.get());
+      size.set(Math.max(size.get(), other.size.get()));
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.apache.solr.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Estimates the RAM used by a cache entry, so that caches can be bounded by
+ * the total size of their entries.  Estimates must not change while an
+ * entry is cached.
+ *
+ * @see ConcurrentLRUCache
+ * @see ConcurrentLFUCache
+ * @see ConcurrentTinyLFUCache
+ */
+public interface RamEstimator<K,V> {
+
+  /** Returns the approximate number of bytes used by the entry. */
+  public long ramBytesUsed(K key, V value);
+
+}
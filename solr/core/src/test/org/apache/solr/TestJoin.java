@@ -46,11 +46,11 @@ public class TestJoin extends SolrTestCaseJ4 {
 
   @Test
   public void testJoin() throws Exception {
-    assertU(add(doc("id", "1","name", "john", "title", "Director", "dept_s","Engineering")));
-    assertU(add(doc("id", "2","name", "mark", "title", "VP", "dept_s","Marketing")));
-    assertU(add(doc("id", "3","name", "nancy", "title", "MTS", "dept_s","Sales")));
-    assertU(add(doc("id", "4","name", "dave", "title", "MTS", "dept_s","Support", "dept_s","Engineering")));
-    assertU(add(doc("id", "5","name", "tina", "title", "VP", "dept_s","Engineering")));
+    assertU(add(doc("id", "1","name", "john", "title", "Director", "dept_s","Engineering", "rank_ti","1")));
+    assertU(add(doc("id", "2","name", "mark", "title", "VP", "dept_s","Marketing", "rank_ti","2")));
+    assertU(add(doc("id", "3","name", "nancy", "title", "MTS", "dept_s","Sales", "rank_ti","3")));
+    assertU(add(doc("id", "4","name", "dave", "title", "MTS", "dept_s","Support", "dept_s","Engineering", "rank_ti","3")));
+    assertU(add(doc("id", "5","name", "tina", "title", "VP", "dept_s","Engineering", "rank_ti","300")));
 
     assertU(add(doc("id","10", "dept_id_s", "Engineering", "text","These guys develop stuff")));
     assertU(add(doc("id","11", "dept_id_s", "Marketing", "text","These guys make you look good")));
@@ -134,6 +134,32 @@ public class TestJoin extends SolrTestCaseJ4 {
              ,"/response=={'numFound':1,'start':0,'docs':[{'id':'1'}]}"
             );
 
+    // per-segment join
+    assertJQ(req("q","{!join from=dept_s to=dept_id_s method=fcs}title:MTS", "fl","id", "debugQuery","true")
+        ,"/debug/join/{!join from=dept_s to=dept_id_s method=fcs}title:MTS=={'_MATCH_':'fromSetSize,toSetSize,fromTermHits', 'fromSetSize':2, 'toSetSize':3, 'fromTermHits':3}"
+    );
+
+    assertJQ(req("q","{!join from=dept_s to=dept_id_s method=fcs threads=0}title:MTS", "fl","id")
+        ,"/response=={'numFound':3,'start':0,'docs':[{'id':'10'},{'id':'12'},{'id':'13'}]}"
+    );
+
+    assertJQ(req("q","{!join from=dept_id_s to=dept_s method=fcs}text:develop", "fl","id")
+        ,"/response=={'numFound':3,'start':0,'docs':[{'id':'1'},{'id':'4'},{'id':'5'}]}"
+    );
+
+    assertJQ(req("q","{!join from=noexist_s to=dept_id_s method=fcs}*:*", "fl","id")
+        ,"/response=={'numFound':0,'start':0,'docs':[]}"
+    );
+
+    assertJQ(req("q","{!join from=dept_s to=noexist_s method=fcs}*:*", "fl","id")
+        ,"/response=={'numFound':0,'start':0,'docs':[]}"
+    );
+
+    // only the main values of trie fields are joined on
+    assertJQ(req("q","{!join from=rank_ti to=rank_ti method=fcs}name:nancy", "fl","id")
+        ,"/response=={'numFound':2,'start':0,'docs':[{'id':'3'},{'id':'4'}]}"
+    );
+
   }
 
 
@@ -211,6 +237,7 @@ public class TestJoin extends SolrTestCaseJ4 {
         SolrQueryRequest req = req("wt","json","indent","true", "echoParams","all",
             "q","{!join from="+fromField+" to="+toField
                 + (random().nextInt(4)==0 ? " fromIndex=collection1" : "")
+                + (random().nextBoolean() ? " method=fcs threads=" + (random().nextInt(3) - 1) : "")
                 +"}*:*"
         );
 
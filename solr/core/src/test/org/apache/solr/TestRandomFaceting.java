@@ -139,7 +139,7 @@ public class TestRandomFaceting extends SolrTestCaseJ4 {
   }
 
 
-  List<String> multiValuedMethods = Arrays.asList(new String[]{"enum","fc"});
+  List<String> multiValuedMethods = Arrays.asList(new String[]{"enum","fc","fcs"});
   List<String> singleValuedMethods = Arrays.asList(new String[]{"enum","fc","fcs"});
 
 
@@ -22,6 +22,7 @@ import java.util.Map;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.perfield.PerFieldPostingsFormat;
 import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
 import org.apache.solr.schema.SchemaField;
 import org.junit.BeforeClass;
 
@@ -59,6 +60,19 @@ public class TestCodecSupport extends SolrTestCaseJ4 {
     assertEquals("Lucene40", format.getPostingsFormatForField("bar_standard").getName());
   }
 
+  public void testBloomFilterUniqueKey() {
+    SchemaCodecFactory factory = new SchemaCodecFactory();
+    NamedList<Object> args = new NamedList<Object>();
+    args.add(SchemaCodecFactory.BLOOM_FILTER_UNIQUE_KEY, true);
+    factory.init(args);
+    factory.inform(h.getCore().getSchema());
+    PerFieldPostingsFormat format = (PerFieldPostingsFormat) factory.getCodec().postingsFormat();
+
+    assertEquals("BloomFilter", format.getPostingsFormatForField("string_f").getName());
+    assertEquals("Pulsing40", format.getPostingsFormatForField("string_pulsing_f").getName());
+    assertEquals("Lucene40", format.getPostingsFormatForField("string_standard_f").getName());
+  }
+
   public void testUnknownField() {
     Codec codec = h.getCore().getCodec();
     PerFieldPostingsFormat format = (PerFieldPostingsFormat) codec.postingsFormat();
@@ -1754,6 +1754,13 @@ public class SimpleFacetsTest extends SolrTestCaseJ4 {
     doFacetPrefix("t_s", null, "facet.method", "fc");
   }
 
+  @Test
+  public void testFacetPrefixMultiValuedFcs() {
+    doFacetPrefix("t_s", null, "facet.method","fcs");
+    doFacetPrefix("t_s", "{!threads=0}", "facet.method","fcs");   // direct execution
+    doFacetPrefix("t_s", "{!threads=2}", "facet.method","fcs");   // specific number of threads
+  }
+
   static void indexFacetPrefixSingleValued() {
     indexFacetPrefix("60","tt_s1");
   }
@@ -255,6 +255,12 @@ public class QueryEqualityTest extends SolrTestCaseJ4 {
                         "{!join from=foo_s to=bar_s}asdf",
                         "{!join from=$ff to=$tt}asdf",
                         "{!join from=$ff to='bar_s'}text:asdf");
+      assertQueryEquals("join", req,
+                        "{!join from=foo_s to=bar_s method=fcs}asdf",
+                        "{!join from=$ff to=$tt method=fcs}asdf");
+      // caches must not hand out the results or debug info of another method
+      QueryUtils.checkUnequal(QParser.getParser("{!join from=foo_s to=bar_s}asdf", "join", req).getQuery(),
+                              QParser.getParser("{!join from=foo_s to=bar_s method=fcs}asdf", "join", req).getQuery());
     } finally {
       req.close();
     }
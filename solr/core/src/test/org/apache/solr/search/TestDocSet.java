@@ -39,6 +39,7 @@ import org.apache.lucene.util.LuceneTestCase;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.OpenBitSet;
 import org.apache.lucene.util.OpenBitSetIterator;
+import org.apache.lucene.util.RamUsageEstimator;
 
 /**
  *
@@ -193,6 +194,17 @@ public class TestDocSet extends LuceneTestCase {
     // doMany(130, 1000000);
   }
 
+  public void testMemSize() {
+    int maxDoc = rand.nextInt(10000) + 1;
+    OpenBitSet bs = getRandomSet(maxDoc, rand.nextInt(maxDoc));
+    // memSize accounts for all the objects the sets are made of
+    DocSet[] sets = new DocSet[] {getHashDocSet(bs), getIntDocSet(bs), getBitDocSet(bs), getDocSlice(bs),
+        new DocSlice(0, 1, new int[] {1}, new float[] {1f}, 1, 1f)};
+    for (DocSet set : sets) {
+      assertEquals(set.getClass().getName(), RamUsageEstimator.sizeOf(set), set.memSize());
+    }
+  }
+
   public DocSet getRandomDocSet(int n, int maxDoc) {
     OpenBitSet obs = new OpenBitSet(maxDoc);
     int[] a = new int[n];
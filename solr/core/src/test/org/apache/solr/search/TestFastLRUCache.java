@@ -17,6 +17,8 @@
 package org.apache.solr.search;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLRUCache;
 
@@ -174,6 +176,41 @@ public class TestFastLRUCache extends LuceneTestCase {
     cacheNew.close();
   }
 
+  public void testMaxRamSize() throws IOException {
+    FastLRUCache<Object, Object> fastCache = new FastLRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "1000");
+    params.put("maxRamMB", "1");
+    fastCache.init(params, null, null);
+    fastCache.setState(SolrCache.State.LIVE);
+    // each set uses a bit more than 128KB
+    for (int i = 0; i < 20; i++) {
+      fastCache.put(i, new BitDocSet(new OpenBitSet(1 << 20)));
+      assertTrue((Long) fastCache.getStatistics().get("ramBytesUsed") <= RamUsageEstimator.ONE_MB);
+    }
+    NamedList<Serializable> nl = fastCache.getStatistics();
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    long entryBytes = new SolrCacheRamEstimator<Object, Object>().ramBytesUsed(0, new BitDocSet(new OpenBitSet(1 << 20)));
+    assertEquals(fastCache.size() * entryBytes, ramBytesUsed);
+    assertEquals(20L - fastCache.size(), nl.get("evictions"));
+    assertEquals(null, fastCache.get(0));  // least recently used entries are evicted first
+    assertNotNull(fastCache.get(19));
+
+    // small sets only need a little room
+    for (int i = 20; i < 120; i++) {
+      fastCache.put(i, new SortedIntDocSet(new int[] {i}));
+    }
+    for (int i = 20; i < 120; i++) {
+      assertNotNull(fastCache.get(i));
+    }
+    assertNotNull(fastCache.get(19));
+
+    fastCache.clear();
+    assertEquals(0, fastCache.size());
+    assertEquals(0L, fastCache.getStatistics().get("ramBytesUsed"));
+    fastCache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
         public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
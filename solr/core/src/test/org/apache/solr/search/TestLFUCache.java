@@ -17,6 +17,8 @@ package org.apache.solr.search;
  * limitations under the License.
  */
 
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.SolrTestCaseJ4;
 import org.apache.solr.common.util.NamedList;
 import org.apache.solr.util.ConcurrentLFUCache;
@@ -192,6 +194,33 @@ public class TestLFUCache extends SolrTestCaseJ4 {
     }
   }
 
+  @Test
+  public void testMaxRamSize() throws IOException {
+    LFUCache<Object, Object> lfuCache = new LFUCache<Object, Object>();
+    try {
+      Map<String, String> params = new HashMap<String, String>();
+      params.put("size", "1000");
+      params.put("maxRamMB", "1");
+      lfuCache.init(params, null, null);
+      lfuCache.setState(SolrCache.State.LIVE);
+      // each set uses a bit more than 128KB
+      for (int i = 0; i < 20; i++) {
+        lfuCache.put(i, new BitDocSet(new OpenBitSet(1 << 20)));
+        assertNotNull(lfuCache.get(0));
+        assertTrue((Long) lfuCache.getStatistics().get("ramBytesUsed") <= RamUsageEstimator.ONE_MB);
+      }
+      NamedList nl = lfuCache.getStatistics();
+      long entryBytes = new SolrCacheRamEstimator<Object, Object>().ramBytesUsed(0, new BitDocSet(new OpenBitSet(1 << 20)));
+      assertEquals(lfuCache.size() * entryBytes, nl.get("ramBytesUsed"));
+      assertEquals(20L - lfuCache.size(), nl.get("evictions"));
+      // the most frequently used entry is kept
+      assertNotNull(lfuCache.get(0));
+      assertNull(lfuCache.get(1));
+    } finally {
+      lfuCache.close();
+    }
+  }
+
   @Test
   public void testItemOrdering() {
     ConcurrentLFUCache<Integer, String> cache = new ConcurrentLFUCache<Integer, String>(100, 90);
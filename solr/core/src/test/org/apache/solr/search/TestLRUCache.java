@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
 import org.apache.solr.common.util.NamedList;
 
 /**
@@ -122,6 +124,42 @@ public class TestLRUCache extends LuceneTestCase {
     lruCacheNew.close();
   }
   
+  public void testMaxRamSize() throws IOException {
+    LRUCache<Object, Object> lruCache = new LRUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "1000");
+    params.put("maxRamMB", "1");
+    lruCache.init(params, null, null);
+    lruCache.setState(SolrCache.State.LIVE);
+    // each set uses a bit more than 128KB
+    for (int i = 0; i < 20; i++) {
+      lruCache.put(i, new BitDocSet(new OpenBitSet(1 << 20)));
+    }
+    NamedList<Serializable> nl = lruCache.getStatistics();
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed <= RamUsageEstimator.ONE_MB);
+    assertEquals(7, lruCache.size());
+    long entryBytes = new SolrCacheRamEstimator<Object, Object>().ramBytesUsed(0, new BitDocSet(new OpenBitSet(1 << 20)));
+    assertEquals(lruCache.size() * entryBytes, ramBytesUsed);
+    assertEquals(20L - lruCache.size(), nl.get("evictions"));
+    assertEquals(null, lruCache.get(0));  // least recently used entries are evicted first
+    assertNotNull(lruCache.get(19));
+
+    // small sets only need a little room
+    for (int i = 20; i < 120; i++) {
+      lruCache.put(i, new SortedIntDocSet(new int[] {i}));
+    }
+    for (int i = 20; i < 120; i++) {
+      assertNotNull(lruCache.get(i));
+    }
+    assertNotNull(lruCache.get(19));
+    assertTrue((Long) lruCache.getStatistics().get("ramBytesUsed") <= RamUsageEstimator.ONE_MB);
+
+    lruCache.clear();
+    assertEquals(0L, lruCache.getStatistics().get("ramBytesUsed"));
+    lruCache.close();
+  }
+
   private CacheRegenerator createCodeRegenerator() {
     CacheRegenerator cr = new CacheRegenerator() {
       @SuppressWarnings("unchecked")
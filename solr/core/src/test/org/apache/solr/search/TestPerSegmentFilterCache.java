@@ -0,0 +1,123 @@
+package org.apache.solr.search;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilterCache;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TermRangeQuery;
+import org.apache.solr.SolrTestCaseJ4;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.util.RefCounted;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test for the per-segment filter cache that is shared by all searchers of a core.
+ */
+public class TestPerSegmentFilterCache extends SolrTestCaseJ4 {
+
+  @BeforeClass
+  public static void beforeClass() throws Exception {
+    initCore("solrconfig-caching.xml", "schema.xml");
+  }
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    clearIndex();
+    assertU(commit());
+    h.getCore().getPerSegmentFilterCache().clear();
+  }
+
+  private static void addDocs(int start, int end) {
+    for (int i = start; i < end; ++i) {
+      assertU(adoc("id", Integer.toString(i), "val_s", i % 2 == 0 ? "even" : "odd"));
+    }
+    assertU(commit());
+  }
+
+  private static int docSetSize(Query query) throws Exception {
+    RefCounted<SolrIndexSearcher> holder = h.getCore().getSearcher();
+    try {
+      return holder.get().getDocSet(query).size();
+    } finally {
+      holder.decref();
+    }
+  }
+
+  @Test
+  public void testSegmentsAreReused() throws Exception {
+    final FilterCache cache = h.getCore().getPerSegmentFilterCache();
+    assertNotNull(cache);
+    final Query even = new TermQuery(new Term("val_s", "even"));
+
+    addDocs(0, 10);
+    assertEquals(5, docSetSize(even));
+    final long misses = cache.getMissCount();
+    assertTrue(misses > 0);
+    final int size = cache.size();
+
+    // a new segment: autowarming the filterCache only computes the new segment
+    addDocs(10, 20);
+    final NamedList filterCacheStats = h.getCore().getInfoRegistry().get("filterCache").getStatistics();
+    final Object numFilters = filterCacheStats.get("size");
+    assertEquals(((Number) numFilters).intValue(), cache.getMissCount() - misses);
+    // the filterCache accounts for the RAM used by its DocSets
+    assertTrue(((Number) filterCacheStats.get("ramBytesUsed")).longValue() > 0);
+    assertEquals(size + cache.getMissCount() - misses, cache.size());
+    assertEquals(10, docSetSize(even));
+
+    // deletions are applied to cached segments
+    assertU(delI("0"));
+    assertU(delI("12"));
+    assertU(commit());
+    assertEquals(8, docSetSize(even));
+    assertEquals(10, docSetSize(new TermQuery(new Term("val_s", "odd"))));
+    assertEquals(18, docSetSize(new MatchAllDocsQuery()));
+  }
+
+  @Test
+  public void testNegativeAndCompoundQueries() throws Exception {
+    addDocs(0, 10);
+    addDocs(10, 15);
+    final BooleanQuery notEven = new BooleanQuery();
+    notEven.add(new TermQuery(new Term("val_s", "even")), BooleanClause.Occur.MUST_NOT);
+    assertEquals(7, docSetSize(notEven));
+    assertEquals(15 - 7, docSetSize(new TermQuery(new Term("val_s", "even"))));
+    assertEquals(8, docSetSize(TermRangeQuery.newStringRange("val_s", "a", "f", true, true)));
+  }
+
+  @Test
+  public void testSegmentLocalQueries() throws Exception {
+    assertTrue(SolrIndexSearcher.isSegmentLocal(new TermQuery(new Term("id", "1"))));
+    assertTrue(SolrIndexSearcher.isSegmentLocal(TermRangeQuery.newStringRange("id", "1", "2", true, true)));
+    final BooleanQuery bq = new BooleanQuery();
+    bq.add(new TermQuery(new Term("id", "1")), BooleanClause.Occur.SHOULD);
+    assertTrue(SolrIndexSearcher.isSegmentLocal(bq));
+    // joins depend on the whole index
+    bq.add(new JoinQuery("id", "id", null, new MatchAllDocsQuery()), BooleanClause.Occur.SHOULD);
+    assertFalse(SolrIndexSearcher.isSegmentLocal(bq));
+  }
+}
@@ -0,0 +1,256 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.solr.search;
+
+import org.apache.lucene.util.LuceneTestCase;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.solr.common.util.NamedList;
+import org.apache.solr.util.ConcurrentTinyLFUCache;
+import org.apache.solr.util.RamEstimator;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Test for TinyLFUCache
+ *
+ * @see org.apache.solr.search.TinyLFUCache
+ */
+public class TestTinyLFUCache extends LuceneTestCase {
+
+  public void testSimple() throws IOException {
+    TinyLFUCache<Object, Object> sc = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("initialSize", "10");
+    params.put("autowarmCount", "25");
+    CacheRegenerator cr = createCodeRegenerator();
+    Object o = sc.init(params, null, cr);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    assertEquals(100, sc.size());
+    assertEquals("25", sc.get(25));
+    assertEquals(null, sc.get(110));
+    NamedList<Serializable> nl = sc.getStatistics();
+    assertEquals(2L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(101L, nl.get("inserts"));
+    assertEquals(1L, nl.get("evictions"));
+
+    TinyLFUCache<Object, Object> scNew = new TinyLFUCache<Object, Object>();
+    scNew.init(params, o, cr);
+    scNew.warm(null, sc);
+    scNew.setState(SolrCache.State.LIVE);
+    sc.close();
+    assertEquals(25, scNew.size());
+    // the most recently used entry is warmed
+    assertEquals("25", scNew.get(25));
+    scNew.put(103, "103");
+    nl = scNew.getStatistics();
+    assertEquals(1L, nl.get("lookups"));
+    assertEquals(1L, nl.get("hits"));
+    assertEquals(1L, nl.get("inserts"));
+    assertEquals(0L, nl.get("evictions"));
+    assertEquals(3L, nl.get("cumulative_lookups"));
+    assertEquals(2L, nl.get("cumulative_hits"));
+    assertEquals(102L, nl.get("cumulative_inserts"));
+    assertEquals(1L, nl.get("cumulative_evictions"));
+    scNew.close();
+  }
+
+  public void testNoAutowarm() throws IOException {
+    TinyLFUCache<Object, Object> sc = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    params.put("initialSize", "10");
+    CacheRegenerator cr = createCodeRegenerator();
+    Object o = sc.init(params, null, cr);
+    sc.setState(SolrCache.State.LIVE);
+    for (int i = 0; i < 101; i++) {
+      sc.put(i + 1, "" + (i + 1));
+    }
+    TinyLFUCache<Object, Object> scNew = new TinyLFUCache<Object, Object>();
+    scNew.init(params, o, cr);
+    scNew.warm(null, sc);
+    scNew.setState(SolrCache.State.LIVE);
+    sc.close();
+    assertEquals(0, scNew.size());
+    scNew.close();
+  }
+
+  public void testScanResistance() throws IOException {
+    TinyLFUCache<Object, Object> sc = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "100");
+    sc.init(params, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    // frequently requested entries
+    for (int i = 0; i < 50; i++) {
+      sc.put(i, "" + i);
+      for (int j = 0; j < 5; j++) {
+        assertEquals("" + i, sc.get(i));
+      }
+    }
+    // a scan of entries which are requested only once
+    for (int i = 1000; i < 1500; i++) {
+      assertNull(sc.get(i));
+      sc.put(i, "" + i);
+    }
+    assertEquals(100, sc.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals("The value " + i + " should still be cached", "" + i, sc.get(i));
+    }
+    sc.close();
+  }
+
+  public void testMaxRam() throws IOException {
+    TinyLFUCache<Object, Object> sc = new TinyLFUCache<Object, Object>();
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("size", "1000");
+    params.put("maxRamMB", "0.1");
+    sc.init(params, null, null);
+    sc.setState(SolrCache.State.LIVE);
+    final long maxRamBytes = (long) (0.1 * 1024 * 1024);
+    for (int i = 0; i < 100; i++) {
+      DocSet set = new BitDocSet(new OpenBitSet(8 * 8192));
+      sc.put(i, set);
+      assertTrue(((Long) sc.getStatistics().get("ramBytesUsed")) <= maxRamBytes);
+    }
+    NamedList<Serializable> nl = sc.getStatistics();
+    long ramBytesUsed = (Long) nl.get("ramBytesUsed");
+    assertTrue(ramBytesUsed > maxRamBytes / 2);
+    long entryBytes = new SolrCacheRamEstimator<Object,Object>().ramBytesUsed(0, new BitDocSet(new OpenBitSet(8 * 8192)));
+    assertEquals(ramBytesUsed, sc.size() * entryBytes);
+    assertEquals(100L, ((Long) nl.get("evictions")) + sc.size());
+
+    sc.clear();
+    assertEquals(0, sc.size());
+    assertEquals(0L, sc.getStatistics().get("ramBytesUsed"));
+    sc.close();
+  }
+
+  public void testConcurrentAccess() throws Exception {
+    final int maxSize = 100;
+    final ConcurrentTinyLFUCache<Integer,Integer> cache = new ConcurrentTinyLFUCache<Integer,Integer>(maxSize, 50 * 16, maxSize,
+        new RamEstimator<Integer,Integer>() {
+          public long ramBytesUsed(Integer key, Integer value) {
+            return 16;
+          }
+        });
+    final int numThreads = 4;
+    final int numOps = atLeast(10000);
+    final AtomicInteger failures = new AtomicInteger();
+    final long seed = random().nextLong();
+    Thread[] threads = new Thread[numThreads];
+    for (int t = 0; t < numThreads; t++) {
+      final Random r = new Random(seed + t);
+      threads[t] = new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < numOps; i++) {
+            // skewed distribution of keys
+            int key = r.nextInt(1 + r.nextInt(1000));
+            Integer value = cache.get(key);
+            if (value == null) {
+              cache.put(key, key);
+            } else if (value.intValue() != key) {
+              failures.incrementAndGet();
+            }
+            if (r.nextInt(100) == 0) {
+              cache.remove(key);
+            }
+            if (r.nextInt(2000) == 0) {
+              cache.clear();
+            }
+          }
+        }
+      };
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, failures.get());
+    assertTrue(cache.size() <= 50);
+    assertEquals(cache.size() * 16L, cache.ramBytesUsed());
+    assertEquals(cache.size(), cache.getLatestAccessedItems(Integer.MAX_VALUE).size());
+  }
+
+  public void testSizeOne() {
+    // the window takes the only slot: there is no main space to admit to
+    final ConcurrentTinyLFUCache<Integer,Integer> cache = new ConcurrentTinyLFUCache<Integer,Integer>(1, 0, 1, null);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, i);
+      assertEquals(Integer.valueOf(i), cache.get(i));
+      assertEquals(1, cache.size());
+    }
+    assertNull(cache.get(0));
+    assertEquals(9L, cache.getStats().getCumulativeEvictions());
+  }
+
+  public void testOversizedEntry() {
+    // the RAM used by an entry is its value
+    final ConcurrentTinyLFUCache<Integer,Integer> cache = new ConcurrentTinyLFUCache<Integer,Integer>(100, 100, 10,
+        new RamEstimator<Integer,Integer>() {
+          public long ramBytesUsed(Integer key, Integer value) {
+            return value;
+          }
+        });
+    for (int i = 0; i < 5; i++) {
+      cache.put(i, 10);
+    }
+    assertEquals(5, cache.size());
+    assertEquals(50L, cache.ramBytesUsed());
+
+    // too large to ever fit: rejected without evicting the other entries,
+    // and the value it replaces is dropped
+    assertNull(cache.put(5, 101));
+    assertEquals(Integer.valueOf(10), cache.put(0, 101));
+    assertNull(cache.get(0));
+    assertNull(cache.get(5));
+    assertEquals(4, cache.size());
+    assertEquals(40L, cache.ramBytesUsed());
+    assertEquals(2L, cache.getStats().getCumulativeEvictions());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.ramBytesUsed());
+    cache.put(1, 10);
+    assertEquals(1, cache.size());
+    assertEquals(10L, cache.ramBytesUsed());
+  }
+
+  private CacheRegenerator createCodeRegenerator() {
+    CacheRegenerator cr = new CacheRegenerator() {
+        public boolean regenerateItem(SolrIndexSearcher newSearcher, SolrCache newCache,
+                                      SolrCache oldCache, Object oldKey, Object oldVal) {
+          newCache.put(oldKey, oldVal);
+          return true;
+        }
+      };
+    return cr;
+  }
+}